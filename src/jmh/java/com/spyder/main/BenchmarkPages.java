@@ -0,0 +1,53 @@
+package com.spyder.main;
+
+/**
+ * Generates representative HTML pages for the benchmarks: navigation, text
+ * and a mix of internal, external, fragment and mailto links, like the pages
+ * of a typical site.
+ */
+public class BenchmarkPages {
+
+    public static final String BASE_URL = "https://example.com";
+    public static final String PAGE_URL = BASE_URL + "/news/sports/today";
+
+    private BenchmarkPages() {
+    }
+
+    // A page with the given number of links and a paragraph of text per link.
+    public static String generatePage(int linkCount) {
+        StringBuilder html = new StringBuilder(linkCount * 200);
+        html.append("<!DOCTYPE html><html><head><meta charset=\"UTF-8\"><title>Page with ")
+                .append(linkCount).append(" links</title></head><body><nav><ul>");
+        for (int i = 0; i < linkCount; i++) {
+            html.append("<li><a href=\"").append(linkFor(i)).append("\">Link ").append(i).append("</a></li>");
+            if (i % 10 == 9) {
+                html.append("</ul></nav><p>Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do ")
+                        .append("eiusmod tempor incididunt ut labore et dolore magna aliqua.</p><nav><ul>");
+            }
+        }
+        html.append("</ul></nav></body></html>");
+        return html.toString();
+    }
+
+    // Mostly internal links, in the forms they appear on real pages.
+    private static String linkFor(int i) {
+        switch (i % 8) {
+            case 0:
+                return "/section" + (i % 13) + "/article-" + i;
+            case 1:
+                return "../archive/" + i + ".html";
+            case 2:
+                return "related/story-" + i + "?ref=sidebar";
+            case 3:
+                return BASE_URL + "/tags/tag-" + i + "/";
+            case 4:
+                return "https://other-site.org/page/" + i; // external
+            case 5:
+                return "/section" + (i % 13) + "/article-" + i + "#comments"; // fragment
+            case 6:
+                return "mailto:editor" + i + "@example.com";
+            default:
+                return "/downloads/report-" + i + ".pdf";
+        }
+    }
+}
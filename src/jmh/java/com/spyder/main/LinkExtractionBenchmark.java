@@ -0,0 +1,48 @@
+package com.spyder.main;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Collecting the links to crawl from a parsed page ({@link Crawler}'s link
+ * extraction), for pages of different sizes. Extraction doesn't modify the
+ * document, so one parsed page is reused.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LinkExtractionBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    private int linkCount;
+
+    private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer();
+    private Document webpage;
+
+    @Setup
+    public void parsePage() {
+        webpage = Jsoup.parse(BenchmarkPages.generatePage(linkCount), BenchmarkPages.PAGE_URL);
+    }
+
+    @Benchmark
+    public List<String> extractLinks() {
+        return Crawler.extractLinks(webpage, BenchmarkPages.PAGE_URL, "example.com", canonicalizer);
+    }
+}
@@ -0,0 +1,68 @@
+package com.spyder.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Saving a page: rewriting its internal links and writing it to disk, for
+ * pages of different sizes. The pages have no images, so no network requests
+ * are measured. Saving modifies the document, so every operation gets a
+ * freshly parsed copy (parsing is not measured).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SaveWebPageBenchmark {
+
+    private static final String SAVE_LOCATION = "target/benchmark-output";
+
+    @Param({ "10", "100", "1000" })
+    private int linkCount;
+
+    private String html;
+    private WebPageSaver webPageSaver;
+    private Document webpage;
+
+    @Setup
+    public void createSaver() {
+        html = BenchmarkPages.generatePage(linkCount);
+        webPageSaver = new WebPageSaver(SAVE_LOCATION);
+    }
+
+    @Setup(Level.Invocation)
+    public void parsePage() {
+        webpage = Jsoup.parse(html, BenchmarkPages.PAGE_URL);
+    }
+
+    @Benchmark
+    public void saveWebPage() throws InterruptedException, ExecutionException {
+        webPageSaver.saveWebPage(webpage, BenchmarkPages.PAGE_URL).get(); // include the disk write
+    }
+
+    @TearDown
+    public void deleteOutput() throws IOException {
+        webPageSaver.close();
+        Utils.deleteDirectory(new File(SAVE_LOCATION));
+    }
+}
@@ -0,0 +1,559 @@
+package com.spyder.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads the images, stylesheets, scripts, fonts and other files referenced
+ * by saved pages.
+ *
+ * Assets are fetched concurrently on a small thread pool, and every URL is
+ * downloaded at most once per crawl: later requests for the same URL, even
+ * while the first download is still running, share its result. Files are
+ * stored under the hash of their content, so identical bytes served from
+ * different URLs are saved once, and different images that happen to share a
+ * file name (/a/logo.png, /b/logo.png) never overwrite each other. Images go to
+ * the images folder, everything else to the assets folder.
+ *
+ * Stylesheets reference further files with url() and @import. Their
+ * references are fetched through the same pipeline and rewritten to the local
+ * copies by {@link CssUrlRewriter}, streaming from the downloaded file to the
+ * stored one. A stylesheet is stored under the hash of its URL instead, so
+ * stylesheets that import each other know each other's paths without waiting
+ * for one another.
+ *
+ * Transient failures are retried after a delay, as decided by a
+ * {@link RetryPolicy}, without holding a download thread while waiting.
+ *
+ * The download threads are started with the first download and stopped by
+ * {@link #close()}, which abandons the downloads still running; they start
+ * again on the next download.
+ */
+public class AssetPipeline implements AutoCloseable {
+
+    // Static constants
+    private static final Logger logger = System.getLogger(AssetPipeline.class.getName());
+    private static final int DOWNLOAD_THREADS = 8;
+    private static final int HASH_BYTES_IN_FILE_NAME = 16; // 128 bits, collisions are not a concern
+    private static final String DEFAULT_ASSETS_FOLDER_NAME = "assets";
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of("png", "jpg", "jpeg", "gif", "webp", "avif", "svg",
+            "ico", "bmp", "tif", "tiff");
+
+    // What a URL is fetched as, which decides where and how it is stored.
+    private enum Kind {
+        IMAGE, STYLESHEET, OTHER
+    }
+
+    // Instance fields
+    private final FileStore fileStore;
+    private final String imagesFolderName;
+    private final String assetsFolderName;
+    private final boolean ownsFileStore; // then close() closes it as well
+    private ExecutorService executor; // null until the first download, guarded by "this"
+    private final Map<String, CompletableFuture<String>> downloads = new ConcurrentHashMap<>(); // URL -> stored path
+    private volatile HttpFetcher httpFetcher;
+    private volatile CrawlManifest manifest; // null unless incremental crawling is set up
+    private volatile CrawlMetrics metrics = new CrawlMetrics();
+    private volatile RetryPolicy retryPolicy = new RetryPolicy(new CrawlConfig());
+
+    /**
+     * Stores the images as files in a folder below the save location.
+     *
+     * @param saveLocation     root directory of the offline copy
+     * @param imagesFolderName folder below the root that receives the images
+     */
+    public AssetPipeline(Path saveLocation, String imagesFolderName, HttpFetcher httpFetcher) {
+        this(new DirectoryStore(saveLocation, saveLocation.resolve(imagesFolderName),
+                new DiskWriter(1, 1, DiskWriter.FsyncPolicy.NONE)), imagesFolderName, DEFAULT_ASSETS_FOLDER_NAME,
+                httpFetcher, true);
+    }
+
+    /**
+     * @param fileStore        receives the images, as "imagesFolderName/file"
+     * @param imagesFolderName folder below the root that receives the images
+     */
+    public AssetPipeline(FileStore fileStore, String imagesFolderName, HttpFetcher httpFetcher) {
+        this(fileStore, imagesFolderName, DEFAULT_ASSETS_FOLDER_NAME, httpFetcher);
+    }
+
+    /**
+     * @param fileStore        receives the files, as "imagesFolderName/file" or
+     *                         "assetsFolderName/file"
+     * @param imagesFolderName folder below the root that receives the images
+     * @param assetsFolderName folder below the root that receives all other
+     *                         assets
+     */
+    public AssetPipeline(FileStore fileStore, String imagesFolderName, String assetsFolderName,
+            HttpFetcher httpFetcher) {
+        this(fileStore, imagesFolderName, assetsFolderName, httpFetcher, false);
+    }
+
+    private AssetPipeline(FileStore fileStore, String imagesFolderName, String assetsFolderName,
+            HttpFetcher httpFetcher, boolean ownsFileStore) {
+        this.fileStore = fileStore;
+        this.imagesFolderName = imagesFolderName;
+        this.assetsFolderName = assetsFolderName;
+        this.httpFetcher = httpFetcher;
+        this.ownsFileStore = ownsFileStore;
+    }
+
+    public void setHttpFetcher(HttpFetcher httpFetcher) {
+        this.httpFetcher = httpFetcher;
+    }
+
+    // Records downloaded images and revalidates images saved by previous crawls.
+    public void setManifest(CrawlManifest manifest) {
+        this.manifest = manifest;
+    }
+
+    public void setMetrics(CrawlMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Starts downloading an image, or joins the download already started for the
+     * same URL.
+     *
+     * @param imageUrl absolute URL of the image
+     * @return future path of the stored image relative to the save location
+     *         (e.g. "images/3f2a...c1.png"); completes exceptionally if the
+     *         download failed
+     */
+    public CompletableFuture<String> fetchImage(String imageUrl) {
+        return fetch(imageUrl, Kind.IMAGE);
+    }
+
+    /**
+     * Same as {@link #fetchImage(String)} for scripts, fonts and other files,
+     * which are stored in the assets folder.
+     */
+    public CompletableFuture<String> fetchAsset(String assetUrl) {
+        return fetch(assetUrl, Kind.OTHER);
+    }
+
+    /**
+     * Same as {@link #fetchImage(String)} for a stylesheet. The files it
+     * references are fetched as well, and the stylesheet is stored once they
+     * are done, with its references pointing to their local copies.
+     */
+    public CompletableFuture<String> fetchStylesheet(String stylesheetUrl) {
+        return fetch(stylesheetUrl, Kind.STYLESHEET);
+    }
+
+    /**
+     * Fetches the files referenced by CSS that is not a file of its own, such
+     * as a page's style element, and rewrites the references.
+     *
+     * @param baseUrl        URL the references are relative to
+     * @param storedPagePath path of the page that contains the CSS, relative
+     *                       to the save location
+     * @return future CSS with the references of the downloaded files replaced
+     *         by paths relative to the page; references that failed are kept
+     */
+    public CompletableFuture<String> rewriteStylesheet(String css, String baseUrl, String storedPagePath) {
+        Map<String, CompletableFuture<String>> references;
+        try {
+            references = fetchReferences(new StringReader(css), baseUrl);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e); // not thrown when reading a string
+        }
+        return CompletableFuture.allOf(references.values().toArray(new CompletableFuture<?>[0]))
+                .handle((ignored, failure) -> CssUrlRewriter.rewrite(css,
+                        (url, imported) -> mapReference(url, imported, baseUrl, storedPagePath, references)));
+    }
+
+    /**
+     * Stops the download threads and closes the file store if this pipeline
+     * created it. Downloads still running or waiting for a retry fail (pages
+     * keep their original URLs), and are tried again if they are requested
+     * after the close.
+     */
+    @Override
+    public void close() throws IOException {
+        ExecutorService stoppedExecutor;
+        synchronized (this) {
+            stoppedExecutor = executor;
+            executor = null;
+        }
+        if (stoppedExecutor != null) {
+            stoppedExecutor.shutdownNow(); // interrupts the downloads in flight
+            try {
+                if (!stoppedExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    logger.log(Level.WARNING, "Asset downloads did not stop in time");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        IOException abandoned = new IOException("Asset pipeline closed before the download finished");
+        downloads.values().removeIf(download -> download.completeExceptionally(abandoned));
+        if (ownsFileStore) {
+            fileStore.close();
+        }
+    }
+
+    private CompletableFuture<String> fetch(String url, Kind kind) {
+        CompletableFuture<String> download = new CompletableFuture<>();
+        CompletableFuture<String> existingDownload = downloads.putIfAbsent(url, download);
+        if (existingDownload != null) {
+            return existingDownload; // already done or in flight
+        }
+
+        ensureStarted();
+        startDownload(url, kind, download, 0, executorFor(download));
+        return download;
+    }
+
+    private synchronized void ensureStarted() {
+        if (executor == null) {
+            AtomicInteger threadNumber = new AtomicInteger(1);
+            executor = Executors.newFixedThreadPool(DOWNLOAD_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "crawly-assets-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // Runs the steps of a download on the current download threads, or fails it once close() has stopped them.
+    private synchronized Executor executorFor(CompletableFuture<String> download) {
+        ExecutorService currentExecutor = executor;
+        return runnable -> {
+            try {
+                if (currentExecutor == null) {
+                    throw new RejectedExecutionException("Asset pipeline closed");
+                }
+                currentExecutor.execute(runnable);
+            } catch (RejectedExecutionException e) {
+                download.completeExceptionally(e);
+            }
+        };
+    }
+
+    @SuppressWarnings("try")
+    private void startDownload(String url, Kind kind, CompletableFuture<String> download, int attempt,
+            Executor executor) {
+        executor.execute(() -> {
+            CrawlMetrics metrics = this.metrics;
+            try (CrawlMetrics.PhaseTimer timer = metrics.time(CrawlPhase.IMAGE_FETCH, url)) {
+                if (kind == Kind.STYLESHEET) {
+                    downloadStylesheet(url, download); // completes once its references are done
+                } else {
+                    download.complete(downloadFile(url, kind));
+                }
+            } catch (IOException e) {
+                RetryPolicy retryPolicy = this.retryPolicy;
+                if (retryPolicy.shouldRetry(e, attempt)) {
+                    long delayMillis = retryPolicy.getDelayMillis(e, attempt);
+                    logger.log(Level.DEBUG, "Retrying asset in {0} ms: {1} ({2})", delayMillis, url, e.getMessage());
+                    metrics.increment(CrawlMetrics.Counter.RETRIES);
+                    startDownload(url, kind, download, attempt + 1, CompletableFuture.delayedExecutor(delayMillis,
+                            TimeUnit.MILLISECONDS, executorFor(download)));
+                } else {
+                    // cached as failed as well, the URL is not requested again during this crawl
+                    metrics.increment(CrawlMetrics.Counter.IMAGES_FAILED);
+                    download.completeExceptionally(e);
+                }
+            } catch (RuntimeException e) {
+                metrics.increment(CrawlMetrics.Counter.IMAGES_FAILED);
+                download.completeExceptionally(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                download.completeExceptionally(e);
+            }
+        });
+    }
+
+    private String downloadFile(String url, Kind kind) throws IOException, InterruptedException {
+        // ask for a "304 Not Modified" if a previous crawl already saved the file
+        CrawlManifest manifest = this.manifest;
+        ManifestEntry previousEntry = manifest != null ? manifest.getStoredEntry(url) : null;
+        Map<String, String> requestHeaders = previousEntry != null
+                ? previousEntry.getConditionalHeaders()
+                : Collections.emptyMap();
+
+        // stream into a temporary file while hashing the bytes
+        Path temporaryFilePath = fileStore.createTemporaryFile();
+        try {
+            MessageDigest digest = Utils.newSha256Digest();
+            FetchResponse response;
+            try (OutputStream outputStream = new DigestOutputStream(Files.newOutputStream(temporaryFilePath),
+                    digest)) {
+                response = httpFetcher.download(url, outputStream, requestHeaders);
+            }
+
+            if (response.isNotModified() && previousEntry != null) {
+                logger.log(Level.DEBUG, "Asset not modified since last crawl: {0}", url);
+                return previousEntry.getLocalPath();
+            }
+
+            byte[] contentHash = digest.digest();
+            String fileName = Utils.toHexString(contentHash, HASH_BYTES_IN_FILE_NAME)
+                    + extractExtension(url, response.getContentType());
+            String storedPath = (kind == Kind.IMAGE ? imagesFolderName : assetsFolderName) + "/" + fileName;
+
+            if (fileStore.exists(storedPath)) {
+                logger.log(Level.DEBUG, "Asset content already saved, reusing {0} for {1}", fileName, url);
+            } else {
+                // same name means same bytes, so replacing a concurrent copy is harmless
+                fileStore.moveIn(temporaryFilePath, storedPath);
+            }
+
+            if (manifest != null) {
+                manifest.put(new ManifestEntry(url, response.getHeader("ETag"),
+                        response.getHeader("Last-Modified"), Utils.toHexString(contentHash), storedPath,
+                        Collections.emptyList()));
+            }
+            return storedPath;
+        } finally {
+            Files.deleteIfExists(temporaryFilePath);
+        }
+    }
+
+    /*
+     * Downloads a stylesheet into a temporary file and starts fetching its
+     * references. Once those are done, the stylesheet is streamed from the
+     * temporary file into the store with the references rewritten, and the
+     * download completes.
+     */
+    private void downloadStylesheet(String url, CompletableFuture<String> download)
+            throws IOException, InterruptedException {
+        CrawlManifest manifest = this.manifest;
+        ManifestEntry previousEntry = manifest != null ? manifest.getStoredEntry(url) : null;
+        Map<String, String> requestHeaders = previousEntry != null
+                ? previousEntry.getConditionalHeaders()
+                : Collections.emptyMap();
+
+        Path temporaryFilePath = fileStore.createTemporaryFile();
+        boolean handedOver = false; // then the temporary file is deleted once the stylesheet is stored
+        try {
+            MessageDigest digest = Utils.newSha256Digest();
+            FetchResponse response;
+            try (OutputStream outputStream = new DigestOutputStream(Files.newOutputStream(temporaryFilePath),
+                    digest)) {
+                response = httpFetcher.download(url, outputStream, requestHeaders);
+            }
+            if (response.isNotModified() && previousEntry != null) {
+                logger.log(Level.DEBUG, "Stylesheet not modified since last crawl: {0}", url);
+                download.complete(previousEntry.getLocalPath());
+                return;
+            }
+
+            String storedPath = getStylesheetPath(url);
+            String baseUrl = response.getFinalUrl(); // references are relative to the stylesheet
+            Charset charset = toCharset(response.getCharset());
+            Map<String, CompletableFuture<String>> references;
+            try (Reader reader = new InputStreamReader(Files.newInputStream(temporaryFilePath), charset)) {
+                references = fetchReferences(reader, baseUrl);
+            }
+            ManifestEntry entry = new ManifestEntry(url, response.getHeader("ETag"),
+                    response.getHeader("Last-Modified"), Utils.toHexString(digest.digest()), storedPath,
+                    Collections.emptyList());
+
+            handedOver = true;
+            CompletableFuture.allOf(references.values().toArray(new CompletableFuture<?>[0]))
+                    .handleAsync((ignored, failure) -> {
+                        // failed references keep their URLs
+                        storeStylesheet(temporaryFilePath, charset, baseUrl, storedPath, references)
+                                .whenComplete((stored, writeFailure) -> {
+                                    deleteTemporaryFile(temporaryFilePath);
+                                    if (writeFailure != null) {
+                                        download.completeExceptionally(writeFailure);
+                                    } else {
+                                        if (manifest != null) {
+                                            manifest.put(entry);
+                                        }
+                                        download.complete(storedPath);
+                                    }
+                                });
+                        return null;
+                    }, executorFor(download));
+        } finally {
+            if (!handedOver) {
+                Files.deleteIfExists(temporaryFilePath);
+            }
+        }
+    }
+
+    private CompletableFuture<Void> storeStylesheet(Path temporaryFilePath, Charset charset, String baseUrl,
+            String storedPath, Map<String, CompletableFuture<String>> references) {
+        try {
+            return fileStore.write(storedPath, outputStream -> {
+                Writer writer = new OutputStreamWriter(outputStream, charset);
+                try (Reader reader = new InputStreamReader(Files.newInputStream(temporaryFilePath), charset)) {
+                    CssUrlRewriter.rewrite(reader, writer, (reference, imported) -> mapReference(reference,
+                            imported, baseUrl, storedPath, references));
+                }
+                writer.flush(); // the stream itself is closed by the file store
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        } catch (RuntimeException e) { // e.g. the store is closing
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /*
+     * Starts fetching everything a stylesheet references, by absolute URL:
+     * imported stylesheets as stylesheets, images by their extension, anything
+     * else (fonts, cursors) as plain assets. Inline "data:" URLs are skipped.
+     */
+    private Map<String, CompletableFuture<String>> fetchReferences(Reader stylesheet, String baseUrl)
+            throws IOException {
+        Map<String, CompletableFuture<String>> references = new LinkedHashMap<>();
+        Map<String, Boolean> imports = new LinkedHashMap<>();
+        CssUrlRewriter.rewrite(stylesheet, Writer.nullWriter(), (reference, imported) -> {
+            String absoluteUrl = resolve(baseUrl, reference);
+            if (absoluteUrl != null) {
+                imports.merge(absoluteUrl, imported, Boolean::logicalOr);
+            }
+            return null;
+        });
+        imports.forEach((absoluteUrl, imported) -> {
+            if (imported) {
+                fetchStylesheet(absoluteUrl); // not waited for, its path is known up front
+            } else {
+                references.put(absoluteUrl, fetch(absoluteUrl, isImage(absoluteUrl) ? Kind.IMAGE : Kind.OTHER));
+            }
+        });
+        return references;
+    }
+
+    // The local path a reference in a stylesheet is rewritten to, relative to the stylesheet's stored path.
+    private String mapReference(String reference, boolean imported, String baseUrl, String fromPath,
+            Map<String, CompletableFuture<String>> references) {
+        String absoluteUrl = resolve(baseUrl, reference);
+        if (absoluteUrl == null) {
+            return null;
+        }
+        String storedPath;
+        if (imported) {
+            storedPath = getStylesheetPath(absoluteUrl);
+        } else {
+            CompletableFuture<String> download = references.get(absoluteUrl);
+            if (download == null || download.isCompletedExceptionally() || !download.isDone()) {
+                return null; // keep the original reference
+            }
+            storedPath = download.join();
+        }
+        Path fromDirectory = Paths.get(fromPath).getParent();
+        Path relativePath = (fromDirectory != null ? fromDirectory : Paths.get("")).relativize(Paths.get(storedPath));
+        return relativePath.toString().replace(File.separator, "/");
+    }
+
+    private String getStylesheetPath(String stylesheetUrl) {
+        return assetsFolderName + "/" + Utils.toHexString(
+                Utils.newSha256Digest().digest(stylesheetUrl.getBytes(StandardCharsets.UTF_8)),
+                HASH_BYTES_IN_FILE_NAME) + ".css";
+    }
+
+    // Absolute http(s) URL of a reference, or null for inline data and other schemes.
+    private static String resolve(String baseUrl, String reference) {
+        try {
+            URL url = new URL(new URL(baseUrl), reference);
+            String protocol = url.getProtocol();
+            return protocol.equals("http") || protocol.equals("https") ? url.toString() : null;
+        } catch (IOException e) {
+            logger.log(Level.DEBUG, "Skipping malformed reference {0} in {1}", reference, baseUrl);
+            return null;
+        }
+    }
+
+    private static boolean isImage(String url) {
+        String extension = extractExtension(url, null);
+        return !extension.isEmpty() && IMAGE_EXTENSIONS.contains(extension.substring(1));
+    }
+
+    private static Charset toCharset(String charsetName) {
+        try {
+            return charsetName != null ? Charset.forName(charsetName) : StandardCharsets.UTF_8;
+        } catch (IllegalArgumentException e) { // unknown or illegal name
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    private static void deleteTemporaryFile(Path temporaryFilePath) {
+        try {
+            Files.deleteIfExists(temporaryFilePath);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to delete temporary file: " + temporaryFilePath, e);
+        }
+    }
+
+    /*
+     * Keeps the file's extension so browsers and file managers recognize it:
+     * taken from the URL path when present, else derived from the Content-Type
+     * (image/png -> .png, text/javascript -> .js), else none.
+     */
+    private static String extractExtension(String url, String contentType) {
+        try {
+            String path = new URI(url).getPath();
+            if (path != null) {
+                String fileName = path.substring(path.lastIndexOf('/') + 1);
+                int dotIndex = fileName.lastIndexOf('.');
+                if (dotIndex >= 0) {
+                    String extension = fileName.substring(dotIndex + 1).toLowerCase(Locale.ROOT);
+                    if (extension.matches("[a-z0-9]{1,5}")) {
+                        return "." + extension;
+                    }
+                }
+            }
+        } catch (URISyntaxException e) {
+            logger.log(Level.DEBUG, "Failed to parse path from URL: {0}", url);
+        }
+
+        if (contentType != null && contentType.contains("/")) {
+            String subtype = contentType.substring(contentType.indexOf('/') + 1).split("[;+]")[0].trim()
+                    .toLowerCase(Locale.ROOT);
+            if (subtype.startsWith("x-")) {
+                subtype = subtype.substring(2);
+            }
+            if (subtype.equals("jpeg")) {
+                return ".jpg";
+            }
+            if (subtype.equals("javascript") || subtype.equals("ecmascript")) {
+                return ".js";
+            }
+            if (subtype.matches("[a-z0-9]{1,5}")) {
+                return "." + subtype;
+            }
+        }
+        return "";
+    }
+}
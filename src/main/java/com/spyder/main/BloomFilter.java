@@ -0,0 +1,69 @@
+package com.spyder.main;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Bloom filter over 64-bit fingerprints.
+ *
+ * Sized for about a 1% false-positive rate at the expected number of entries
+ * (10 bits and 7 probes per entry). Answers "definitely not present" or
+ * "maybe present"; it never forgets an entry.
+ */
+public class BloomFilter {
+
+    // Static constants
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int PROBE_COUNT = 7;
+
+    // Instance fields
+    private final AtomicLongArray words;
+    private final long bitCount;
+
+    public BloomFilter(long expectedEntries) {
+        long wordCount = Math.max(1, (expectedEntries * BITS_PER_ENTRY + Long.SIZE - 1) / Long.SIZE);
+        if (wordCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bloom filter too large for " + expectedEntries + " entries");
+        }
+        this.words = new AtomicLongArray((int) wordCount);
+        this.bitCount = wordCount * Long.SIZE;
+    }
+
+    /**
+     * Adds a fingerprint.
+     *
+     * @return true if at least one bit changed, i.e. the fingerprint was
+     *         definitely not present before
+     */
+    public boolean put(long fingerprint) {
+        boolean changed = false;
+        // double hashing: probe i uses h1 + i * h2
+        long h1 = fingerprint;
+        long h2 = UrlFingerprintSet.mix(fingerprint) | 1;
+        for (int i = 0; i < PROBE_COUNT; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            int wordIndex = (int) (bit >>> 6);
+            long mask = 1L << bit; // shift uses the low 6 bits
+            long word = words.get(wordIndex);
+            while ((word & mask) == 0) {
+                if (words.compareAndSet(wordIndex, word, word | mask)) {
+                    changed = true;
+                    break;
+                }
+                word = words.get(wordIndex);
+            }
+        }
+        return changed;
+    }
+
+    public boolean mightContain(long fingerprint) {
+        long h1 = fingerprint;
+        long h2 = UrlFingerprintSet.mix(fingerprint) | 1;
+        for (int i = 0; i < PROBE_COUNT; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,268 @@
+package com.spyder.main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a crawl that is split over several {@link ClusterWorker} processes,
+ * possibly on several machines. The coordinator fetches nothing itself: it
+ * keeps the list of members, tells every worker about changes (so they can
+ * rebalance), hands out the seed URL and detects the end of the crawl.
+ *
+ * The crawl is over when every worker is idle: nothing queued or in flight,
+ * and every URL it forwarded acknowledged by the owner once queued there.
+ * Statuses arrive at different times, so an idle report can be outdated when
+ * the last one comes in; the coordinator therefore waits for a second round of
+ * idle reports from all workers with unchanged activity counters (URLs received
+ * or forwarded) before telling them to stop.
+ *
+ * The protocol is line-based UTF-8 text over TCP:
+ * <pre>
+ * worker      -&gt; coordinator: JOIN host:port
+ *                              STATUS idle|busy activity
+ * coordinator -&gt; worker:      MEMBERS host:port host:port ...
+ *                              START seed-url
+ *                              STOP
+ * worker      -&gt; worker:      URL depth url
+ * worker      -&gt; worker:      ACK count (URLs queued since the last ACK)
+ * </pre>
+ */
+public class ClusterCoordinator implements AutoCloseable {
+
+    // Static constants
+    static final String JOIN = "JOIN";
+    static final String STATUS = "STATUS";
+    static final String MEMBERS = "MEMBERS";
+    static final String START = "START";
+    static final String STOP = "STOP";
+    static final String URL = "URL";
+    static final String ACK = "ACK";
+    static final String IDLE = "idle";
+    private static final Logger logger = System.getLogger(ClusterCoordinator.class.getName());
+
+    // Instance fields
+    private final String seedUrl;
+    private final int expectedWorkers;
+    private final ServerSocket serverSocket;
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    // Cluster state, guarded by "this"
+    private final Map<Member, String> members = new LinkedHashMap<>(); // connection -> worker address
+    private final Map<Member, Long> activities = new LinkedHashMap<>(); // of idle members only
+    private final Set<Member> reportedSinceCandidate = new HashSet<>();
+    private long candidateActivity = -1; // total activity when all members were last seen idle, -1 if not
+    private boolean started;
+    private boolean stopped;
+
+    /**
+     * Listens for workers on the given port (0 for any free port).
+     *
+     * @param expectedWorkers how many workers must have joined before the
+     *                        crawl starts; later workers join the running crawl
+     */
+    public ClusterCoordinator(int port, String seedUrl, int expectedWorkers) throws IOException {
+        if (expectedWorkers < 1) {
+            throw new IllegalArgumentException("Expected worker count must be at least 1: " + expectedWorkers);
+        }
+        this.seedUrl = seedUrl;
+        this.expectedWorkers = expectedWorkers;
+        this.serverSocket = new ServerSocket(port);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // Accepts workers in the background.
+    public void start() {
+        Thread acceptor = new Thread(this::acceptWorkers, "crawly-coordinator");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Blocks until the crawl is over and all workers have disconnected.
+     *
+     * @return false if the timeout elapsed first
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        synchronized (this) {
+            for (Member member : new ArrayList<>(members.keySet())) {
+                member.close();
+            }
+        }
+    }
+
+    // Private methods
+    private void acceptWorkers() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Member member = new Member(socket);
+                Thread reader = new Thread(() -> serve(member),
+                        "crawly-coordinator-" + socket.getRemoteSocketAddress());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.log(Level.WARNING, "Failed to accept a worker", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Member member) {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(member.socket.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(" ");
+                if (fields[0].equals(JOIN) && fields.length == 2) {
+                    join(member, fields[1]);
+                } else if (fields[0].equals(STATUS) && fields.length == 3) {
+                    updateStatus(member, fields[1].equals(IDLE), Long.parseLong(fields[2]));
+                } else {
+                    logger.log(Level.WARNING, "Ignoring unknown message from worker: {0}", line);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.log(Level.WARNING, "Lost connection to a worker", e);
+        } finally {
+            leave(member);
+        }
+    }
+
+    private synchronized void join(Member member, String address) {
+        logger.log(Level.INFO, "Worker joined: {0}", address);
+        members.put(member, address);
+        broadcastMembers();
+        if (stopped) {
+            member.send(STOP);
+        } else if (started) {
+            member.send(START + " " + seedUrl);
+        } else if (members.size() >= expectedWorkers) {
+            started = true;
+            logger.log(Level.INFO, "Starting crawl of {0} with {1} workers", seedUrl, members.size());
+            for (Member startedMember : members.keySet()) {
+                startedMember.send(START + " " + seedUrl);
+            }
+        }
+    }
+
+    private synchronized void leave(Member member) {
+        member.close();
+        String address = members.remove(member);
+        activities.remove(member);
+        if (address != null) {
+            logger.log(Level.INFO, "Worker left: {0}", address);
+            broadcastMembers(); // the others take over its share
+        }
+        if (stopped && members.isEmpty()) {
+            finished.countDown();
+        }
+    }
+
+    private void broadcastMembers() {
+        StringBuilder message = new StringBuilder(MEMBERS);
+        for (String address : members.values()) {
+            message.append(' ').append(address);
+        }
+        for (Member member : members.keySet()) {
+            member.send(message.toString());
+        }
+        candidateActivity = -1; // URLs may be on their way to new owners
+    }
+
+    private synchronized void updateStatus(Member member, boolean idle, long activity) {
+        if (idle) {
+            activities.put(member, activity);
+        } else {
+            activities.remove(member);
+        }
+        if (!started || stopped) {
+            return;
+        }
+
+        long totalActivity = getTotalActivity();
+        if (totalActivity < 0) {
+            candidateActivity = -1; // still busy
+        } else if (totalActivity != candidateActivity) {
+            candidateActivity = totalActivity;
+            reportedSinceCandidate.clear();
+        } else {
+            reportedSinceCandidate.add(member);
+            if (reportedSinceCandidate.containsAll(members.keySet())) {
+                // a second full round without any new work: nothing can be in flight anymore
+                logger.log(Level.INFO, "Crawl finished, stopping {0} workers", members.size());
+                stopped = true;
+                for (Member stoppedMember : members.keySet()) {
+                    stoppedMember.send(STOP);
+                }
+            }
+        }
+    }
+
+    // Sum of the activity counters if every member is idle, otherwise -1.
+    private long getTotalActivity() {
+        long total = 0;
+        for (Member member : members.keySet()) {
+            Long activity = activities.get(member);
+            if (activity == null) {
+                return -1;
+            }
+            total += activity;
+        }
+        return total;
+    }
+
+    // A worker's connection.
+    private static class Member {
+
+        private final Socket socket;
+        private final Writer writer;
+
+        Member(Socket socket) throws IOException {
+            this.socket = socket;
+            this.writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+        }
+
+        synchronized void send(String message) {
+            try {
+                writer.write(message + "\n");
+                writer.flush();
+            } catch (IOException e) {
+                logger.log(Level.DEBUG, "Failed to send to worker, it is leaving: {0}", e.getMessage());
+                close(); // ends the reader, which removes the member
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.log(Level.DEBUG, "Failed to close worker connection: {0}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package com.spyder.main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One process of a crawl split over several, see {@link ClusterCoordinator}.
+ *
+ * The URLs are partitioned by a {@link ConsistentHashRing} over the canonical
+ * URL (not by host: a crawl stays within one site). Each worker crawls the URLs
+ * it owns with its own {@link Crawler} into its own output (a shard of the
+ * crawl) and forwards every other discovered link to its owner over a TCP
+ * connection; the owner acknowledges forwarded URLs once they are queued, and
+ * unacknowledged ones are sent again after a failure. Each worker remembers
+ * which URLs it forwarded, so links found again aren't sent again, until the
+ * membership changes. When workers join or leave, every worker hands its
+ * queued URLs that now belong to someone else over to the new owner.
+ *
+ * A worker that is interrupted hands all its queued URLs over to the others
+ * before it leaves, and stops acknowledging forwarded URLs, so their senders
+ * pass them on to the next owner. The links of the pages it was fetching at
+ * that moment are lost, and so is its whole queue if it crashes instead: the
+ * other workers only learn that it is gone. Its crawl journal still has these
+ * URLs for a resumed crawl.
+ *
+ * Politeness limits (requests per second, connections per host) apply per
+ * worker, so a cluster of n workers sends up to n times the configured rate.
+ * After a membership change, a page the previous owner already fetched may be
+ * fetched once more by the new owner if it is linked again, since the set of
+ * seen URLs stays with each worker.
+ */
+public class ClusterWorker implements CrawlPartition {
+
+    // Static constants
+    static final long HEARTBEAT_MILLIS = 50; // flushes forwarded URLs and reports the status
+    private static final Logger logger = System.getLogger(ClusterWorker.class.getName());
+
+    // Instance fields
+    private final OutputSink outputSink;
+    private final CrawlConfig config;
+    private final Socket coordinator;
+    private final Writer coordinatorWriter;
+    private final ServerSocket peerServer; // receives URLs from other workers
+    private final String address; // "host:port" under which the other workers reach this one
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+    private final AtomicLong activity = new AtomicLong(); // URLs received or forwarded
+    private final CountDownLatch startSignal = new CountDownLatch(1);
+    private final CountDownLatch crawlReady = new CountDownLatch(1);
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private final AtomicBoolean frontierReleased = new AtomicBoolean();
+    private volatile boolean leaving; // the queue has been handed over, see crawlInterrupted()
+    private volatile UrlFingerprintSet forwardedUrls = new UrlFingerprintSet(); // since the last membership change
+    private volatile ConsistentHashRing ring;
+    private volatile String seedUrl; // null if the cluster stopped before this worker started
+    private volatile Frontier frontier;
+    private volatile CrawlPartition.Scheduler scheduler;
+
+    /**
+     * Connects to the coordinator and joins the cluster.
+     */
+    public ClusterWorker(String coordinatorHost, int coordinatorPort, OutputSink outputSink, CrawlConfig config)
+            throws IOException {
+        this.outputSink = outputSink;
+        this.config = config;
+        this.coordinator = new Socket();
+        try {
+            coordinator.connect(new InetSocketAddress(coordinatorHost, coordinatorPort),
+                    (int) config.getConnectTimeoutMillis());
+            // the interface that reaches the coordinator is the one other workers can reach too, listen only there
+            this.peerServer = new ServerSocket(0, 0, coordinator.getLocalAddress());
+        } catch (IOException e) {
+            coordinator.close();
+            throw e;
+        }
+        this.address = coordinator.getLocalAddress().getHostAddress() + ":" + peerServer.getLocalPort();
+        this.coordinatorWriter = new OutputStreamWriter(coordinator.getOutputStream(), StandardCharsets.UTF_8);
+        sendToCoordinator(ClusterCoordinator.JOIN + " " + address);
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * Waits for the coordinator to start the crawl, crawls this worker's share
+     * and returns once the coordinator has stopped the cluster. Interrupting
+     * the calling thread makes the worker leave early.
+     *
+     * @return the metrics of this worker's share, or null if the crawl was
+     *         over before this worker could take part
+     */
+    public CrawlMetrics run() throws InterruptedException {
+        startDaemon(this::readCoordinator, "crawly-cluster-coordinator");
+        startDaemon(this::acceptPeers, "crawly-cluster-peers");
+        try {
+            startSignal.await();
+            if (seedUrl == null) {
+                return null;
+            }
+
+            Crawler crawler = new Crawler(seedUrl, outputSink, config);
+            crawler.setPartition(this);
+            Thread heartbeat = startDaemon(this::sendHeartbeats, "crawly-cluster-heartbeat");
+            crawler.crawl();
+            heartbeat.interrupt();
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Left the cluster before the crawl was finished");
+            }
+            return crawler.getMetrics();
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public boolean owns(String url) {
+        ConsistentHashRing currentRing = ring;
+        return currentRing == null || address.equals(currentRing.ownerOf(url));
+    }
+
+    @Override
+    public void forward(String url, int depth) {
+        if (forwardedUrls.add(url)) {
+            send(url, depth);
+        } // else on its way to the owner already
+    }
+
+    @Override
+    public void crawlStarted(Frontier crawlFrontier, CrawlPartition.Scheduler crawlScheduler) {
+        crawlFrontier.retain(); // released when the coordinator stops the cluster
+        this.frontier = crawlFrontier;
+        this.scheduler = crawlScheduler;
+        crawlReady.countDown();
+        if (stopped.get()) {
+            releaseFrontier(); // stopped while the crawl was starting
+        }
+    }
+
+    // Hands the whole queue over to the other workers, who take over this worker's share.
+    @Override
+    public void crawlInterrupted() {
+        ConsistentHashRing currentRing = ring;
+        if (currentRing == null || stopped.get()) {
+            return; // the cluster is done anyway
+        }
+        List<String> others = new ArrayList<>(currentRing.getMembers());
+        others.remove(address);
+        if (others.isEmpty()) {
+            return; // nobody to take over, the journal keeps the queue for a resumed crawl
+        }
+
+        leaving = true; // before emptying the queue, see receiveUrls()
+        forwardedUrls = new UrlFingerprintSet();
+        ring = new ConsistentHashRing(others); // owns() is false from now on
+        List<CrawlTask> queued = frontier.removeQueued(url -> true);
+        for (CrawlTask task : queued) {
+            forward(task.getUrl(), task.getDepth());
+        }
+        awaitDelivery();
+        logger.log(Level.INFO, "Handed {0} queued URLs over to other workers before leaving", queued.size());
+    }
+
+    // Private methods
+    private void send(String url, int depth) {
+        CrawlTask task = new CrawlTask(url, depth);
+        while (true) {
+            String owner = ring.ownerOf(url);
+            if (owner == null || owner.equals(address)) {
+                scheduler.schedule(url, depth); // owned here after all, e.g. after rebalancing
+                return;
+            }
+            Peer peer = peers.computeIfAbsent(owner, Peer::new);
+            if (peer.enqueue(task)) {
+                activity.incrementAndGet();
+                return;
+            }
+            peers.remove(owner, peer); // closed meanwhile, the ring has changed
+        }
+    }
+
+    private void readCoordinator() {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(coordinator.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(" ");
+                if (fields[0].equals(ClusterCoordinator.MEMBERS)) {
+                    rebalance(new ConsistentHashRing(Arrays.asList(fields).subList(1, fields.length)));
+                } else if (fields[0].equals(ClusterCoordinator.START) && fields.length == 2) {
+                    seedUrl = fields[1];
+                    startSignal.countDown();
+                } else if (fields[0].equals(ClusterCoordinator.STOP)) {
+                    break;
+                } else {
+                    logger.log(Level.WARNING, "Ignoring unknown message from coordinator: {0}", line);
+                }
+            }
+        } catch (IOException e) {
+            if (!stopped.get()) {
+                logger.log(Level.WARNING, "Lost connection to the coordinator, finishing the crawl", e);
+            }
+        } finally {
+            stop();
+        }
+    }
+
+    private void stop() {
+        if (stopped.compareAndSet(false, true)) {
+            startSignal.countDown();
+            releaseFrontier();
+        }
+    }
+
+    // The crawl ends once the pages in flight are done.
+    private void releaseFrontier() {
+        Frontier crawlFrontier = frontier;
+        if (crawlFrontier != null && frontierReleased.compareAndSet(false, true)) {
+            crawlFrontier.release();
+        }
+    }
+
+    // Hands queued URLs that belong to someone else now over to their new owners.
+    private void rebalance(ConsistentHashRing newRing) {
+        logger.log(Level.INFO, "Cluster members: {0}", newRing.getMembers());
+        if (leaving) {
+            return; // the queue is handed over already, and this worker is no member anymore
+        }
+        forwardedUrls = new UrlFingerprintSet(); // links to URLs that moved must go to their new owners
+        ring = newRing;
+        if (frontier == null) {
+            return; // nothing queued yet
+        }
+
+        List<CrawlTask> moved = new ArrayList<>(frontier.removeQueued(url -> !owns(url)));
+        for (Peer peer : peers.values()) {
+            if (!newRing.getMembers().contains(peer.address)) {
+                peers.remove(peer.address, peer);
+                moved.addAll(peer.close()); // never delivered to the member that left
+            }
+        }
+        for (CrawlTask task : moved) {
+            forward(task.getUrl(), task.getDepth());
+        }
+        if (!moved.isEmpty()) {
+            logger.log(Level.INFO, "Handed {0} queued URLs over to other workers", moved.size());
+        }
+    }
+
+    // Sends the outboxes until the other workers have acknowledged all URLs, or the read timeout passes.
+    private void awaitDelivery() {
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getReadTimeoutMillis());
+        try {
+            while (true) {
+                boolean settled = true;
+                for (Peer peer : peers.values()) {
+                    peer.flush();
+                    settled &= peer.isSettled();
+                }
+                if (settled) {
+                    return;
+                }
+                if (System.nanoTime() - deadlineNanos > 0) {
+                    logger.log(Level.WARNING, "Left before the other workers acknowledged all queued URLs");
+                    return;
+                }
+                Thread.sleep(HEARTBEAT_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // leave right away
+        }
+    }
+
+    private void sendHeartbeats() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(HEARTBEAT_MILLIS);
+                long currentActivity = activity.get(); // before checking idleness, see ClusterCoordinator
+                boolean idle = frontier != null && frontier.getPendingCount() == 1; // only our own hold
+                for (Peer peer : peers.values()) {
+                    peer.flush();
+                    idle &= peer.isSettled();
+                }
+                sendToCoordinator(ClusterCoordinator.STATUS + " " + (idle ? ClusterCoordinator.IDLE : "busy") + " "
+                        + currentActivity);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // the crawl is over
+        } catch (IOException e) {
+            logger.log(Level.DEBUG, "Failed to report to the coordinator: {0}", e.getMessage());
+        }
+    }
+
+    private void acceptPeers() {
+        while (!peerServer.isClosed()) {
+            try {
+                Socket socket = peerServer.accept();
+                startDaemon(() -> receiveUrls(socket), "crawly-cluster-" + socket.getRemoteSocketAddress());
+            } catch (IOException e) {
+                if (!peerServer.isClosed()) {
+                    logger.log(Level.WARNING, "Failed to accept a worker connection", e);
+                }
+            }
+        }
+    }
+
+    // Queues the URLs another worker forwards, and acknowledges them in batches.
+    private void receiveUrls(Socket socket) {
+        try (socket;
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            crawlReady.await();
+            int unacknowledged = 0;
+            String line;
+            while ((line = reader.readLine()) != null && !leaving) {
+                String[] fields = line.split(" ", 3);
+                if (fields[0].equals(ClusterCoordinator.URL) && fields.length == 3) {
+                    if (owns(fields[2])) {
+                        scheduler.schedule(fields[2], Integer.parseInt(fields[1]));
+                    } else {
+                        // the rings disagree while members change, e.g. a leaving worker hands back what
+                        // this one forwarded to it: pass it on even if it was forwarded before
+                        send(fields[2], Integer.parseInt(fields[1]));
+                    }
+                    activity.incrementAndGet(); // after queuing, see sendHeartbeats()
+                    unacknowledged++;
+                } else {
+                    logger.log(Level.WARNING, "Ignoring unknown message from worker: {0}", line);
+                }
+                if (!reader.ready() && unacknowledged > 0) {
+                    if (leaving) {
+                        break; // maybe queued after the handover: the sender passes them on to the next owner
+                    }
+                    writer.write(ClusterCoordinator.ACK + " " + unacknowledged + "\n");
+                    writer.flush();
+                    unacknowledged = 0;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.log(Level.DEBUG, "Worker connection closed: {0}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void sendToCoordinator(String message) throws IOException {
+        coordinatorWriter.write(message + "\n");
+        coordinatorWriter.flush();
+    }
+
+    private void close() {
+        stop();
+        for (Peer peer : peers.values()) {
+            peer.close();
+        }
+        try {
+            peerServer.close();
+            coordinator.close(); // the coordinator sees this worker leave
+        } catch (IOException e) {
+            logger.log(Level.DEBUG, "Failed to close cluster connections: {0}", e.getMessage());
+        }
+    }
+
+    private static Thread startDaemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true); // never keep the JVM alive after the crawl
+        thread.start();
+        return thread;
+    }
+
+    // The connection to another worker, with the URLs on their way to it.
+    private class Peer {
+
+        private final String address;
+        private final Deque<CrawlTask> outbox = new ArrayDeque<>(); // guarded by "this"
+        private final Deque<CrawlTask> unacknowledged = new ArrayDeque<>();
+        private Socket socket;
+        private Writer writer;
+        private boolean closed;
+
+        Peer(String address) {
+            this.address = address;
+        }
+
+        synchronized boolean enqueue(CrawlTask task) {
+            if (closed) {
+                return false;
+            }
+            outbox.add(task);
+            return true;
+        }
+
+        synchronized boolean isSettled() {
+            return outbox.isEmpty() && unacknowledged.isEmpty();
+        }
+
+        // Sends the outbox; after a failure everything unacknowledged is sent again next time.
+        synchronized void flush() {
+            if (closed || outbox.isEmpty()) {
+                return;
+            }
+            try {
+                if (socket == null) {
+                    connect();
+                }
+                for (CrawlTask task : outbox) {
+                    writer.write(ClusterCoordinator.URL + " " + task.getDepth() + " " + task.getUrl() + "\n");
+                }
+                writer.flush();
+                unacknowledged.addAll(outbox);
+                outbox.clear();
+            } catch (IOException e) {
+                logger.log(Level.DEBUG, "Failed to forward URLs to {0}: {1}", address, e.getMessage());
+                disconnect();
+            }
+        }
+
+        // Stops sending and returns the URLs that may not have arrived.
+        synchronized List<CrawlTask> close() {
+            closed = true;
+            disconnect();
+            List<CrawlTask> undelivered = new ArrayList<>(outbox);
+            outbox.clear();
+            return undelivered;
+        }
+
+        private void connect() throws IOException {
+            int separatorIndex = address.lastIndexOf(':');
+            Socket newSocket = new Socket();
+            newSocket.connect(new InetSocketAddress(address.substring(0, separatorIndex),
+                    Integer.parseInt(address.substring(separatorIndex + 1))), (int) config.getConnectTimeoutMillis());
+            socket = newSocket;
+            writer = new OutputStreamWriter(newSocket.getOutputStream(), StandardCharsets.UTF_8);
+            startDaemon(() -> readAcknowledgements(newSocket), "crawly-cluster-acks-" + address);
+        }
+
+        // guarded by "this"
+        private void disconnect() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    logger.log(Level.DEBUG, "Failed to close connection to {0}: {1}", address, e.getMessage());
+                }
+                socket = null;
+            }
+            // what wasn't acknowledged may be lost, send it again (duplicates are ignored by the owner)
+            unacknowledged.addAll(outbox);
+            outbox.clear();
+            outbox.addAll(unacknowledged);
+            unacknowledged.clear();
+        }
+
+        private void readAcknowledgements(Socket ackSocket) {
+            try {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(ackSocket.getInputStream(), StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split(" ");
+                    if (fields[0].equals(ClusterCoordinator.ACK) && fields.length == 2) {
+                        acknowledge(ackSocket, Integer.parseInt(fields[1]));
+                    }
+                }
+                logger.log(Level.DEBUG, "Connection to {0} closed", address);
+            } catch (IOException | NumberFormatException e) {
+                logger.log(Level.DEBUG, "Connection to {0} closed: {1}", address, e.getMessage());
+            }
+            connectionLost(ackSocket);
+        }
+
+        // No acknowledgements will come anymore: send what is unacknowledged again, on a new connection.
+        private synchronized void connectionLost(Socket ackSocket) {
+            if (ackSocket == socket) {
+                disconnect();
+            }
+        }
+
+        private synchronized void acknowledge(Socket ackSocket, int count) {
+            if (ackSocket != socket) {
+                return; // late answer on a failed connection, its URLs are being sent again
+            }
+            for (int i = 0; i < count && !unacknowledged.isEmpty(); i++) {
+                unacknowledged.poll(); // acknowledged in the order they were sent
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.spyder.main;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Assigns every URL to one member of a crawl cluster by consistent hashing:
+ * each member owns the stretches of a 64-bit hash ring in front of its points,
+ * and a URL belongs to the member owning the point its hash falls on. When a
+ * member joins or leaves, only the URLs on the stretches it gains or loses
+ * change owner (about 1/n of them), instead of nearly all as with
+ * {@code hash % n}.
+ *
+ * Every member gets {@value #POINTS_PER_MEMBER} points, so the shares even out.
+ * The hash is fixed (not {@link String#hashCode()} of some JVM), so all
+ * processes of a cluster agree on the owners. Immutable.
+ */
+public class ConsistentHashRing {
+
+    // Static constants
+    static final int POINTS_PER_MEMBER = 128;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // Instance fields
+    private final NavigableMap<Long, String> points = new TreeMap<>();
+    private final List<String> members;
+
+    public ConsistentHashRing(Collection<String> members) {
+        this.members = List.copyOf(members);
+        for (String member : this.members) {
+            for (int i = 0; i < POINTS_PER_MEMBER; i++) {
+                points.put(hash(member + "#" + i), member);
+            }
+        }
+    }
+
+    /**
+     * Returns the member that owns a URL, or null if the ring is empty. The URL
+     * should be canonical, so that all variants of it have the same owner.
+     */
+    public String ownerOf(String url) {
+        if (points.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> point = points.ceilingEntry(hash(url));
+        return point != null ? point.getValue() : points.firstEntry().getValue(); // wrap around
+    }
+
+    public List<String> getMembers() {
+        return members;
+    }
+
+    // FNV-1a over the UTF-8 bytes, with MurmurHash3's finalizer to spread the bits over the ring
+    static long hash(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,599 @@
+package com.spyder.main;
+
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tunable settings for a crawl. Every setting has a sensible default, so
+ * {@code new CrawlConfig()} can be used as-is; setters return the config to
+ * allow chaining.
+ */
+public class CrawlConfig {
+
+    /**
+     * How the crawled site is stored.
+     */
+    public enum OutputFormat {
+        MIRROR, // browsable directory tree, see WebPageSaver
+        WARC, // rotating .warc.gz archives with a CDX index, see WarcWriter
+        PACK // the mirror's files in one pack file with a sorted index, see PackWriter
+    }
+
+    // Static constants
+    public static final int DEFAULT_WORKER_COUNT = 4;
+    public static final double DEFAULT_REQUESTS_PER_SECOND = 10;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+    public static final long DEFAULT_MIN_REQUEST_DELAY_MILLIS = 0;
+    public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 10_000;
+    public static final long DEFAULT_READ_TIMEOUT_MILLIS = 30_000;
+    public static final int DEFAULT_MAX_PAGE_BYTES = 2 * 1024 * 1024; // same as Jsoup's default
+    public static final String DEFAULT_USER_AGENT = "Mozilla/5.0 (compatible; Crawly/2.0)";
+    public static final int DEFAULT_WRITER_THREAD_COUNT = 2;
+    public static final int DEFAULT_WRITE_QUEUE_CAPACITY = 256;
+    public static final long DEFAULT_WARC_MAX_FILE_BYTES = 1024L * 1024 * 1024;
+    public static final String DEFAULT_ACCEPT_ENCODING = "gzip, deflate";
+    public static final int DEFAULT_NEAR_DUPLICATE_THRESHOLD = 3;
+    public static final int DEFAULT_MAX_DEPTH = 9;
+    public static final int DEFAULT_MAX_QUEUED_IN_MEMORY = 100_000;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final long DEFAULT_RETRY_BASE_DELAY_MILLIS = 500;
+    public static final int DEFAULT_CIRCUIT_BREAKER_THRESHOLD = 10;
+    public static final long DEFAULT_CIRCUIT_BREAKER_COOLDOWN_MILLIS = 30_000;
+    public static final List<String> DEFAULT_TRACKING_PARAMETERS = Collections.unmodifiableList(Arrays.asList(
+            "utm_*", "gclid", "dclid", "fbclid", "msclkid", "yclid", "mc_cid", "mc_eid", "_ga", "_hsenc", "_hsmi"));
+    private static final List<String> SUPPORTED_CONTENT_ENCODINGS = Arrays.asList("gzip", "x-gzip", "deflate",
+            "identity"); // what HttpFetcher can decode
+
+    // Instance fields
+    private int workerCount = DEFAULT_WORKER_COUNT;
+    private double requestsPerSecond = DEFAULT_REQUESTS_PER_SECOND;
+    private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    private boolean adaptiveConcurrencyEnabled;
+    private long minRequestDelayMillis = DEFAULT_MIN_REQUEST_DELAY_MILLIS;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private long retryBaseDelayMillis = DEFAULT_RETRY_BASE_DELAY_MILLIS;
+    private int circuitBreakerThreshold = DEFAULT_CIRCUIT_BREAKER_THRESHOLD;
+    private long circuitBreakerCooldownMillis = DEFAULT_CIRCUIT_BREAKER_COOLDOWN_MILLIS;
+    private long connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private long readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+    private int maxPageBytes = DEFAULT_MAX_PAGE_BYTES;
+    private HttpClient.Redirect redirectPolicy = HttpClient.Redirect.NORMAL;
+    private String userAgent = DEFAULT_USER_AGENT;
+    private boolean resume;
+    private long expectedUrlCount;
+    private boolean bloomFilterEnabled;
+    private int maxQueuedInMemory = DEFAULT_MAX_QUEUED_IN_MEMORY;
+    private int writerThreadCount = DEFAULT_WRITER_THREAD_COUNT;
+    private int writeQueueCapacity = DEFAULT_WRITE_QUEUE_CAPACITY;
+    private DiskWriter.FsyncPolicy fsyncPolicy = DiskWriter.FsyncPolicy.NONE;
+    private OutputFormat outputFormat = OutputFormat.MIRROR;
+    private long warcMaxFileBytes = DEFAULT_WARC_MAX_FILE_BYTES;
+    private String acceptEncoding = DEFAULT_ACCEPT_ENCODING;
+    private List<String> trackingParameters = DEFAULT_TRACKING_PARAMETERS;
+    private boolean queryParameterSortingEnabled;
+    private boolean trailingSlashIgnored;
+    private boolean robotsTxtRespected;
+    private boolean sitemapSeedingEnabled;
+    private boolean nearDuplicateDetectionEnabled;
+    private int nearDuplicateThreshold = DEFAULT_NEAR_DUPLICATE_THRESHOLD;
+    private boolean duplicateLinksFollowed = true;
+    private int maxDepth = DEFAULT_MAX_DEPTH;
+    private long maxPages; // 0: no limit
+    private long maxBytes;
+    private long maxDurationMillis;
+    private Map<String, Double> urlPatternWeights = Collections.emptyMap();
+    private UrlScorer urlScorer; // null: DefaultUrlScorer
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    // number of pages fetched, parsed and saved concurrently
+    public CrawlConfig setWorkerCount(int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("Worker count must be at least 1: " + workerCount);
+        }
+        this.workerCount = workerCount;
+        return this;
+    }
+
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    // token-bucket rate per host; 0 disables rate limiting
+    public CrawlConfig setRequestsPerSecond(double requestsPerSecond) {
+        if (requestsPerSecond < 0 || Double.isNaN(requestsPerSecond)) {
+            throw new IllegalArgumentException("Requests per second cannot be negative: " + requestsPerSecond);
+        }
+        this.requestsPerSecond = requestsPerSecond;
+        return this;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    // requests to the same host that may be open at the same time
+    public CrawlConfig setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        if (maxConnectionsPerHost < 1) {
+            throw new IllegalArgumentException("Connections per host must be at least 1: " + maxConnectionsPerHost);
+        }
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        return this;
+    }
+
+    public boolean isAdaptiveConcurrencyEnabled() {
+        return adaptiveConcurrencyEnabled;
+    }
+
+    // adapts each host's connection limit to its latency and pushback, up to the max connections per host
+    public CrawlConfig setAdaptiveConcurrencyEnabled(boolean adaptiveConcurrencyEnabled) {
+        this.adaptiveConcurrencyEnabled = adaptiveConcurrencyEnabled;
+        return this;
+    }
+
+    public long getMinRequestDelayMillis() {
+        return minRequestDelayMillis;
+    }
+
+    // minimum time between the starts of two requests to the same host
+    public CrawlConfig setMinRequestDelayMillis(long minRequestDelayMillis) {
+        if (minRequestDelayMillis < 0) {
+            throw new IllegalArgumentException("Request delay cannot be negative: " + minRequestDelayMillis);
+        }
+        this.minRequestDelayMillis = minRequestDelayMillis;
+        return this;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    // retries of a page or image after transient errors (timeouts, 429, 5xx); 0 disables retrying
+    public CrawlConfig setMaxRetries(int maxRetries) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("Retry count cannot be negative: " + maxRetries);
+        }
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    public long getRetryBaseDelayMillis() {
+        return retryBaseDelayMillis;
+    }
+
+    // delay before the first retry, doubled for every further one and jittered
+    public CrawlConfig setRetryBaseDelayMillis(long retryBaseDelayMillis) {
+        if (retryBaseDelayMillis < 0) {
+            throw new IllegalArgumentException("Retry delay cannot be negative: " + retryBaseDelayMillis);
+        }
+        this.retryBaseDelayMillis = retryBaseDelayMillis;
+        return this;
+    }
+
+    public int getCircuitBreakerThreshold() {
+        return circuitBreakerThreshold;
+    }
+
+    // failed requests in a row after which a host is paused; 0 disables the circuit breaker
+    public CrawlConfig setCircuitBreakerThreshold(int circuitBreakerThreshold) {
+        if (circuitBreakerThreshold < 0) {
+            throw new IllegalArgumentException("Circuit breaker threshold cannot be negative: "
+                    + circuitBreakerThreshold);
+        }
+        this.circuitBreakerThreshold = circuitBreakerThreshold;
+        return this;
+    }
+
+    public long getCircuitBreakerCooldownMillis() {
+        return circuitBreakerCooldownMillis;
+    }
+
+    // how long a failing host is paused before a probe request, doubled while probes fail
+    public CrawlConfig setCircuitBreakerCooldownMillis(long circuitBreakerCooldownMillis) {
+        if (circuitBreakerCooldownMillis <= 0) {
+            throw new IllegalArgumentException("Circuit breaker cooldown must be positive: "
+                    + circuitBreakerCooldownMillis);
+        }
+        this.circuitBreakerCooldownMillis = circuitBreakerCooldownMillis;
+        return this;
+    }
+
+    public long getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    // time allowed to open a connection to a host
+    public CrawlConfig setConnectTimeoutMillis(long connectTimeoutMillis) {
+        if (connectTimeoutMillis < 1) {
+            throw new IllegalArgumentException("Connect timeout must be positive: " + connectTimeoutMillis);
+        }
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        return this;
+    }
+
+    public long getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    // time allowed to wait for the response headers, and then for each further piece of the body
+    public CrawlConfig setReadTimeoutMillis(long readTimeoutMillis) {
+        if (readTimeoutMillis < 1) {
+            throw new IllegalArgumentException("Read timeout must be positive: " + readTimeoutMillis);
+        }
+        this.readTimeoutMillis = readTimeoutMillis;
+        return this;
+    }
+
+    public int getMaxPageBytes() {
+        return maxPageBytes;
+    }
+
+    // pages larger than this are truncated, so one huge response can't exhaust the heap
+    public CrawlConfig setMaxPageBytes(int maxPageBytes) {
+        if (maxPageBytes < 1) {
+            throw new IllegalArgumentException("Maximum page size must be positive: " + maxPageBytes);
+        }
+        this.maxPageBytes = maxPageBytes;
+        return this;
+    }
+
+    public HttpClient.Redirect getRedirectPolicy() {
+        return redirectPolicy;
+    }
+
+    // NORMAL follows redirects except from https to http, ALWAYS follows all, NEVER follows none
+    public CrawlConfig setRedirectPolicy(HttpClient.Redirect redirectPolicy) {
+        if (redirectPolicy == null) {
+            throw new IllegalArgumentException("Redirect policy cannot be null");
+        }
+        this.redirectPolicy = redirectPolicy;
+        return this;
+    }
+
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    public CrawlConfig setUserAgent(String userAgent) {
+        if (userAgent == null || userAgent.trim().isEmpty()) {
+            throw new IllegalArgumentException("User agent cannot be empty");
+        }
+        this.userAgent = userAgent;
+        return this;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    // continue the crawl journaled in the save location instead of starting over
+    public CrawlConfig setResume(boolean resume) {
+        this.resume = resume;
+        return this;
+    }
+
+    public long getExpectedUrlCount() {
+        return expectedUrlCount;
+    }
+
+    // pre-sizes the seen-URL set for very large crawls; 0 if unknown
+    public CrawlConfig setExpectedUrlCount(long expectedUrlCount) {
+        if (expectedUrlCount < 0) {
+            throw new IllegalArgumentException("Expected URL count cannot be negative: " + expectedUrlCount);
+        }
+        this.expectedUrlCount = expectedUrlCount;
+        return this;
+    }
+
+    public boolean isBloomFilterEnabled() {
+        return bloomFilterEnabled;
+    }
+
+    // puts a Bloom filter in front of the seen-URL set, so new URLs skip the table lookup before their insert
+    public CrawlConfig setBloomFilterEnabled(boolean bloomFilterEnabled) {
+        this.bloomFilterEnabled = bloomFilterEnabled;
+        return this;
+    }
+
+    public int getMaxQueuedInMemory() {
+        return maxQueuedInMemory;
+    }
+
+    // queued URLs kept in memory, the rest of the frontier spills to disk; 0 keeps all in memory
+    public CrawlConfig setMaxQueuedInMemory(int maxQueuedInMemory) {
+        if (maxQueuedInMemory < 0) {
+            throw new IllegalArgumentException("In-memory queue limit cannot be negative: " + maxQueuedInMemory);
+        }
+        this.maxQueuedInMemory = maxQueuedInMemory;
+        return this;
+    }
+
+    public int getWriterThreadCount() {
+        return writerThreadCount;
+    }
+
+    // threads writing saved pages to disk, in the background of the workers
+    public CrawlConfig setWriterThreadCount(int writerThreadCount) {
+        if (writerThreadCount < 1) {
+            throw new IllegalArgumentException("Writer thread count must be at least 1: " + writerThreadCount);
+        }
+        this.writerThreadCount = writerThreadCount;
+        return this;
+    }
+
+    public int getWriteQueueCapacity() {
+        return writeQueueCapacity;
+    }
+
+    // pages waiting to be written before the workers have to wait for the disk
+    public CrawlConfig setWriteQueueCapacity(int writeQueueCapacity) {
+        if (writeQueueCapacity < 1) {
+            throw new IllegalArgumentException("Write queue capacity must be at least 1: " + writeQueueCapacity);
+        }
+        this.writeQueueCapacity = writeQueueCapacity;
+        return this;
+    }
+
+    public DiskWriter.FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    // when saved files are forced to the storage device
+    public CrawlConfig setFsyncPolicy(DiskWriter.FsyncPolicy fsyncPolicy) {
+        if (fsyncPolicy == null) {
+            throw new IllegalArgumentException("Fsync policy cannot be null");
+        }
+        this.fsyncPolicy = fsyncPolicy;
+        return this;
+    }
+
+    public OutputFormat getOutputFormat() {
+        return outputFormat;
+    }
+
+    public CrawlConfig setOutputFormat(OutputFormat outputFormat) {
+        if (outputFormat == null) {
+            throw new IllegalArgumentException("Output format cannot be null");
+        }
+        this.outputFormat = outputFormat;
+        return this;
+    }
+
+    public long getWarcMaxFileBytes() {
+        return warcMaxFileBytes;
+    }
+
+    // size after which a new WARC file is started
+    public CrawlConfig setWarcMaxFileBytes(long warcMaxFileBytes) {
+        if (warcMaxFileBytes < 1) {
+            throw new IllegalArgumentException("WARC file size must be at least 1 byte: " + warcMaxFileBytes);
+        }
+        this.warcMaxFileBytes = warcMaxFileBytes;
+        return this;
+    }
+
+    public String getAcceptEncoding() {
+        return acceptEncoding;
+    }
+
+    /**
+     * Accept-Encoding header sent with every request, e.g. "gzip, deflate" or
+     * "gzip;q=1.0, identity;q=0.5". "identity" asks for uncompressed
+     * responses. Only encodings the fetcher can decode are allowed.
+     */
+    public CrawlConfig setAcceptEncoding(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.trim().isEmpty()) {
+            throw new IllegalArgumentException("Accept-Encoding cannot be empty, use \"identity\" instead");
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String name = coding.split(";")[0].trim().toLowerCase(Locale.ROOT); // without the q-value
+            if (!SUPPORTED_CONTENT_ENCODINGS.contains(name)) {
+                throw new IllegalArgumentException("Unsupported content encoding: " + coding.trim());
+            }
+        }
+        this.acceptEncoding = acceptEncoding.trim();
+        return this;
+    }
+
+    public List<String> getTrackingParameters() {
+        return trackingParameters;
+    }
+
+    /**
+     * Query parameters removed from every URL, because they only track where a
+     * visitor came from. A trailing "*" matches all names with that prefix,
+     * e.g. "utm_*". Names are matched case-insensitively.
+     */
+    public CrawlConfig setTrackingParameters(List<String> trackingParameters) {
+        for (String parameter : trackingParameters) {
+            if (parameter == null || parameter.trim().isEmpty() || parameter.trim().equals("*")) {
+                throw new IllegalArgumentException("Invalid tracking parameter: " + parameter);
+            }
+        }
+        List<String> trimmedParameters = new ArrayList<>();
+        trackingParameters.forEach(parameter -> trimmedParameters.add(parameter.trim()));
+        this.trackingParameters = Collections.unmodifiableList(trimmedParameters);
+        return this;
+    }
+
+    public boolean isQueryParameterSortingEnabled() {
+        return queryParameterSortingEnabled;
+    }
+
+    // treat "?b=2&a=1" and "?a=1&b=2" as the same page; off by default, some sites depend on the order
+    public CrawlConfig setQueryParameterSortingEnabled(boolean queryParameterSortingEnabled) {
+        this.queryParameterSortingEnabled = queryParameterSortingEnabled;
+        return this;
+    }
+
+    public boolean isTrailingSlashIgnored() {
+        return trailingSlashIgnored;
+    }
+
+    /**
+     * Treat "/a/" and "/a" as the same page (they are saved to the same file
+     * anyway). Off by default: on servers that answer both without a redirect,
+     * relative links on "/a" would resolve against the wrong directory.
+     */
+    public CrawlConfig setTrailingSlashIgnored(boolean trailingSlashIgnored) {
+        this.trailingSlashIgnored = trailingSlashIgnored;
+        return this;
+    }
+
+    public boolean isRobotsTxtRespected() {
+        return robotsTxtRespected;
+    }
+
+    // skip URLs that the host's robots.txt disallows for our User-Agent
+    public CrawlConfig setRobotsTxtRespected(boolean robotsTxtRespected) {
+        this.robotsTxtRespected = robotsTxtRespected;
+        return this;
+    }
+
+    public boolean isSitemapSeedingEnabled() {
+        return sitemapSeedingEnabled;
+    }
+
+    /**
+     * Also schedule every URL of the seed host's sitemaps, so pages that are
+     * not linked are found and the workers don't wait for link discovery.
+     */
+    public CrawlConfig setSitemapSeedingEnabled(boolean sitemapSeedingEnabled) {
+        this.sitemapSeedingEnabled = sitemapSeedingEnabled;
+        return this;
+    }
+
+    public boolean isNearDuplicateDetectionEnabled() {
+        return nearDuplicateDetectionEnabled;
+    }
+
+    /**
+     * Don't save pages whose text is nearly the same as that of a page saved
+     * before (print views, session IDs in URLs, endless calendars), see
+     * {@link NearDuplicateIndex}.
+     */
+    public CrawlConfig setNearDuplicateDetectionEnabled(boolean nearDuplicateDetectionEnabled) {
+        this.nearDuplicateDetectionEnabled = nearDuplicateDetectionEnabled;
+        return this;
+    }
+
+    public int getNearDuplicateThreshold() {
+        return nearDuplicateThreshold;
+    }
+
+    // how many of the 64 SimHash bits may differ for two pages to count as near-duplicates
+    public CrawlConfig setNearDuplicateThreshold(int nearDuplicateThreshold) {
+        if (nearDuplicateThreshold < 0 || nearDuplicateThreshold > NearDuplicateIndex.MAX_THRESHOLD) {
+            throw new IllegalArgumentException("Near-duplicate threshold must be between 0 and "
+                    + NearDuplicateIndex.MAX_THRESHOLD + ": " + nearDuplicateThreshold);
+        }
+        this.nearDuplicateThreshold = nearDuplicateThreshold;
+        return this;
+    }
+
+    public boolean isDuplicateLinksFollowed() {
+        return duplicateLinksFollowed;
+    }
+
+    // whether the links on near-duplicate pages are still crawled
+    public CrawlConfig setDuplicateLinksFollowed(boolean duplicateLinksFollowed) {
+        this.duplicateLinksFollowed = duplicateLinksFollowed;
+        return this;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    // links followed from the seed URL to reach a page; deeper pages are not crawled
+    public CrawlConfig setMaxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("Maximum depth must not be negative: " + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    public long getMaxPages() {
+        return maxPages;
+    }
+
+    // pages fetched before the crawl stops (0 = no limit)
+    public CrawlConfig setMaxPages(long maxPages) {
+        if (maxPages < 0) {
+            throw new IllegalArgumentException("Maximum page count must not be negative: " + maxPages);
+        }
+        this.maxPages = maxPages;
+        return this;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Bytes of content (pages and images, after decompression) after which no
+     * further pages are started (0 = no limit). Pages in flight are finished,
+     * so the crawl can end up somewhat above the limit.
+     */
+    public CrawlConfig setMaxBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Maximum byte count must not be negative: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    public long getMaxDurationMillis() {
+        return maxDurationMillis;
+    }
+
+    // wall-clock time after which no further pages are started (0 = no limit)
+    public CrawlConfig setMaxDurationMillis(long maxDurationMillis) {
+        if (maxDurationMillis < 0) {
+            throw new IllegalArgumentException("Maximum duration must not be negative: " + maxDurationMillis);
+        }
+        this.maxDurationMillis = maxDurationMillis;
+        return this;
+    }
+
+    public Map<String, Double> getUrlPatternWeights() {
+        return urlPatternWeights;
+    }
+
+    /**
+     * Weights added to the priority of URLs matching a pattern, e.g.
+     * {@code "/blog/" -> 2.0} to crawl blog posts early or {@code "?sort=" -> -5.0}
+     * to leave sorted listings for last. In a pattern, {@code *} matches any
+     * characters; patterns match anywhere in the URL. One level of depth counts
+     * as -1, see {@link DefaultUrlScorer}.
+     */
+    public CrawlConfig setUrlPatternWeights(Map<String, Double> urlPatternWeights) {
+        for (Map.Entry<String, Double> patternWeight : urlPatternWeights.entrySet()) {
+            if (patternWeight.getKey().isEmpty() || patternWeight.getValue().isNaN()
+                    || patternWeight.getValue().isInfinite()) {
+                throw new IllegalArgumentException("Invalid URL pattern weight: " + patternWeight);
+            }
+        }
+        this.urlPatternWeights = Collections.unmodifiableMap(new LinkedHashMap<>(urlPatternWeights));
+        return this;
+    }
+
+    public UrlScorer getUrlScorer() {
+        return urlScorer;
+    }
+
+    // replaces the DefaultUrlScorer and with it the URL pattern weights (null restores it)
+    public CrawlConfig setUrlScorer(UrlScorer urlScorer) {
+        this.urlScorer = urlScorer;
+        return this;
+    }
+}
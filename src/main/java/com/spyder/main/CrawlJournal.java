@@ -0,0 +1,239 @@
+package com.spyder.main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Append-only checkpoint of a crawl's progress, used to resume a crawl that
+ * was stopped or killed.
+ *
+ * Every URL added to the frontier is journaled as discovered (with its depth),
+ * and again once it has been fetched and once it has been saved. Replaying the
+ * journal yields the URLs that are done (saved) and the ones still pending
+ * (discovered but not saved yet), regardless of the order in which concurrent
+ * workers wrote their records. The log is compacted periodically and when it
+ * is closed, leaving one line per URL.
+ *
+ * No URLs are kept in memory: replaying and compacting stream the file twice,
+ * first collecting the fingerprints of the saved URLs, then going through the
+ * records again. Compaction runs whenever the log has grown by as many records
+ * as it held after the last compaction, so its cost stays linear in the number
+ * of records however large the crawl gets.
+ *
+ * Line format: record type ("D", "F" or "S"), tab, depth for "D" records, tab, url.
+ */
+public class CrawlJournal {
+
+    // Static constants
+    private static final Logger logger = System.getLogger(CrawlJournal.class.getName());
+    private static final String JOURNAL_FILE_NAME = "journal.log";
+    private static final String DISCOVERED = "D";
+    private static final String FETCHED = "F";
+    private static final String SAVED = "S";
+    private static final int FLUSH_INTERVAL = 64; // records between flushes to disk
+    private static final int MIN_COMPACTION_INTERVAL = 100_000; // records between compactions
+
+    // Instance fields, all guarded by "this"
+    private final Path journalFile;
+    private BufferedWriter appendWriter;
+    private int recordsSinceFlush;
+    private long recordsSinceCompaction;
+    private long compactionInterval = MIN_COMPACTION_INTERVAL;
+
+    /**
+     * @param metadataDirectory directory that holds crawl metadata
+     */
+    public CrawlJournal(Path metadataDirectory) {
+        this.journalFile = metadataDirectory.resolve(JOURNAL_FILE_NAME);
+    }
+
+    /**
+     * Opens the journal for a crawl.
+     *
+     * @param resume true to keep the journal of a previous crawl, see
+     *               {@link #replay(Consumer, BiConsumer)}, false to discard
+     *               it and start over
+     */
+    public synchronized void open(boolean resume) throws IOException {
+        Files.createDirectories(journalFile.getParent());
+
+        if (resume && Files.exists(journalFile)) {
+            long[] counts = compact(); // also drops a partially written last line
+            logger.log(Level.INFO, "Resuming crawl: {0} URLs done, {1} pending", counts[0], counts[1]);
+        } else {
+            if (resume) {
+                logger.log(Level.INFO, "No crawl to resume, starting a new crawl");
+            }
+            Files.deleteIfExists(journalFile);
+        }
+
+        appendWriter = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Streams the state of the journal: every URL that is done (saved) and
+     * every URL that is still pending, with the depth it was discovered at.
+     */
+    public synchronized void replay(Consumer<String> doneUrls, BiConsumer<String, Integer> pendingUrls)
+            throws IOException {
+        if (appendWriter != null) {
+            appendWriter.flush();
+        }
+        if (Files.exists(journalFile)) {
+            replay(journalFile, doneUrls, pendingUrls);
+        }
+    }
+
+    // URLs saved by the crawl being resumed; loads them all, see replay() for large crawls
+    public synchronized Set<String> getDoneUrls() throws IOException {
+        Set<String> doneUrls = new HashSet<>();
+        replay(doneUrls::add, (url, depth) -> { });
+        return Collections.unmodifiableSet(doneUrls);
+    }
+
+    // URLs the crawl being resumed had discovered but not saved, with their depth; loads them all
+    public synchronized Map<String, Integer> getPendingUrls() throws IOException {
+        Map<String, Integer> pendingUrls = new HashMap<>();
+        replay(url -> { }, pendingUrls::put);
+        return Collections.unmodifiableMap(pendingUrls);
+    }
+
+    public synchronized void recordDiscovered(String url, int depth) {
+        append(DISCOVERED + "\t" + depth + "\t" + url);
+    }
+
+    public synchronized void recordFetched(String url) {
+        append(FETCHED + "\t\t" + url);
+    }
+
+    public synchronized void recordSaved(String url) {
+        append(SAVED + "\t\t" + url);
+    }
+
+    // Compacts the journal and closes it; the crawl can still be resumed later.
+    public synchronized void close() throws IOException {
+        if (appendWriter == null) {
+            return;
+        }
+        appendWriter.close();
+        appendWriter = null;
+        compact();
+    }
+
+    private void append(String line) {
+        if (appendWriter == null) {
+            return; // not opened
+        }
+
+        try {
+            appendWriter.write(line);
+            appendWriter.newLine();
+
+            if (++recordsSinceCompaction >= compactionInterval) {
+                appendWriter.close();
+                compact();
+                appendWriter = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } else if (++recordsSinceFlush >= FLUSH_INTERVAL) {
+                appendWriter.flush();
+                recordsSinceFlush = 0;
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to write crawl journal: " + journalFile, e);
+        }
+    }
+
+    /*
+     * A URL is done if it has a saved record anywhere in the log, and pending
+     * if it only has discovered records. Every URL is reported once.
+     */
+    private static void replay(Path file, Consumer<String> doneUrls, BiConsumer<String, Integer> pendingUrls)
+            throws IOException {
+        UrlFingerprintSet savedUrls = new UrlFingerprintSet();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length == 3 && fields[0].equals(SAVED) && !fields[2].isEmpty()) {
+                    savedUrls.add(fields[2]);
+                }
+            }
+        }
+
+        UrlFingerprintSet reportedUrls = new UrlFingerprintSet();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length < 3 || fields[2].isEmpty()) {
+                    continue; // e.g. last line cut off when the process was killed
+                }
+
+                String url = fields[2];
+                if (fields[0].equals(SAVED)) {
+                    if (reportedUrls.add(url)) {
+                        doneUrls.accept(url);
+                    }
+                } else if (fields[0].equals(DISCOVERED) && !savedUrls.contains(url)) {
+                    try {
+                        int depth = Integer.parseInt(fields[1]);
+                        if (reportedUrls.add(url)) {
+                            pendingUrls.accept(url, depth);
+                        }
+                    } catch (NumberFormatException e) {
+                        logger.log(Level.DEBUG, "Skipping malformed journal line: {0}", line);
+                    }
+                }
+                // fetched records need no replay: a fetched but unsaved URL is still pending
+            }
+        }
+    }
+
+    // Rewrites the journal with one line per URL and returns the number of done and pending URLs.
+    private long[] compact() throws IOException {
+        Path temporaryFile = journalFile.resolveSibling(JOURNAL_FILE_NAME + ".tmp");
+        long[] counts = new long[2];
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            replay(journalFile, url -> {
+                counts[0]++;
+                writeLine(writer, SAVED + "\t\t" + url);
+            }, (url, depth) -> {
+                counts[1]++;
+                writeLine(writer, DISCOVERED + "\t" + depth + "\t" + url);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(temporaryFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        recordsSinceCompaction = 0;
+        recordsSinceFlush = 0;
+        compactionInterval = Math.max(MIN_COMPACTION_INTERVAL, counts[0] + counts[1]);
+        return counts;
+    }
+
+    private static void writeLine(BufferedWriter writer, String line) {
+        try {
+            writer.write(line);
+            writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // out of the replay callback
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.spyder.main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Persistent record of everything saved into an output directory, used to
+ * re-crawl a site incrementally.
+ *
+ * The manifest maps each URL to its {@link ManifestEntry}. It is stored as a
+ * tab-separated log inside the output directory: new entries are appended as
+ * they are recorded (later lines win), and the file is compacted to one line
+ * per URL when the manifest is closed.
+ *
+ * Line format: url, ETag, Last-Modified, content hash, local path, then zero or
+ * more links; missing values are empty.
+ */
+public class CrawlManifest {
+
+    // Static constants
+    private static final Logger logger = System.getLogger(CrawlManifest.class.getName());
+    private static final String MANIFEST_FILE_NAME = "manifest.tsv";
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final int FIXED_FIELD_COUNT = 5;
+
+    // Instance fields
+    private final Predicate<String> isStored; // local path -> whether its file still exists
+    private final Path manifestFile;
+    private final Map<String, ManifestEntry> entries = new ConcurrentHashMap<>();
+    private BufferedWriter appendWriter; // guarded by "this"
+
+    /**
+     * @param saveLocation   root directory of the offline copy
+     * @param metadataFolder folder below the root that holds crawl metadata
+     */
+    public CrawlManifest(Path saveLocation, String metadataFolder) {
+        this(saveLocation, metadataFolder, localPath -> Files.exists(saveLocation.resolve(localPath)));
+    }
+
+    /**
+     * @param isStored tells whether a local path still holds its file, for
+     *                 outputs that are not plain files below the save location
+     */
+    public CrawlManifest(Path saveLocation, String metadataFolder, Predicate<String> isStored) {
+        this.isStored = isStored;
+        this.manifestFile = saveLocation.resolve(metadataFolder).resolve(MANIFEST_FILE_NAME);
+    }
+
+    // Loads the entries of previous crawls, if any, and prepares the log for appending.
+    public synchronized void open() throws IOException {
+        entries.clear();
+        if (Files.exists(manifestFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    ManifestEntry entry = parseLine(line);
+                    if (entry != null) {
+                        entries.put(entry.getUrl(), entry);
+                    }
+                }
+            }
+            logger.log(Level.INFO, "Loaded {0} entries from crawl manifest", entries.size());
+        }
+
+        Files.createDirectories(manifestFile.getParent());
+        appendWriter = Files.newBufferedWriter(manifestFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Returns the entry of a URL whose saved copy still exists on disk, or null
+     * if the URL has to be downloaded unconditionally.
+     */
+    public ManifestEntry getStoredEntry(String url) {
+        ManifestEntry entry = entries.get(url);
+        if (entry == null || entry.getLocalPath() == null
+                || !isStored.test(entry.getLocalPath())) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the entry of a URL as a previous crawl recorded it, or null,
+     * without checking that the saved copy still exists.
+     */
+    public ManifestEntry getEntry(String url) {
+        return entries.get(url);
+    }
+
+    public void put(ManifestEntry entry) {
+        entries.put(entry.getUrl(), entry);
+
+        synchronized (this) {
+            if (appendWriter == null) {
+                return; // not opened, keep the entry in memory only
+            }
+            try {
+                appendWriter.write(formatLine(entry));
+                appendWriter.newLine();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to append to crawl manifest: " + manifestFile, e);
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Rewrites the log with one line per URL and closes it.
+    public synchronized void close() throws IOException {
+        if (appendWriter == null) {
+            return;
+        }
+        appendWriter.close();
+        appendWriter = null;
+
+        Path temporaryFile = manifestFile.resolveSibling(MANIFEST_FILE_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            for (ManifestEntry entry : entries.values()) {
+                writer.write(formatLine(entry));
+                writer.newLine();
+            }
+        }
+        Files.move(temporaryFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String formatLine(ManifestEntry entry) {
+        StringBuilder line = new StringBuilder();
+        line.append(entry.getUrl());
+        for (String field : Arrays.asList(entry.getEtag(), entry.getLastModified(), entry.getContentHash(),
+                entry.getLocalPath())) {
+            line.append(FIELD_SEPARATOR).append(sanitize(field));
+        }
+        for (String link : entry.getLinks()) {
+            line.append(FIELD_SEPARATOR).append(sanitize(link));
+        }
+        return line.toString();
+    }
+
+    private static ManifestEntry parseLine(String line) {
+        String[] fields = line.split(FIELD_SEPARATOR, -1);
+        if (fields.length < FIXED_FIELD_COUNT || fields[0].isEmpty()) {
+            logger.log(Level.DEBUG, "Skipping malformed manifest line: {0}", line);
+            return null;
+        }
+
+        List<String> links = new ArrayList<>(fields.length - FIXED_FIELD_COUNT);
+        for (int i = FIXED_FIELD_COUNT; i < fields.length; i++) {
+            if (!fields[i].isEmpty()) {
+                links.add(fields[i]);
+            }
+        }
+        return new ManifestEntry(fields[0], emptyToNull(fields[1]), emptyToNull(fields[2]), emptyToNull(fields[3]),
+                emptyToNull(fields[4]), links);
+    }
+
+    // header values and URLs never legitimately contain tabs or line breaks
+    private static String sanitize(String field) {
+        return field == null ? "" : field.replaceAll("[\\t\\r\\n]", " ");
+    }
+
+    private static String emptyToNull(String field) {
+        return field.isEmpty() ? null : field;
+    }
+}
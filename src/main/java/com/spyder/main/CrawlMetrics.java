@@ -0,0 +1,228 @@
+package com.spyder.main;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process metrics of a crawl: counters and one {@link LatencyHistogram}
+ * per {@link CrawlPhase}. Every timed phase is also emitted as a
+ * {@link CrawlPhaseEvent} for JDK Flight Recorder.
+ *
+ * All methods are thread-safe and cheap enough to call for every request.
+ */
+public class CrawlMetrics {
+
+    /**
+     * Counted occurrences.
+     */
+    public enum Counter {
+        PAGES_SAVED, // parsed and handed to the writer
+        PAGES_NOT_MODIFIED, // revalidated with a 304
+        PAGES_DUPLICATE, // near-duplicates of a page already saved, not saved again
+        PAGES_FAILED, // could not be fetched
+        IMAGES_FAILED, // images and other assets that could not be fetched
+        URLS_DISALLOWED, // excluded by robots.txt
+        URLS_FORWARDED, // sent to the cluster member that owns them
+        REQUESTS,
+        REQUEST_ERRORS, // network errors and error statuses
+        REQUESTS_THROTTLED, // answered with 429 or 503, the host asked to slow down
+        RETRIES, // failed page and image requests tried again
+        BYTES_DOWNLOADED, // response bodies of pages and images, decoded
+        BYTES_RECEIVED, // the same bodies as sent by the server, usually compressed
+        BYTES_WRITTEN // saved pages
+    }
+
+    // Instance fields
+    private final Map<CrawlPhase, LatencyHistogram> phaseLatencies = new EnumMap<>(CrawlPhase.class);
+    private final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+    private volatile long startNanos = System.nanoTime();
+    private volatile long endNanos; // 0 while running
+
+    public CrawlMetrics() {
+        // fully populated up front, so the maps are only read afterwards
+        for (CrawlPhase phase : CrawlPhase.values()) {
+            phaseLatencies.put(phase, new LatencyHistogram());
+        }
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, new LongAdder());
+        }
+    }
+
+    // Marks the start of the crawl, the base for the per-second rates.
+    public void start() {
+        startNanos = System.nanoTime();
+        endNanos = 0;
+    }
+
+    public void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * Starts timing a phase; closing the returned timer records it.
+     *
+     * <pre>
+     * try (CrawlMetrics.PhaseTimer timer = metrics.time(CrawlPhase.PARSE, url)) {
+     *     ...
+     * }
+     * </pre>
+     *
+     * The timer is not referenced in the block, so {@code -Xlint:try} warns
+     * about it: suppress "try" on the enclosing method.
+     */
+    public PhaseTimer time(CrawlPhase phase, String url) {
+        return new PhaseTimer(phase, url);
+    }
+
+    public void increment(Counter counter) {
+        counters.get(counter).increment();
+    }
+
+    public void add(Counter counter, long amount) {
+        counters.get(counter).add(amount);
+    }
+
+    public long get(Counter counter) {
+        return counters.get(counter).sum();
+    }
+
+    public LatencyHistogram getLatencies(CrawlPhase phase) {
+        return phaseLatencies.get(phase);
+    }
+
+    public double getElapsedSeconds() {
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return Math.max(1, end - startNanos) / 1e9;
+    }
+
+    /**
+     * Human-readable summary: rates, error rate and latency percentiles per
+     * phase, e.g. for the end of a command-line run.
+     */
+    public String formatSummary() {
+        double seconds = getElapsedSeconds();
+        long pages = get(Counter.PAGES_SAVED) + get(Counter.PAGES_NOT_MODIFIED);
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format(Locale.ROOT, "Crawled %d pages in %.1f s (%.1f pages/s, %.1f KB/s downloaded)%n",
+                pages, seconds, pages / seconds, get(Counter.BYTES_DOWNLOADED) / 1024.0 / seconds));
+        summary.append(String.format(Locale.ROOT,
+                "Requests: %d, errors: %d (%.1f%%), throttled: %d, retries: %d, failed pages: %d, "
+                        + "failed images: %d, near-duplicates: %d%n",
+                get(Counter.REQUESTS), get(Counter.REQUEST_ERRORS), getRequestErrorRate() * 100,
+                get(Counter.REQUESTS_THROTTLED), get(Counter.RETRIES),
+                get(Counter.PAGES_FAILED), get(Counter.IMAGES_FAILED), get(Counter.PAGES_DUPLICATE)));
+        summary.append(String.format(Locale.ROOT, "Received %.1f KB for %.1f KB of content (%.1fx compression)%n",
+                get(Counter.BYTES_RECEIVED) / 1024.0, get(Counter.BYTES_DOWNLOADED) / 1024.0,
+                getCompressionRatio()));
+        summary.append(String.format(Locale.ROOT, "%-11s %8s %10s %10s %10s %10s%n",
+                "Phase", "Count", "p50 ms", "p99 ms", "Max ms", "Total s"));
+        for (CrawlPhase phase : CrawlPhase.values()) {
+            LatencyHistogram latencies = phaseLatencies.get(phase);
+            summary.append(String.format(Locale.ROOT, "%-11s %8d %10.1f %10.1f %10.1f %10.1f%n",
+                    phase, latencies.getCount(),
+                    latencies.getPercentileMicros(50) / 1000.0,
+                    latencies.getPercentileMicros(99) / 1000.0,
+                    latencies.getMaxMicros() / 1000.0,
+                    latencies.getTotalMicros() / 1e6));
+        }
+        return summary.toString();
+    }
+
+    // Writes all counters, rates and phase latencies as JSON, for comparing runs.
+    public void writeJson(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(toJson());
+        }
+    }
+
+    public String toJson() {
+        double seconds = getElapsedSeconds();
+        long pages = get(Counter.PAGES_SAVED) + get(Counter.PAGES_NOT_MODIFIED);
+        StringBuilder json = new StringBuilder("{\n");
+        json.append(String.format(Locale.ROOT, "  \"elapsedSeconds\": %.3f,%n", seconds));
+        json.append(String.format(Locale.ROOT, "  \"pagesPerSecond\": %.3f,%n", pages / seconds));
+        json.append(String.format(Locale.ROOT, "  \"bytesPerSecond\": %.1f,%n",
+                get(Counter.BYTES_DOWNLOADED) / seconds));
+        json.append(String.format(Locale.ROOT, "  \"compressionRatio\": %.3f,%n", getCompressionRatio()));
+        json.append(String.format(Locale.ROOT, "  \"requestErrorRate\": %.4f,%n", getRequestErrorRate()));
+
+        json.append("  \"counters\": {\n");
+        Counter[] counterNames = Counter.values();
+        for (int i = 0; i < counterNames.length; i++) {
+            json.append(String.format(Locale.ROOT, "    \"%s\": %d%s%n", counterNames[i], get(counterNames[i]),
+                    i < counterNames.length - 1 ? "," : ""));
+        }
+        json.append("  },\n");
+
+        json.append("  \"phases\": {\n");
+        CrawlPhase[] phases = CrawlPhase.values();
+        for (int i = 0; i < phases.length; i++) {
+            LatencyHistogram latencies = phaseLatencies.get(phases[i]);
+            json.append(String.format(Locale.ROOT,
+                    "    \"%s\": {\"count\": %d, \"p50Micros\": %d, \"p99Micros\": %d, \"maxMicros\": %d, "
+                            + "\"totalMicros\": %d}%s%n",
+                    phases[i], latencies.getCount(), latencies.getPercentileMicros(50),
+                    latencies.getPercentileMicros(99), latencies.getMaxMicros(), latencies.getTotalMicros(),
+                    i < phases.length - 1 ? "," : ""));
+        }
+        json.append("  }\n}\n");
+        return json.toString();
+    }
+
+    // decoded bytes per received byte, 1 if nothing was compressed
+    private double getCompressionRatio() {
+        long receivedBytes = get(Counter.BYTES_RECEIVED);
+        return receivedBytes == 0 ? 1 : (double) get(Counter.BYTES_DOWNLOADED) / receivedBytes;
+    }
+
+    private double getRequestErrorRate() {
+        long requests = get(Counter.REQUESTS);
+        return requests == 0 ? 0 : (double) get(Counter.REQUEST_ERRORS) / requests;
+    }
+
+    /**
+     * Times one phase of one URL. Closing it records the duration and commits
+     * the JFR event; closing it more than once has no effect.
+     */
+    public class PhaseTimer implements AutoCloseable {
+
+        private final CrawlPhase phase;
+        private final CrawlPhaseEvent event = new CrawlPhaseEvent();
+        private final long timerStartNanos = System.nanoTime();
+        private boolean closed;
+
+        private PhaseTimer(CrawlPhase phase, String url) {
+            this.phase = phase;
+            event.begin();
+            event.phase = phase.name();
+            event.url = url;
+        }
+
+        // bytes transferred during the phase, if any
+        public void setBytes(long bytes) {
+            event.bytes = bytes;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            phaseLatencies.get(phase).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - timerStartNanos));
+            event.end();
+            if (event.shouldCommit()) {
+                event.commit();
+            }
+        }
+    }
+}
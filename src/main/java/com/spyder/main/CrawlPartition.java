@@ -0,0 +1,35 @@
+package com.spyder.main;
+
+/**
+ * This process's share of a crawl that is split over several processes, see
+ * {@link ClusterWorker}. The {@link Crawler} only queues the URLs its partition
+ * owns and hands all others over to their owners.
+ */
+interface CrawlPartition {
+
+    // Queues a URL in the local crawl, as if a page of it had linked to the URL.
+    interface Scheduler {
+        void schedule(String url, int depth);
+    }
+
+    boolean owns(String url);
+
+    // Sends a URL this process doesn't own to the process that does.
+    void forward(String url, int depth);
+
+    /**
+     * Called once the crawl's frontier is ready, before any page is fetched.
+     * URLs forwarded by other processes go to the scheduler. The partition must
+     * {@link Frontier#retain() retain} the frontier for as long as other
+     * processes may still forward URLs, or the crawl ends as soon as this
+     * process runs out of work.
+     */
+    void crawlStarted(Frontier frontier, Scheduler scheduler);
+
+    /**
+     * Called when the local crawl is stopped early, before its frontier is
+     * closed, so the partition can hand the queued URLs over to other
+     * processes.
+     */
+    void crawlInterrupted();
+}
@@ -0,0 +1,28 @@
+package com.spyder.main;
+
+/**
+ * The steps a page (or image) goes through, timed separately by
+ * {@link CrawlMetrics} to tell whether a crawl is network-, parse- or
+ * disk-bound.
+ */
+public enum CrawlPhase {
+
+    HOST_WAIT("waiting for the per-host rate and connection limits"),
+    TTFB("request sent until response headers arrived, including DNS and connect on new connections"),
+    DOWNLOAD("reading the response body"),
+    PARSE("parsing HTML"),
+    FINGERPRINT("extracting the text and computing its SimHash for near-duplicate detection"),
+    IMAGE_FETCH("downloading and storing one image"),
+    REWRITE("rewriting links and image sources"),
+    DISK_WRITE("writing a saved page to disk");
+
+    private final String description;
+
+    CrawlPhase(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,31 @@
+package com.spyder.main;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event for one {@link CrawlPhase} of one URL. Only
+ * recorded while a recording is running, e.g. with
+ * {@code -XX:StartFlightRecording=filename=crawl.jfr}.
+ */
+@Name("com.spyder.crawly.CrawlPhase")
+@Label("Crawl Phase")
+@Category("Crawly")
+@Description("Time spent on one phase of crawling a URL")
+@StackTrace(false)
+public class CrawlPhaseEvent extends jdk.jfr.Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("URL")
+    String url;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+}
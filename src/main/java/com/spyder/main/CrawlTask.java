@@ -0,0 +1,70 @@
+package com.spyder.main;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single unit of crawl work: a URL waiting in the frontier together with the
+ * link depth at which it was discovered (the seed URL has depth 0), and the
+ * number of further links to it found while it was queued. A task queued again
+ * after a failed fetch carries the number of its retry.
+ */
+public class CrawlTask {
+
+    // Instance fields
+    private final String url;
+    private final int depth;
+    private final int attempt;
+    private final AtomicInteger inlinkCount = new AtomicInteger(); // counted without the frontier's lock
+    private volatile double fixedScore = Double.NaN; // cached by DefaultUrlScorer, NaN until then
+
+    public CrawlTask(String url, int depth) {
+        this(url, depth, 0);
+    }
+
+    private CrawlTask(String url, int depth, int attempt) {
+        this.url = url;
+        this.depth = depth;
+        this.attempt = attempt;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    // Retries before this one, 0 for the first fetch.
+    public int getAttempt() {
+        return attempt;
+    }
+
+    // The same task, for the next retry.
+    public CrawlTask nextAttempt() {
+        return new CrawlTask(url, depth, attempt + 1);
+    }
+
+    // Links to this URL found after the first one, while the task was waiting in the frontier.
+    public int getInlinkCount() {
+        return inlinkCount.get();
+    }
+
+    void addInlink() {
+        inlinkCount.incrementAndGet();
+    }
+
+    // The part of the task's score that doesn't change while it is queued, NaN if not known yet.
+    double getFixedScore() {
+        return fixedScore;
+    }
+
+    void setFixedScore(double fixedScore) {
+        this.fixedScore = fixedScore;
+    }
+
+    @Override
+    public String toString() {
+        return url + " (depth " + depth + ")";
+    }
+}
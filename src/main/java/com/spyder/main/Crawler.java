@@ -1,12 +1,28 @@
 package com.spyder.main;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.Writer;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -16,107 +32,493 @@ import org.jsoup.select.Elements;
 public class Crawler {
 
     // Static fields
-    public static String currentUrlBeingProcessed;
+    public static volatile String currentUrlBeingProcessed; // written by workers, polled by the GUI
     private static final Logger logger = System.getLogger(Crawler.class.getName());
-    private static final int MAX_CRAWL_DEPTH = 10;
+    private static final int WORKER_SHUTDOWN_TIMEOUT_SECONDS = 5;
+    private static final String METRICS_FILE_NAME = "metrics.json";
+    private static final String DUPLICATES_FILE_NAME = "duplicates.tsv";
+    private static final String FRONTIER_SPILL_FOLDER = "frontier";
 
     // Instance fields
     private final String url;
-    private final WebPageSaver webPageSaver;
+    private final OutputSink outputSink;
+    private final CrawlConfig config;
+    private final HttpFetcher httpFetcher;
+    private final UrlCanonicalizer canonicalizer;
+    private final RobotsCache robotsCache;
+    private final RetryPolicy retryPolicy;
+    private final CrawlMetrics metrics = new CrawlMetrics();
+    private CrawlPartition partition; // null unless this process crawls one share of a cluster crawl
 
-    public Crawler(String url, WebPageSaver webPageSaver) {
+    // State of the running crawl, set up by crawl() before the workers start
+    private String originalDomain;
+    private Frontier frontier;
+    private CrawlJournal journal;
+    private NearDuplicateIndex nearDuplicates; // null unless near-duplicate detection is enabled
+    private final AtomicLong pagesStarted = new AtomicLong();
+    private long deadlineNanos; // System.nanoTime() at which no more pages are started, if limited
+
+    public Crawler(String url, OutputSink outputSink) {
+        this(url, outputSink, new CrawlConfig());
+    }
+
+    public Crawler(String url, OutputSink outputSink, CrawlConfig config) {
         // validate URL format before assignment
         if (!Utils.isValidUrl(url)) {
             throw new IllegalArgumentException("Invalid URL format: " + url);
         }
 
         this.url = url;
-        this.webPageSaver = webPageSaver;
+        this.outputSink = outputSink;
+        this.config = config;
+        this.canonicalizer = new UrlCanonicalizer(config);
+        this.retryPolicy = new RetryPolicy(config);
+
+        // pages and images share one connection pool and the per-host limits
+        this.httpFetcher = new HttpFetcher(config, metrics);
+        this.robotsCache = new RobotsCache(httpFetcher, config.getUserAgent());
+        outputSink.setHttpFetcher(httpFetcher);
+        outputSink.setMetrics(metrics);
+    }
+
+    // Makes this crawler crawl only the URLs the partition owns; must be set before crawl().
+    void setPartition(CrawlPartition partition) {
+        this.partition = partition;
+    }
+
+    // Per-phase timings and counters, complete once crawl() has returned.
+    public CrawlMetrics getMetrics() {
+        return metrics;
     }
 
+    /**
+     * Crawls the site starting at the seed URL and blocks until it is done.
+     *
+     * Pages are processed by a pool of workers that all pull from one shared
+     * {@link Frontier}; each worker fetches a page, saves it and adds the page's
+     * internal links back to the frontier. Interrupting the calling thread stops
+     * the workers.
+     */
     public void crawl() {
+        String seedUrl = canonicalizer.canonicalize(url); // links are compared in canonical form too
         try {
-            Set<String> visitedUrls = new HashSet<>(); // HashSet for O(1) lookups
-            crawlHelper(url, visitedUrls, MAX_CRAWL_DEPTH);
-        } catch (Exception e) {
+            // parse the seed once instead of for every link
+            originalDomain = new URI(seedUrl).getHost();
+        } catch (URISyntaxException e) {
             // use concatenation to include exception message
             logger.log(Level.ERROR, "Failed to start crawling from: " + url, e);
+            return;
         }
-    }
 
-    private void crawlHelper(String url, Set<String> visitedUrls, int maxDepth) {
-        // check depth limit
-        if (maxDepth <= 0) {
-            logger.log(Level.DEBUG, "Reached maximum depth, stopping crawl at: {0}", url);
+        metrics.start();
+        pagesStarted.set(0);
+        deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getMaxDurationMillis());
+        nearDuplicates = config.isNearDuplicateDetectionEnabled()
+                ? new NearDuplicateIndex(config.getNearDuplicateThreshold())
+                : null;
+        Path metadataDirectory = Paths.get(outputSink.getSaveLocation()).resolve(WebPageSaver.getMetadataFolderName());
+        journal = new CrawlJournal(metadataDirectory);
+        try {
+            // load what previous crawls saved, so unchanged pages are only revalidated
+            outputSink.open();
+            // checkpoint progress so a stopped crawl can be resumed
+            journal.open(config.isResume());
+            frontier = createFrontier(metadataDirectory);
+
+            // when resuming, skip what is done and continue with what was pending
+            journal.replay(frontier::markSeen, (pendingUrl, depth) -> {
+                if (partition == null || partition.owns(pendingUrl)) {
+                    frontier.add(pendingUrl, depth);
+                } else {
+                    partition.forward(pendingUrl, depth); // owned by another process since the last run
+                }
+            });
+        } catch (IOException e) {
+            logger.log(Level.ERROR, "Failed to open save location: " + outputSink.getSaveLocation(), e);
             return;
         }
+        schedule(seedUrl, 0); // in a cluster, every worker routes the seed to its owner
+        if (partition != null) {
+            partition.crawlStarted(frontier, this::scheduleForwarded); // before a worker could end the crawl
+        }
+        Thread sitemapSeeder = config.isSitemapSeedingEnabled() ? startSitemapSeeding(seedUrl) : null;
 
-        logger.log(Level.DEBUG, "Started crawling webpage: {0}", url);
+        int workerCount = config.getWorkerCount();
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount, createWorkerThreadFactory());
+        for (int i = 0; i < workerCount; i++) {
+            workers.submit(this::runWorker);
+        }
+        workers.shutdown(); // no more workers, let the pool end when the frontier runs dry
 
+        boolean interrupted = false;
         try {
-            // Store parsed HTML in memory ("webpage" variable), not on the disk yet, 
-            // because we need to modify it before saving it.
-            // This is more efficient than writing to the disk and reading back.
-            Crawler.currentUrlBeingProcessed = url; // update to pass to GUI
-            Document webpage = Jsoup.connect(url).get();
-            webPageSaver.saveWebPage(webpage, url);
-            visitedUrls.add(url);
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            logger.log(Level.DEBUG, "Crawl finished, {0} URLs scheduled", frontier.getSeenCount());
+        } catch (InterruptedException e) {
+            // Stop button in the GUI: release idle workers and interrupt busy ones
+            logger.log(Level.INFO, "Crawling interrupted");
+            interrupted = true;
+            if (partition != null) {
+                partition.crawlInterrupted(); // while the queue is still there
+            }
+            frontier.close();
+            workers.shutdownNow();
+            awaitWorkersAfterInterrupt(workers);
+        } finally {
+            // after a drain the seeder may still be going, and must not journal after the close below
+            stopSitemapSeeding(sitemapSeeder);
+            frontier.close(); // deletes the tasks spilled to disk, the journal still has them
+            try {
+                outputSink.close(); // finishes the queued writes, which still journal their pages
+                journal.close();
+            } catch (IOException e) {
+                logger.log(Level.ERROR, "Failed to save crawl state in: " + outputSink.getSaveLocation(), e);
+            }
+            metrics.finish();
+            writeMetrics();
+            writeDuplicates();
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt(); // preserve interrupt status for the caller
+        }
+    }
+
+    // Dumps the metrics next to the other crawl state, for comparing runs.
+    private void writeMetrics() {
+        Path metricsFile = Paths.get(outputSink.getSaveLocation())
+                .resolve(WebPageSaver.getMetadataFolderName()).resolve(METRICS_FILE_NAME);
+        try {
+            metrics.writeJson(metricsFile);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to write crawl metrics to: " + metricsFile, e);
+        }
+    }
+
+    // Lists the near-duplicates that were skipped, with the page each one duplicates.
+    private void writeDuplicates() {
+        if (nearDuplicates == null) {
+            return;
+        }
+        Path duplicatesFile = Paths.get(outputSink.getSaveLocation())
+                .resolve(WebPageSaver.getMetadataFolderName()).resolve(DUPLICATES_FILE_NAME);
+        try (Writer writer = Files.newBufferedWriter(duplicatesFile, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> duplicate : nearDuplicates.getDuplicates().entrySet()) {
+                writer.write(duplicate.getKey() + "\t" + duplicate.getValue() + "\n");
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to write near-duplicates to: " + duplicatesFile, e);
+        }
+    }
 
-            // collect all links in current page
-            Elements links = webpage.select("a[href]");
+    // The default scorer estimates freshness from what previous crawls saved.
+    private Frontier createFrontier(Path metadataDirectory) throws IOException {
+        UrlScorer scorer = config.getUrlScorer() != null
+                ? config.getUrlScorer()
+                : new DefaultUrlScorer(config.getUrlPatternWeights(), outputSink.getManifest());
+        UrlFingerprintSet seenUrls = new UrlFingerprintSet(config.getExpectedUrlCount(), config.isBloomFilterEnabled());
+        if (config.getMaxQueuedInMemory() == 0) {
+            return new Frontier(seenUrls, scorer);
+        }
+        DiskTaskQueue spill = new DiskTaskQueue(metadataDirectory.resolve(FRONTIER_SPILL_FOLDER));
+        spill.clear(); // left behind by a killed crawl, the journal has its tasks
+        return new Frontier(seenUrls, scorer, spill, config.getMaxQueuedInMemory());
+    }
 
-            if (links.isEmpty()) {
-                logger.log(Level.DEBUG, "No links found on current page: {0}", url);
+    /*
+     * Adds a URL to the frontier and journals it if it was new and robots.txt
+     * allows it. In a cluster crawl, URLs owned by another process are
+     * forwarded to it instead; the owner checks them.
+     */
+    private void schedule(String url, int depth) {
+        if (partition != null && !partition.owns(url)) {
+            partition.forward(url, depth);
+            metrics.increment(CrawlMetrics.Counter.URLS_FORWARDED);
+            return;
+        }
+        if (config.isRobotsTxtRespected()) {
+            try {
+                if (!robotsCache.isAllowed(url)) {
+                    logger.log(Level.DEBUG, "Disallowed by robots.txt: {0}", url);
+                    metrics.increment(CrawlMetrics.Counter.URLS_DISALLOWED);
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // crawl is being stopped
                 return;
             }
+        }
+
+        if (frontier.add(url, depth)) {
+            journal.recordDiscovered(url, depth);
+        }
+    }
 
-            for (Element link : links) {
-                // Check for thread interruption before processing each link (allow graceful shutdown + responsive GUI)
-                if (Thread.currentThread().isInterrupted()) {
-                    logger.log(Level.INFO, "Crawling interrupted while processing links");
-                    throw new RuntimeException("Crawling interrupted");
+    /*
+     * Schedules a URL another process of the crawl sent. The peer connection
+     * is not authenticated, so the URL gets the same checks as a link found on
+     * a page.
+     */
+    private void scheduleForwarded(String url, int depth) {
+        String canonicalUrl = canonicalizer.canonicalize(url);
+        if (depth < 0 || depth > config.getMaxDepth()
+                || !originalDomain.equals(UrlCanonicalizer.getHost(canonicalUrl))) {
+            logger.log(Level.WARNING, "Ignoring forwarded URL outside the crawl: {0} (depth {1})", url, depth);
+            return;
+        }
+        schedule(canonicalUrl, depth);
+    }
+
+    /*
+     * Reads the seed host's sitemaps in the background and schedules their URLs
+     * as seeds, so the workers get busy with them right away. The frontier is
+     * retained until all sitemaps are read.
+     */
+    private Thread startSitemapSeeding(String seedUrl) {
+        frontier.retain();
+        Thread seeder = new Thread(() -> {
+            try {
+                new SitemapSeeder(httpFetcher, robotsCache).seed(seedUrl, sitemapUrl -> {
+                    String canonicalUrl = canonicalizer.canonicalize(sitemapUrl);
+                    if (originalDomain.equals(UrlCanonicalizer.getHost(canonicalUrl))) {
+                        schedule(canonicalUrl, 0);
+                    }
+                });
+            } catch (InterruptedException e) {
+                logger.log(Level.DEBUG, "Sitemap seeding interrupted");
+            } finally {
+                frontier.release();
+            }
+        }, "crawly-sitemaps");
+        seeder.setDaemon(true); // never keep the JVM alive after the GUI closes
+        seeder.start();
+        return seeder;
+    }
+
+    private static void stopSitemapSeeding(Thread sitemapSeeder) {
+        if (sitemapSeeder == null) {
+            return;
+        }
+        sitemapSeeder.interrupt();
+        try {
+            sitemapSeeder.join(TimeUnit.SECONDS.toMillis(WORKER_SHUTDOWN_TIMEOUT_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Gives interrupted workers a moment to finish the page they are writing.
+    private static void awaitWorkersAfterInterrupt(ExecutorService workers) {
+        try {
+            if (!workers.awaitTermination(WORKER_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.log(Level.WARNING, "Workers did not stop within {0} seconds", WORKER_SHUTDOWN_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            logger.log(Level.WARNING, "Interrupted again while waiting for workers to stop");
+        }
+    }
+
+    private void runWorker() {
+        try {
+            CrawlTask task;
+            while ((task = frontier.take()) != null) {
+                try {
+                    if (!startPage()) {
+                        break; // the task stays pending in the journal, for a resumed crawl
+                    }
+                    crawlPage(task);
+                } catch (RuntimeException e) {
+                    // keep the worker alive, one broken page must not stop the crawl
+                    logger.log(Level.ERROR, "Unexpected error while crawling: " + task.getUrl(), e);
+                } finally {
+                    frontier.complete(task);
                 }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Counts a page against the crawl budget. Once the budget is used up the
+     * frontier is drained: no worker starts another page, but the pages in
+     * flight are finished, saved and journaled, so the partial crawl is
+     * consistent and can be resumed.
+     */
+    private boolean startPage() {
+        String exhaustedBudget = null;
+        if (config.getMaxDurationMillis() > 0 && System.nanoTime() - deadlineNanos >= 0) {
+            exhaustedBudget = "time limit of " + config.getMaxDurationMillis() + " ms";
+        } else if (config.getMaxBytes() > 0
+                && metrics.get(CrawlMetrics.Counter.BYTES_DOWNLOADED) >= config.getMaxBytes()) {
+            exhaustedBudget = "limit of " + config.getMaxBytes() + " bytes";
+        } else if (config.getMaxPages() > 0 && pagesStarted.incrementAndGet() > config.getMaxPages()) {
+            exhaustedBudget = "limit of " + config.getMaxPages() + " pages";
+        }
+
+        if (exhaustedBudget == null) {
+            return true;
+        }
+        if (frontier.drain()) {
+            logger.log(Level.INFO, "Reached the {0}, finishing the pages in progress", exhaustedBudget);
+        }
+        return false;
+    }
+
+    private void crawlPage(CrawlTask task) {
+        String url = task.getUrl();
+        logger.log(Level.DEBUG, "Started crawling webpage: {0}", url);
+
+        try {
+            Crawler.currentUrlBeingProcessed = url; // update to pass to GUI
 
-                String currentLink = link.attr("abs:href");
+            // revalidate pages saved by a previous crawl instead of downloading them again
+            CrawlManifest manifest = outputSink.getManifest(); // null if the output can't be revalidated
+            ManifestEntry previousEntry = manifest != null ? manifest.getStoredEntry(url) : null;
+            Map<String, String> requestHeaders = previousEntry != null
+                    ? previousEntry.getConditionalHeaders()
+                    : Collections.emptyMap();
+            FetchResponse response = httpFetcher.fetchPage(url, requestHeaders);
+            journal.recordFetched(url);
 
-                // prevent null or empty links
-                if (currentLink == null || currentLink.isEmpty()) {
-                    logger.log(Level.DEBUG, "Encountered null or empty link on currentpage: {0}", currentLink);
-                    continue;
+            List<String> links;
+            CompletableFuture<Void> pageWritten;
+            if (response.isNotModified() && previousEntry != null) {
+                // unchanged: skip parsing and writing, but still follow the links of the stored copy
+                logger.log(Level.DEBUG, "Page not modified since last crawl: {0}", url);
+                metrics.increment(CrawlMetrics.Counter.PAGES_NOT_MODIFIED);
+                links = previousEntry.getLinks();
+                pageWritten = CompletableFuture.completedFuture(null);
+            } else {
+                if (!response.isTextContent()) {
+                    logger.log(Level.DEBUG, "Skipping non-HTML content ({0}): {1}", response.getContentType(), url);
+                    journal.recordSaved(url); // nothing to save, but done
+                    return;
                 }
 
-                // prevent infinite loops
-                if (visitedUrls.contains(currentLink)) {
-                    continue;
+                // Store parsed HTML in memory ("webpage" variable), not on the disk yet,
+                // because we need to modify it before saving it.
+                // This is more efficient than writing to the disk and reading back.
+                // Parse from the fetched bytes; resolve relative links against the final (redirected) URL.
+                Document webpage;
+                try (CrawlMetrics.PhaseTimer timer = metrics.time(CrawlPhase.PARSE, url)) {
+                    webpage = Jsoup.parse(new ByteArrayInputStream(response.getBody()), response.getCharset(),
+                            response.getFinalUrl());
+                    timer.setBytes(response.getBody().length);
                 }
+                String duplicateOf = findNearDuplicate(webpage, url);
+                if (duplicateOf != null) {
+                    // same content under another URL: don't save it again, and maybe don't expand it
+                    logger.log(Level.DEBUG, "Skipping near-duplicate of {0}: {1}", duplicateOf, url);
+                    metrics.increment(CrawlMetrics.Counter.PAGES_DUPLICATE);
+                    links = config.isDuplicateLinksFollowed()
+                            ? extractLinks(webpage, url, originalDomain, canonicalizer)
+                            : Collections.emptyList();
+                    pageWritten = CompletableFuture.completedFuture(null);
+                } else {
+                    links = extractLinks(webpage, url, originalDomain, canonicalizer);
+                    pageWritten = outputSink.savePage(response, webpage, links); // written in the background
+                    metrics.increment(CrawlMetrics.Counter.PAGES_SAVED);
+                }
+            }
 
-                try {
-                    // skip external links
-                    URI currentUri = new URI(currentLink);
-                    String currentDomain = currentUri.getHost();
-                    URI originalUri = new URI(this.url);
-                    String originalDomain = originalUri.getHost();
-                    if (!currentDomain.equals(originalDomain)) {
-                        logger.log(Level.DEBUG, "Skipping external link: {0}", currentLink);
-                        continue;
+            // links on the deepest level would never be crawled, so don't queue them
+            int linkDepth = task.getDepth() + 1;
+            if (linkDepth <= config.getMaxDepth()) {
+                for (String link : links) {
+                    // Check for thread interruption before processing each link (allow graceful shutdown + responsive GUI)
+                    if (Thread.currentThread().isInterrupted()) {
+                        logger.log(Level.INFO, "Crawling interrupted while processing links");
+                        return; // the page stays pending in the journal and is redone on resume
                     }
 
-                    // skip links with fragments
-                    String fragment = currentUri.getFragment();
-                    if (fragment != null && !fragment.isEmpty()) {
-                        logger.log(Level.DEBUG, "Skipping link with fragment identifier: {0}", currentLink);
-                        continue;
-                    }
-                } catch (URISyntaxException e) {
-                    logger.log(Level.DEBUG, "Cannot parse URI, but will attempt to crawl: {0}", currentLink);
+                    // the frontier ignores links that were already scheduled (prevents infinite loops)
+                    schedule(link, linkDepth);
                 }
-
-                // recursive crawl with decremented depth
-                crawlHelper(currentLink, visitedUrls, maxDepth - 1);
+            } else {
+                logger.log(Level.DEBUG, "Reached maximum depth, not following links on: {0}", url);
             }
+
+            // journal the page as done only after its links, and once it is on disk,
+            // so resuming can't lose either; failed writes leave the page pending
+            pageWritten.thenRun(() -> journal.recordSaved(url));
         } catch (IOException e) {
-            logger.log(Level.WARNING, "Failed to connect to URL with Jsoup: " + url + " - continuing with other pages", e);
+            if (retryPolicy.shouldRetry(e, task.getAttempt())) {
+                // back into the frontier, the worker moves on to other pages meanwhile
+                long delayMillis = retryPolicy.getDelayMillis(e, task.getAttempt());
+                logger.log(Level.DEBUG, "Retrying in {0} ms: {1} ({2})", delayMillis, url, e.getMessage());
+                metrics.increment(CrawlMetrics.Counter.RETRIES);
+                frontier.retryLater(task.nextAttempt(), delayMillis);
+                return;
+            }
+            logger.log(Level.WARNING, "Failed to fetch URL: " + url + " - continuing with other pages", e);
+            metrics.increment(CrawlMetrics.Counter.PAGES_FAILED);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // crawl is being stopped
+        }
+    }
+
+    // Returns the URL of an earlier page with nearly the same text, or null (also if detection is off).
+    @SuppressWarnings("try")
+    private String findNearDuplicate(Document webpage, String url) {
+        if (nearDuplicates == null) {
+            return null;
+        }
+        try (CrawlMetrics.PhaseTimer timer = metrics.time(CrawlPhase.FINGERPRINT, url)) {
+            OptionalLong fingerprint = SimHash.fingerprint(webpage.body().text());
+            // pages with hardly any text are never treated as duplicates
+            return fingerprint.isPresent() ? nearDuplicates.findOrAdd(fingerprint.getAsLong(), url) : null;
+        }
+    }
+
+    /**
+     * Collects the canonical URLs of all links on a page that should be
+     * crawled: links within the original domain (compared with the lowercase
+     * host of the seed). Fragments are stripped by the canonicalizer, so links
+     * to anchors end up as the page itself. Package-private for benchmarks.
+     */
+    static List<String> extractLinks(Document webpage, String url, String originalDomain,
+            UrlCanonicalizer canonicalizer) {
+        // collect all links in current page
+        Elements linkElements = webpage.select("a[href]");
+        List<String> links = new ArrayList<>(linkElements.size());
+
+        if (linkElements.isEmpty()) {
+            logger.log(Level.DEBUG, "No links found on current page: {0}", url);
+            return links;
         }
+
+        for (Element link : linkElements) {
+            String currentLink = link.attr("abs:href");
+
+            // prevent null or empty links
+            if (currentLink == null || currentLink.isEmpty()) {
+                logger.log(Level.DEBUG, "Encountered null or empty link on currentpage: {0}", currentLink);
+                continue;
+            }
+
+            // so that variants of one URL are scheduled only once
+            String canonicalLink = canonicalizer.canonicalize(currentLink);
+
+            // skip external links (and links without a host, such as mailto:)
+            String currentDomain = UrlCanonicalizer.getHost(canonicalLink);
+            if (originalDomain != null && !originalDomain.equals(currentDomain)) {
+                logger.log(Level.DEBUG, "Skipping external link: {0}", currentLink);
+                continue;
+            }
+
+            links.add(canonicalLink);
+        }
+        return links;
+    }
+
+    private static ThreadFactory createWorkerThreadFactory() {
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        return runnable -> {
+            Thread thread = new Thread(runnable, "crawly-worker-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true); // never keep the JVM alive after the GUI closes
+            return thread;
+        };
     }
 
 }
@@ -1,11 +1,26 @@
 package com.spyder.main;
 
+import java.io.IOException;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
+import java.net.http.HttpClient;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class Crawly {
 
     private static final Logger logger = System.getLogger(Crawly.class.getName());
+    private static final String OPTION_PREFIX = "--";
+    private static final int DEFAULT_CLUSTER_PORT = 7070;
 
     public static void main(String[] args) {
         logger.log(Level.INFO, "Started Crawly");
@@ -16,16 +31,41 @@ public class Crawly {
             CrawlyGUI gui = new CrawlyGUI();
         } else {
             // Command-Line Mode
-            String url = getUrl(args);
-            String saveLocation = getSaveLocation(args);
+            // split "--name=value" options from the positional <url> [save-location] arguments
+            List<String> positionalArgs = new ArrayList<>();
+            Map<String, String> options = new HashMap<>();
+            parseArguments(args, positionalArgs, options);
+
+            if (options.containsKey("unpack")) {
+                // <save-location> <target-directory>: turn a packed mirror into a browsable one
+                unpack(positionalArgs);
+                return;
+            }
+
+            if (options.containsKey("coordinator")) {
+                // <url>: split the crawl over the worker processes that connect
+                coordinate(positionalArgs, options);
+                return;
+            }
+            if (options.containsKey("worker")) {
+                // [save-location]: crawl a share of a coordinator's crawl into this shard
+                work(positionalArgs, options);
+                return;
+            }
+
+            String url = getUrl(positionalArgs);
+            String saveLocation = getSaveLocation(positionalArgs);
+            CrawlConfig config = getConfig(options);
             logger.log(Level.INFO, "Initializing Crawly with URL: {0} and Save Location: {1}",
                     url, saveLocation);
 
             // Main application logic
             try {
-                WebPageSaver webPageSaver = new WebPageSaver(saveLocation); // create the dependency
-                Crawler crawler = new Crawler(url, webPageSaver); // inject dependency
+                OutputSink outputSink = createOutputSink(saveLocation, config); // create the dependency
+                Crawler crawler = new Crawler(url, outputSink, config); // inject dependency
                 crawler.crawl();
+                logger.log(Level.INFO, "Crawl summary:{0}{1}", System.lineSeparator(),
+                        crawler.getMetrics().formatSummary());
             } catch (Exception e) {
                 logger.log(Level.ERROR, "Error occurred during crawling: {0}", e.getMessage());
                 logger.log(Level.ERROR, "Stack trace:", e);
@@ -36,8 +76,25 @@ public class Crawly {
 
     }
 
-    private static String getUrl(String[] args) {
-        String url = args[0];
+    private static void parseArguments(String[] args, List<String> positionalArgs, Map<String, String> options) {
+        for (String arg : args) {
+            if (arg.startsWith(OPTION_PREFIX)) {
+                // "--name=value", or "--name" for boolean flags
+                String option = arg.substring(OPTION_PREFIX.length());
+                int separatorIndex = option.indexOf('=');
+                if (separatorIndex < 0) {
+                    options.put(option, "true");
+                } else {
+                    options.put(option.substring(0, separatorIndex), option.substring(separatorIndex + 1));
+                }
+            } else {
+                positionalArgs.add(arg);
+            }
+        }
+    }
+
+    private static String getUrl(List<String> args) {
+        String url = args.isEmpty() ? null : args.get(0);
 
         // Basic input validation
         if (url == null || url.trim().isEmpty()) {
@@ -48,8 +105,8 @@ public class Crawly {
         return url;
     }
 
-    private static String getSaveLocation(String[] args) {
-        String saveLocation = args.length > 1 ? args[1] : null;
+    private static String getSaveLocation(List<String> args) {
+        String saveLocation = args.size() > 1 ? args.get(1) : null;
 
         // Set default if not provided
         if (saveLocation == null || saveLocation.trim().isEmpty()) {
@@ -59,4 +116,221 @@ public class Crawly {
 
         return saveLocation;
     }
+
+    private static void unpack(List<String> args) {
+        if (args.size() != 2) {
+            logger.log(Level.ERROR, "Usage: --unpack <save-location> <target-directory>");
+            System.exit(1);
+        }
+
+        try (PackReader packReader = PackReader.open(Paths.get(args.get(0)))) {
+            int fileCount = packReader.exportTo(Paths.get(args.get(1)));
+            logger.log(Level.INFO, "Unpacked {0} files to: {1}", fileCount, args.get(1));
+        } catch (IOException | InvalidPathException e) {
+            logger.log(Level.ERROR, "Failed to unpack: {0}", e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void coordinate(List<String> args, Map<String, String> options) {
+        String url = getUrl(args);
+        String port = options.get("coordinator");
+        try (ClusterCoordinator coordinator = new ClusterCoordinator(
+                port.equals("true") ? DEFAULT_CLUSTER_PORT : Integer.parseInt(port), url,
+                Integer.parseInt(options.getOrDefault("expect-workers", "1")))) {
+            coordinator.start();
+            logger.log(Level.INFO, "Coordinating the crawl of {0}, workers connect to port {1,number,#}", url,
+                    coordinator.getPort());
+            coordinator.awaitCompletion(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            logger.log(Level.INFO, "Cluster crawl completed");
+        } catch (IOException | IllegalArgumentException e) {
+            logger.log(Level.ERROR, "Failed to coordinate the crawl: {0}", e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void work(List<String> args, Map<String, String> options) {
+        String coordinatorAddress = options.get("worker");
+        int separatorIndex = coordinatorAddress.lastIndexOf(':');
+        String saveLocation = args.isEmpty() ? getSaveLocation(args) : args.get(0);
+        CrawlConfig config = getConfig(options);
+        try {
+            ClusterWorker worker = new ClusterWorker(
+                    separatorIndex < 0 ? coordinatorAddress : coordinatorAddress.substring(0, separatorIndex),
+                    separatorIndex < 0 ? DEFAULT_CLUSTER_PORT
+                            : Integer.parseInt(coordinatorAddress.substring(separatorIndex + 1)),
+                    createOutputSink(saveLocation, config), config);
+            logger.log(Level.INFO, "Joined the cluster at {0} as {1}, saving to {2}", coordinatorAddress,
+                    worker.getAddress(), saveLocation);
+            CrawlMetrics metrics = worker.run();
+            if (metrics != null) {
+                logger.log(Level.INFO, "Crawl summary:{0}{1}", System.lineSeparator(), metrics.formatSummary());
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.log(Level.ERROR, "Failed to join the cluster at {0}: {1}", coordinatorAddress, e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static OutputSink createOutputSink(String saveLocation, CrawlConfig config) {
+        if (config.getOutputFormat() == CrawlConfig.OutputFormat.WARC) {
+            return new WarcWriter(saveLocation, config);
+        }
+        return new WebPageSaver(saveLocation, config);
+    }
+
+    private static CrawlConfig getConfig(Map<String, String> options) {
+        CrawlConfig config = new CrawlConfig();
+
+        try {
+            for (Map.Entry<String, String> option : options.entrySet()) {
+                String value = option.getValue();
+                switch (option.getKey()) {
+                    case "workers":
+                        config.setWorkerCount(Integer.parseInt(value));
+                        break;
+                    case "rate":
+                        config.setRequestsPerSecond(Double.parseDouble(value));
+                        break;
+                    case "connections-per-host":
+                        config.setMaxConnectionsPerHost(Integer.parseInt(value));
+                        break;
+                    case "adaptive-concurrency":
+                        config.setAdaptiveConcurrencyEnabled(Boolean.parseBoolean(value));
+                        break;
+                    case "delay":
+                        config.setMinRequestDelayMillis(Long.parseLong(value));
+                        break;
+                    case "retries":
+                        config.setMaxRetries(Integer.parseInt(value));
+                        break;
+                    case "retry-delay":
+                        config.setRetryBaseDelayMillis(Long.parseLong(value));
+                        break;
+                    case "circuit-breaker":
+                        config.setCircuitBreakerThreshold(Integer.parseInt(value));
+                        break;
+                    case "circuit-breaker-cooldown":
+                        config.setCircuitBreakerCooldownMillis(Long.parseLong(value));
+                        break;
+                    case "connect-timeout":
+                        config.setConnectTimeoutMillis(Long.parseLong(value));
+                        break;
+                    case "read-timeout":
+                        config.setReadTimeoutMillis(Long.parseLong(value));
+                        break;
+                    case "max-page-kb":
+                        config.setMaxPageBytes(Math.toIntExact(Long.parseLong(value) * 1024));
+                        break;
+                    case "redirects":
+                        config.setRedirectPolicy(HttpClient.Redirect.valueOf(value.toUpperCase(Locale.ROOT)));
+                        break;
+                    case "user-agent":
+                        config.setUserAgent(value);
+                        break;
+                    case "resume":
+                        config.setResume(Boolean.parseBoolean(value));
+                        break;
+                    case "expected-urls":
+                        config.setExpectedUrlCount(Long.parseLong(value));
+                        break;
+                    case "bloom-filter":
+                        config.setBloomFilterEnabled(Boolean.parseBoolean(value));
+                        break;
+                    case "frontier-memory":
+                        config.setMaxQueuedInMemory(Integer.parseInt(value));
+                        break;
+                    case "writer-threads":
+                        config.setWriterThreadCount(Integer.parseInt(value));
+                        break;
+                    case "write-queue":
+                        config.setWriteQueueCapacity(Integer.parseInt(value));
+                        break;
+                    case "output":
+                        config.setOutputFormat(CrawlConfig.OutputFormat.valueOf(value.toUpperCase(Locale.ROOT)));
+                        break;
+                    case "warc-file-size":
+                        config.setWarcMaxFileBytes(Long.parseLong(value) * 1024 * 1024); // in MB
+                        break;
+                    case "accept-encoding":
+                        config.setAcceptEncoding(value);
+                        break;
+                    case "strip-params":
+                        // "--strip-params=" keeps all parameters
+                        config.setTrackingParameters(value.isEmpty()
+                                ? Collections.<String>emptyList()
+                                : Arrays.asList(value.split(",")));
+                        break;
+                    case "sort-query":
+                        config.setQueryParameterSortingEnabled(Boolean.parseBoolean(value));
+                        break;
+                    case "ignore-trailing-slash":
+                        config.setTrailingSlashIgnored(Boolean.parseBoolean(value));
+                        break;
+                    case "robots":
+                        config.setRobotsTxtRespected(Boolean.parseBoolean(value));
+                        break;
+                    case "sitemaps":
+                        config.setSitemapSeedingEnabled(Boolean.parseBoolean(value));
+                        break;
+                    case "skip-duplicates":
+                        config.setNearDuplicateDetectionEnabled(Boolean.parseBoolean(value));
+                        break;
+                    case "duplicate-bits":
+                        config.setNearDuplicateThreshold(Integer.parseInt(value));
+                        break;
+                    case "follow-duplicates":
+                        config.setDuplicateLinksFollowed(Boolean.parseBoolean(value));
+                        break;
+                    case "max-depth":
+                        config.setMaxDepth(Integer.parseInt(value));
+                        break;
+                    case "max-pages":
+                        config.setMaxPages(Long.parseLong(value));
+                        break;
+                    case "max-mb":
+                        config.setMaxBytes(Long.parseLong(value) * 1024 * 1024);
+                        break;
+                    case "time-limit":
+                        config.setMaxDurationMillis(TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+                        break;
+                    case "url-weights":
+                        config.setUrlPatternWeights(parseUrlWeights(value));
+                        break;
+                    case "coordinator":
+                    case "worker":
+                    case "expect-workers":
+                        break; // cluster mode, see main()
+                    case "fsync":
+                        config.setFsyncPolicy(DiskWriter.FsyncPolicy.valueOf(value.toUpperCase(Locale.ROOT)));
+                        break;
+                    default:
+                        logger.log(Level.WARNING, "Ignoring unknown option: --{0}", option.getKey());
+                }
+            }
+        } catch (IllegalArgumentException e) { // includes NumberFormatException
+            logger.log(Level.ERROR, "Invalid option value: {0}", e.getMessage());
+            System.exit(1);
+        }
+
+        return config;
+    }
+
+    // "pattern=weight,pattern=weight"; the last "=" separates the weight, so patterns may contain "="
+    private static Map<String, Double> parseUrlWeights(String value) {
+        Map<String, Double> weights = new LinkedHashMap<>();
+        for (String patternWeight : value.split(",")) {
+            int separatorIndex = patternWeight.lastIndexOf('=');
+            if (separatorIndex < 1) {
+                throw new IllegalArgumentException("Expected pattern=weight: " + patternWeight);
+            }
+            weights.put(patternWeight.substring(0, separatorIndex),
+                    Double.parseDouble(patternWeight.substring(separatorIndex + 1)));
+        }
+        return weights;
+    }
 }
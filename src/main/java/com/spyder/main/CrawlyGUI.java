@@ -36,6 +36,7 @@ public class CrawlyGUI {
     private JLabel statusLabel;
     private JButton startButton;
     private JButton stopButton;
+    private JButton resumeButton;
 
     // Application state
     private String url;
@@ -98,23 +99,28 @@ public class CrawlyGUI {
     }
 
     private void initializeButtons() {
-        // create Start and Stop buttons
+        // create Start, Stop and Resume buttons
         this.startButton = createButton("Start");
         this.stopButton = createButton("Stop");
         this.stopButton.setEnabled(false); // disabled initially, enabled when crawling starts
+        this.resumeButton = createButton("Resume"); // continues a stopped crawl in the same save location
 
         // add buttons to the button panel
         this.buttonPanel.add(this.startButton);
         this.buttonPanel.add(javax.swing.Box.createHorizontalStrut(ELEMENT_SPACING)); // add some horizontal space
         this.buttonPanel.add(this.stopButton);
+        this.buttonPanel.add(javax.swing.Box.createHorizontalStrut(ELEMENT_SPACING)); // add some horizontal space
+        this.buttonPanel.add(this.resumeButton);
     }
 
     private void addEventListeners() {
-        this.startButton.addActionListener(e -> handleStartButtonClick());
+        this.startButton.addActionListener(e -> handleStartButtonClick(false));
         this.stopButton.addActionListener(e -> handleStopButtonClick());
+        this.resumeButton.addActionListener(e -> handleStartButtonClick(true));
     }
 
-    private void handleStartButtonClick() {
+    // Starts a new crawl, or resumes the crawl journaled in the save location.
+    private void handleStartButtonClick(boolean resume) {
         // Assign user-specified values to instance variables
         CrawlyGUI.this.url = CrawlyGUI.this.urlField.getText();
         CrawlyGUI.this.saveLocation = CrawlyGUI.this.saveLocationField.getText();
@@ -125,12 +131,13 @@ public class CrawlyGUI {
             this.saveLocation = "./output";
         }
 
-        // Disable Start button and enable Stop button
+        // Disable Start and Resume buttons and enable Stop button
         CrawlyGUI.this.startButton.setEnabled(false);
+        CrawlyGUI.this.resumeButton.setEnabled(false);
         CrawlyGUI.this.stopButton.setEnabled(true);
 
         // Run crawler in a separate thread to prevent GUI blocking
-        runCrawlerInThread();
+        runCrawlerInThread(resume);
     }
 
     private void handleStopButtonClick() {
@@ -139,8 +146,9 @@ public class CrawlyGUI {
             logger.log(Level.INFO, "Crawling stopped by user");
             this.crawlerThread.interrupt();
 
-            // Enable Start button and disable Stop button
+            // Enable Start and Resume buttons and disable Stop button
             CrawlyGUI.this.startButton.setEnabled(true);
+            CrawlyGUI.this.resumeButton.setEnabled(true);
             CrawlyGUI.this.stopButton.setEnabled(false);
             // Stop timer to prevent status from changing
             this.statusTimer.stop();
@@ -165,14 +173,18 @@ public class CrawlyGUI {
      * method creates and starts a new thread that performs the main crawling
      * logic, allowing the GUI to remain responsive during the operation.
      */
-    private void runCrawlerInThread() {
+    private void runCrawlerInThread(boolean resume) {
         this.crawlerThread = new Thread(() -> {
             try {
                 // Main application logic
-                WebPageSaver webPageSaver = new WebPageSaver(this.saveLocation); // create the dependency
-                Crawler crawler = new Crawler(this.url, webPageSaver); // inject dependency
+                CrawlConfig config = new CrawlConfig().setResume(resume);
+                WebPageSaver webPageSaver = new WebPageSaver(this.saveLocation, config); // create the dependency
+                Crawler crawler = new Crawler(this.url, webPageSaver, config); // inject dependency
                 crawler.crawl();
-                logger.log(Level.INFO, "Crawling completed successfully");
+                // crawl() returns early with the interrupt flag set when the Stop button was used
+                if (!Thread.currentThread().isInterrupted()) {
+                    logger.log(Level.INFO, "Crawling completed successfully");
+                }
             } catch (Exception ex) {
                 // Check if error message matches the custom interruption message; if so, do not log as an error
                 if (!ex.getMessage().contains("interrupted")) {
@@ -183,6 +195,7 @@ public class CrawlyGUI {
                 // Use SwingUtilities.invokeLater to ensure thread safety
                 javax.swing.SwingUtilities.invokeLater(() -> {
                     this.startButton.setEnabled(true);
+                    this.resumeButton.setEnabled(true);
                     this.stopButton.setEnabled(false);
                 });
             }
@@ -0,0 +1,225 @@
+package com.spyder.main;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+ * Finds and rewrites the references in a stylesheet: {@code url(...)} values
+ * (quoted or not) and the strings of {@code @import} rules.
+ *
+ * The stylesheet is scanned character by character and copied to the output
+ * as it goes, so only the reference being read is held in memory, whatever
+ * the size of the file. Comments and strings are copied as they are; a
+ * {@code url(} inside them is not a reference.
+ */
+public class CssUrlRewriter {
+
+    /**
+     * Decides what a reference is replaced with.
+     */
+    public interface UrlMapper {
+
+        /**
+         * @param url      the reference as written, without quotes
+         * @param imported true for the target of an {@code @import} rule
+         * @return the new reference, or null to keep it
+         */
+        String map(String url, boolean imported);
+    }
+
+    // Static constants
+    private static final int MAX_URL_LENGTH = 64 * 1024; // longer "references" are copied as they are
+
+    private CssUrlRewriter() {
+    }
+
+    // Copies the stylesheet to the writer, with every reference replaced as the mapper says.
+    public static void rewrite(Reader reader, Writer writer, UrlMapper mapper) throws IOException {
+        new Scanner(new PushbackReader(reader, 2), writer, mapper).scan();
+    }
+
+    public static String rewrite(String stylesheet, UrlMapper mapper) {
+        StringWriter writer = new StringWriter(stylesheet.length());
+        try {
+            rewrite(new StringReader(stylesheet), writer, mapper);
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory streams don't fail", e);
+        }
+        return writer.toString();
+    }
+
+    // One pass over a stylesheet.
+    private static class Scanner {
+
+        private final PushbackReader reader;
+        private final Writer writer;
+        private final UrlMapper mapper;
+        private boolean inImportRule; // after "@import", until ';' or '{'
+
+        Scanner(PushbackReader reader, Writer writer, UrlMapper mapper) {
+            this.reader = reader;
+            this.writer = writer;
+            this.mapper = mapper;
+        }
+
+        void scan() throws IOException {
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (c == '/' && peek() == '*') {
+                    writer.write(c);
+                    copyComment();
+                } else if (c == '"' || c == '\'') {
+                    if (inImportRule) {
+                        writeMapped(readString(c), (char) c, true);
+                    } else {
+                        writer.write(c);
+                        copyString(c);
+                    }
+                } else if (c == '@') {
+                    String keyword = readIdentifier();
+                    writer.write('@');
+                    writer.write(keyword);
+                    inImportRule = keyword.equalsIgnoreCase("import");
+                } else if (isIdentifierChar(c)) {
+                    reader.unread(c);
+                    String identifier = readIdentifier();
+                    if (identifier.equalsIgnoreCase("url") && peek() == '(') {
+                        reader.read();
+                        writer.write(identifier);
+                        writer.write('(');
+                        rewriteUrlFunction();
+                    } else {
+                        writer.write(identifier);
+                    }
+                } else {
+                    if (c == ';' || c == '{') {
+                        inImportRule = false;
+                    }
+                    writer.write(c);
+                }
+            }
+            writer.flush();
+        }
+
+        // After "url(": the reference up to ')', quoted or not.
+        private void rewriteUrlFunction() throws IOException {
+            StringBuilder leadingSpace = new StringBuilder();
+            int c;
+            while ((c = reader.read()) != -1 && Character.isWhitespace(c)) {
+                leadingSpace.append((char) c);
+            }
+            writer.write(leadingSpace.toString());
+            if (c == -1) {
+                return;
+            }
+            if (c == '"' || c == '\'') {
+                writeMapped(readString(c), (char) c, inImportRule);
+                return; // the rest, up to ')', is copied by the main loop
+            }
+
+            StringBuilder url = new StringBuilder();
+            while (c != -1 && c != ')' && url.length() < MAX_URL_LENGTH) {
+                url.append((char) c);
+                c = reader.read();
+            }
+            if (c != ')') {
+                writer.write(url.toString()); // unterminated or too long, not a reference
+                if (c != -1) {
+                    writer.write(c);
+                }
+                return;
+            }
+            String trimmed = url.toString().trim();
+            String mapped = trimmed.isEmpty() ? null : mapper.map(trimmed, inImportRule);
+            if (mapped != null) {
+                writer.write(mapped);
+                writer.write(url.substring(url.toString().stripTrailing().length())); // trailing whitespace
+            } else {
+                writer.write(url.toString());
+            }
+            writer.write(')');
+        }
+
+        private void writeMapped(String url, char quote, boolean imported) throws IOException {
+            String mapped = url.isEmpty() ? null : mapper.map(url, imported);
+            writer.write(quote);
+            writer.write(mapped != null ? mapped.replace(String.valueOf(quote), "\\" + quote) : url);
+            writer.write(quote);
+        }
+
+        // After the opening quote: the string's content, without its quotes.
+        private String readString(int quote) throws IOException {
+            StringBuilder string = new StringBuilder();
+            int c;
+            while ((c = reader.read()) != -1 && c != quote && c != '\n') {
+                string.append((char) c);
+                if (c == '\\') {
+                    int escaped = reader.read();
+                    if (escaped == -1) {
+                        break;
+                    }
+                    string.append((char) escaped);
+                }
+            }
+            return string.toString();
+        }
+
+        private void copyString(int quote) throws IOException {
+            int c;
+            while ((c = reader.read()) != -1) {
+                writer.write(c);
+                if (c == '\\') {
+                    int escaped = reader.read();
+                    if (escaped == -1) {
+                        return;
+                    }
+                    writer.write(escaped);
+                } else if (c == quote || c == '\n') {
+                    return;
+                }
+            }
+        }
+
+        // After the '/': the comment, up to and including "*/".
+        private void copyComment() throws IOException {
+            writer.write(reader.read()); // '*'
+            int previous = 0;
+            int c;
+            while ((c = reader.read()) != -1) {
+                writer.write(c);
+                if (previous == '*' && c == '/') {
+                    return;
+                }
+                previous = c;
+            }
+        }
+
+        private String readIdentifier() throws IOException {
+            StringBuilder identifier = new StringBuilder();
+            int c;
+            while ((c = reader.read()) != -1 && isIdentifierChar(c)) {
+                identifier.append((char) c);
+            }
+            if (c != -1) {
+                reader.unread(c);
+            }
+            return identifier.toString();
+        }
+
+        private int peek() throws IOException {
+            int c = reader.read();
+            if (c != -1) {
+                reader.unread(c);
+            }
+            return c;
+        }
+
+        private static boolean isIdentifierChar(int c) {
+            return Character.isLetterOrDigit(c) || c == '-' || c == '_';
+        }
+    }
+}
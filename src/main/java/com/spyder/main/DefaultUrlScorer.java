@@ -0,0 +1,109 @@
+package com.spyder.main;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The scorer used unless {@link CrawlConfig#setUrlScorer(UrlScorer)} sets
+ * another one. It adds up:
+ * <ul>
+ * <li>minus the depth, so shallow pages come first (breadth-first),</li>
+ * <li>the weights of all URL patterns that match (see
+ * {@link CrawlConfig#setUrlPatternWeights(Map)}),</li>
+ * <li>half a point per doubling of the inlink count, as pages that many others
+ * link to tend to matter more,</li>
+ * <li>up to one point for the estimated freshness: URLs a previous crawl did
+ * not save score 1, saved pages score less the longer ago their Last-Modified
+ * date (halving every 30 days), since recently changed pages tend to change
+ * again while long unchanged ones probably still match the stored copy.</li>
+ * </ul>
+ * Everything but the inlinks is computed once per task and kept on it, as
+ * the frontier scores a queued task again for every further link to it.
+ */
+public class DefaultUrlScorer implements UrlScorer {
+
+    // Static constants
+    private static final Logger logger = System.getLogger(DefaultUrlScorer.class.getName());
+    private static final double INLINK_WEIGHT = 0.5;
+    private static final double FRESHNESS_HALF_LIFE_DAYS = 30;
+
+    // Instance fields
+    private final List<Pattern> patterns = new ArrayList<>();
+    private final List<Double> weights = new ArrayList<>();
+    private final CrawlManifest manifest; // null on a first crawl or without revalidation
+
+    /**
+     * @param urlPatternWeights weights by URL pattern, where {@code *} matches
+     *                          any characters and a pattern matches anywhere in
+     *                          the URL
+     * @param manifest          what previous crawls saved, or null
+     */
+    public DefaultUrlScorer(Map<String, Double> urlPatternWeights, CrawlManifest manifest) {
+        for (Map.Entry<String, Double> patternWeight : urlPatternWeights.entrySet()) {
+            patterns.add(compileWildcard(patternWeight.getKey()));
+            weights.add(patternWeight.getValue());
+        }
+        this.manifest = manifest;
+    }
+
+    @Override
+    public double score(CrawlTask task) {
+        double fixedScore = task.getFixedScore();
+        if (Double.isNaN(fixedScore)) {
+            fixedScore = computeFixedScore(task);
+            task.setFixedScore(fixedScore); // racing workers compute the same value
+        }
+        // in whole doublings, so that a new inlink rarely changes the score
+        int inlinkDoublings = 31 - Integer.numberOfLeadingZeros(task.getInlinkCount() + 1);
+        return fixedScore + inlinkDoublings * INLINK_WEIGHT;
+    }
+
+    // Private methods
+    private double computeFixedScore(CrawlTask task) {
+        double score = -task.getDepth();
+        for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).matcher(task.getUrl()).find()) {
+                score += weights.get(i);
+            }
+        }
+        return score + estimateFreshness(task.getUrl());
+    }
+
+    private double estimateFreshness(String url) {
+        // only an estimate, not worth a file-system check that the saved copy still exists
+        ManifestEntry entry = manifest != null ? manifest.getEntry(url) : null;
+        if (entry == null || entry.getLocalPath() == null) {
+            return 1; // not in the archive yet
+        }
+        if (entry.getLastModified() == null) {
+            return 0;
+        }
+        try {
+            Instant lastModified = ZonedDateTime.parse(entry.getLastModified(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .toInstant();
+            double ageDays = Math.max(0, Duration.between(lastModified, Instant.now()).toHours() / 24.0);
+            return Math.pow(0.5, ageDays / FRESHNESS_HALF_LIFE_DAYS);
+        } catch (DateTimeParseException e) {
+            logger.log(Level.DEBUG, "Ignoring malformed Last-Modified date: {0}", entry.getLastModified());
+            return 0;
+        }
+    }
+
+    private static Pattern compileWildcard(String pattern) {
+        String[] literals = pattern.split("\\*", -1);
+        StringBuilder regex = new StringBuilder(Pattern.quote(literals[0]));
+        for (int i = 1; i < literals.length; i++) {
+            regex.append(".*").append(Pattern.quote(literals[i]));
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,94 @@
+package com.spyder.main;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Stores every file of the offline copy as a file of its own below the save
+ * location, the browsable mirror layout. Writes go through a
+ * {@link DiskWriter}.
+ */
+public class DirectoryStore implements FileStore {
+
+    // Static constants
+    private static final Logger logger = System.getLogger(DirectoryStore.class.getName());
+
+    // Instance fields
+    private final Path rootDirectory;
+    private final Path temporaryDirectory;
+    private final DiskWriter diskWriter;
+
+    /**
+     * @param rootDirectory      the save location
+     * @param temporaryDirectory receives downloads in progress; must be on the
+     *                           same file system so they can be moved in
+     *                           atomically
+     */
+    public DirectoryStore(Path rootDirectory, Path temporaryDirectory, DiskWriter diskWriter) {
+        this.rootDirectory = rootDirectory;
+        this.temporaryDirectory = temporaryDirectory;
+        this.diskWriter = diskWriter;
+    }
+
+    @Override
+    public void open() throws IOException {
+        diskWriter.ensureDirectory(rootDirectory);
+    }
+
+    @Override
+    public CompletableFuture<Void> write(String relativePath, DiskWriter.ContentWriter content)
+            throws InterruptedException {
+        Path targetFilePath;
+        try {
+            targetFilePath = rootDirectory.resolve(relativePath);
+        } catch (InvalidPathException e) {
+            logger.log(Level.ERROR, "Invalid file path: " + relativePath, e);
+            return CompletableFuture.failedFuture(e);
+        }
+        return diskWriter.submit(targetFilePath, content);
+    }
+
+    @Override
+    public void moveIn(Path file, String relativePath) throws IOException {
+        Path targetFilePath = rootDirectory.resolve(relativePath);
+        diskWriter.ensureDirectory(targetFilePath.getParent());
+        Files.move(file, targetFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public boolean exists(String relativePath) {
+        try {
+            return Files.exists(rootDirectory.resolve(relativePath));
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public Path createTemporaryFile() throws IOException {
+        diskWriter.ensureDirectory(temporaryDirectory);
+        return Files.createTempFile(temporaryDirectory, "download", ".part");
+    }
+
+    @Override
+    public void setMetrics(CrawlMetrics metrics) {
+        diskWriter.setMetrics(metrics);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            diskWriter.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // files still queued are redone on resume
+            throw new InterruptedIOException("Interrupted while writing the remaining files");
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.spyder.main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * First-in, first-out queue of crawl tasks kept in segment files on disk, for
+ * the part of the {@link Frontier} that doesn't fit in memory.
+ *
+ * Tasks are appended to the newest segment with buffered sequential writes
+ * and read back in order from the oldest one, which is deleted once it has been
+ * read completely, so the disk space used follows the queue. Each record is
+ * the depth and the UTF-8 bytes of the URL. Only the write and read buffers
+ * are kept in memory. Not thread-safe.
+ */
+public class DiskTaskQueue {
+
+    // Static constants
+    static final int SEGMENT_TASKS = 100_000; // about 10 MB per segment with typical URLs
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".queue";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Instance fields
+    private final Path directory;
+    private final Deque<Segment> segments = new ArrayDeque<>(); // oldest first, the last one may be written
+    private DataOutputStream writer; // into the last segment, null if it is complete
+    private DataInputStream reader; // from the first segment, null until it is read
+    private long nextSegmentNumber;
+    private long size;
+
+    public DiskTaskQueue(Path directory) {
+        this.directory = directory;
+    }
+
+    public void add(CrawlTask task) throws IOException {
+        if (writer == null) {
+            Files.createDirectories(directory);
+            Segment segment = new Segment(directory.resolve(
+                    String.format("%s%08d%s", SEGMENT_PREFIX, nextSegmentNumber++, SEGMENT_SUFFIX)));
+            writer = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(segment.path), BUFFER_SIZE));
+            segments.addLast(segment);
+        }
+
+        byte[] url = task.getUrl().getBytes(StandardCharsets.UTF_8);
+        writer.writeInt(task.getDepth());
+        writer.writeInt(url.length);
+        writer.write(url);
+        size++;
+        if (++segments.getLast().taskCount >= SEGMENT_TASKS) {
+            finishWriting();
+        }
+    }
+
+    /**
+     * Removes the oldest task.
+     *
+     * @return the task, or null if the queue is empty
+     */
+    public CrawlTask poll() throws IOException {
+        if (size == 0) {
+            return null;
+        }
+        Segment segment = segments.getFirst();
+        if (reader == null) {
+            if (segments.size() == 1) {
+                finishWriting(); // reading the segment still being written, start a new one for later tasks
+            }
+            reader = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.path), BUFFER_SIZE));
+        }
+
+        int depth = reader.readInt();
+        byte[] url = new byte[reader.readInt()];
+        reader.readFully(url);
+        size--;
+        if (++segment.readCount == segment.taskCount) {
+            reader.close();
+            reader = null;
+            segments.removeFirst();
+            Files.delete(segment.path);
+        }
+        return new CrawlTask(new String(url, StandardCharsets.UTF_8), depth);
+    }
+
+    /**
+     * Takes the tasks whose URLs match out of the queue, keeping the order of
+     * the others. Rewrites the whole queue, as the matching tasks may be
+     * anywhere in it.
+     */
+    public List<CrawlTask> removeIf(Predicate<String> urlFilter) throws IOException {
+        List<CrawlTask> removed = new ArrayList<>();
+        // every task is read once from the front and the ones to keep appended again at the back
+        for (long remaining = size; remaining > 0; remaining--) {
+            CrawlTask task = poll();
+            if (urlFilter.test(task.getUrl())) {
+                removed.add(task);
+            } else {
+                add(task);
+            }
+        }
+        return removed;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    // Deletes all segments, including any a killed crawl left behind.
+    public void clear() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+        segments.clear();
+        size = 0;
+
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                    SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    // Private methods
+    private void finishWriting() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private static class Segment {
+
+        private final Path path;
+        private int taskCount;
+        private int readCount;
+
+        Segment(Path path) {
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.spyder.main;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous file-writing stage, so crawl workers don't wait on the disk.
+ *
+ * Write requests go into a bounded queue that is drained by dedicated writer
+ * threads. The queue bound is the only point where a worker can block: when
+ * the disk falls far behind, workers pause instead of piling up pages in
+ * memory. Files are written through {@link FileChannel}s; parent directories
+ * are created once and remembered; and the {@link FsyncPolicy} decides whether
+ * and when data is forced to the storage device.
+ *
+ * Each file is written to a temporary file first, which then atomically
+ * replaces the target (after it is forced, if the policy asks for it). A
+ * failed write or a crash leaves an existing file, e.g. the copy of a page
+ * saved by a previous crawl, untouched.
+ */
+public class DiskWriter {
+
+    /**
+     * When written files are forced (fsync) to the storage device.
+     */
+    public enum FsyncPolicy {
+        NONE, // leave it to the operating system (fastest)
+        BATCH, // once per batch of files taken from the queue
+        ALWAYS // after every file
+    }
+
+    /**
+     * Produces the content of a file. Called on a writer thread with a
+     * buffered stream that must not be closed.
+     */
+    public interface ContentWriter {
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    // Static constants
+    private static final Logger logger = System.getLogger(DiskWriter.class.getName());
+    private static final int MAX_BATCH_SIZE = 32;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    // Instance fields
+    private final int threadCount;
+    private final FsyncPolicy fsyncPolicy;
+    private final Path temporaryDirectory; // null: next to the target file
+    private final BlockingQueue<WriteRequest> queue;
+    private final Set<Path> createdDirectories = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger unfinishedWrites = new AtomicInteger(); // queued + being written
+    private ExecutorService writerThreads; // started on first use, guarded by "this"
+    private volatile CrawlMetrics metrics = new CrawlMetrics();
+
+    public DiskWriter(int threadCount, int queueCapacity, FsyncPolicy fsyncPolicy) {
+        this(threadCount, queueCapacity, fsyncPolicy, null);
+    }
+
+    /**
+     * @param temporaryDirectory receives files while they are written; must be
+     *                           on the same file system as the targets, so
+     *                           they can be moved in atomically
+     */
+    public DiskWriter(int threadCount, int queueCapacity, FsyncPolicy fsyncPolicy, Path temporaryDirectory) {
+        this.threadCount = threadCount;
+        this.fsyncPolicy = fsyncPolicy;
+        this.temporaryDirectory = temporaryDirectory;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    public void setMetrics(CrawlMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Queues a file to be written, replacing the file if it exists. Blocks
+     * only while the queue is full.
+     *
+     * @return completes once the file has been written (and forced to disk, if
+     *         the fsync policy asks for it), or exceptionally if writing failed
+     */
+    public CompletableFuture<Void> submit(Path targetFilePath, ContentWriter content) throws InterruptedException {
+        ensureStarted();
+        WriteRequest request = new WriteRequest(targetFilePath, content);
+        unfinishedWrites.incrementAndGet();
+        try {
+            queue.put(request);
+        } catch (InterruptedException e) {
+            finished();
+            throw e;
+        }
+        return request.result;
+    }
+
+    /**
+     * Creates a directory and its parents unless this writer has done so
+     * before, saving a file-system call per file.
+     */
+    public void ensureDirectory(Path directory) throws IOException {
+        if (directory == null || createdDirectories.contains(directory)) {
+            return;
+        }
+        Files.createDirectories(directory);
+        createdDirectories.add(directory);
+    }
+
+    // Waits until every file submitted so far has been written.
+    public void flush() throws InterruptedException {
+        synchronized (unfinishedWrites) {
+            while (unfinishedWrites.get() > 0) {
+                unfinishedWrites.wait();
+            }
+        }
+    }
+
+    // Writes all queued files and stops the writer threads; they restart on the next submit.
+    public synchronized void close() throws InterruptedException {
+        if (writerThreads == null) {
+            return;
+        }
+        flush();
+        writerThreads.shutdownNow(); // idle writers are waiting in take()
+        writerThreads.awaitTermination(1, TimeUnit.MINUTES);
+        writerThreads = null;
+    }
+
+    private synchronized void ensureStarted() {
+        if (writerThreads != null) {
+            return;
+        }
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        writerThreads = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "crawly-writer-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < threadCount; i++) {
+            writerThreads.execute(this::runWriter);
+        }
+    }
+
+    private void runWriter() {
+        List<WriteRequest> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1); // whatever else is waiting
+                writeBatch(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // close() stops idle writers
+        }
+    }
+
+    private void writeBatch(List<WriteRequest> batch) {
+        List<WriteRequest> unsyncedWrites = new ArrayList<>(batch.size());
+        for (WriteRequest request : batch) {
+            try {
+                write(request);
+                if (request.channel != null) {
+                    unsyncedWrites.add(request); // BATCH policy: forced below
+                } else {
+                    request.complete(null);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.ERROR, "Failed to write file: " + request.targetFilePath, e);
+                request.complete(e);
+            }
+        }
+
+        for (WriteRequest request : unsyncedWrites) {
+            try {
+                try (FileChannel channel = request.channel) {
+                    channel.force(false);
+                }
+                moveIn(request);
+                request.complete(null);
+            } catch (IOException e) {
+                logger.log(Level.ERROR, "Failed to sync file: " + request.targetFilePath, e);
+                deleteTemporaryFile(request);
+                request.complete(e);
+            }
+        }
+    }
+
+    private void write(WriteRequest request) throws IOException {
+        CrawlMetrics metrics = this.metrics;
+        try (CrawlMetrics.PhaseTimer timer = metrics.time(CrawlPhase.DISK_WRITE,
+                request.targetFilePath.toString())) {
+            long bytesWritten = writeFile(request);
+            timer.setBytes(bytesWritten);
+            metrics.add(CrawlMetrics.Counter.BYTES_WRITTEN, bytesWritten);
+        }
+    }
+
+    // Returns the size of the written file; with the BATCH policy it is moved in once the batch is synced.
+    private long writeFile(WriteRequest request) throws IOException {
+        Path targetDirectory = request.targetFilePath.getParent();
+        ensureDirectory(targetDirectory);
+        Path directory = temporaryDirectory != null ? temporaryDirectory : targetDirectory;
+        ensureDirectory(directory);
+        request.temporaryFilePath = Files.createTempFile(directory, "write", ".part");
+
+        FileChannel channel = FileChannel.open(request.temporaryFilePath, StandardOpenOption.WRITE);
+        boolean keepOpen = false;
+        try {
+            // the channel stream is not closed here, that would close the channel
+            OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(channel),
+                    WRITE_BUFFER_SIZE);
+            request.content.writeTo(outputStream);
+            outputStream.flush();
+            long bytesWritten = channel.position();
+
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                channel.force(false);
+            } else if (fsyncPolicy == FsyncPolicy.BATCH) {
+                request.channel = channel;
+                keepOpen = true;
+            }
+            if (!keepOpen) {
+                channel.close();
+                moveIn(request);
+            }
+            return bytesWritten;
+        } finally {
+            if (!keepOpen) {
+                channel.close(); // no-op unless the write failed
+                deleteTemporaryFile(request); // no-op once moved in
+            }
+        }
+    }
+
+    private static void moveIn(WriteRequest request) throws IOException {
+        Files.move(request.temporaryFilePath, request.targetFilePath, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void deleteTemporaryFile(WriteRequest request) {
+        try {
+            Files.deleteIfExists(request.temporaryFilePath);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to delete temporary file: " + request.temporaryFilePath, e);
+        }
+    }
+
+    private void finished() {
+        if (unfinishedWrites.decrementAndGet() == 0) {
+            synchronized (unfinishedWrites) {
+                unfinishedWrites.notifyAll();
+            }
+        }
+    }
+
+    // A file waiting to be written.
+    private class WriteRequest {
+
+        private final Path targetFilePath;
+        private final ContentWriter content;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private Path temporaryFilePath; // where the file is written before it replaces the target
+        private FileChannel channel; // open until the batch is synced, BATCH policy only
+
+        private WriteRequest(Path targetFilePath, ContentWriter content) {
+            this.targetFilePath = targetFilePath;
+            this.content = content;
+        }
+
+        // Completes the future before counting the write as finished, so flush() also waits for callbacks.
+        private void complete(Exception failure) {
+            try {
+                if (failure == null) {
+                    result.complete(null);
+                } else {
+                    result.completeExceptionally(failure);
+                }
+            } finally {
+                finished();
+            }
+        }
+    }
+}
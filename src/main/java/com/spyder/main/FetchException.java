@@ -0,0 +1,30 @@
+package com.spyder.main;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link HttpFetcher} when a server answers with an error status
+ * (anything other than 2xx, or 3xx that is not followed).
+ */
+public class FetchException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    // Instance fields
+    private final String url;
+    private final int statusCode;
+
+    public FetchException(String url, int statusCode) {
+        super("HTTP " + statusCode + " for " + url);
+        this.url = url;
+        this.statusCode = statusCode;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -0,0 +1,92 @@
+package com.spyder.main;
+
+import java.net.http.HttpHeaders;
+import java.util.Locale;
+
+/**
+ * A completed HTTP response returned by {@link HttpFetcher}. The body is null
+ * when it was streamed to a file instead of being kept in memory.
+ */
+public class FetchResponse {
+
+    // Instance fields
+    private final String url;
+    private final String finalUrl;
+    private final int statusCode;
+    private final HttpHeaders headers;
+    private final byte[] body;
+
+    public FetchResponse(String url, String finalUrl, int statusCode, HttpHeaders headers, byte[] body) {
+        this.url = url;
+        this.finalUrl = finalUrl;
+        this.statusCode = statusCode;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    // the requested URL
+    public String getUrl() {
+        return url;
+    }
+
+    // the URL the body was actually served from, after following redirects
+    public String getFinalUrl() {
+        return finalUrl;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    // true for "304 Not Modified" answers to conditional requests; such responses have no body
+    public boolean isNotModified() {
+        return statusCode == 304;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getHeader(String name) {
+        return headers.firstValue(name).orElse(null);
+    }
+
+    public String getContentType() {
+        return getHeader("Content-Type");
+    }
+
+    /**
+     * Returns the charset declared in the Content-Type header, or null so the
+     * HTML parser can detect it from the document itself (meta tags, BOM).
+     */
+    public String getCharset() {
+        String contentType = getContentType();
+        if (contentType == null) {
+            return null;
+        }
+
+        for (String parameter : contentType.split(";")) {
+            String trimmedParameter = parameter.trim();
+            if (trimmedParameter.toLowerCase(Locale.ROOT).startsWith("charset=")) {
+                String charset = trimmedParameter.substring("charset=".length()).replace("\"", "").trim();
+                return charset.isEmpty() ? null : charset;
+            }
+        }
+        return null;
+    }
+
+    // true for text/* and XML content types, or when the server did not send a type
+    public boolean isTextContent() {
+        String contentType = getContentType();
+        if (contentType == null) {
+            return true;
+        }
+
+        String mimeType = contentType.toLowerCase(Locale.ROOT);
+        return mimeType.startsWith("text/") || mimeType.contains("xml");
+    }
+}
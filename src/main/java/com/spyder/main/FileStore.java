@@ -0,0 +1,43 @@
+package com.spyder.main;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Where {@link WebPageSaver} keeps the files of the offline copy: loose files
+ * below the save location ({@link DirectoryStore}) or a single pack file
+ * ({@link PackWriter}). Files are addressed by their path relative to the save
+ * location, with "/" separators, as returned by
+ * {@link WebPageSaver#getRelativePath(String)}.
+ */
+public interface FileStore {
+
+    void open() throws IOException;
+
+    /**
+     * Stores a file in the background, replacing any file with the same path.
+     * Blocks only while the store's queue is full.
+     *
+     * @return completes once the file is stored, or exceptionally if storing
+     *         failed
+     */
+    CompletableFuture<Void> write(String relativePath, DiskWriter.ContentWriter content) throws InterruptedException;
+
+    /**
+     * Moves a finished file, such as a download, into the store. The source
+     * file no longer exists afterwards.
+     */
+    void moveIn(Path file, String relativePath) throws IOException, InterruptedException;
+
+    // Whether a file is stored (or being stored) under the path.
+    boolean exists(String relativePath);
+
+    // A new empty file on the same file system, for downloads that are moved in later.
+    Path createTemporaryFile() throws IOException;
+
+    void setMetrics(CrawlMetrics metrics);
+
+    // Finishes the queued writes.
+    void close() throws IOException;
+}
@@ -0,0 +1,421 @@
+package com.spyder.main;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * The URL frontier shared by all crawl workers.
+ *
+ * Holds the queue of tasks waiting to be fetched and the set of URLs that have
+ * already been scheduled, so every URL is handed out at most once. The frontier
+ * also tracks how many tasks are queued or still being processed: a crawl is
+ * finished once that count reaches zero, because no worker can discover new
+ * links anymore.
+ *
+ * Queued tasks are handed out by priority, as scored by a {@link UrlScorer}.
+ * When a link to a queued URL is found again, the task's inlink count goes up
+ * without taking the frontier's lock. Only if that changes its score is the
+ * task queued again with the new score; the outdated queue entry is skipped
+ * when it comes up, and the queue is compacted once outdated entries outnumber
+ * the live ones.
+ *
+ * With a {@link DiskTaskQueue}, at most a given number of tasks are kept in
+ * memory. Once that limit is reached, new tasks are appended to the disk queue
+ * until it has been emptied again, and the in-memory queue is refilled from it
+ * in batches. Priorities are therefore only exact among the tasks in memory,
+ * and spilled tasks don't count inlinks found while they were on disk.
+ *
+ * Tasks whose fetch failed can be queued again after a delay (see
+ * {@link #retryLater(CrawlTask, long)}); until then they count as pending, so
+ * the crawl waits for them without keeping a worker busy.
+ */
+public class Frontier {
+
+    // Static constants
+    private static final Logger logger = System.getLogger(Frontier.class.getName());
+
+    // Instance fields
+    private final PriorityQueue<QueuedTask> queue = new PriorityQueue<>();
+    // current entry per queued URL; changed under "this", read without it to count inlinks
+    private final Map<String, QueuedTask> queuedTasks = new ConcurrentHashMap<>();
+    private final PriorityQueue<DelayedTask> delayedTasks = new PriorityQueue<>(); // retries, earliest first
+    private final UrlFingerprintSet seenUrls; // thread-safe, O(1) lookups, ~8-16 bytes per URL
+    private final UrlScorer scorer;
+    private final DiskTaskQueue spill; // null if all tasks stay in memory
+    private final int maxQueuedInMemory;
+    private boolean spillFailed; // then everything stays in memory
+    private long sequence; // ties are broken in the order tasks were queued
+    private int outdatedEntries; // queue entries no longer in queuedTasks, guarded by "this"
+    private long pendingTasks; // queued + in-flight tasks, guarded by "this"
+    private boolean closed;
+    private boolean draining;
+
+    public Frontier() {
+        this(new UrlFingerprintSet());
+    }
+
+    public Frontier(UrlFingerprintSet seenUrls) {
+        this(seenUrls, UrlScorer.BREADTH_FIRST);
+    }
+
+    public Frontier(UrlFingerprintSet seenUrls, UrlScorer scorer) {
+        this(seenUrls, scorer, null, 0);
+    }
+
+    /**
+     * @param spill             where queued tasks go beyond the in-memory limit,
+     *                          or null to keep them all in memory
+     * @param maxQueuedInMemory the in-memory limit, at least 1 with a spill
+     */
+    public Frontier(UrlFingerprintSet seenUrls, UrlScorer scorer, DiskTaskQueue spill, int maxQueuedInMemory) {
+        if (spill != null && maxQueuedInMemory < 1) {
+            throw new IllegalArgumentException("In-memory queue limit must be at least 1: " + maxQueuedInMemory);
+        }
+        this.seenUrls = seenUrls;
+        this.scorer = scorer;
+        this.spill = spill;
+        this.maxQueuedInMemory = maxQueuedInMemory;
+    }
+
+    /**
+     * Schedules a URL for crawling unless it has been scheduled before.
+     *
+     * @return true if the URL was new and has been queued
+     */
+    public boolean add(String url, int depth) {
+        // check the seen-set outside the lock, most discovered links are duplicates
+        if (!seenUrls.add(url)) {
+            countInlink(url);
+            return false;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            queueNew(new CrawlTask(url, depth));
+            pendingTasks++;
+            notify(); // wake up one idle worker
+        }
+        return true;
+    }
+
+    /**
+     * Marks a URL as already handled without queuing it, e.g. a page saved
+     * before a resumed crawl was stopped.
+     */
+    public void markSeen(String url) {
+        seenUrls.add(url);
+    }
+
+    /**
+     * Waits for the next task to process.
+     *
+     * @return the next task, or null once the crawl is finished (nothing queued
+     *         and nothing in flight) or the frontier has been closed
+     */
+    public synchronized CrawlTask take() throws InterruptedException {
+        while (!closed && !draining) {
+            refillFromSpill();
+            long nextDueNanos = queueDueTasks();
+            QueuedTask next = queue.poll();
+            if (next == null) {
+                if (pendingTasks == 0) {
+                    return null;
+                }
+                // another worker may still discover links, or a retry becomes due
+                if (nextDueNanos > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this, nextDueNanos);
+                } else {
+                    wait();
+                }
+            } else if (queuedTasks.remove(next.task.getUrl(), next)) {
+                return next.task;
+            } else {
+                outdatedEntries--; // re-queued with a new score since, or removed
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Marks a task returned by {@link #take()} as fully processed. Must be called
+     * exactly once per task, after all of its links have been added.
+     */
+    public synchronized void complete(CrawlTask task) {
+        pendingTasks--;
+        if (pendingTasks == 0) {
+            notifyAll(); // crawl finished, release all idle workers
+        }
+    }
+
+    /**
+     * Queues a task again once a delay has passed, e.g. to retry a failed
+     * fetch. Call it before {@link #complete(CrawlTask)} of the failed task, so
+     * the crawl doesn't end in between.
+     */
+    public synchronized void retryLater(CrawlTask task, long delayMillis) {
+        if (closed) {
+            return;
+        }
+        delayedTasks.add(new DelayedTask(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis),
+                sequence++));
+        pendingTasks++;
+        notify(); // an idle worker waits for it with a timeout
+    }
+
+    /**
+     * Keeps the crawl from finishing while another source (e.g. sitemaps) may
+     * still add URLs, even if the queue runs dry meanwhile. Must be paired with
+     * {@link #release()}.
+     */
+    public synchronized void retain() {
+        pendingTasks++;
+    }
+
+    public synchronized void release() {
+        pendingTasks--;
+        if (pendingTasks == 0) {
+            notifyAll();
+        }
+    }
+
+    // Stops handing out tasks, releases all waiting workers and deletes the spilled tasks.
+    public synchronized void close() {
+        closed = true;
+        queue.clear();
+        queuedTasks.clear();
+        outdatedEntries = 0;
+        delayedTasks.clear();
+        if (spill != null) {
+            clearSpill();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Stops handing out tasks, e.g. when the crawl budget is used up, but keeps
+     * accepting new URLs, so links found by the pages still in flight are
+     * queued (and journaled) for a resumed crawl.
+     *
+     * @return false if the frontier was already draining
+     */
+    public synchronized boolean drain() {
+        if (draining) {
+            return false;
+        }
+        draining = true;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Takes the queued tasks whose URLs match out of the frontier, e.g. those
+     * another member of a crawl cluster owns after rebalancing. Their URLs stay
+     * seen, so they won't be queued here again.
+     */
+    public synchronized List<CrawlTask> removeQueued(Predicate<String> urlFilter) {
+        List<CrawlTask> removed = new ArrayList<>();
+        Iterator<QueuedTask> iterator = queuedTasks.values().iterator();
+        while (iterator.hasNext()) {
+            CrawlTask task = iterator.next().task;
+            if (urlFilter.test(task.getUrl())) {
+                iterator.remove(); // the queue entry becomes outdated
+                outdatedEntries++;
+                removed.add(task);
+            }
+        }
+        compactQueue();
+        Iterator<DelayedTask> delayedIterator = delayedTasks.iterator();
+        while (delayedIterator.hasNext()) {
+            CrawlTask task = delayedIterator.next().task;
+            if (urlFilter.test(task.getUrl())) {
+                delayedIterator.remove();
+                removed.add(task);
+            }
+        }
+        if (spill != null && spill.size() > 0) {
+            try {
+                removed.addAll(spill.removeIf(urlFilter));
+            } catch (IOException e) {
+                spillFailure("Failed to rewrite the spilled frontier", e);
+            }
+        }
+        pendingTasks -= removed.size();
+        if (pendingTasks == 0) {
+            notifyAll();
+        }
+        return removed;
+    }
+
+    // Queued tasks, in memory and spilled to disk, including those waiting for a retry.
+    public synchronized long size() {
+        return queuedTasks.size() + delayedTasks.size() + (spill != null ? spill.size() : 0);
+    }
+
+    // Queued and in-flight tasks, plus the holds taken with retain().
+    public synchronized long getPendingCount() {
+        return pendingTasks;
+    }
+
+    public long getSeenCount() {
+        return seenUrls.size();
+    }
+
+    // Private methods
+    private void countInlink(String url) {
+        QueuedTask queued = queuedTasks.get(url);
+        if (queued == null) {
+            return; // already taken, or never queued (e.g. marked seen)
+        }
+        queued.task.addInlink();
+        if (scorer.score(queued.task) == queued.score) {
+            return; // most inlinks don't change the score, no lock needed
+        }
+        synchronized (this) {
+            QueuedTask current = queuedTasks.get(url);
+            // another worker may have taken or re-queued the task meanwhile
+            if (current != null && scorer.score(current.task) != current.score) {
+                enqueue(current.task);
+            }
+        }
+    }
+
+    // guarded by "this"
+    private void queueNew(CrawlTask task) {
+        // once spilling, keep appending until the spill is empty, so the disk queue stays in order
+        if (spill != null && !spillFailed && (queuedTasks.size() >= maxQueuedInMemory || spill.size() > 0)) {
+            try {
+                spill.add(task);
+                return;
+            } catch (IOException e) {
+                spillFailure("Failed to spill the frontier to disk, keeping it in memory", e);
+            }
+        }
+        enqueue(task);
+    }
+
+    /*
+     * Moves the retries that are due into the queue; guarded by "this".
+     * Returns the nanoseconds until the next one is due, or 0 if none is left.
+     */
+    private long queueDueTasks() {
+        long now = System.nanoTime();
+        boolean queued = false;
+        while (!delayedTasks.isEmpty()) {
+            long remainingNanos = delayedTasks.peek().dueNanos - now;
+            if (remainingNanos > 0) {
+                if (queued) {
+                    notifyAll(); // more tasks than this worker can take
+                }
+                return remainingNanos;
+            }
+            enqueue(delayedTasks.poll().task);
+            queued = true;
+        }
+        if (queued) {
+            notifyAll();
+        }
+        return 0;
+    }
+
+    // Tops up the in-memory queue once it is down to half the limit; guarded by "this"
+    private void refillFromSpill() {
+        if (spill == null || spill.size() == 0 || queuedTasks.size() > maxQueuedInMemory / 2) {
+            return;
+        }
+        try {
+            while (queuedTasks.size() < maxQueuedInMemory && spill.size() > 0) {
+                enqueue(spill.poll());
+            }
+        } catch (IOException e) {
+            spillFailure("Failed to read the spilled frontier, dropping its tasks", e);
+            long lost = spill.size();
+            pendingTasks -= lost; // still pending in the crawl journal, for a resumed crawl
+            clearSpill();
+            if (pendingTasks == 0) {
+                notifyAll();
+            }
+        }
+    }
+
+    private void spillFailure(String message, IOException e) {
+        logger.log(Level.ERROR, message, e);
+        spillFailed = true;
+    }
+
+    private void clearSpill() {
+        try {
+            spill.clear();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to delete the spilled frontier", e);
+        }
+    }
+
+    // guarded by "this"
+    private void enqueue(CrawlTask task) {
+        QueuedTask queued = new QueuedTask(task, scorer.score(task), sequence++);
+        queue.add(queued);
+        if (queuedTasks.put(task.getUrl(), queued) != null) {
+            outdatedEntries++; // the old entry is still in the queue
+            compactQueue();
+        }
+    }
+
+    // Drops the outdated entries once they outnumber the live ones; guarded by "this"
+    private void compactQueue() {
+        if (outdatedEntries > queuedTasks.size()) {
+            queue.removeIf(entry -> queuedTasks.get(entry.task.getUrl()) != entry);
+            outdatedEntries = 0;
+        }
+    }
+
+    // A task waiting for its retry.
+    private static class DelayedTask implements Comparable<DelayedTask> {
+
+        private final CrawlTask task;
+        private final long dueNanos;
+        private final long sequence;
+
+        DelayedTask(CrawlTask task, long dueNanos, long sequence) {
+            this.task = task;
+            this.dueNanos = dueNanos;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(DelayedTask other) {
+            int byDue = Long.compare(dueNanos - other.dueNanos, 0); // nanoTime may overflow
+            return byDue != 0 ? byDue : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    // A task with the score it had when it was queued.
+    private static class QueuedTask implements Comparable<QueuedTask> {
+
+        private final CrawlTask task;
+        private final double score;
+        private final long sequence;
+
+        QueuedTask(CrawlTask task, double score, long sequence) {
+            this.task = task;
+            this.score = score;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(QueuedTask other) {
+            int byScore = Double.compare(other.score, score); // highest first
+            return byScore != 0 ? byScore : Long.compare(sequence, other.sequence);
+        }
+    }
+}
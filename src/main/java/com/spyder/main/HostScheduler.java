@@ -0,0 +1,375 @@
+package com.spyder.main;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-host politeness gate in front of every network request.
+ *
+ * Each host gets its own token bucket (requests per second), its own cap on
+ * concurrent connections and a minimum delay between request starts. Pages and
+ * images from different hosts (e.g. a CDN) therefore never slow each other
+ * down, while no single host is hit harder than configured.
+ *
+ * With adaptive concurrency, a host's connection cap is only the upper bound
+ * of a limit that follows the host's responses (AIMD): it starts at one
+ * connection and grows by one per round of responses while their latency stays
+ * near the fastest seen, holds while latency rises, and is halved when the
+ * host pushes back with 429 Too Many Requests, 503 Service Unavailable or a
+ * network error. A Retry-After header pauses the host in any case.
+ *
+ * Each host also has a circuit breaker: after a number of failed requests in a
+ * row (5xx statuses or network errors) it opens, and requests to the host fail
+ * at once with a {@link HostUnavailableException} instead of waiting for their
+ * timeouts. Once the cooldown has passed, a single probe request is let
+ * through (half-open): its success closes the breaker, its failure opens it
+ * again for twice as long, and a 429 answer keeps it open for another
+ * cooldown without counting as a failure.
+ *
+ * Usage: {@code try (HostScheduler.Permit permit = scheduler.acquire(url)) { ...fetch... }}
+ */
+public class HostScheduler {
+
+    // Static constants
+    static final double LATENCY_TOLERANCE = 2; // latency above twice the baseline counts as rising
+    static final long LATENCY_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(10); // jitter of fast responses
+    static final double DECREASE_FACTOR = 0.5;
+    static final long MAX_RETRY_AFTER_MILLIS = 60_000; // a longer pause would stall the crawl
+    static final long MAX_BREAKER_COOLDOWN_MILLIS = 10 * 60_000;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+    private static final Logger logger = System.getLogger(HostScheduler.class.getName());
+
+    // Instance fields
+    private final double requestsPerSecond;
+    private final int maxConnectionsPerHost;
+    private final long minRequestDelayNanos;
+    private final boolean adaptive;
+    private final int breakerThreshold; // 0: no circuit breaker
+    private final long breakerCooldownNanos;
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+
+    public HostScheduler(CrawlConfig config) {
+        this.requestsPerSecond = config.getRequestsPerSecond();
+        this.maxConnectionsPerHost = config.getMaxConnectionsPerHost();
+        this.minRequestDelayNanos = TimeUnit.MILLISECONDS.toNanos(config.getMinRequestDelayMillis());
+        this.adaptive = config.isAdaptiveConcurrencyEnabled();
+        this.breakerThreshold = config.getCircuitBreakerThreshold();
+        this.breakerCooldownNanos = TimeUnit.MILLISECONDS.toNanos(config.getCircuitBreakerCooldownMillis());
+    }
+
+    /**
+     * Blocks until a request to the URL's host is allowed: a connection slot is
+     * free, a token is available and the minimum delay has passed.
+     *
+     * @return a permit that must be closed once the response has been read
+     * @throws HostUnavailableException right away if the host's circuit
+     *                                  breaker is open
+     */
+    public Permit acquire(String url) throws HostUnavailableException, InterruptedException {
+        String hostName = hostOf(url);
+        HostState host = hosts.computeIfAbsent(hostName, name -> new HostState(name));
+        boolean probe = host.checkCircuit();
+
+        // take the connection slot first, so waiting requests don't burn tokens
+        try {
+            host.acquireConnection();
+        } catch (InterruptedException e) {
+            if (probe) {
+                host.abandonProbe();
+            }
+            throw e;
+        }
+        Permit permit = new Permit(host, probe);
+        try {
+            long startNanos = host.reserveStart();
+            long waitNanos = startNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        } catch (InterruptedException e) {
+            permit.close();
+            throw e;
+        }
+        permit.startNanos = System.nanoTime();
+        return permit;
+    }
+
+    // Whether requests to a host are currently let through, i.e. its circuit breaker is not open.
+    public boolean isAvailable(String host) {
+        HostState state = hosts.get(host.toLowerCase(Locale.ROOT));
+        return state == null || state.isCircuitClosed();
+    }
+
+    // Current connection limit of a host, the configured cap unless adaptive.
+    public int getConcurrencyLimit(String host) {
+        HostState state = hosts.get(host.toLowerCase(Locale.ROOT));
+        return state != null ? state.getLimit() : adaptive ? 1 : maxConnectionsPerHost;
+    }
+
+    // Current connection limits of all hosts seen so far, by host name.
+    public Map<String, Integer> getConcurrencyLimits() {
+        Map<String, Integer> limits = new TreeMap<>();
+        hosts.forEach((name, state) -> limits.put(name, state.getLimit()));
+        return limits;
+    }
+
+    // Lower-cased host of a URL, or an empty string if it cannot be parsed (shares one bucket).
+    public static String hostOf(String url) {
+        try {
+            String host = new URI(url).getHost();
+            return host == null ? "" : host.toLowerCase(Locale.ROOT);
+        } catch (URISyntaxException e) {
+            return "";
+        }
+    }
+
+    // Milliseconds to wait from a Retry-After header (seconds or an HTTP date), or 0 if it can't be parsed.
+    static long parseRetryAfterMillis(String retryAfter) {
+        String value = retryAfter.trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            // not a number, try a date
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * A granted connection slot for one host. Closing it lets the next request
+     * to the same host through. The outcome of the request should be reported
+     * before, so an adaptive limit can follow the host's responses.
+     */
+    public static class Permit implements AutoCloseable {
+
+        private final HostState host;
+        private final boolean probe; // the half-open request that decides about the circuit breaker
+        private long startNanos; // when the request was let through
+        private boolean reported;
+        private boolean released;
+
+        private Permit(HostState host, boolean probe) {
+            this.host = host;
+            this.probe = probe;
+        }
+
+        /**
+         * Reports the response to the request, once its headers have arrived.
+         *
+         * @param retryAfter the Retry-After header, or null
+         */
+        public void recordResponse(int statusCode, String retryAfter) {
+            reported = true;
+            long retryAfterMillis = retryAfter != null
+                    ? Math.min(parseRetryAfterMillis(retryAfter), MAX_RETRY_AFTER_MILLIS)
+                    : 0;
+            if (statusCode >= 500) {
+                host.recordFailure(probe);
+            } else if (statusCode != HTTP_TOO_MANY_REQUESTS) { // rate limiting says nothing about health
+                host.recordSuccess();
+            } else if (probe) {
+                host.postponeProbe(retryAfterMillis); // still undecided, probe again later
+            }
+            if (retryAfter != null) {
+                host.pause(retryAfterMillis);
+            }
+            if (statusCode == HTTP_TOO_MANY_REQUESTS || statusCode == HTTP_SERVICE_UNAVAILABLE) {
+                host.recordPushback(startNanos);
+            } else {
+                host.recordLatency(System.nanoTime() - startNanos);
+            }
+        }
+
+        // Reports a network error or timeout, which counts as pushback.
+        public void recordFailure() {
+            reported = true;
+            host.recordFailure(probe);
+            host.recordPushback(startNanos);
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                if (probe && !reported) {
+                    host.abandonProbe(); // e.g. interrupted, let the next request probe
+                }
+                host.releaseConnection();
+            }
+        }
+    }
+
+    // Rate limiting state of a single host.
+    private class HostState {
+
+        private final String name;
+        private final TokenBucket tokenBucket;
+        private long nextStartNanos; // earliest start of the next request (minimum delay)
+
+        // Connection limit, guarded by "this"
+        private double limit; // fractional while growing, the integer part counts
+        private int connections; // in use
+        private long baselineLatencyNanos; // about the fastest response seen, 0 before the first
+        private long lastDecreaseNanos; // start of the request whose pushback cut the limit last
+
+        // Circuit breaker, guarded by "this"
+        private int consecutiveFailures;
+        private long openUntilNanos; // when the breaker is open, the earliest probe
+        private boolean open;
+        private boolean probing; // the probe request is in flight
+        private long cooldownNanos = breakerCooldownNanos;
+
+        private HostState(String name) {
+            long now = System.nanoTime();
+            this.name = name;
+            this.tokenBucket = requestsPerSecond > 0
+                    ? new TokenBucket(requestsPerSecond, Math.max(1, requestsPerSecond), now)
+                    : null; // unlimited
+            this.nextStartNanos = now;
+            this.limit = adaptive ? 1 : maxConnectionsPerHost;
+            this.lastDecreaseNanos = now;
+        }
+
+        /**
+         * Fails if the breaker is open, unless it is time for the probe.
+         *
+         * @return true if the caller sends the probe request
+         */
+        private synchronized boolean checkCircuit() throws HostUnavailableException {
+            if (!open) {
+                return false;
+            }
+            long remainingNanos = openUntilNanos - System.nanoTime();
+            if (remainingNanos > 0) {
+                throw new HostUnavailableException(name, TimeUnit.NANOSECONDS.toMillis(remainingNanos));
+            }
+            if (probing) {
+                // the probe's outcome is open, expect another cooldown
+                throw new HostUnavailableException(name, TimeUnit.NANOSECONDS.toMillis(cooldownNanos));
+            }
+            probing = true;
+            logger.log(Level.DEBUG, "Probing {0} after its cooldown", name);
+            return true;
+        }
+
+        private synchronized boolean isCircuitClosed() {
+            return !open;
+        }
+
+        private synchronized void recordSuccess() {
+            consecutiveFailures = 0;
+            if (open) {
+                logger.log(Level.INFO, "Host {0} is answering again, resuming requests", name);
+                open = false;
+                probing = false;
+                cooldownNanos = breakerCooldownNanos;
+            }
+        }
+
+        private synchronized void recordFailure(boolean probe) {
+            consecutiveFailures++;
+            if (probe) {
+                probing = false;
+                cooldownNanos = Math.min(cooldownNanos * 2, TimeUnit.MILLISECONDS.toNanos(MAX_BREAKER_COOLDOWN_MILLIS));
+                openUntilNanos = System.nanoTime() + cooldownNanos;
+                logger.log(Level.DEBUG, "Probe of {0} failed, pausing it for {1} ms", name,
+                        TimeUnit.NANOSECONDS.toMillis(cooldownNanos));
+            } else if (!open && breakerThreshold > 0 && consecutiveFailures >= breakerThreshold) {
+                open = true;
+                openUntilNanos = System.nanoTime() + cooldownNanos;
+                logger.log(Level.WARNING, "Host {0} failed {1} requests in a row, pausing it for {2} ms", name,
+                        consecutiveFailures, TimeUnit.NANOSECONDS.toMillis(cooldownNanos));
+            }
+        }
+
+        private synchronized void abandonProbe() {
+            probing = false;
+        }
+
+        // The probe was rate limited: keep the breaker open for another cooldown, or the Retry-After if later.
+        private synchronized void postponeProbe(long retryAfterMillis) {
+            probing = false;
+            openUntilNanos = System.nanoTime()
+                    + Math.max(cooldownNanos, TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+            logger.log(Level.DEBUG, "Probe of {0} was rate limited, probing again in {1} ms", name,
+                    TimeUnit.NANOSECONDS.toMillis(openUntilNanos - System.nanoTime()));
+        }
+
+        private synchronized void acquireConnection() throws InterruptedException {
+            while (connections >= getLimit()) {
+                wait();
+            }
+            connections++;
+        }
+
+        private synchronized void releaseConnection() {
+            connections--;
+            notify(); // a lower limit may keep it waiting, but then more releases follow
+        }
+
+        private synchronized int getLimit() {
+            return (int) limit;
+        }
+
+        private synchronized void pause(long millis) {
+            if (millis > 0) {
+                logger.log(Level.DEBUG, "Pausing requests to {0} for {1} ms (Retry-After)", name, millis);
+                nextStartNanos = Math.max(nextStartNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+            }
+        }
+
+        private synchronized void recordLatency(long latencyNanos) {
+            if (!adaptive) {
+                return;
+            }
+            if (baselineLatencyNanos == 0 || latencyNanos < baselineLatencyNanos) {
+                baselineLatencyNanos = latencyNanos;
+            } else {
+                // drift up slowly, so one lucky response doesn't set the baseline forever
+                baselineLatencyNanos += (latencyNanos - baselineLatencyNanos) / 100;
+            }
+            boolean stable = latencyNanos <= baselineLatencyNanos * LATENCY_TOLERANCE + LATENCY_SLACK_NANOS;
+            if (stable && limit < maxConnectionsPerHost) {
+                int oldLimit = getLimit();
+                limit = Math.min(maxConnectionsPerHost, limit + 1 / limit); // +1 per round of responses
+                if (getLimit() > oldLimit) {
+                    logger.log(Level.DEBUG, "Raised the connection limit of {0} to {1}", name, getLimit());
+                    notify();
+                }
+            }
+        }
+
+        private synchronized void recordPushback(long requestStartNanos) {
+            if (!adaptive || requestStartNanos < lastDecreaseNanos) {
+                return; // sent before the last cut, that one already accounts for it
+            }
+            lastDecreaseNanos = System.nanoTime();
+            limit = Math.max(1, limit * DECREASE_FACTOR);
+            logger.log(Level.DEBUG, "Host {0} pushed back, lowered its connection limit to {1}", name, getLimit());
+        }
+
+        // Reserves the start time of the next request to this host.
+        private synchronized long reserveStart() {
+            long now = System.nanoTime();
+            long startNanos = tokenBucket != null ? tokenBucket.reserve(now) : now;
+            startNanos = Math.max(startNanos, nextStartNanos);
+            nextStartNanos = startNanos + minRequestDelayNanos;
+            return startNanos;
+        }
+    }
+}
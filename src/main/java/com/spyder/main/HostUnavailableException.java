@@ -0,0 +1,31 @@
+package com.spyder.main;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link HostScheduler} instead of sending a request to a host whose
+ * circuit breaker is open, because its recent requests kept failing.
+ */
+public class HostUnavailableException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    // Instance fields
+    private final String host;
+    private final long retryAfterMillis;
+
+    public HostUnavailableException(String host, long retryAfterMillis) {
+        super("Host is failing, requests paused for " + retryAfterMillis + " ms: " + host);
+        this.host = host;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    // Time until the host is probed again.
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
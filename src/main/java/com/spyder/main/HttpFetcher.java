@@ -0,0 +1,585 @@
+package com.spyder.main;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The single network entry point used for pages, images and file downloads.
+ *
+ * All requests share one {@link HttpClient}, so keep-alive connections are
+ * pooled and reused across page and image requests, and HTTP/2 connections are
+ * multiplexed where the server supports it. Every request first passes through
+ * the {@link HostScheduler} to respect the per-host limits.
+ *
+ * Responses are requested compressed (see
+ * {@link CrawlConfig#setAcceptEncoding(String)}) and decoded while they are
+ * read, so callers always see the decoded body and no compressed copy is kept
+ * in memory.
+ */
+public class HttpFetcher {
+
+    // Static fields
+    private static final Logger logger = System.getLogger(HttpFetcher.class.getName());
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+    private static HttpFetcher defaultFetcher; // lazily created, see getDefault()
+    // closes response bodies that stall, see StallTimeoutInputStream
+    private static final ScheduledThreadPoolExecutor bodyWatchdog = createBodyWatchdog();
+
+    // Instance fields
+    private final HttpClient client;
+    private final HostScheduler hostScheduler;
+    private final Duration readTimeout;
+    private final String userAgent;
+    private final String acceptEncoding;
+    private final int maxPageBytes;
+    private final CrawlMetrics metrics;
+
+    public HttpFetcher(CrawlConfig config) {
+        this(config, new CrawlMetrics());
+    }
+
+    public HttpFetcher(CrawlConfig config, CrawlMetrics metrics) {
+        this(config, new HostScheduler(config), metrics);
+    }
+
+    public HttpFetcher(CrawlConfig config, HostScheduler hostScheduler, CrawlMetrics metrics) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2) // falls back to HTTP/1.1 if the server can't
+                .connectTimeout(Duration.ofMillis(config.getConnectTimeoutMillis()))
+                .followRedirects(config.getRedirectPolicy())
+                .build();
+        this.hostScheduler = hostScheduler;
+        this.readTimeout = Duration.ofMillis(config.getReadTimeoutMillis());
+        this.userAgent = config.getUserAgent();
+        this.acceptEncoding = config.getAcceptEncoding();
+        this.maxPageBytes = config.getMaxPageBytes();
+        this.metrics = metrics;
+    }
+
+    /**
+     * Shared fetcher with default settings, for code that runs outside a crawl
+     * (e.g. {@link Utils#downloadFile(String, String)}).
+     */
+    public static synchronized HttpFetcher getDefault() {
+        if (defaultFetcher == null) {
+            defaultFetcher = new HttpFetcher(new CrawlConfig());
+        }
+        return defaultFetcher;
+    }
+
+    public HostScheduler getHostScheduler() {
+        return hostScheduler;
+    }
+
+    // Request counts and the HOST_WAIT, TTFB and DOWNLOAD phases of every request end up here.
+    public CrawlMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Fetches a URL and keeps the whole body in memory (used for HTML pages).
+     *
+     * @throws FetchException if the server answers with an error status
+     */
+    public FetchResponse fetch(String url) throws IOException, InterruptedException {
+        return fetch(url, Collections.emptyMap());
+    }
+
+    /**
+     * Fetches a URL with extra request headers. With conditional headers
+     * (If-None-Match, If-Modified-Since) the server may answer "304 Not
+     * Modified", which is returned as a response without a body.
+     *
+     * @throws FetchException if the server answers with an error status
+     */
+    public FetchResponse fetch(String url, Map<String, String> requestHeaders)
+            throws IOException, InterruptedException {
+        try (OpenResponse openResponse = open(url, requestHeaders)) {
+            if (openResponse.isNotModified()) {
+                return toFetchResponse(url, openResponse.response, null);
+            }
+            byte[] body;
+            try (CrawlMetrics.PhaseTimer timer = metrics.time(CrawlPhase.DOWNLOAD, url)) {
+                body = openResponse.body().readAllBytes();
+                timer.setBytes(body.length);
+            }
+            metrics.add(CrawlMetrics.Counter.BYTES_DOWNLOADED, body.length);
+            metrics.add(CrawlMetrics.Counter.BYTES_RECEIVED, openResponse.getReceivedBytes());
+            return toFetchResponse(url, openResponse.response, body);
+        }
+    }
+
+    /**
+     * Fetches an HTML page the crawler is about to parse. Unlike
+     * {@link #fetch(String, Map)}, the body is only read if the Content-Type
+     * says it is text (see {@link FetchResponse#isTextContent()}), so a link to
+     * a large video or archive costs no more than its headers, and it is
+     * truncated after {@link CrawlConfig#getMaxPageBytes()} bytes.
+     *
+     * @return the response, without a body if it is not text or not modified
+     * @throws FetchException if the server answers with an error status
+     */
+    public FetchResponse fetchPage(String url, Map<String, String> requestHeaders)
+            throws IOException, InterruptedException {
+        try (OpenResponse openResponse = open(url, requestHeaders)) {
+            FetchResponse headersOnly = toFetchResponse(url, openResponse.response, null);
+            if (openResponse.isNotModified() || !headersOnly.isTextContent()) {
+                return headersOnly; // closing discards the body without reading it
+            }
+            byte[] body;
+            try (CrawlMetrics.PhaseTimer timer = metrics.time(CrawlPhase.DOWNLOAD, url)) {
+                // one byte more than the limit tells whether anything was cut off
+                body = openResponse.body().readNBytes(maxPageBytes + 1);
+                if (body.length > maxPageBytes) {
+                    logger.log(Level.WARNING, "Page larger than {0} bytes, truncated: {1}", maxPageBytes, url);
+                    body = Arrays.copyOf(body, maxPageBytes);
+                }
+                timer.setBytes(body.length);
+            }
+            metrics.add(CrawlMetrics.Counter.BYTES_DOWNLOADED, body.length);
+            metrics.add(CrawlMetrics.Counter.BYTES_RECEIVED, openResponse.getReceivedBytes());
+            return toFetchResponse(url, openResponse.response, body);
+        }
+    }
+
+    /**
+     * Fetches a URL and streams the body straight into a file (used for images
+     * and downloads), replacing the file if it exists.
+     *
+     * @throws FetchException if the server answers with an error status
+     */
+    public FetchResponse download(String url, Path targetFilePath) throws IOException, InterruptedException {
+        try (OutputStream outputStream = Files.newOutputStream(targetFilePath)) {
+            return download(url, outputStream);
+        }
+    }
+
+    /**
+     * Fetches a URL and streams the body into the given stream, which is left
+     * open. Lets callers hash or otherwise inspect the bytes on the way to disk.
+     *
+     * @throws FetchException if the server answers with an error status
+     */
+    public FetchResponse download(String url, OutputStream outputStream) throws IOException, InterruptedException {
+        return download(url, outputStream, Collections.emptyMap());
+    }
+
+    /**
+     * Same as {@link #download(String, OutputStream)} with extra request
+     * headers. Nothing is written if the server answers "304 Not Modified".
+     */
+    public FetchResponse download(String url, OutputStream outputStream, Map<String, String> requestHeaders)
+            throws IOException, InterruptedException {
+        try (OpenResponse openResponse = open(url, requestHeaders)) {
+            if (openResponse.isNotModified()) {
+                return toFetchResponse(url, openResponse.response, null);
+            }
+            InputStream body = openResponse.body();
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            long totalBytes = 0;
+            try (CrawlMetrics.PhaseTimer timer = metrics.time(CrawlPhase.DOWNLOAD, url)) {
+                int bytesRead;
+                while ((bytesRead = body.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, bytesRead);
+                    totalBytes += bytesRead;
+                }
+                timer.setBytes(totalBytes);
+            }
+            metrics.add(CrawlMetrics.Counter.BYTES_DOWNLOADED, totalBytes);
+            metrics.add(CrawlMetrics.Counter.BYTES_RECEIVED, openResponse.getReceivedBytes());
+            return toFetchResponse(url, openResponse.response, null);
+        }
+    }
+
+    /**
+     * Fetches a URL and hands the decoded body to a reader as a stream, for
+     * large responses that are parsed on the fly (e.g. sitemaps). The stream
+     * is closed afterwards.
+     *
+     * @throws FetchException if the server answers with an error status
+     */
+    public FetchResponse read(String url, BodyReader reader) throws IOException, InterruptedException {
+        return read(url, Collections.emptyMap(), (response, body) -> reader.read(body));
+    }
+
+    /**
+     * Same as {@link #read(String, BodyReader)} with extra request headers,
+     * for readers that need the status and headers before the body, such as
+     * ranged downloads that check what range the server actually sent.
+     *
+     * @throws FetchException if the server answers with an error status
+     */
+    public FetchResponse read(String url, Map<String, String> requestHeaders, ResponseReader reader)
+            throws IOException, InterruptedException {
+        try (OpenResponse openResponse = open(url, requestHeaders)) {
+            CountingInputStream body = new CountingInputStream(openResponse.body());
+            try (CrawlMetrics.PhaseTimer timer = metrics.time(CrawlPhase.DOWNLOAD, url)) {
+                reader.read(toFetchResponse(url, openResponse.response, null), body);
+                timer.setBytes(body.count);
+            }
+            metrics.add(CrawlMetrics.Counter.BYTES_DOWNLOADED, body.count);
+            metrics.add(CrawlMetrics.Counter.BYTES_RECEIVED, openResponse.getReceivedBytes());
+            return toFetchResponse(url, openResponse.response, null);
+        }
+    }
+
+    // Same as download(), for callers that can only throw IOException.
+    public FetchResponse downloadUninterruptibly(String url, Path targetFilePath) throws IOException {
+        try {
+            return download(url, targetFilePath);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // keep the interrupt visible to the caller
+            throw new InterruptedIOException("Download interrupted: " + url);
+        }
+    }
+
+    @SuppressWarnings("try")
+    private OpenResponse open(String url, Map<String, String> requestHeaders)
+            throws IOException, InterruptedException {
+        HttpRequest request;
+        try {
+            HttpRequest.Builder requestBuilder = HttpRequest.newBuilder(new URI(url))
+                    .timeout(readTimeout)
+                    .header("User-Agent", userAgent)
+                    .header("Accept-Encoding", acceptEncoding)
+                    .GET();
+            requestHeaders.forEach(requestBuilder::setHeader); // may override the defaults
+            request = requestBuilder.build();
+        } catch (Exception e) { // URISyntaxException, or IllegalArgumentException for unsupported schemes
+            throw new IOException("Invalid URL syntax: " + url, e);
+        }
+
+        // the connection slot stays taken until the body has been read,
+        // so the permit is released when the OpenResponse is closed
+        HostScheduler.Permit permit;
+        try (CrawlMetrics.PhaseTimer timer = metrics.time(CrawlPhase.HOST_WAIT, url)) {
+            permit = hostScheduler.acquire(url);
+        }
+        metrics.increment(CrawlMetrics.Counter.REQUESTS);
+        HttpResponse<InputStream> response;
+        // java.net.http does not report DNS and connect times, they are part of the time to first byte
+        try (CrawlMetrics.PhaseTimer timer = metrics.time(CrawlPhase.TTFB, url)) {
+            response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            if (!(e instanceof InterruptedException)) {
+                metrics.increment(CrawlMetrics.Counter.REQUEST_ERRORS);
+                permit.recordFailure();
+            }
+            permit.close();
+            throw e;
+        }
+
+        OpenResponse openResponse = new OpenResponse(response, permit,
+                new StallTimeoutInputStream(response.body(), readTimeout.toMillis(), url));
+        int statusCode = response.statusCode();
+        // lets an adaptive host limit react, and honors Retry-After
+        permit.recordResponse(statusCode, response.headers().firstValue("Retry-After").orElse(null));
+        if (statusCode == HTTP_TOO_MANY_REQUESTS || statusCode == HTTP_SERVICE_UNAVAILABLE) {
+            metrics.increment(CrawlMetrics.Counter.REQUESTS_THROTTLED);
+        }
+        if ((statusCode < 200 || statusCode >= 300) && !openResponse.isNotModified()) {
+            metrics.increment(CrawlMetrics.Counter.REQUEST_ERRORS);
+            openResponse.close(); // discard the error page
+            throw new FetchException(url, statusCode);
+        }
+        return openResponse;
+    }
+
+    private static FetchResponse toFetchResponse(String url, HttpResponse<?> response, byte[] body) {
+        return new FetchResponse(url, response.uri().toString(), response.statusCode(), response.headers(), body);
+    }
+
+    /**
+     * Consumes a response body, see {@link HttpFetcher#read(String, BodyReader)}.
+     */
+    public interface BodyReader {
+        void read(InputStream body) throws IOException;
+    }
+
+    /**
+     * Consumes a response, see
+     * {@link HttpFetcher#read(String, Map, ResponseReader)}. The response has
+     * the status and headers, but no body.
+     */
+    public interface ResponseReader {
+        void read(FetchResponse response, InputStream body) throws IOException;
+    }
+
+    /**
+     * Wraps a response body so it is decoded while it is read. Codings are
+     * undone in the reverse order of the Content-Encoding header.
+     *
+     * @throws IOException for encodings that can't be decoded, rather than
+     *                     saving garbage
+     */
+    static InputStream decode(InputStream body, List<String> contentEncodings) throws IOException {
+        List<String> codings = new ArrayList<>();
+        for (String header : contentEncodings) {
+            for (String coding : header.split(",")) {
+                if (!coding.trim().isEmpty()) {
+                    codings.add(coding.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+
+        InputStream decoded = body;
+        for (int i = codings.size() - 1; i >= 0; i--) {
+            String coding = codings.get(i);
+            if (coding.equals("identity")) {
+                continue;
+            }
+            PushbackInputStream input = new PushbackInputStream(decoded, 2);
+            int first = input.read();
+            if (first == -1) {
+                return input; // empty body, nothing to decode
+            }
+            int second = input.read();
+            if (second != -1) {
+                input.unread(second);
+            }
+            input.unread(first);
+            switch (coding) {
+                case "gzip":
+                case "x-gzip":
+                    decoded = new GZIPInputStream(input, COPY_BUFFER_SIZE);
+                    break;
+                case "deflate":
+                    // "deflate" should be zlib-wrapped, but some servers send raw deflate data
+                    boolean zlibWrapped = second != -1 && (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+                    Inflater inflater = new Inflater(!zlibWrapped);
+                    decoded = new InflaterInputStream(input, inflater, COPY_BUFFER_SIZE) {
+                        @Override
+                        public void close() throws IOException {
+                            try {
+                                super.close();
+                            } finally {
+                                inflater.end(); // not done by the stream for a custom inflater
+                            }
+                        }
+                    };
+                    break;
+                default:
+                    throw new IOException("Unsupported Content-Encoding: " + coding);
+            }
+        }
+        return decoded;
+    }
+
+    // A response whose body has not been read yet, together with its connection permit.
+    private static class OpenResponse implements AutoCloseable {
+
+        private final HttpResponse<InputStream> response;
+        private final HostScheduler.Permit permit;
+        private final CountingInputStream receivedBody;
+        private InputStream decodedBody; // created on first use, decoding reads the body
+
+        private OpenResponse(HttpResponse<InputStream> response, HostScheduler.Permit permit, InputStream body) {
+            this.response = response;
+            this.permit = permit;
+            this.receivedBody = new CountingInputStream(body);
+        }
+
+        private boolean isNotModified() {
+            return response.statusCode() == HTTP_NOT_MODIFIED;
+        }
+
+        private InputStream body() throws IOException {
+            if (decodedBody == null) {
+                decodedBody = decode(receivedBody, response.headers().allValues("Content-Encoding"));
+            }
+            return decodedBody;
+        }
+
+        // bytes of the body as sent by the server, before decoding
+        private long getReceivedBytes() {
+            return receivedBody.count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                response.body().close(); // returns the connection to the pool
+            } finally {
+                if (decodedBody != null && decodedBody != receivedBody) {
+                    decodedBody.close(); // releases the native memory of the inflater
+                }
+                permit.close();
+            }
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor createBodyWatchdog() {
+        ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "crawly-body-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog.setRemoveOnCancelPolicy(true); // closed streams don't leave their checks behind
+        return watchdog;
+    }
+
+    /*
+     * Fails a read that gets no data for the read timeout. The request timeout
+     * of java.net.http only covers the wait for the headers, so a server that
+     * stalls in the middle of the body would otherwise block the reading
+     * thread, and the host's connection slot, forever. A watchdog closes the
+     * stream, which wakes up the blocked read.
+     *
+     * Reads only record their progress; the watchdog checks it about once per
+     * timeout, so a stream has at most one pending check however many reads
+     * it takes. Time between reads, while the caller is busy, doesn't count.
+     */
+    private static class StallTimeoutInputStream extends FilterInputStream {
+
+        private final long timeoutNanos;
+        private final String url;
+        private volatile long lastProgressNanos;
+        private volatile boolean reading;
+        private volatile boolean timedOut;
+        private volatile boolean closed;
+        private ScheduledFuture<?> watchdog; // started by the first read, guarded by "this"
+
+        private StallTimeoutInputStream(InputStream in, long timeoutMillis, String url) {
+            super(in);
+            this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            this.url = url;
+        }
+
+        @Override
+        public int read() throws IOException {
+            startRead();
+            try {
+                return super.read();
+            } catch (IOException e) {
+                throw timedOut ? timeoutException() : e;
+            } finally {
+                endRead();
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            startRead();
+            try {
+                return super.read(buffer, offset, length);
+            } catch (IOException e) {
+                throw timedOut ? timeoutException() : e;
+            } finally {
+                endRead();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            synchronized (this) {
+                if (watchdog != null) {
+                    watchdog.cancel(false);
+                }
+            }
+            super.close();
+        }
+
+        private void startRead() {
+            lastProgressNanos = System.nanoTime();
+            reading = true;
+            synchronized (this) {
+                if (watchdog == null && !closed) {
+                    scheduleCheck(timeoutNanos);
+                }
+            }
+        }
+
+        private void endRead() {
+            lastProgressNanos = System.nanoTime();
+            reading = false;
+        }
+
+        // guarded by "this"
+        private void scheduleCheck(long delayNanos) {
+            watchdog = bodyWatchdog.schedule(this::check, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        // Closes the stream if a read has been waiting for the timeout, or checks again when it could have.
+        private void check() {
+            long idleNanos = System.nanoTime() - lastProgressNanos;
+            if (reading && idleNanos >= timeoutNanos) {
+                timedOut = true;
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // closing is all that is left to do
+                }
+                return;
+            }
+            synchronized (this) {
+                if (!closed) {
+                    scheduleCheck(reading ? timeoutNanos - idleNanos : timeoutNanos);
+                }
+            }
+        }
+
+        private HttpTimeoutException timeoutException() {
+            return new HttpTimeoutException(
+                    "No data received for " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms: " + url);
+        }
+    }
+
+    // Counts the bytes read through it.
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int bytesRead = super.read(buffer, offset, length);
+            if (bytesRead > 0) {
+                count += bytesRead;
+            }
+            return bytesRead;
+        }
+    }
+}
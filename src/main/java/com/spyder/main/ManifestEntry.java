@@ -0,0 +1,71 @@
+package com.spyder.main;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a previous crawl stored for one URL: the HTTP validators needed for a
+ * conditional request, the hash of the content, where the copy was saved and,
+ * for pages, the internal links the page contained.
+ */
+public class ManifestEntry {
+
+    // Instance fields
+    private final String url;
+    private final String etag; // null if the server sent none
+    private final String lastModified; // null if the server sent none
+    private final String contentHash;
+    private final String localPath; // relative to the save location
+    private final List<String> links;
+
+    public ManifestEntry(String url, String etag, String lastModified, String contentHash, String localPath,
+            List<String> links) {
+        this.url = url;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+        this.localPath = localPath;
+        this.links = Collections.unmodifiableList(links);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public String getLocalPath() {
+        return localPath;
+    }
+
+    public List<String> getLinks() {
+        return links;
+    }
+
+    /**
+     * Request headers that ask the server to answer "304 Not Modified" if the
+     * resource is unchanged since this entry was recorded.
+     */
+    public Map<String, String> getConditionalHeaders() {
+        Map<String, String> headers = new LinkedHashMap<>();
+        if (etag != null) {
+            headers.put("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            headers.put("If-Modified-Since", lastModified);
+        }
+        return headers;
+    }
+}
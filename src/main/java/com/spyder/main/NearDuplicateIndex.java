@@ -0,0 +1,102 @@
+package com.spyder.main;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds pages whose {@link SimHash} fingerprint is within a Hamming distance
+ * of a page seen before.
+ *
+ * The 64 bits are split into threshold + 1 blocks. Two fingerprints that
+ * differ in at most threshold bits agree on at least one whole block
+ * (pigeonhole principle), so each block value is indexed in a hash map and
+ * only fingerprints sharing a block are compared, instead of all of them.
+ */
+public class NearDuplicateIndex {
+
+    // Static constants
+    public static final int MAX_THRESHOLD = 15; // blocks of at least 4 bits
+
+    // Instance fields, guarded by "this"
+    private final int threshold;
+    private final int[] blockShifts;
+    private final long[] blockMasks;
+    private final List<Map<Long, List<Integer>>> blockIndexes = new ArrayList<>();
+    private final List<Long> fingerprints = new ArrayList<>();
+    private final List<String> urls = new ArrayList<>();
+    private final Map<String, String> duplicates = new LinkedHashMap<>(); // duplicate URL -> first URL
+
+    /**
+     * @param threshold the largest number of differing bits that still counts
+     *                  as a near-duplicate
+     */
+    public NearDuplicateIndex(int threshold) {
+        if (threshold < 0 || threshold > MAX_THRESHOLD) {
+            throw new IllegalArgumentException("Threshold must be between 0 and " + MAX_THRESHOLD + ": " + threshold);
+        }
+        this.threshold = threshold;
+        int blockCount = threshold + 1;
+        blockShifts = new int[blockCount];
+        blockMasks = new long[blockCount];
+        int shift = 0;
+        for (int block = 0; block < blockCount; block++) {
+            // spread the 64 bits as evenly as possible
+            int bits = (Long.SIZE - shift) / (blockCount - block);
+            blockShifts[block] = shift;
+            blockMasks[block] = bits == Long.SIZE ? -1L : (1L << bits) - 1;
+            shift += bits;
+            blockIndexes.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Looks up a page and adds it if it is not a near-duplicate, in one step,
+     * so that of two near-duplicates processed at the same time only one is
+     * kept.
+     *
+     * @return the URL of the earlier page this one duplicates, or null if it
+     *         is new
+     */
+    public synchronized String findOrAdd(long fingerprint, String url) {
+        for (int block = 0; block < blockShifts.length; block++) {
+            List<Integer> candidates = blockIndexes.get(block).get(blockValue(fingerprint, block));
+            if (candidates == null) {
+                continue;
+            }
+            for (int candidate : candidates) {
+                if (SimHash.distance(fingerprint, fingerprints.get(candidate)) <= threshold) {
+                    String original = urls.get(candidate);
+                    duplicates.put(url, original);
+                    return original;
+                }
+            }
+        }
+
+        int entry = fingerprints.size();
+        fingerprints.add(fingerprint);
+        urls.add(url);
+        for (int block = 0; block < blockShifts.length; block++) {
+            blockIndexes.get(block).computeIfAbsent(blockValue(fingerprint, block), key -> new ArrayList<>(1))
+                    .add(entry);
+        }
+        return null;
+    }
+
+    // Distinct pages indexed so far.
+    public synchronized int size() {
+        return fingerprints.size();
+    }
+
+    // Every duplicate found so far, mapped to the page it duplicates, in the order found.
+    public synchronized Map<String, String> getDuplicates() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(duplicates));
+    }
+
+    private long blockValue(long fingerprint, int block) {
+        return (fingerprint >>> blockShifts[block]) & blockMasks[block];
+    }
+}
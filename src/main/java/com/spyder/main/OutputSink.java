@@ -0,0 +1,53 @@
+package com.spyder.main;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.jsoup.nodes.Document;
+
+/**
+ * Where a crawl stores the pages it fetched.
+ *
+ * {@link WebPageSaver} mirrors the site into a browsable directory tree;
+ * {@link WarcWriter} appends everything to WARC archive files. The crawler
+ * calls {@link #open()} before the first page and {@link #close()} after the
+ * last; {@link #savePage} is called concurrently by the crawl workers. A
+ * closed sink releases its threads, and can be opened again for another crawl.
+ */
+public interface OutputSink extends AutoCloseable {
+
+    // Root directory of the output; the crawl state is kept in its metadata folder.
+    String getSaveLocation();
+
+    /**
+     * What previous crawls saved, for revalidating unchanged pages with
+     * conditional requests.
+     *
+     * @return null if the sink does not support incremental crawls
+     */
+    CrawlManifest getManifest();
+
+    // Shares the connection pool and per-host limits with the crawler (for images).
+    void setHttpFetcher(HttpFetcher httpFetcher);
+
+    void setMetrics(CrawlMetrics metrics);
+
+    void open() throws IOException;
+
+    /**
+     * Stores a fetched HTML page, and the images it references.
+     *
+     * @param response the page as fetched, including the raw body
+     * @param webpage  the parsed page, which the sink may modify
+     * @param links    the links the crawler extracted from the page
+     * @return completes once the page is stored, or exceptionally if it could
+     *         not be
+     */
+    CompletableFuture<Void> savePage(FetchResponse response, Document webpage, List<String> links)
+            throws InterruptedException;
+
+    // Finishes pending writes, persists any indexes and stops the sink's threads.
+    @Override
+    void close() throws IOException;
+}
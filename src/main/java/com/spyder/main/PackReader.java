@@ -0,0 +1,230 @@
+package com.spyder.main;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads files out of a pack written by {@link PackWriter}, without unpacking
+ * it.
+ *
+ * The index is memory-mapped and sorted by path, so a lookup is a binary
+ * search that only touches a few pages of it; file contents are read from
+ * the pack with positional reads. Safe for concurrent use.
+ */
+public class PackReader implements AutoCloseable {
+
+    // Static constants
+    static final int INDEX_MAGIC = 0x43525749; // "CRWI"
+    static final int INDEX_HEADER_BYTES = 24; // magic, version, entry count, reserved, data end
+    static final int INDEX_ENTRY_BYTES = 24; // data offset, data length, path offset, path length
+    private static final int MAX_READ_BYTES = Integer.MAX_VALUE - 8;
+
+    // Instance fields
+    private final FileChannel packChannel;
+    private final MappedByteBuffer index;
+    private final int entryCount;
+    private final long dataEnd;
+    private final int pathsStart;
+
+    // Receives every indexed file, see forEachEntry().
+    interface EntryVisitor {
+        void visit(String path, long offset, long length);
+    }
+
+    public PackReader(Path packFile, Path indexFile) throws IOException {
+        try (FileChannel indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+        }
+        if (index.capacity() < INDEX_HEADER_BYTES || index.getInt(0) != INDEX_MAGIC
+                || index.getInt(4) != PackWriter.FORMAT_VERSION) {
+            throw new IOException("Not a pack index: " + indexFile);
+        }
+        entryCount = index.getInt(8);
+        dataEnd = index.getLong(16);
+        pathsStart = INDEX_HEADER_BYTES + entryCount * INDEX_ENTRY_BYTES;
+        packChannel = FileChannel.open(packFile, StandardOpenOption.READ);
+    }
+
+    // Opens the pack in a save location.
+    public static PackReader open(Path saveLocation) throws IOException {
+        return new PackReader(saveLocation.resolve(PackWriter.getPackFileName()),
+                saveLocation.resolve(PackWriter.getIndexFileName()));
+    }
+
+    public int size() {
+        return entryCount;
+    }
+
+    public boolean contains(String path) {
+        return find(path) >= 0;
+    }
+
+    // Size of a stored file, or -1 if it is not in the pack.
+    public long getLength(String path) {
+        int entry = find(path);
+        return entry >= 0 ? entryLength(entry) : -1;
+    }
+
+    /**
+     * Reads a whole file into memory.
+     *
+     * @return the content, or null if the file is not in the pack
+     */
+    public byte[] read(String path) throws IOException {
+        int entry = find(path);
+        if (entry < 0) {
+            return null;
+        }
+        long length = entryLength(entry);
+        if (length > MAX_READ_BYTES) {
+            throw new IOException("File too large to read into memory, use copyTo(): " + path);
+        }
+        ByteBuffer content = ByteBuffer.allocate((int) length);
+        long offset = entryOffset(entry);
+        while (content.hasRemaining()) {
+            if (packChannel.read(content, offset + content.position()) < 0) {
+                throw new IOException("Pack is truncated at: " + path);
+            }
+        }
+        return content.array();
+    }
+
+    /**
+     * Streams a file into the given stream, which is left open.
+     *
+     * @return false if the file is not in the pack
+     */
+    public boolean copyTo(String path, OutputStream outputStream) throws IOException {
+        int entry = find(path);
+        if (entry < 0) {
+            return false;
+        }
+        transfer(entryOffset(entry), entryLength(entry), Channels.newChannel(outputStream));
+        return true;
+    }
+
+    // All stored paths, in index (sorted) order.
+    public List<String> getPaths() {
+        List<String> paths = new ArrayList<>(entryCount);
+        for (int entry = 0; entry < entryCount; entry++) {
+            paths.add(entryPath(entry));
+        }
+        return paths;
+    }
+
+    /**
+     * Unpacks every file into the directory layout of the mirror, e.g. to
+     * browse a packed crawl.
+     *
+     * @return the number of files written
+     */
+    public int exportTo(Path directory) throws IOException {
+        Path root = directory.toAbsolutePath().normalize();
+        for (int entry = 0; entry < entryCount; entry++) {
+            String path = entryPath(entry);
+            Path target = root.resolve(path).normalize();
+            if (!target.startsWith(root) || target.equals(root)) {
+                throw new IOException("Refusing to export outside the target directory: " + path);
+            }
+            Files.createDirectories(target.getParent());
+            try (FileChannel output = FileChannel.open(target, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                transfer(entryOffset(entry), entryLength(entry), output);
+            }
+        }
+        return entryCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        packChannel.close();
+    }
+
+    // Package-private methods, for PackWriter
+    long getDataEnd() {
+        return dataEnd;
+    }
+
+    void forEachEntry(EntryVisitor visitor) {
+        for (int entry = 0; entry < entryCount; entry++) {
+            visitor.visit(entryPath(entry), entryOffset(entry), entryLength(entry));
+        }
+    }
+
+    // Private methods
+    // Binary search over the sorted entries, comparing UTF-8 bytes in place.
+    private int find(String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = entryCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareEntryPath(middle, key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int compareEntryPath(int entry, byte[] key) {
+        int pathOffset = pathsStart + index.getInt(entryPosition(entry) + 16);
+        int pathLength = index.getInt(entryPosition(entry) + 20);
+        int commonLength = Math.min(pathLength, key.length);
+        for (int i = 0; i < commonLength; i++) {
+            int comparison = Integer.compare(index.get(pathOffset + i) & 0xFF, key[i] & 0xFF);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(pathLength, key.length);
+    }
+
+    private String entryPath(int entry) {
+        int pathOffset = pathsStart + index.getInt(entryPosition(entry) + 16);
+        byte[] path = new byte[index.getInt(entryPosition(entry) + 20)];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = index.get(pathOffset + i);
+        }
+        return new String(path, StandardCharsets.UTF_8);
+    }
+
+    private long entryOffset(int entry) {
+        return index.getLong(entryPosition(entry));
+    }
+
+    private long entryLength(int entry) {
+        return index.getLong(entryPosition(entry) + 8);
+    }
+
+    private static int entryPosition(int entry) {
+        return INDEX_HEADER_BYTES + entry * INDEX_ENTRY_BYTES;
+    }
+
+    private void transfer(long offset, long length, WritableByteChannel target) throws IOException {
+        long transferred = 0;
+        while (transferred < length) {
+            long count = packChannel.transferTo(offset + transferred, length - transferred, target);
+            if (count <= 0) {
+                throw new IOException("Pack is truncated at offset " + (offset + transferred));
+            }
+            transferred += count;
+        }
+    }
+}
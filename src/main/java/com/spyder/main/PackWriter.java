@@ -0,0 +1,388 @@
+package com.spyder.main;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores the offline copy in one pack file instead of one file per page and
+ * image, so a crawl with millions of pages can be copied or backed up at disk
+ * speed.
+ *
+ * Files are appended to {@code site.pack} by a single background thread, each
+ * as a self-describing entry (path, length, content). When the store is
+ * closed, {@code site.pack.idx} is written: the paths sorted by their UTF-8
+ * bytes, each with the offset and length of its content, for the binary
+ * searches of {@link PackReader}. Entries appended after the last index was
+ * written (e.g. before a crash) are recovered by scanning the pack when it is
+ * opened again. A file stored twice keeps its latest content; the older copy
+ * stays in the pack as dead space until the pack is exported and rebuilt.
+ */
+public class PackWriter implements FileStore {
+
+    // Static constants
+    static final int FORMAT_VERSION = 1;
+    private static final Logger logger = System.getLogger(PackWriter.class.getName());
+    private static final int PACK_MAGIC = 0x43525750; // "CRWP"
+    private static final int ENTRY_MAGIC = 0x43525745; // "CRWE"
+    private static final int PACK_HEADER_BYTES = 8; // magic, version
+    private static final int MAX_PATH_BYTES = 64 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final String PACK_FILE_NAME = "site.pack";
+    private static final String INDEX_FILE_NAME = "site.pack.idx";
+
+    // Instance fields
+    private final Path packFile;
+    private final Path indexFile;
+    private final Path temporaryDirectory;
+    private final int queueCapacity;
+    private final DiskWriter.FsyncPolicy fsyncPolicy;
+    private final Map<String, Location> entries = new ConcurrentHashMap<>(); // path -> latest content
+    private final Set<String> pendingPaths = ConcurrentHashMap.newKeySet(); // queued, not yet appended
+    private volatile CrawlMetrics metrics = new CrawlMetrics();
+    private ThreadPoolExecutor appender; // single thread, set up by open()
+    private FileChannel channel; // written only by the appender thread
+    private long end; // where the next entry goes
+
+    /**
+     * @param directory          receives site.pack and site.pack.idx
+     * @param temporaryDirectory receives downloads before they are moved in
+     */
+    public PackWriter(Path directory, Path temporaryDirectory, CrawlConfig config) {
+        this.packFile = directory.resolve(PACK_FILE_NAME);
+        this.indexFile = directory.resolve(INDEX_FILE_NAME);
+        this.temporaryDirectory = temporaryDirectory;
+        this.queueCapacity = config.getWriteQueueCapacity();
+        this.fsyncPolicy = config.getFsyncPolicy();
+    }
+
+    public static String getPackFileName() {
+        return PACK_FILE_NAME;
+    }
+
+    public static String getIndexFileName() {
+        return INDEX_FILE_NAME;
+    }
+
+    /**
+     * Opens the pack, continuing an existing one: files of previous crawls stay
+     * available, new files are appended.
+     */
+    @Override
+    public synchronized void open() throws IOException {
+        Files.createDirectories(packFile.toAbsolutePath().getParent());
+        entries.clear();
+        channel = FileChannel.open(packFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_BYTES).putInt(PACK_MAGIC).putInt(FORMAT_VERSION);
+                writeFully(header.flip(), 0);
+                end = PACK_HEADER_BYTES;
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_BYTES);
+                readFully(header, 0);
+                if (header.getInt(0) != PACK_MAGIC || header.getInt(4) != FORMAT_VERSION) {
+                    throw new IOException("Not a pack file: " + packFile);
+                }
+                loadIndex();
+                recoverUnindexedEntries();
+            }
+        } catch (IOException e) {
+            channel.close();
+            channel = null;
+            throw e;
+        }
+
+        appender = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "crawly-pack-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }, (task, executor) -> {
+                    // a full queue makes the caller wait instead of failing
+                    try {
+                        executor.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for the pack writer", e);
+                    }
+                });
+    }
+
+    @Override
+    public CompletableFuture<Void> write(String relativePath, DiskWriter.ContentWriter content)
+            throws InterruptedException {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        pendingPaths.add(relativePath);
+        submit(() -> {
+            try {
+                append(relativePath, content);
+                result.complete(null);
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.ERROR, "Failed to add file to pack: " + relativePath, e);
+                result.completeExceptionally(e);
+            } finally {
+                pendingPaths.remove(relativePath);
+            }
+        });
+        return result;
+    }
+
+    // Copies the file into the pack and deletes it; waits until it has been appended.
+    @Override
+    public void moveIn(Path file, String relativePath) throws IOException, InterruptedException {
+        try {
+            write(relativePath, outputStream -> Files.copy(file, outputStream)).get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause()
+                    : new IOException("Failed to add file to pack: " + relativePath, e.getCause());
+        }
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public boolean exists(String relativePath) {
+        return entries.containsKey(relativePath) || pendingPaths.contains(relativePath);
+    }
+
+    @Override
+    public Path createTemporaryFile() throws IOException {
+        Files.createDirectories(temporaryDirectory);
+        return Files.createTempFile(temporaryDirectory, "download", ".part");
+    }
+
+    @Override
+    public void setMetrics(CrawlMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Appends the queued files, then writes the index.
+    @Override
+    public synchronized void close() throws IOException {
+        if (appender == null) {
+            return;
+        }
+        appender.shutdown();
+        try {
+            appender.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            // keep what was appended; the journal redoes the rest on resume
+            Thread.currentThread().interrupt();
+            appender.shutdownNow();
+        }
+        appender = null;
+
+        try {
+            if (channel.isOpen()) { // an interrupted append closes the channel
+                channel.truncate(end); // drop a partly written entry
+                channel.force(true); // the index must never point beyond the data on disk
+            }
+        } finally {
+            channel.close();
+            channel = null;
+        }
+        writeIndex();
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Interrupted while writing the remaining files to: " + packFile);
+        }
+    }
+
+    // Private methods
+    private void submit(Runnable task) throws InterruptedException {
+        try {
+            appender.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Interrupted while waiting for the pack writer");
+            }
+            throw e;
+        }
+    }
+
+    // Runs on the appender thread only.
+    private void append(String relativePath, DiskWriter.ContentWriter content) throws IOException {
+        byte[] pathBytes = relativePath.getBytes(StandardCharsets.UTF_8);
+        if (pathBytes.length > MAX_PATH_BYTES) {
+            throw new IOException("Path too long for pack: " + relativePath);
+        }
+
+        CrawlMetrics metrics = this.metrics;
+        try (CrawlMetrics.PhaseTimer timer = metrics.time(CrawlPhase.DISK_WRITE, relativePath)) {
+            // entry: magic, path length, path, content length (filled in below), content
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES * 2 + pathBytes.length + Long.BYTES);
+            header.putInt(ENTRY_MAGIC).putInt(pathBytes.length).put(pathBytes).putLong(-1);
+            writeFully(header.flip(), end);
+            long contentStart = end + header.capacity();
+
+            // not closed, that would close the channel
+            channel.position(contentStart);
+            OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(channel),
+                    WRITE_BUFFER_SIZE);
+            content.writeTo(outputStream);
+            outputStream.flush();
+            long contentLength = channel.position() - contentStart;
+            writeFully(ByteBuffer.allocate(Long.BYTES).putLong(contentLength).flip(), contentStart - Long.BYTES);
+
+            if (fsyncPolicy == DiskWriter.FsyncPolicy.ALWAYS
+                    || (fsyncPolicy == DiskWriter.FsyncPolicy.BATCH && appender.getQueue().isEmpty())) {
+                channel.force(false);
+            }
+            end = contentStart + contentLength; // only now is the entry complete
+            entries.put(relativePath, new Location(contentStart, contentLength));
+            timer.setBytes(contentLength);
+            metrics.add(CrawlMetrics.Counter.BYTES_WRITTEN, contentLength);
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        end = PACK_HEADER_BYTES;
+        if (!Files.exists(indexFile)) {
+            return; // everything is recovered by scanning
+        }
+        try (PackReader reader = new PackReader(packFile, indexFile)) {
+            if (reader.getDataEnd() > channel.size()) {
+                logger.log(Level.WARNING, "Pack index is newer than the pack, rebuilding it: {0}", indexFile);
+                return;
+            }
+            reader.forEachEntry((path, offset, length) -> entries.put(path, new Location(offset, length)));
+            end = reader.getDataEnd();
+        }
+    }
+
+    // Adds the complete entries after the indexed part and cuts off a partly written one.
+    private void recoverUnindexedEntries() throws IOException {
+        long packSize = channel.size();
+        int recovered = 0;
+        ByteBuffer prefix = ByteBuffer.allocate(Integer.BYTES * 2);
+        while (end + prefix.capacity() <= packSize) {
+            prefix.clear();
+            readFully(prefix, end);
+            int pathLength = prefix.getInt(4);
+            if (prefix.getInt(0) != ENTRY_MAGIC || pathLength < 0 || pathLength > MAX_PATH_BYTES
+                    || end + prefix.capacity() + pathLength + Long.BYTES > packSize) {
+                break;
+            }
+            ByteBuffer rest = ByteBuffer.allocate(pathLength + Long.BYTES);
+            readFully(rest, end + prefix.capacity());
+            long contentLength = rest.getLong(pathLength);
+            long contentStart = end + prefix.capacity() + rest.capacity();
+            if (contentLength < 0 || contentStart + contentLength > packSize) {
+                break;
+            }
+            String path = new String(rest.array(), 0, pathLength, StandardCharsets.UTF_8);
+            entries.put(path, new Location(contentStart, contentLength));
+            end = contentStart + contentLength;
+            recovered++;
+        }
+
+        if (recovered > 0) {
+            logger.log(Level.INFO, "Recovered {0} files that were added after the pack index was written",
+                    recovered);
+        }
+        if (end < packSize) {
+            logger.log(Level.WARNING, "Discarding {0} bytes of incomplete data at the end of {1}",
+                    packSize - end, packFile);
+            channel.truncate(end);
+        }
+    }
+
+    // Sorted by UTF-8 bytes, the order PackReader's binary search expects.
+    private void writeIndex() throws IOException {
+        List<IndexEntry> sortedEntries = new ArrayList<>(entries.size());
+        entries.forEach((path, location) ->
+                sortedEntries.add(new IndexEntry(path.getBytes(StandardCharsets.UTF_8), location)));
+        sortedEntries.sort((a, b) -> Arrays.compareUnsigned(a.pathBytes, b.pathBytes));
+
+        Path temporaryFile = indexFile.resolveSibling(INDEX_FILE_NAME + ".tmp");
+        try (FileChannel indexChannel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(indexChannel), WRITE_BUFFER_SIZE));
+            output.writeInt(PackReader.INDEX_MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(sortedEntries.size());
+            output.writeInt(0); // reserved
+            output.writeLong(end);
+
+            int pathOffset = 0;
+            for (IndexEntry entry : sortedEntries) {
+                output.writeLong(entry.location.offset);
+                output.writeLong(entry.location.length);
+                output.writeInt(pathOffset);
+                output.writeInt(entry.pathBytes.length);
+                pathOffset += entry.pathBytes.length;
+            }
+            for (IndexEntry entry : sortedEntries) {
+                output.write(entry.pathBytes);
+            }
+            output.flush();
+            indexChannel.force(true);
+        }
+        Files.move(temporaryFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int bytesRead = channel.read(buffer, position);
+            if (bytesRead < 0) {
+                throw new IOException("Unexpected end of pack: " + packFile);
+            }
+            position += bytesRead;
+        }
+    }
+
+    // Where the content of a stored file is.
+    private static class Location {
+
+        private final long offset;
+        private final long length;
+
+        private Location(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static class IndexEntry {
+
+        private final byte[] pathBytes;
+        private final Location location;
+
+        private IndexEntry(byte[] pathBytes, Location location) {
+            this.pathBytes = pathBytes;
+            this.location = location;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.spyder.main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads large files in chunks fetched in parallel with HTTP Range
+ * requests, and resumes downloads that were interrupted.
+ *
+ * The target file is preallocated to its full size and every chunk is written
+ * at its own position through a shared {@link FileChannel}, so chunks can
+ * arrive in any order. Progress is kept in a state file next to the target
+ * ("file.zip.download"): the next download of the same URL into the same file
+ * only fetches the chunks that are missing, provided the server confirms with
+ * If-Range that the file has not changed meanwhile. The state file is deleted
+ * once the download is complete.
+ *
+ * The first request asks for the first missing chunk. A server that does not
+ * support ranges answers it with the whole file, which is then streamed into
+ * the target with large buffers, and nothing can be resumed.
+ */
+public class RangedDownloader {
+
+    // Static constants
+    private static final Logger logger = System.getLogger(RangedDownloader.class.getName());
+    static final String STATE_FILE_SUFFIX = ".download";
+    private static final long DEFAULT_CHUNK_SIZE = 8L * 1024 * 1024;
+    private static final int DEFAULT_PARALLELISM = 4;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int HTTP_PARTIAL_CONTENT = 206;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+
+    // Instance fields
+    private final HttpFetcher httpFetcher;
+    private long chunkSize = DEFAULT_CHUNK_SIZE;
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    public RangedDownloader(HttpFetcher httpFetcher) {
+        this.httpFetcher = httpFetcher;
+    }
+
+    // Bytes per Range request. Also the unit of progress that survives an interrupted download.
+    public RangedDownloader setChunkSize(long chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1 byte");
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    // Chunks downloaded at the same time, still within the per-host connection limit.
+    public RangedDownloader setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Downloads a URL into a file, resuming an earlier download into the same
+     * file if its state file is there. If the download fails, the file and its
+     * state file are left as they are, for the next attempt to resume.
+     *
+     * @throws FetchException if the server answers with an error status
+     */
+    public void download(String url, Path targetFilePath) throws IOException, InterruptedException {
+        Path stateFilePath = targetFilePath.resolveSibling(targetFilePath.getFileName() + STATE_FILE_SUFFIX);
+        DownloadState state = DownloadState.load(stateFilePath, url, targetFilePath);
+        if (state == null) {
+            Files.deleteIfExists(stateFilePath); // from another URL, or unusable
+        } else if (state.getMissingChunks().isEmpty()) {
+            Files.delete(stateFilePath); // stopped right before deleting it
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(targetFilePath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            int firstChunk = state != null ? state.nextMissingChunk() : 0;
+            long firstChunkSize = state != null ? state.chunkSize : chunkSize;
+            DownloadState[] started = { state };
+            try {
+                httpFetcher.read(url, rangeHeaders(firstChunk * firstChunkSize,
+                        firstChunk * firstChunkSize + firstChunkSize - 1, state), (response, body) -> {
+                            started[0] = startDownload(response, body, channel, started[0], stateFilePath);
+                        });
+            } catch (FetchException e) {
+                if (e.getStatusCode() != HTTP_RANGE_NOT_SATISFIABLE) {
+                    throw e;
+                }
+                // only an empty file has no first byte
+                logger.log(Level.DEBUG, "Range not satisfiable, downloading as a whole: {0}", url);
+                started[0] = null;
+                httpFetcher.read(url, Map.of(), (response, body) -> copyWhole(body, channel));
+            }
+
+            state = started[0];
+            if (state != null) {
+                downloadMissingChunks(url, channel, state, stateFilePath);
+            }
+        }
+        Files.deleteIfExists(stateFilePath);
+    }
+
+    // Private methods
+    /*
+     * Handles the answer to the first request: a 206 with the first missing
+     * chunk sets up (or confirms) the state and preallocates the file, anything
+     * else is the whole file from a server that ignored the Range header, or
+     * a changed file the If-Range condition did not match.
+     *
+     * Returns the state to continue with, or null if the file is complete.
+     */
+    private DownloadState startDownload(FetchResponse response, InputStream body, FileChannel channel,
+            DownloadState state, Path stateFilePath) throws IOException {
+        long[] range = parseContentRange(response);
+        if (response.getStatusCode() != HTTP_PARTIAL_CONTENT || range == null) {
+            logger.log(Level.DEBUG, "No range support, downloading as a whole: {0}", response.getUrl());
+            Files.deleteIfExists(stateFilePath);
+            copyWhole(body, channel);
+            return null;
+        }
+
+        if (state == null || state.length != range[2]) {
+            state = new DownloadState(response.getUrl(), range[2], chunkSize, getValidator(response));
+            channel.truncate(0);
+            if (state.length > 0) {
+                channel.write(ByteBuffer.allocate(1), state.length - 1); // preallocates the full size
+            }
+        }
+        writeChunk(body, channel, state, range, stateFilePath);
+        return state;
+    }
+
+    private void downloadMissingChunks(String url, FileChannel channel, DownloadState state, Path stateFilePath)
+            throws IOException, InterruptedException {
+        List<Integer> missingChunks = state.getMissingChunks();
+        if (missingChunks.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, missingChunks.size()));
+        try {
+            List<Future<Void>> chunkDownloads = new ArrayList<>();
+            for (int chunk : missingChunks) {
+                long start = chunk * state.chunkSize;
+                long end = Math.min(start + state.chunkSize, state.length) - 1;
+                chunkDownloads.add(executor.submit(() -> {
+                    httpFetcher.read(url, rangeHeaders(start, end, state), (response, body) -> {
+                        long[] range = parseContentRange(response);
+                        if (response.getStatusCode() != HTTP_PARTIAL_CONTENT || range == null
+                                || range[0] != start || range[1] != end || range[2] != state.length) {
+                            throw new IOException("File changed during the download, or range not served: "
+                                    + url + " (" + start + "-" + end + ")");
+                        }
+                        writeChunk(body, channel, state, range, stateFilePath);
+                    });
+                    return null;
+                }));
+            }
+
+            // let the other chunks finish after a failure, so a retry has less to fetch
+            IOException failure = null;
+            for (Future<Void> chunkDownload : chunkDownloads) {
+                try {
+                    chunkDownload.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof IOException
+                                ? (IOException) e.getCause()
+                                : new IOException("Chunk download failed: " + url, e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            executor.shutdownNow(); // interrupts the chunks still running if the caller was interrupted
+        }
+    }
+
+    // Writes the body at the position of its range, then records the chunk as done.
+    private static void writeChunk(InputStream body, FileChannel channel, DownloadState state, long[] range,
+            Path stateFilePath) throws IOException {
+        long position = range[0];
+        long expectedBytes = range[1] - range[0] + 1;
+        byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, expectedBytes)];
+        int bytesRead;
+        while ((bytesRead = body.read(buffer)) != -1) {
+            if (position + bytesRead > range[1] + 1) {
+                throw new IOException("Server sent more than the requested range");
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, bytesRead);
+            while (bytes.hasRemaining()) {
+                position += channel.write(bytes, position);
+            }
+        }
+        if (position != range[1] + 1) {
+            throw new IOException("Range ended early at byte " + position + " of " + (range[1] + 1));
+        }
+
+        // a chunk is recorded as done only once its bytes are on disk
+        channel.force(false);
+        state.markDone(range[0], range[1], stateFilePath);
+    }
+
+    private static void copyWhole(InputStream body, FileChannel channel) throws IOException {
+        channel.truncate(0);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long position = 0;
+        int bytesRead;
+        while ((bytesRead = body.read(buffer)) != -1) {
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, bytesRead);
+            while (bytes.hasRemaining()) {
+                position += channel.write(bytes, position);
+            }
+        }
+    }
+
+    /*
+     * Range of the given bytes, not compressed (ranges apply to the bytes as
+     * sent), and only if the file still matches the state's validator.
+     */
+    private static Map<String, String> rangeHeaders(long start, long end, DownloadState state) {
+        String range = "bytes=" + start + "-" + end;
+        if (state != null && state.validator != null) {
+            return Map.of("Range", range, "Accept-Encoding", "identity", "If-Range", state.validator);
+        }
+        return Map.of("Range", range, "Accept-Encoding", "identity");
+    }
+
+    // First byte, last byte and total length of a 206 response, or null if not given as numbers.
+    private static long[] parseContentRange(FetchResponse response) {
+        String contentRange = response.getHeader("Content-Range");
+        if (contentRange == null || response.getHeader("Content-Encoding") != null) {
+            return null;
+        }
+        Matcher matcher = CONTENT_RANGE.matcher(contentRange.trim());
+        if (!matcher.matches()) {
+            return null;
+        }
+        try {
+            long[] range = { Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)),
+                    Long.parseLong(matcher.group(3)) };
+            return range[0] <= range[1] && range[1] < range[2] ? range : null;
+        } catch (NumberFormatException e) { // too long for a long
+            return null;
+        }
+    }
+
+    // Strong ETag, else Last-Modified, else null. If-Range can't use weak ETags.
+    private static String getValidator(FetchResponse response) {
+        String etag = response.getHeader("ETag");
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return response.getHeader("Last-Modified");
+    }
+
+    /*
+     * Progress of a download, as saved in its state file. Chunks are marked
+     * done by the threads that wrote them, so marking is synchronized.
+     *
+     * File format: one "key<tab>value" line each for url, length, chunk size
+     * and validator, then one "done<tab>index" line per finished chunk.
+     */
+    private static class DownloadState {
+
+        private final String url;
+        private final long length;
+        private final long chunkSize;
+        private final String validator; // null if the server gave none, then nothing is resumed
+        private final BitSet doneChunks = new BitSet();
+
+        DownloadState(String url, long length, long chunkSize, String validator) {
+            this.url = url;
+            this.length = length;
+            this.chunkSize = chunkSize;
+            this.validator = validator;
+        }
+
+        int getChunkCount() {
+            return (int) ((length + chunkSize - 1) / chunkSize);
+        }
+
+        synchronized int nextMissingChunk() {
+            return doneChunks.nextClearBit(0);
+        }
+
+        synchronized List<Integer> getMissingChunks() {
+            List<Integer> missingChunks = new ArrayList<>();
+            for (int chunk = doneChunks.nextClearBit(0); chunk < getChunkCount();
+                    chunk = doneChunks.nextClearBit(chunk + 1)) {
+                missingChunks.add(chunk);
+            }
+            return missingChunks;
+        }
+
+        // Marks the chunks the range covers completely, and saves the state if it can be resumed.
+        synchronized void markDone(long start, long end, Path stateFilePath) throws IOException {
+            int firstChunk = (int) ((start + chunkSize - 1) / chunkSize);
+            int lastChunk = end + 1 == length ? getChunkCount() - 1 : (int) ((end + 1) / chunkSize) - 1;
+            if (firstChunk <= lastChunk) {
+                doneChunks.set(firstChunk, lastChunk + 1);
+            }
+            if (validator != null) {
+                save(stateFilePath);
+            }
+        }
+
+        // Written to a temporary file first, so a crash never leaves a truncated state.
+        private void save(Path stateFilePath) throws IOException {
+            Path temporaryFile = stateFilePath.resolveSibling(stateFilePath.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+                writer.write("url\t" + url + "\nlength\t" + length + "\nchunk\t" + chunkSize + "\nvalidator\t"
+                        + validator + "\n");
+                for (int chunk = doneChunks.nextSetBit(0); chunk >= 0; chunk = doneChunks.nextSetBit(chunk + 1)) {
+                    writer.write("done\t" + chunk + "\n");
+                }
+            }
+            Files.move(temporaryFile, stateFilePath, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        // The saved state of a download of this URL into this file, or null if there is none to resume.
+        static DownloadState load(Path stateFilePath, String url, Path targetFilePath) {
+            if (!Files.exists(stateFilePath) || !Files.exists(targetFilePath)) {
+                return null;
+            }
+            String savedUrl = null;
+            long length = -1;
+            long chunkSize = -1;
+            String validator = null;
+            BitSet doneChunks = new BitSet();
+            try (BufferedReader reader = Files.newBufferedReader(stateFilePath, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab < 0) {
+                        continue;
+                    }
+                    String value = line.substring(tab + 1);
+                    switch (line.substring(0, tab)) {
+                        case "url":
+                            savedUrl = value;
+                            break;
+                        case "length":
+                            length = Long.parseLong(value);
+                            break;
+                        case "chunk":
+                            chunkSize = Long.parseLong(value);
+                            break;
+                        case "validator":
+                            validator = value;
+                            break;
+                        case "done":
+                            doneChunks.set(Integer.parseInt(value));
+                            break;
+                        default:
+                            break; // written by a later version
+                    }
+                }
+                if (!url.equals(savedUrl) || length < 0 || chunkSize < 1 || validator == null
+                        || Files.size(targetFilePath) != length) {
+                    return null;
+                }
+            } catch (IOException | NumberFormatException e) {
+                logger.log(Level.WARNING, "Unreadable download state, starting over: " + stateFilePath, e);
+                return null;
+            }
+
+            DownloadState state = new DownloadState(url, length, chunkSize, validator);
+            state.doneChunks.or(doneChunks);
+            return state;
+        }
+    }
+}
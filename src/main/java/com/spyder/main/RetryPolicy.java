@@ -0,0 +1,58 @@
+package com.spyder.main;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a failed request is tried again, and when.
+ *
+ * Only transient failures are retried: network errors and timeouts, and the
+ * statuses servers send when overloaded or briefly broken (408, 429, 500, 502,
+ * 503, 504). The delay doubles with every attempt, and half of it is random, so
+ * requests that failed together don't all come back at the same moment. A
+ * request rejected by an open circuit breaker waits at least until the host is
+ * probed again.
+ */
+public class RetryPolicy {
+
+    // Static constants
+    static final long MAX_DELAY_MILLIS = 30_000;
+    private static final Set<Integer> TRANSIENT_STATUS_CODES = Set.of(408, 429, 500, 502, 503, 504);
+
+    // Instance fields
+    private final int maxRetries;
+    private final long baseDelayMillis;
+
+    public RetryPolicy(CrawlConfig config) {
+        this.maxRetries = config.getMaxRetries();
+        this.baseDelayMillis = config.getRetryBaseDelayMillis();
+    }
+
+    /**
+     * @param attempt how many times the request was retried already (0 after
+     *                the first failure)
+     */
+    public boolean shouldRetry(IOException e, int attempt) {
+        return attempt < maxRetries && isTransient(e);
+    }
+
+    // Delay before retry number attempt + 1, see shouldRetry().
+    public long getDelayMillis(IOException e, int attempt) {
+        long backoffMillis = Math.min(MAX_DELAY_MILLIS, baseDelayMillis << Math.min(attempt, 20));
+        long delayMillis = backoffMillis / 2 + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1);
+        if (e instanceof HostUnavailableException) {
+            delayMillis = Math.max(delayMillis, ((HostUnavailableException) e).getRetryAfterMillis());
+        }
+        return delayMillis;
+    }
+
+    public static boolean isTransient(IOException e) {
+        if (e instanceof FetchException) {
+            return TRANSIENT_STATUS_CODES.contains(((FetchException) e).getStatusCode());
+        }
+        // a malformed URL fails the same way every time
+        return !(e.getCause() instanceof URISyntaxException || e.getCause() instanceof IllegalArgumentException);
+    }
+}
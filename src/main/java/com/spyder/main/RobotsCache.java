@@ -0,0 +1,114 @@
+package com.spyder.main;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Fetches each host's robots.txt once per crawl and keeps the parsed rules.
+ *
+ * The first caller for a host fetches the file; concurrent callers for the
+ * same host wait for that fetch instead of sending their own. A missing or
+ * unreadable robots.txt allows everything.
+ */
+public class RobotsCache {
+
+    // Static constants
+    private static final Logger logger = System.getLogger(RobotsCache.class.getName());
+    private static final int MAX_ROBOTS_TXT_BYTES = 500 * 1024; // larger files are cut off (RFC 9309)
+
+    // Instance fields
+    private final HttpFetcher httpFetcher;
+    private final String userAgent;
+    private final Map<String, CompletableFuture<RobotsTxt>> robotsByOrigin = new ConcurrentHashMap<>();
+
+    public RobotsCache(HttpFetcher httpFetcher, String userAgent) {
+        this.httpFetcher = httpFetcher;
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * Whether robots.txt allows fetching a URL. Blocks while the host's
+     * robots.txt is being fetched.
+     */
+    public boolean isAllowed(String url) throws InterruptedException {
+        int pathStart = getPathStart(url);
+        if (pathStart < 0) {
+            return true; // not an http(s) URL, nothing to check
+        }
+        String pathAndQuery = pathStart < url.length() ? url.substring(pathStart) : "/";
+        int fragmentStart = pathAndQuery.indexOf('#');
+        if (fragmentStart >= 0) {
+            pathAndQuery = pathAndQuery.substring(0, fragmentStart);
+        }
+        if (pathAndQuery.startsWith("?")) {
+            pathAndQuery = "/" + pathAndQuery;
+        }
+        return get(url).isAllowed(pathAndQuery);
+    }
+
+    // The robots.txt rules for the host of a URL.
+    public RobotsTxt get(String url) throws InterruptedException {
+        int pathStart = getPathStart(url);
+        if (pathStart < 0) {
+            return RobotsTxt.allowAll();
+        }
+
+        String origin = url.substring(0, pathStart);
+        CompletableFuture<RobotsTxt> created = new CompletableFuture<>();
+        CompletableFuture<RobotsTxt> existing = robotsByOrigin.putIfAbsent(origin, created);
+        if (existing == null) {
+            try {
+                created.complete(load(origin));
+            } catch (InterruptedException e) {
+                robotsByOrigin.remove(origin, created); // let the next caller try again
+                created.complete(RobotsTxt.allowAll()); // release the waiting callers
+                throw e;
+            }
+            existing = created;
+        }
+
+        try {
+            return existing.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Never completed exceptionally", e);
+        }
+    }
+
+    // Private methods
+    private RobotsTxt load(String origin) throws InterruptedException {
+        String robotsUrl = origin + "/robots.txt";
+        try {
+            byte[] body = httpFetcher.fetch(robotsUrl).getBody();
+            int length = Math.min(body.length, MAX_ROBOTS_TXT_BYTES);
+            logger.log(Level.DEBUG, "Loaded robots.txt: {0}", robotsUrl);
+            return RobotsTxt.parse(new String(body, 0, length, StandardCharsets.UTF_8), userAgent);
+        } catch (FetchException e) {
+            // 4xx means there are no rules; 5xx should mean "disallow all", but we don't retry later
+            logger.log(Level.DEBUG, "No robots.txt ({0}): {1}", e.getStatusCode(), robotsUrl);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to fetch robots.txt, allowing everything: " + robotsUrl, e);
+        }
+        return RobotsTxt.allowAll();
+    }
+
+    // Index of the path in an http(s) URL (the end of scheme://authority), or -1.
+    private static int getPathStart(String url) {
+        if (!url.regionMatches(true, 0, "http://", 0, 7) && !url.regionMatches(true, 0, "https://", 0, 8)) {
+            return -1;
+        }
+        int authorityStart = url.indexOf("://") + 3;
+        for (int i = authorityStart; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                return i;
+            }
+        }
+        return url.length();
+    }
+}
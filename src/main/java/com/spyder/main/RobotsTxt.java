@@ -0,0 +1,189 @@
+package com.spyder.main;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The rules of one host's robots.txt that apply to this crawler (RFC 9309),
+ * plus the sitemaps it lists.
+ *
+ * The group whose user-agent line is the longest match within our User-Agent
+ * header applies (e.g. "crawly" for "Mozilla/5.0 (compatible; Crawly/2.0)"),
+ * otherwise the "*" group. Among its rules the longest matching pattern wins,
+ * Allow over Disallow on ties; patterns may use "*" and a trailing "$".
+ */
+public class RobotsTxt {
+
+    // Static constants
+    private static final RobotsTxt ALLOW_ALL = new RobotsTxt(Collections.emptyList(), Collections.emptyList());
+
+    // Instance fields
+    private final List<Rule> rules;
+    private final List<String> sitemaps;
+
+    private RobotsTxt(List<Rule> rules, List<String> sitemaps) {
+        this.rules = rules;
+        this.sitemaps = sitemaps;
+    }
+
+    // For hosts without a usable robots.txt.
+    public static RobotsTxt allowAll() {
+        return ALLOW_ALL;
+    }
+
+    public static RobotsTxt parse(String content, String userAgent) {
+        String agent = userAgent.toLowerCase(Locale.ROOT);
+        List<String> sitemaps = new ArrayList<>();
+        List<Rule> bestRules = new ArrayList<>();
+        List<Rule> wildcardRules = new ArrayList<>();
+        int bestAgentLength = 0;
+
+        // a group is one or more user-agent lines followed by rules
+        List<String> groupAgents = new ArrayList<>();
+        List<Rule> groupRules = new ArrayList<>();
+        boolean groupHasRules = false;
+        for (String line : content.split("\r\n|\r|\n")) {
+            int commentStart = line.indexOf('#');
+            if (commentStart >= 0) {
+                line = line.substring(0, commentStart);
+            }
+            int separator = line.indexOf(':');
+            String field = separator < 0 ? "" : line.substring(0, separator).trim().toLowerCase(Locale.ROOT);
+            String value = separator < 0 ? "" : line.substring(separator + 1).trim();
+
+            if (field.equals("user-agent") && groupHasRules) {
+                // a new group starts: keep the finished one if it applies to us
+                bestAgentLength = collectGroup(groupAgents, groupRules, agent, bestAgentLength, bestRules,
+                        wildcardRules);
+                groupAgents.clear();
+                groupRules.clear();
+                groupHasRules = false;
+            }
+
+            switch (field) {
+                case "user-agent":
+                    groupAgents.add(value.toLowerCase(Locale.ROOT));
+                    break;
+                case "allow":
+                case "disallow":
+                    groupHasRules = true;
+                    if (!value.isEmpty()) { // an empty Disallow allows everything
+                        groupRules.add(new Rule(value, field.equals("allow")));
+                    }
+                    break;
+                case "sitemap":
+                    if (!value.isEmpty()) {
+                        sitemaps.add(value); // not part of any group
+                    }
+                    break;
+                default:
+                    // crawl-delay and unknown fields are ignored
+            }
+        }
+        bestAgentLength = collectGroup(groupAgents, groupRules, agent, bestAgentLength, bestRules, wildcardRules);
+
+        List<Rule> rules = bestAgentLength > 0 ? bestRules : wildcardRules;
+        if (rules.isEmpty() && sitemaps.isEmpty()) {
+            return ALLOW_ALL;
+        }
+        return new RobotsTxt(rules, sitemaps);
+    }
+
+    /**
+     * Whether the rules allow fetching a URL.
+     *
+     * @param pathAndQuery the URL's path and query, percent-encoded as sent
+     */
+    public boolean isAllowed(String pathAndQuery) {
+        if (pathAndQuery.equals("/robots.txt")) {
+            return true;
+        }
+
+        Rule bestRule = null;
+        for (Rule rule : rules) {
+            if (rule.matches(pathAndQuery) && (bestRule == null
+                    || rule.pattern.length() > bestRule.pattern.length()
+                    || (rule.pattern.length() == bestRule.pattern.length() && rule.allow))) {
+                bestRule = rule;
+            }
+        }
+        return bestRule == null || bestRule.allow;
+    }
+
+    // Sitemap URLs listed in the file, in order.
+    public List<String> getSitemaps() {
+        return sitemaps;
+    }
+
+    // Private methods
+    // Adds a finished group's rules where they apply; returns the new best user-agent match length.
+    private static int collectGroup(List<String> groupAgents, List<Rule> groupRules, String agent,
+            int bestAgentLength, List<Rule> bestRules, List<Rule> wildcardRules) {
+        for (String groupAgent : groupAgents) {
+            if (groupAgent.equals("*")) {
+                wildcardRules.addAll(groupRules);
+            } else if (!groupAgent.isEmpty() && agent.contains(groupAgent)) {
+                if (groupAgent.length() > bestAgentLength) {
+                    bestRules.clear(); // a more specific group replaces a less specific one
+                    bestAgentLength = groupAgent.length();
+                }
+                if (groupAgent.length() == bestAgentLength) {
+                    bestRules.addAll(groupRules); // groups for the same agent are merged
+                }
+            }
+        }
+        return bestAgentLength;
+    }
+
+    // One Allow or Disallow line.
+    private static class Rule {
+
+        private final String pattern;
+        private final boolean allow;
+
+        private Rule(String pattern, boolean allow) {
+            this.pattern = pattern;
+            this.allow = allow;
+        }
+
+        /*
+         * Glob match where "*" matches any sequence and the pattern matches a
+         * prefix of the path unless it ends with "$". Iterative: on a mismatch
+         * only the last "*" takes one more character, so a pattern with many
+         * wildcards costs at most path length times pattern length.
+         */
+        private boolean matches(String path) {
+            boolean anchored = pattern.endsWith("$");
+            int patternEnd = anchored ? pattern.length() - 1 : pattern.length();
+            int pathIndex = 0;
+            int patternIndex = 0;
+            int starIndex = -1; // pattern index after the last "*" seen
+            int starPathIndex = 0; // where the path continues after what that "*" matched
+            while (true) {
+                if (patternIndex < patternEnd && pattern.charAt(patternIndex) == '*') {
+                    patternIndex++;
+                    starIndex = patternIndex;
+                    starPathIndex = pathIndex;
+                    continue;
+                }
+                if (patternIndex == patternEnd) {
+                    if (!anchored || pathIndex == path.length()) {
+                        return true;
+                    }
+                } else if (pathIndex < path.length() && path.charAt(pathIndex) == pattern.charAt(patternIndex)) {
+                    pathIndex++;
+                    patternIndex++;
+                    continue;
+                }
+                if (starIndex < 0 || starPathIndex == path.length()) {
+                    return false;
+                }
+                starPathIndex++;
+                pathIndex = starPathIndex;
+                patternIndex = starIndex;
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.spyder.main;
+
+import java.util.OptionalLong;
+
+/**
+ * 64-bit SimHash fingerprints of page text (Charikar). Pages with nearly the
+ * same text get fingerprints that differ in only a few bits, unlike regular
+ * hashes, so near-duplicates can be found by Hamming distance.
+ *
+ * The features are overlapping three-word shingles of the lowercased text,
+ * hashed without allocating a String per word.
+ */
+public class SimHash {
+
+    // Static constants
+    static final int MIN_SHINGLES = 16; // shorter texts are too similar to compare reliably
+    private static final int SHINGLE_WORDS = 3;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Returns the fingerprint of a text, or nothing if it has too few words
+     * (fewer than {@value #MIN_SHINGLES} shingles) to be compared.
+     */
+    public static OptionalLong fingerprint(CharSequence text) {
+        int[] bitWeights = new int[Long.SIZE];
+        long[] window = new long[SHINGLE_WORDS]; // hashes of the last words, as a ring
+        int wordCount = 0;
+        int shingleCount = 0;
+
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            // skip to the next word
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            long wordHash = FNV_OFFSET_BASIS;
+            while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                wordHash = (wordHash ^ Character.toLowerCase(text.charAt(i))) * FNV_PRIME;
+                i++;
+            }
+
+            window[wordCount % SHINGLE_WORDS] = wordHash;
+            wordCount++;
+            if (wordCount >= SHINGLE_WORDS) {
+                // order matters within a shingle, so each position is rotated differently
+                long shingle = 0;
+                for (int w = 0; w < SHINGLE_WORDS; w++) {
+                    shingle ^= Long.rotateLeft(window[(wordCount + w) % SHINGLE_WORDS], w * 21);
+                }
+                addFeature(bitWeights, mix(shingle));
+                shingleCount++;
+            }
+        }
+
+        if (shingleCount < MIN_SHINGLES) {
+            return OptionalLong.empty();
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if (bitWeights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return OptionalLong.of(fingerprint);
+    }
+
+    public static int distance(long fingerprint, long otherFingerprint) {
+        return Long.bitCount(fingerprint ^ otherFingerprint);
+    }
+
+    // Private methods
+    private static void addFeature(int[] bitWeights, long feature) {
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            bitWeights[bit] += (int) ((feature >>> bit) & 1) * 2 - 1;
+        }
+    }
+
+    // MurmurHash3's 64-bit finalizer, spreads every input bit over all output bits
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,133 @@
+package com.spyder.main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streams the URLs out of a sitemap without building a DOM, so sitemaps with
+ * 50,000 entries are read in constant memory.
+ *
+ * Reads XML sitemaps (&lt;urlset&gt;), sitemap indexes (&lt;sitemapindex&gt;)
+ * and plain-text sitemaps with one URL per line, each optionally gzipped
+ * (detected from the content, since .xml.gz files are usually served without
+ * a Content-Encoding header).
+ */
+public class SitemapReader {
+
+    // Static constants
+    private static final int GZIP_MAGIC_FIRST = 0x1f;
+    private static final int GZIP_MAGIC_SECOND = 0x8b;
+    private static final int SNIFF_BYTES = 512; // enough to get past a BOM and whitespace to the "<"
+
+    /**
+     * Reads one sitemap.
+     *
+     * @param pageUrls    receives the &lt;loc&gt; of every &lt;url&gt;, or every
+     *                    line of a text sitemap
+     * @param sitemapUrls receives the &lt;loc&gt; of every &lt;sitemap&gt; of a
+     *                    sitemap index
+     * @throws IOException if the sitemap is not well-formed
+     */
+    public static void read(InputStream input, Consumer<String> pageUrls, Consumer<String> sitemapUrls)
+            throws IOException {
+        BufferedInputStream content = new BufferedInputStream(input);
+        content.mark(2);
+        boolean gzipped = content.read() == GZIP_MAGIC_FIRST && content.read() == GZIP_MAGIC_SECOND;
+        content.reset();
+        if (gzipped) {
+            content = new BufferedInputStream(new GZIPInputStream(content));
+        }
+
+        if (isXml(content)) {
+            readXml(content, pageUrls, sitemapUrls);
+        } else {
+            readText(content, pageUrls);
+        }
+    }
+
+    // Private methods
+    private static boolean isXml(BufferedInputStream content) throws IOException {
+        content.mark(SNIFF_BYTES);
+        try {
+            for (int i = 0; i < SNIFF_BYTES; i++) {
+                int b = content.read();
+                if (b == '<') {
+                    return true;
+                }
+                // skip whitespace and a UTF-8 byte order mark
+                if (b == -1 || !(Character.isWhitespace(b) || b == 0xEF || b == 0xBB || b == 0xBF)) {
+                    return false;
+                }
+            }
+            return false;
+        } finally {
+            content.reset();
+        }
+    }
+
+    private static void readXml(InputStream content, Consumer<String> pageUrls, Consumer<String> sitemapUrls)
+            throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        // sitemaps never need a DTD; refusing them also rules out XXE
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(content);
+            try {
+                // only a <loc> directly inside <url> or <sitemap> counts, not e.g. <image:loc>
+                int depth = 0;
+                int entryDepth = -1;
+                boolean inSitemapEntry = false;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        String name = reader.getLocalName();
+                        if (name.equals("url") || name.equals("sitemap")) {
+                            entryDepth = depth;
+                            inSitemapEntry = name.equals("sitemap");
+                        } else if (name.equals("loc") && depth == entryDepth + 1) {
+                            String location = reader.getElementText().trim(); // also consumes the end tag
+                            depth--;
+                            if (!location.isEmpty()) {
+                                (inSitemapEntry ? sitemapUrls : pageUrls).accept(location);
+                            }
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        if (depth == entryDepth) {
+                            entryDepth = -1;
+                        }
+                        depth--;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed sitemap: " + e.getMessage(), e);
+        }
+    }
+
+    private static void readText(InputStream content, Consumer<String> pageUrls) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(content, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String url = line.trim();
+            if (!url.isEmpty()) {
+                pageUrls.accept(url);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.spyder.main;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Finds the page URLs of a site through its sitemaps: the ones listed in
+ * robots.txt, or /sitemap.xml if there are none, following sitemap indexes.
+ * Each sitemap is streamed, and its URLs are handed on while it is still being
+ * read.
+ */
+public class SitemapSeeder {
+
+    // Static constants
+    private static final Logger logger = System.getLogger(SitemapSeeder.class.getName());
+    private static final String DEFAULT_SITEMAP_PATH = "/sitemap.xml";
+    private static final int MAX_SITEMAPS = 1000; // bounds sitemap indexes that refer to each other
+
+    // Instance fields
+    private final HttpFetcher httpFetcher;
+    private final RobotsCache robotsCache;
+
+    public SitemapSeeder(HttpFetcher httpFetcher, RobotsCache robotsCache) {
+        this.httpFetcher = httpFetcher;
+        this.robotsCache = robotsCache;
+    }
+
+    /**
+     * Reads all sitemaps of the seed's host. Sitemaps that can't be fetched or
+     * parsed are skipped.
+     *
+     * @param pageUrls receives every page URL, as written in the sitemap
+     * @return the number of page URLs found
+     */
+    public long seed(String seedUrl, Consumer<String> pageUrls) throws InterruptedException {
+        Queue<String> pendingSitemaps = new ArrayDeque<>();
+        List<String> listedSitemaps = robotsCache.get(seedUrl).getSitemaps();
+        if (listedSitemaps.isEmpty()) {
+            pendingSitemaps.add(getOrigin(seedUrl) + DEFAULT_SITEMAP_PATH);
+        } else {
+            pendingSitemaps.addAll(listedSitemaps);
+        }
+        Set<String> seenSitemaps = new HashSet<>(pendingSitemaps);
+
+        long[] urlCount = { 0 };
+        int sitemapCount = 0;
+        String sitemapUrl;
+        while ((sitemapUrl = pendingSitemaps.poll()) != null && sitemapCount < MAX_SITEMAPS) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Interrupted while reading sitemaps");
+            }
+            sitemapCount++;
+            try {
+                httpFetcher.read(sitemapUrl, body -> SitemapReader.read(body, pageUrl -> {
+                    pageUrls.accept(pageUrl);
+                    urlCount[0]++;
+                }, nestedSitemapUrl -> {
+                    if (seenSitemaps.add(nestedSitemapUrl)) {
+                        pendingSitemaps.add(nestedSitemapUrl);
+                    }
+                }));
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Skipping sitemap that could not be read: {0} ({1})", sitemapUrl,
+                        e.getMessage());
+            }
+        }
+
+        logger.log(Level.INFO, "Found {0} URLs in {1} sitemaps", urlCount[0], sitemapCount);
+        return urlCount[0];
+    }
+
+    // scheme://authority of a URL
+    private static String getOrigin(String url) {
+        int authorityStart = url.indexOf("://") + 3;
+        int pathStart = authorityStart;
+        while (pathStart < url.length() && "/?#".indexOf(url.charAt(pathStart)) < 0) {
+            pathStart++;
+        }
+        return url.substring(0, pathStart);
+    }
+}
@@ -0,0 +1,57 @@
+package com.spyder.main;
+
+/**
+ * Token-bucket rate limiter that hands out reservations instead of blocking.
+ *
+ * The bucket refills at a fixed rate up to its capacity (the allowed burst).
+ * Each request takes one token; when the bucket is empty the request is given
+ * the point in time at which its token will have been refilled, so the caller
+ * can sleep outside of any lock. Not thread-safe on its own, callers
+ * synchronize around {@link #reserve(long)}.
+ */
+public class TokenBucket {
+
+    // Static constants
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    // Instance fields
+    private final double capacity;
+    private final double tokensPerNano;
+    private double availableTokens; // may go negative when requests are queued up
+    private long lastRefillNanos;
+
+    public TokenBucket(double tokensPerSecond, double capacity, long nowNanos) {
+        if (tokensPerSecond <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("Token bucket needs a positive rate and a capacity of at least 1");
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / NANOS_PER_SECOND;
+        this.availableTokens = capacity; // start full so the first burst is not delayed
+        this.lastRefillNanos = nowNanos;
+    }
+
+    /**
+     * Takes one token.
+     *
+     * @param nowNanos current {@link System#nanoTime()}
+     * @return the time (in nanoTime) at which the caller may proceed; equal to
+     *         nowNanos if a token was available
+     */
+    public long reserve(long nowNanos) {
+        refill(nowNanos);
+        availableTokens -= 1;
+        if (availableTokens >= 0) {
+            return nowNanos;
+        }
+        // wait until the token debt has been paid back
+        return nowNanos + (long) Math.ceil(-availableTokens / tokensPerNano);
+    }
+
+    private void refill(long nowNanos) {
+        long elapsedNanos = nowNanos - lastRefillNanos;
+        if (elapsedNanos > 0) {
+            availableTokens = Math.min(capacity, availableTokens + elapsedNanos * tokensPerNano);
+            lastRefillNanos = nowNanos;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.spyder.main;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Brings URLs into one canonical form, so that variants of the same page
+ * (e.g. "HTTP://Example.com:80/a/./b?utm_source=x#top" and
+ * "http://example.com/a/b") are fetched, saved and linked only once.
+ *
+ * For http and https URLs it lowercases the scheme and host, drops default
+ * ports, normalizes percent-encoding (uppercase hex digits, unreserved
+ * characters decoded, illegal characters encoded as UTF-8), removes dot
+ * segments, strips the fragment and the configured tracking parameters, and
+ * optionally sorts the query parameters and drops trailing slashes. Other URLs
+ * are returned unchanged.
+ *
+ * The URL is parsed in a single pass into one StringBuilder, without
+ * {@link java.net.URI}, since this runs for every link on every page.
+ * Instances are immutable and thread-safe.
+ */
+public class UrlCanonicalizer {
+
+    // Static constants
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final String PATH_CHARACTERS = "-._~!$&'()*+,;=:@/"; // besides letters and digits
+    private static final String QUERY_CHARACTERS = PATH_CHARACTERS + "?";
+
+    // Instance fields
+    private final List<String> trackingParameterNames = new ArrayList<>();
+    private final List<String> trackingParameterPrefixes = new ArrayList<>(); // from "name*" entries
+    private final boolean sortQueryParameters;
+    private final boolean trailingSlashIgnored;
+
+    public UrlCanonicalizer() {
+        this(new CrawlConfig());
+    }
+
+    public UrlCanonicalizer(CrawlConfig config) {
+        for (String parameter : config.getTrackingParameters()) {
+            if (parameter.endsWith("*")) {
+                trackingParameterPrefixes.add(parameter.substring(0, parameter.length() - 1));
+            } else {
+                trackingParameterNames.add(parameter);
+            }
+        }
+        this.sortQueryParameters = config.isQueryParameterSortingEnabled();
+        this.trailingSlashIgnored = config.isTrailingSlashIgnored();
+    }
+
+    /**
+     * Returns the canonical form of an absolute URL. URLs that are not http or
+     * https, or whose authority can't be parsed, are returned unchanged (only
+     * trimmed), so callers can still decide what to do with them.
+     */
+    public String canonicalize(String url) {
+        int start = 0;
+        int end = url.length();
+        while (start < end && url.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && url.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        // scheme
+        int schemeEnd = url.indexOf(':', start);
+        boolean https;
+        if (schemeEnd - start == 4 && url.regionMatches(true, start, "http", 0, 4)) {
+            https = false;
+        } else if (schemeEnd - start == 5 && url.regionMatches(true, start, "https", 0, 5)) {
+            https = true;
+        } else {
+            return url.substring(start, end);
+        }
+        if (!url.startsWith("//", schemeEnd + 1)) {
+            return url.substring(start, end);
+        }
+
+        int authorityStart = schemeEnd + 3;
+        int fragmentStart = indexOf(url, '#', authorityStart, end);
+        int queryStart = indexOf(url, '?', authorityStart, fragmentStart);
+        int pathStart = indexOf(url, '/', authorityStart, queryStart);
+
+        StringBuilder canonical = new StringBuilder(end - start + 1);
+        canonical.append(https ? "https://" : "http://");
+        if (!appendAuthority(canonical, url, authorityStart, pathStart, https)) {
+            return url.substring(start, end);
+        }
+        appendPath(canonical, url, pathStart, queryStart);
+        if (queryStart < fragmentStart) {
+            appendQuery(canonical, url, queryStart + 1, fragmentStart);
+        }
+        return canonical.toString(); // the fragment is dropped
+    }
+
+    /**
+     * Returns the lowercase host of a URL returned by {@link #canonicalize},
+     * without parsing it again, or null if it has none (e.g. mailto:).
+     */
+    public static String getHost(String canonicalUrl) {
+        int authorityStart = canonicalUrl.indexOf("://");
+        if (authorityStart < 0) {
+            return null;
+        }
+        authorityStart += 3;
+        int authorityEnd = indexOf(canonicalUrl, '/', authorityStart, canonicalUrl.length());
+        authorityEnd = indexOf(canonicalUrl, '?', authorityStart, authorityEnd);
+        authorityEnd = indexOf(canonicalUrl, '#', authorityStart, authorityEnd);
+        int hostStart = canonicalUrl.lastIndexOf('@', authorityEnd - 1) + 1;
+        if (hostStart < authorityStart) {
+            hostStart = authorityStart;
+        }
+        int hostEnd = canonicalUrl.lastIndexOf(':', authorityEnd - 1);
+        if (hostEnd < hostStart || canonicalUrl.lastIndexOf(']', authorityEnd - 1) > hostEnd) {
+            hostEnd = authorityEnd; // no port, or a colon inside an IPv6 literal
+        }
+        return hostEnd > hostStart ? canonicalUrl.substring(hostStart, hostEnd) : null;
+    }
+
+    // Private methods
+    // Appends [userinfo@]host[:port] with the host lowercased and a default port dropped.
+    private static boolean appendAuthority(StringBuilder canonical, String url, int start, int end, boolean https) {
+        int hostStart = url.lastIndexOf('@', end - 1) + 1;
+        if (hostStart <= start) {
+            hostStart = start;
+        } else {
+            canonical.append(url, start, hostStart); // userinfo, kept as it is
+        }
+
+        int hostEnd;
+        if (hostStart < end && url.charAt(hostStart) == '[') {
+            hostEnd = url.indexOf(']', hostStart) + 1; // IPv6 literal
+            if (hostEnd <= 0 || hostEnd > end) {
+                return false;
+            }
+        } else {
+            hostEnd = indexOf(url, ':', hostStart, end);
+        }
+        if (hostEnd == hostStart) {
+            return false;
+        }
+        for (int i = hostStart; i < hostEnd; i++) {
+            canonical.append(Character.toLowerCase(url.charAt(i)));
+        }
+
+        if (hostEnd < end) {
+            if (url.charAt(hostEnd) != ':') {
+                return false;
+            }
+            int port = 0;
+            for (int i = hostEnd + 1; i < end; i++) {
+                char c = url.charAt(i);
+                if (c < '0' || c > '9' || port > 65535) {
+                    return false;
+                }
+                port = port * 10 + (c - '0');
+            }
+            if (port > 65535) {
+                return false;
+            }
+            // an empty port counts as the default one
+            if (hostEnd + 1 < end && port != (https ? 443 : 80)) {
+                canonical.append(':').append(port); // also drops leading zeros
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Appends the path segment by segment, resolving "." and ".." as they are
+     * appended (RFC 3986 remove_dot_segments), after percent-encoding has been
+     * normalized so that "%2E" counts as a dot too.
+     */
+    private void appendPath(StringBuilder canonical, String url, int start, int end) {
+        int pathStart = canonical.length();
+        int segmentStart = start;
+        while (segmentStart < end) {
+            int segmentEnd = indexOf(url, '/', segmentStart + 1, end);
+            int appendedStart = canonical.length();
+            canonical.append('/');
+            appendNormalized(canonical, url, segmentStart + 1, segmentEnd, PATH_CHARACTERS);
+
+            int segmentLength = canonical.length() - appendedStart - 1;
+            boolean isDot = segmentLength == 1 && canonical.charAt(appendedStart + 1) == '.';
+            boolean isDotDot = segmentLength == 2 && canonical.charAt(appendedStart + 1) == '.'
+                    && canonical.charAt(appendedStart + 2) == '.';
+            if (isDot || isDotDot) {
+                canonical.setLength(appendedStart);
+                if (isDotDot) {
+                    int parentStart = canonical.lastIndexOf("/", appendedStart - 1);
+                    canonical.setLength(Math.max(parentStart, pathStart));
+                }
+                if (segmentEnd == end) {
+                    canonical.append('/'); // "a/b/.." is the directory "a/"
+                }
+            }
+            segmentStart = segmentEnd;
+        }
+
+        if (canonical.length() == pathStart) {
+            canonical.append('/');
+        } else if (trailingSlashIgnored && canonical.length() - pathStart > 1
+                && canonical.charAt(canonical.length() - 1) == '/') {
+            canonical.setLength(canonical.length() - 1);
+        }
+    }
+
+    // Appends the query without empty and tracking parameters; nothing if none are left.
+    private void appendQuery(StringBuilder canonical, String url, int start, int end) {
+        List<String> sortedParameters = sortQueryParameters ? new ArrayList<>() : null;
+        int queryStart = canonical.length();
+        int parameterStart = start;
+        while (parameterStart < end) {
+            int parameterEnd = indexOf(url, '&', parameterStart, end);
+            if (parameterEnd > parameterStart && !isTrackingParameter(url, parameterStart, parameterEnd)) {
+                int appendedStart = canonical.length();
+                canonical.append(canonical.length() == queryStart ? '?' : '&');
+                appendNormalized(canonical, url, parameterStart, parameterEnd, QUERY_CHARACTERS);
+                if (sortedParameters != null) {
+                    sortedParameters.add(canonical.substring(appendedStart + 1));
+                    canonical.setLength(appendedStart);
+                }
+            }
+            parameterStart = parameterEnd + 1;
+        }
+
+        if (sortedParameters != null && !sortedParameters.isEmpty()) {
+            // by name only: the sort is stable, so the values of a repeated name keep their order
+            sortedParameters.sort(UrlCanonicalizer::compareParameterNames);
+            canonical.append('?').append(String.join("&", sortedParameters));
+        }
+    }
+
+    private static int compareParameterNames(String parameter, String otherParameter) {
+        int nameEnd = indexOf(parameter, '=', 0, parameter.length());
+        int otherNameEnd = indexOf(otherParameter, '=', 0, otherParameter.length());
+        for (int i = 0; i < nameEnd && i < otherNameEnd; i++) {
+            int difference = parameter.charAt(i) - otherParameter.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return nameEnd - otherNameEnd;
+    }
+
+    private boolean isTrackingParameter(String url, int start, int end) {
+        int nameEnd = indexOf(url, '=', start, end);
+        int nameLength = nameEnd - start;
+        for (String name : trackingParameterNames) {
+            if (name.length() == nameLength && url.regionMatches(true, start, name, 0, nameLength)) {
+                return true;
+            }
+        }
+        for (String prefix : trackingParameterPrefixes) {
+            if (prefix.length() <= nameLength && url.regionMatches(true, start, prefix, 0, prefix.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Copies url[start, end) with normalized percent-encoding: escapes of
+     * unreserved characters are decoded, other escapes get uppercase hex
+     * digits, and characters that are not allowed (spaces, non-ASCII, a "%"
+     * without two hex digits) are encoded as UTF-8.
+     */
+    private static void appendNormalized(StringBuilder canonical, String url, int start, int end,
+            String allowedCharacters) {
+        for (int i = start; i < end; i++) {
+            char c = url.charAt(i);
+            if (c == '%' && i + 2 < end && isHexDigit(url.charAt(i + 1)) && isHexDigit(url.charAt(i + 2))) {
+                int value = Character.digit(url.charAt(i + 1), 16) * 16 + Character.digit(url.charAt(i + 2), 16);
+                if (isUnreserved(value)) {
+                    canonical.append((char) value);
+                } else {
+                    appendEscaped(canonical, value);
+                }
+                i += 2;
+            } else if (isLetterOrDigit(c) || (c < 0x80 && allowedCharacters.indexOf(c) >= 0)) {
+                canonical.append(c);
+            } else if (c < 0x80) {
+                appendEscaped(canonical, c);
+            } else {
+                int codePoint = url.codePointAt(i);
+                if (Character.isSupplementaryCodePoint(codePoint)) {
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    codePoint = 0xFFFD; // unpaired surrogate, can't be encoded
+                }
+                appendUtf8Escaped(canonical, codePoint);
+            }
+        }
+    }
+
+    private static void appendEscaped(StringBuilder canonical, int value) {
+        canonical.append('%').append(HEX_DIGITS[value >> 4]).append(HEX_DIGITS[value & 0x0F]);
+    }
+
+    private static void appendUtf8Escaped(StringBuilder canonical, int codePoint) {
+        if (codePoint < 0x800) {
+            appendEscaped(canonical, 0xC0 | (codePoint >> 6));
+        } else {
+            if (codePoint < 0x10000) {
+                appendEscaped(canonical, 0xE0 | (codePoint >> 12));
+            } else {
+                appendEscaped(canonical, 0xF0 | (codePoint >> 18));
+                appendEscaped(canonical, 0x80 | ((codePoint >> 12) & 0x3F));
+            }
+            appendEscaped(canonical, 0x80 | ((codePoint >> 6) & 0x3F));
+        }
+        appendEscaped(canonical, 0x80 | (codePoint & 0x3F));
+    }
+
+    private static boolean isUnreserved(int c) {
+        return isLetterOrDigit(c) || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    private static boolean isLetterOrDigit(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isHexDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    // Index of c in url[from, to), or to if it does not occur.
+    private static int indexOf(String url, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (url.charAt(i) == c) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+}
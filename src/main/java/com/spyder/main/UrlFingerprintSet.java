@@ -0,0 +1,197 @@
+package com.spyder.main;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Memory-efficient, thread-safe set of URLs for very large crawls.
+ *
+ * Instead of the URL strings, only a 64-bit fingerprint of each URL is kept, in
+ * primitive open-addressing tables (linear probing) — about 8-16 bytes per URL
+ * instead of the 100+ bytes a {@code HashSet<String>} entry costs. With 64-bit
+ * fingerprints, a false "already seen" is practically impossible: the chance
+ * of any collision among 10 million URLs is about one in 400,000.
+ *
+ * The tables are split into independently locked segments so concurrent
+ * workers rarely contend, and lookups don't take the lock at all: most links a
+ * crawler adds were seen before, and are turned away by a lock-free probe.
+ * Optionally, a {@link BloomFilter} in front of the tables recognizes most
+ * unseen URLs, which then go straight to the locked insert without probing
+ * the table first.
+ */
+public class UrlFingerprintSet {
+
+    // Static constants
+    private static final int SEGMENT_COUNT = 64; // power of two
+    private static final int SEGMENT_SHIFT = Long.SIZE - Integer.numberOfTrailingZeros(SEGMENT_COUNT);
+    private static final int MIN_SEGMENT_CAPACITY = 64; // power of two
+    private static final double MAX_LOAD_FACTOR = 0.7;
+    private static final long EMPTY_SLOT = 0L; // the fingerprint 0 is remapped, see fingerprint()
+
+    // Instance fields
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private final BloomFilter bloomFilter; // null unless enabled
+
+    public UrlFingerprintSet() {
+        this(0, false);
+    }
+
+    /**
+     * @param expectedUrls    expected number of URLs, pre-sizes the tables so
+     *                        large crawls don't pay for repeated resizing (0 if
+     *                        unknown)
+     * @param withBloomFilter whether to put a Bloom filter in front of the tables
+     */
+    public UrlFingerprintSet(long expectedUrls, boolean withBloomFilter) {
+        int segmentCapacity = tableCapacityFor(expectedUrls / SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+        this.bloomFilter = withBloomFilter ? new BloomFilter(Math.max(expectedUrls, 1_000_000)) : null;
+    }
+
+    /**
+     * Adds a URL.
+     *
+     * @return true if the URL was not in the set before
+     */
+    public boolean add(String url) {
+        long fingerprint = fingerprint(url);
+        Segment segment = segmentFor(fingerprint);
+        if ((bloomFilter == null || bloomFilter.mightContain(fingerprint)) && segment.contains(fingerprint)) {
+            return false; // seen before, no lock needed
+        }
+        if (!segment.add(fingerprint)) {
+            return false; // added by another worker meanwhile
+        }
+        if (bloomFilter != null) {
+            // after the insert: until then the filter only sends the URL down the locked path
+            bloomFilter.put(fingerprint);
+        }
+        return true;
+    }
+
+    public boolean contains(String url) {
+        long fingerprint = fingerprint(url);
+        if (bloomFilter != null && !bloomFilter.mightContain(fingerprint)) {
+            return false; // definitely not seen
+        }
+        return segmentFor(fingerprint).contains(fingerprint);
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * 64-bit fingerprint of a string: FNV-1a over the UTF-16 chars, finished
+     * with the MurmurHash3 mixer so every input bit affects every output bit.
+     * Allocation-free.
+     */
+    public static long fingerprint(String url) {
+        long hash = 0xcbf29ce484222325L; // FNV offset basis
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L; // FNV prime
+        }
+        hash = mix(hash ^ url.length());
+        return hash == EMPTY_SLOT ? 1L : hash; // 0 marks empty slots
+    }
+
+    // MurmurHash3 fmix64 finalizer
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private Segment segmentFor(long fingerprint) {
+        return segments[(int) (fingerprint >>> SEGMENT_SHIFT)]; // top bits pick the segment
+    }
+
+    private static int tableCapacityFor(long entries) {
+        long capacity = MIN_SEGMENT_CAPACITY;
+        while (capacity * MAX_LOAD_FACTOR < entries && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return (int) capacity;
+    }
+
+    /*
+     * One open-addressing table of fingerprints. Inserts are guarded by the
+     * segment's lock; lookups read without it, as slots only ever go from
+     * empty to a fingerprint. A lookup that misses an insert in progress, or
+     * reads a table being replaced by a larger one, just reports the URL as
+     * unseen, and the locked insert then finds it.
+     */
+    private static class Segment {
+
+        private volatile AtomicLongArray table;
+        private int size; // guarded by "this"
+
+        private Segment(int capacity) {
+            this.table = new AtomicLongArray(capacity);
+        }
+
+        private synchronized boolean add(long fingerprint) {
+            if (size + 1 > table.length() * MAX_LOAD_FACTOR) {
+                resize();
+            }
+            if (insert(table, fingerprint)) {
+                size++;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean contains(long fingerprint) {
+            AtomicLongArray table = this.table;
+            int mask = table.length() - 1;
+            for (int slot = (int) fingerprint & mask;; slot = (slot + 1) & mask) {
+                long entry = table.get(slot);
+                if (entry == fingerprint) {
+                    return true;
+                }
+                if (entry == EMPTY_SLOT) {
+                    return false;
+                }
+            }
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        private void resize() {
+            AtomicLongArray resizedTable = new AtomicLongArray(table.length() * 2);
+            for (int slot = 0; slot < table.length(); slot++) {
+                long entry = table.get(slot);
+                if (entry != EMPTY_SLOT) {
+                    insert(resizedTable, entry);
+                }
+            }
+            table = resizedTable; // published complete, lookups switch over
+        }
+
+        // Linear probing; the low bits pick the slot (the top bits picked the segment).
+        private static boolean insert(AtomicLongArray table, long fingerprint) {
+            int mask = table.length() - 1;
+            for (int slot = (int) fingerprint & mask;; slot = (slot + 1) & mask) {
+                long entry = table.get(slot);
+                if (entry == fingerprint) {
+                    return false;
+                }
+                if (entry == EMPTY_SLOT) {
+                    table.set(slot, fingerprint);
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.spyder.main;
+
+/**
+ * Decides the order in which the {@link Frontier} hands out URLs: queued tasks
+ * with higher scores are crawled first, tasks with equal scores in the order
+ * they were discovered.
+ *
+ * Scores are computed when a URL is queued, and again, by whichever worker
+ * found it, whenever another link to a still queued URL is found (see
+ * {@link CrawlTask#getInlinkCount()}), so implementations must be fast and
+ * thread-safe. A score that changes with every new inlink re-queues the task
+ * every time; scores that only change in steps keep the frontier's lock free.
+ */
+@FunctionalInterface
+public interface UrlScorer {
+
+    // Shallow pages first, like a FIFO queue.
+    UrlScorer BREADTH_FIRST = task -> -task.getDepth();
+
+    double score(CrawlTask task);
+}
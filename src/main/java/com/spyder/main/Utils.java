@@ -1,35 +1,39 @@
 package com.spyder.main;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 public class Utils {
-    private static final int BUFFER_SIZE = 1024; // 1kb buffer size for downloadFile
-
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final char[] BASE32_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567".toCharArray();
     public static void downloadFile(String fileURL, String savePath) throws IOException {
+        downloadFile(fileURL, savePath, HttpFetcher.getDefault());
+    }
+
+    // downloads through the given fetcher to share its connection pool and per-host limits
+    public static void downloadFile(String fileURL, String savePath, HttpFetcher httpFetcher) throws IOException {
         // use URI constructor for strict validation, then convert to URL to catch
         // malformed URLs early
-        URL url;
         try {
-            url = new URI(fileURL).toURL();
+            new URI(fileURL).toURL();
         } catch (URISyntaxException | IllegalArgumentException | MalformedURLException e) {
             throw new IOException("Invalid URL syntax: " + fileURL, e);
         }
 
-        // try with resources to write data to file
-        try (BufferedInputStream inputStream = new BufferedInputStream(url.openStream());
-                FileOutputStream outputStream = new FileOutputStream(savePath)) {
-            byte[] dataBuffer = new byte[BUFFER_SIZE];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(dataBuffer, 0, BUFFER_SIZE)) != -1) {
-                outputStream.write(dataBuffer, 0, bytesRead);
-            }
+        // large files come in parallel ranges, and resume where an earlier attempt stopped
+        try {
+            new RangedDownloader(httpFetcher).download(fileURL, Paths.get(savePath));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // keep the interrupt visible to the caller
+            throw new InterruptedIOException("Download interrupted: " + fileURL);
         }
     }
 
@@ -123,4 +127,59 @@ public class Utils {
             return false;
         }
     }
+
+    public static MessageDigest newSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
+
+    // hex-encoded SHA-256 of the given bytes
+    public static String sha256Hex(byte[] data) {
+        return toHexString(newSha256Digest().digest(data));
+    }
+
+    public static String toHexString(byte[] bytes) {
+        return toHexString(bytes, bytes.length);
+    }
+
+    // hex-encodes the first "length" bytes
+    public static String toHexString(byte[] bytes, int length) {
+        char[] hex = new char[length * 2];
+        for (int i = 0; i < length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    // base32-encoded SHA-1, the digest format of WARC records and CDX indexes
+    public static String sha1Base32(byte[] data) {
+        try {
+            return toBase32String(MessageDigest.getInstance("SHA-1").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required by every Java platform", e);
+        }
+    }
+
+    // RFC 4648 base32, without padding
+    public static String toBase32String(byte[] bytes) {
+        StringBuilder base32 = new StringBuilder((bytes.length * 8 + 4) / 5);
+        int buffer = 0;
+        int bufferedBits = 0;
+        for (byte b : bytes) {
+            buffer = (buffer << 8) | (b & 0xFF);
+            bufferedBits += 8;
+            while (bufferedBits >= 5) {
+                base32.append(BASE32_DIGITS[(buffer >> (bufferedBits - 5)) & 0x1F]);
+                bufferedBits -= 5;
+            }
+        }
+        if (bufferedBits > 0) {
+            base32.append(BASE32_DIGITS[(buffer << (5 - bufferedBits)) & 0x1F]);
+        }
+        return base32.toString();
+    }
 }
@@ -0,0 +1,447 @@
+package com.spyder.main;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+/**
+ * Stores a crawl as WARC 1.1 archives, the format web archive tools consume,
+ * instead of one small file per page.
+ *
+ * Every page and image becomes a response record plus its request record,
+ * appended sequentially to the current {@code .warc.gz} file. Each record is
+ * compressed as a gzip member of its own, so it can be read from its offset
+ * without decompressing the file from the start. A new file is started when
+ * the current one reaches the configured size. {@code index.cdx} lists every
+ * response (URL key, timestamp, URL, MIME type, status, payload digest,
+ * record length, offset and file), sorted by URL key.
+ *
+ * Archives always hold complete responses, so WARC output does not take part
+ * in incremental crawls.
+ */
+public class WarcWriter implements OutputSink {
+
+    // Static constants
+    private static final Logger logger = System.getLogger(WarcWriter.class.getName());
+    private static final String WARC_VERSION = "WARC/1.1";
+    private static final String CRLF = "\r\n";
+    private static final byte[] RECORD_END = (CRLF + CRLF).getBytes(StandardCharsets.US_ASCII);
+    private static final String FILE_EXTENSION = ".warc.gz";
+    private static final String INDEX_FILE_NAME = "index.cdx";
+    private static final String CDX_HEADER = " CDX N b a m s k r M S V g";
+    private static final int IMAGE_THREADS = 8;
+    private static final int IMAGE_SHUTDOWN_TIMEOUT_MINUTES = 1;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final DateTimeFormatter WARC_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter CDX_TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+
+    // Instance fields
+    private final String saveLocation;
+    private final Path archiveDirectory;
+    private final long maxFileBytes;
+    private final String userAgent;
+    private final String acceptEncoding;
+    private final Set<String> archivedImages = ConcurrentHashMap.newKeySet();
+    private volatile HttpFetcher httpFetcher = HttpFetcher.getDefault();
+    private volatile CrawlMetrics metrics = new CrawlMetrics();
+    private ExecutorService imageExecutor; // set up by open()
+
+    // Current archive file and index, guarded by "this"
+    private String filePrefix; // shared by all files of one crawl
+    private int fileSerial;
+    private String currentFileName;
+    private OutputStream currentFile;
+    private long currentFileBytes;
+    private int currentFileRecords;
+    private BufferedWriter newIndexLines; // sorted into index.cdx by close()
+
+    public WarcWriter(String saveLocation, CrawlConfig config) {
+        this.saveLocation = saveLocation;
+        this.archiveDirectory = Paths.get(saveLocation);
+        this.maxFileBytes = config.getWarcMaxFileBytes();
+        this.userAgent = config.getUserAgent();
+        this.acceptEncoding = config.getAcceptEncoding();
+    }
+
+    @Override
+    public String getSaveLocation() {
+        return saveLocation;
+    }
+
+    @Override
+    public CrawlManifest getManifest() {
+        return null; // no incremental crawls, see class comment
+    }
+
+    @Override
+    public void setHttpFetcher(HttpFetcher httpFetcher) {
+        this.httpFetcher = httpFetcher;
+    }
+
+    @Override
+    public void setMetrics(CrawlMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public static String getIndexFileName() {
+        return INDEX_FILE_NAME;
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        Files.createDirectories(archiveDirectory);
+        // a new set of files per crawl, archives of earlier crawls stay untouched
+        filePrefix = "crawly-" + CDX_TIMESTAMP_FORMAT.format(Instant.now());
+        fileSerial = 0;
+        newIndexLines = Files.newBufferedWriter(newIndexFile(), StandardCharsets.UTF_8);
+
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        imageExecutor = Executors.newFixedThreadPool(IMAGE_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "crawly-warc-images-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Archives the page as it was fetched (the document is not modified) and
+     * starts archiving the images it references that are not archived yet.
+     */
+    @Override
+    public CompletableFuture<Void> savePage(FetchResponse response, Document webpage, List<String> links) {
+        try {
+            archiveResponse(response);
+        } catch (IOException e) {
+            logger.log(Level.ERROR, "Failed to archive page: " + response.getUrl(), e);
+            return CompletableFuture.failedFuture(e);
+        }
+
+        for (Element image : webpage.select("img[src]")) {
+            String imageUrl = image.attr("abs:src");
+            if (!imageUrl.isEmpty() && archivedImages.add(imageUrl)) {
+                imageExecutor.execute(() -> archiveImage(imageUrl));
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Waits for the image downloads, closes the current archive file and
+     * merges this crawl's entries into the sorted index.
+     */
+    @Override
+    public void close() throws IOException {
+        if (imageExecutor != null) {
+            imageExecutor.shutdown();
+            try {
+                if (!imageExecutor.awaitTermination(IMAGE_SHUTDOWN_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                    logger.log(Level.WARNING, "Image downloads did not finish, archiving without them");
+                    imageExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                imageExecutor.shutdownNow();
+            }
+            imageExecutor = null;
+        }
+
+        synchronized (this) {
+            if (currentFile != null) {
+                currentFile.close();
+                currentFile = null;
+            }
+            if (newIndexLines != null) {
+                newIndexLines.close();
+                newIndexLines = null;
+                updateIndex();
+            }
+        }
+    }
+
+    /**
+     * Converts a URL to the canonical key CDX indexes are sorted by: the host
+     * with its labels reversed and without "www.", then the path and query,
+     * e.g. "https://www.example.com/News?id=1" becomes
+     * "com,example)/news?id=1".
+     */
+    public static String toUrlKey(String url) {
+        try {
+            URI uri = new URI(url);
+            String host = uri.getHost();
+            if (host == null) {
+                return url.toLowerCase(Locale.ROOT);
+            }
+            host = host.toLowerCase(Locale.ROOT);
+            if (host.startsWith("www.")) {
+                host = host.substring(4);
+            }
+
+            List<String> labels = new ArrayList<>(List.of(host.split("\\.")));
+            Collections.reverse(labels);
+            StringBuilder key = new StringBuilder(String.join(",", labels));
+            int port = uri.getPort();
+            if (port != -1 && port != 80 && port != 443) {
+                key.append(':').append(port);
+            }
+            key.append(')');
+            String path = uri.getRawPath();
+            key.append(path == null || path.isEmpty() ? "/" : path.toLowerCase(Locale.ROOT));
+            if (uri.getRawQuery() != null) {
+                key.append('?').append(uri.getRawQuery().toLowerCase(Locale.ROOT));
+            }
+            return key.toString();
+        } catch (URISyntaxException e) {
+            return url.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    // Private methods
+    @SuppressWarnings("try")
+    private void archiveImage(String imageUrl) {
+        CrawlMetrics metrics = this.metrics;
+        try (CrawlMetrics.PhaseTimer timer = metrics.time(CrawlPhase.IMAGE_FETCH, imageUrl)) {
+            archiveResponse(httpFetcher.fetch(imageUrl));
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to archive image: " + imageUrl, e);
+            metrics.increment(CrawlMetrics.Counter.IMAGES_FAILED);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // crawl is being stopped
+        }
+    }
+
+    /*
+     * Compresses the records on the calling thread, so the crawl workers share
+     * the CPU work, and only appends them under the lock.
+     */
+    private void archiveResponse(FetchResponse response) throws IOException {
+        Instant fetchTime = Instant.now();
+        String date = WARC_DATE_FORMAT.format(fetchTime);
+        String targetUri = response.getFinalUrl(); // where the content came from, after redirects
+        byte[] payload = response.getBody() != null ? response.getBody() : new byte[0];
+        String payloadDigest = Utils.sha1Base32(payload);
+
+        String responseRecordId = newRecordId();
+        Map<String, String> responseFields = new LinkedHashMap<>();
+        responseFields.put("WARC-Type", "response");
+        responseFields.put("WARC-Record-ID", responseRecordId);
+        responseFields.put("WARC-Date", date);
+        responseFields.put("WARC-Target-URI", targetUri);
+        responseFields.put("WARC-Payload-Digest", "sha1:" + payloadDigest);
+        responseFields.put("Content-Type", "application/http;msgtype=response");
+        byte[] responseRecord = compressRecord(responseFields, httpResponseHeader(response, payload.length),
+                payload);
+
+        Map<String, String> requestFields = new LinkedHashMap<>();
+        requestFields.put("WARC-Type", "request");
+        requestFields.put("WARC-Record-ID", newRecordId());
+        requestFields.put("WARC-Date", date);
+        requestFields.put("WARC-Target-URI", targetUri);
+        requestFields.put("WARC-Concurrent-To", responseRecordId);
+        requestFields.put("Content-Type", "application/http;msgtype=request");
+        byte[] requestRecord = compressRecord(requestFields, httpRequestHeader(targetUri));
+
+        String mimeType = response.getContentType();
+        if (mimeType == null || mimeType.isEmpty()) {
+            mimeType = "-";
+        } else {
+            int parametersIndex = mimeType.indexOf(';');
+            mimeType = (parametersIndex >= 0 ? mimeType.substring(0, parametersIndex) : mimeType).trim();
+        }
+        // the offset, length and file name complete the line once the record is appended
+        String indexLinePrefix = toUrlKey(targetUri) + " " + CDX_TIMESTAMP_FORMAT.format(fetchTime) + " "
+                + targetUri.replace(" ", "%20") + " " + mimeType + " " + response.getStatusCode() + " "
+                + payloadDigest + " - - ";
+
+        CrawlMetrics metrics = this.metrics;
+        try (CrawlMetrics.PhaseTimer timer = metrics.time(CrawlPhase.DISK_WRITE, targetUri)) {
+            append(responseRecord, requestRecord, indexLinePrefix);
+            timer.setBytes(responseRecord.length + requestRecord.length);
+        }
+        metrics.add(CrawlMetrics.Counter.BYTES_WRITTEN, responseRecord.length + requestRecord.length);
+    }
+
+    private synchronized void append(byte[] responseRecord, byte[] requestRecord, String indexLinePrefix)
+            throws IOException {
+        if (newIndexLines == null) {
+            throw new IOException("WARC writer is not open: " + saveLocation);
+        }
+        long recordPairBytes = responseRecord.length + requestRecord.length;
+        // a file always receives at least one response, even one larger than the limit
+        if (currentFile == null || (currentFileRecords > 0 && currentFileBytes + recordPairBytes > maxFileBytes)) {
+            startNewFile();
+        }
+
+        long offset = currentFileBytes;
+        currentFile.write(responseRecord);
+        currentFile.write(requestRecord);
+        currentFileBytes += recordPairBytes;
+        currentFileRecords++;
+
+        newIndexLines.write(indexLinePrefix + responseRecord.length + " " + offset + " " + currentFileName);
+        newIndexLines.newLine();
+    }
+
+    // Closes the current file and starts the next one with a warcinfo record.
+    private void startNewFile() throws IOException {
+        if (currentFile != null) {
+            currentFile.close();
+        }
+        fileSerial++;
+        currentFileName = String.format(Locale.ROOT, "%s-%05d%s", filePrefix, fileSerial, FILE_EXTENSION);
+        currentFile = new BufferedOutputStream(Files.newOutputStream(archiveDirectory.resolve(currentFileName),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), WRITE_BUFFER_SIZE);
+        currentFileBytes = 0;
+        currentFileRecords = 0;
+
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("WARC-Type", "warcinfo");
+        fields.put("WARC-Record-ID", newRecordId());
+        fields.put("WARC-Date", WARC_DATE_FORMAT.format(Instant.now()));
+        fields.put("WARC-Filename", currentFileName);
+        fields.put("Content-Type", "application/warc-fields");
+        String info = "software: Crawly" + CRLF
+                + "format: WARC File Format 1.1" + CRLF
+                + "http-header-user-agent: " + userAgent + CRLF;
+        byte[] warcinfoRecord = compressRecord(fields, info.getBytes(StandardCharsets.UTF_8));
+        currentFile.write(warcinfoRecord);
+        currentFileBytes += warcinfoRecord.length;
+    }
+
+    /*
+     * Merges the lines of this crawl into index.cdx and sorts it, so lookups
+     * can use binary search. The index is sorted in memory, one short line per
+     * response.
+     */
+    private void updateIndex() throws IOException {
+        Path indexFile = archiveDirectory.resolve(INDEX_FILE_NAME);
+        List<String> lines = new ArrayList<>();
+        if (Files.exists(indexFile)) {
+            for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+                if (!line.equals(CDX_HEADER) && !line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        lines.addAll(Files.readAllLines(newIndexFile(), StandardCharsets.UTF_8));
+        Collections.sort(lines);
+
+        Path temporaryFile = archiveDirectory.resolve(INDEX_FILE_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            writer.write(CDX_HEADER);
+            writer.newLine();
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        Files.move(temporaryFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(newIndexFile());
+    }
+
+    private Path newIndexFile() {
+        return archiveDirectory.resolve(filePrefix + ".cdx.part");
+    }
+
+    // HTTP/1.1 status line and headers; the body is stored de-chunked and decoded, so framing and
+    // encoding headers are rewritten.
+    private static byte[] httpResponseHeader(FetchResponse response, int payloadLength) {
+        int statusCode = response.getStatusCode();
+        StringBuilder header = new StringBuilder("HTTP/1.1 ").append(statusCode)
+                .append(statusCode == 200 ? " OK" : " ").append(CRLF);
+        response.getHeaders().map().forEach((name, values) -> {
+            if (name.startsWith(":") || name.equalsIgnoreCase("Content-Length")
+                    || name.equalsIgnoreCase("Transfer-Encoding") || name.equalsIgnoreCase("Content-Encoding")) {
+                return; // HTTP/2 pseudo-headers, framing, and the compression HttpFetcher already undid
+            }
+            for (String value : values) {
+                header.append(name).append(": ").append(value).append(CRLF);
+            }
+        });
+        header.append("Content-Length: ").append(payloadLength).append(CRLF).append(CRLF);
+        return header.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String httpRequestHeader(String url) {
+        String target = "/";
+        String host = "";
+        try {
+            URI uri = new URI(url);
+            host = uri.getRawAuthority() != null ? uri.getRawAuthority() : "";
+            String path = uri.getRawPath();
+            target = (path == null || path.isEmpty() ? "/" : path)
+                    + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "");
+        } catch (URISyntaxException e) {
+            logger.log(Level.DEBUG, "Cannot parse URL for request record: {0}", url);
+        }
+        return "GET " + target + " HTTP/1.1" + CRLF
+                + "Host: " + host + CRLF
+                + "User-Agent: " + userAgent + CRLF
+                + "Accept-Encoding: " + acceptEncoding + CRLF + CRLF;
+    }
+
+    private static byte[] compressRecord(Map<String, String> fields, String block) throws IOException {
+        return compressRecord(fields, block.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // One record as a complete gzip member; blockParts are concatenated into the record's content block.
+    private static byte[] compressRecord(Map<String, String> fields, byte[]... blockParts) throws IOException {
+        long blockLength = 0;
+        for (byte[] part : blockParts) {
+            blockLength += part.length;
+        }
+
+        StringBuilder header = new StringBuilder(WARC_VERSION).append(CRLF);
+        fields.forEach((name, value) -> header.append(name).append(": ").append(value).append(CRLF));
+        header.append("Content-Length: ").append(blockLength).append(CRLF).append(CRLF);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream((int) Math.min(blockLength / 2 + 512,
+                Integer.MAX_VALUE));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, WRITE_BUFFER_SIZE)) {
+            gzip.write(header.toString().getBytes(StandardCharsets.UTF_8));
+            for (byte[] part : blockParts) {
+                gzip.write(part);
+            }
+            gzip.write(RECORD_END);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String newRecordId() {
+        return "<urn:uuid:" + UUID.randomUUID() + ">";
+    }
+}
@@ -1,34 +1,64 @@
 package com.spyder.main;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
+import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.file.Files;
-import java.nio.file.InvalidPathException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import org.jsoup.nodes.DataNode;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import org.jsoup.select.NodeTraversor;
 
-public class WebPageSaver {
+/**
+ * Mirrors a site for offline browsing: one HTML file per page, with links and
+ * image sources pointing to the local copies. The files go to a
+ * {@link FileStore}: a directory tree, or a single pack file for the PACK
+ * output format.
+ */
+public class WebPageSaver implements OutputSink {
 
     // Static constants
     private final static String IMAGES_FOLDER_NAME = "images";
+    private final static String ASSETS_FOLDER_NAME = "assets"; // stylesheets, scripts, fonts
+    private final static String METADATA_FOLDER_NAME = ".crawly"; // crawl state, not part of the offline copy
 
     // Instance fields
     private static final Logger logger = System.getLogger(WebPageSaver.class.getName());
     private final String saveLocation;
-
-    // Constructor
+    private final AssetPipeline assetPipeline;
+    private final CrawlManifest manifest;
+    private final FileStore fileStore;
+    private final UrlCanonicalizer canonicalizer;
+    private final long assetWaitNanos; // how long a page waits for its assets, retries included
+    private volatile CrawlMetrics metrics = new CrawlMetrics();
+
+    // Constructors
     public WebPageSaver(String saveLocation) {
+        this(saveLocation, new CrawlConfig());
+    }
+
+    public WebPageSaver(String saveLocation, CrawlConfig config) {
         // Ensure path is syntactically valid before assigning
         try {
             Paths.get(saveLocation);
@@ -38,6 +68,21 @@ public class WebPageSaver {
         }
 
         this.saveLocation = saveLocation;
+        Path rootDirectory = Paths.get(saveLocation);
+        Path metadataDirectory = rootDirectory.resolve(METADATA_FOLDER_NAME); // also holds downloads in progress
+        if (config.getOutputFormat() == CrawlConfig.OutputFormat.PACK) {
+            this.fileStore = new PackWriter(rootDirectory, metadataDirectory, config);
+        } else {
+            this.fileStore = new DirectoryStore(rootDirectory, metadataDirectory, new DiskWriter(
+                    config.getWriterThreadCount(), config.getWriteQueueCapacity(), config.getFsyncPolicy(),
+                    metadataDirectory));
+        }
+        this.assetPipeline = new AssetPipeline(fileStore, IMAGES_FOLDER_NAME, ASSETS_FOLDER_NAME,
+                HttpFetcher.getDefault());
+        assetPipeline.setRetryPolicy(new RetryPolicy(config));
+        this.manifest = new CrawlManifest(rootDirectory, METADATA_FOLDER_NAME, fileStore::exists);
+        this.canonicalizer = new UrlCanonicalizer(config); // same form as the crawler's URLs
+        this.assetWaitNanos = TimeUnit.MILLISECONDS.toNanos(config.getReadTimeoutMillis());
     }
 
     // Public methods
@@ -45,51 +90,115 @@ public class WebPageSaver {
         return IMAGES_FOLDER_NAME;
     }
 
-    public void saveWebPage(Document webpage, String url) {
-        // Derive a relative file path from the URL for the webpage.
-        // Needed to create the correct parent directory structure and file name.
-        String relativeFilePath = getRelativePath(url);
+    public static String getAssetsFolderName() {
+        return ASSETS_FOLDER_NAME;
+    }
 
-        // Build the full file path that preserves the directory structure of the URL,
-        // and uses the save location as the root.
-        // Use Path API for proper cross-platform path handling (handle \ on Windows).
-        Path targetFilePath = Paths.get(saveLocation).resolve(relativeFilePath);
+    public static String getMetadataFolderName() {
+        return METADATA_FOLDER_NAME;
+    }
 
-        // Ensure the parent directories for the target file exist, creating any nested
-        // directories needed to mirror the URL path before writing the file.
-        Path parentDirectoryPath = targetFilePath.getParent();
-        if (parentDirectoryPath != null) { // null if saving to root directory
-            try {
-                Files.createDirectories(parentDirectoryPath);
-            } catch (IOException | InvalidPathException e) {
-                // Use concatenation for directory path, so that we can pass the exception
-                // as a throwable, preserving stack trace.
-                logger.log(Level.ERROR, "Failed to create directories for " + parentDirectoryPath, e);
-                return;
-            }
+    @Override
+    public String getSaveLocation() {
+        return saveLocation;
+    }
+
+    @Override
+    public CrawlManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * Prepares the save location for a crawl: loads the manifest of previous
+     * crawls so unchanged pages and images can be revalidated instead of
+     * downloaded again.
+     */
+    @Override
+    public void open() throws IOException {
+        fileStore.open();
+        manifest.open();
+        assetPipeline.setManifest(manifest);
+    }
+
+    /**
+     * Finishes a crawl started with open(): stops the asset downloads, waits
+     * for the pages still queued for writing, then persists the manifest.
+     */
+    @Override
+    public void close() throws IOException {
+        assetPipeline.close(); // no more asset writes into the file store
+        try {
+            fileStore.close();
+        } catch (InterruptedIOException e) {
+            // pages still queued are redone on resume
+            logger.log(Level.WARNING, "Interrupted while writing the remaining pages");
         }
+        assetPipeline.setManifest(null);
+        manifest.close();
+    }
 
-        // Create a copy of the webpage to avoid modifying the original document when
-        // updating internal links, which might still be used for crawling
-        Document webpageForSaving = webpage.clone();
+    // Share the connection pool and per-host request limits with the crawler that fetches the pages.
+    @Override
+    public void setHttpFetcher(HttpFetcher httpFetcher) {
+        assetPipeline.setHttpFetcher(httpFetcher);
+    }
 
-        // Download all images in the webpage, and update their src attributes to point
-        // to the local copies, before writing the HTML file.
-        downloadImages(webpageForSaving, saveLocation, relativeFilePath);
+    // Records the rewrite, image fetch and disk write phases of saved pages.
+    @Override
+    public void setMetrics(CrawlMetrics metrics) {
+        this.metrics = metrics;
+        assetPipeline.setMetrics(metrics);
+        fileStore.setMetrics(metrics);
+    }
 
-        // Update internal links to point to the correct local file paths
-        updateInternalLinks(webpageForSaving, url, relativeFilePath);
+    /**
+     * Saves a page with {@link #saveWebPage} and records it in the manifest,
+     * so the next crawl can revalidate it.
+     */
+    @Override
+    public CompletableFuture<Void> savePage(FetchResponse response, Document webpage, List<String> links)
+            throws InterruptedException {
+        String url = response.getUrl();
+        CompletableFuture<Void> pageWritten = saveWebPage(webpage, url);
+        manifest.put(new ManifestEntry(url, response.getHeader("ETag"), response.getHeader("Last-Modified"),
+                Utils.sha256Hex(response.getBody()), getRelativePath(url), links));
+        return pageWritten;
+    }
 
-        // Write the modified HTML content, with updated image and link paths,
-        // to the file.
-        try (FileWriter myWriter = new FileWriter(targetFilePath.toFile())) {
-            myWriter.write(webpageForSaving.html());
-        } catch (IOException e) {
-            logger.log(Level.ERROR, "Failed to write webpage to file: " + targetFilePath, e);
-        }
+    /**
+     * Saves a webpage, and its images, for offline browsing.
+     *
+     * The document is modified in place: afterwards its image sources and
+     * internal links point to the local copies. Callers must extract anything
+     * else they need from it (such as links to crawl) beforehand, and must not
+     * touch it afterwards: the HTML is written in the background by the
+     * {@link FileStore}.
+     *
+     * @return completes once the page is stored, or exceptionally if it could
+     *         not be written
+     */
+    public CompletableFuture<Void> saveWebPage(Document webpage, String url) throws InterruptedException {
+        // Derive a relative file path from the URL for the webpage.
+        // Needed to create the correct parent directory structure and file name.
+        String relativeFilePath = getRelativePath(url);
+
+        // Rewrite the webpage in place, in a single pass over the DOM: start downloading
+        // its images and point internal links to the local file paths. No copy of the
+        // document is made; the crawler has already extracted the links it needs.
+        rewriteWebPage(webpage, url, relativeFilePath);
+
+        // Hand the page to the file store, which stores it under the path that mirrors
+        // the URL (creating parent directories as needed) and streams the modified HTML
+        // content, with updated image and link paths, into it as UTF-8, without building
+        // the whole page as a String first.
+        webpage.charset(StandardCharsets.UTF_8); // also updates the page's meta charset to match
+        return fileStore.write(relativeFilePath, outputStream -> {
+            Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+            webpage.html(writer);
+            writer.flush(); // the stream itself is closed by the file store
+        });
     }
 
-    // Private methods
     /**
      * Converts a URL to a relative file path for offline website storage.
      *
@@ -107,7 +216,7 @@ public class WebPageSaver {
      * @return A relative file path suitable for local filesystem storage
      *
      */
-    private String getRelativePath(String url) {
+    public String getRelativePath(String url) {
         // Use the URL path to determine the file path within the save location.
         String relativePath = extractPathFromUrl(url);
 
@@ -131,6 +240,7 @@ public class WebPageSaver {
         return relativePath;
     }
 
+    // Private methods
     /*
      * Uses java.net.URI to extract the path component from the URL. Handles URL
      * encoding/decoding, strips queries and fragments, accounts for
@@ -148,121 +258,225 @@ public class WebPageSaver {
         }
     }
 
-    private void downloadImages(Document webpage, String rootDirectory, String currentPagePath) {
-        // Collect all images in the current page in an Elements collection.
-        Elements images = webpage.select("img");
+    /*
+     * Visits every element once: downloads of images, stylesheets, scripts and
+     * icons are started (and run concurrently while the traversal continues),
+     * <a href> links are rewritten on the spot. The attributes and style
+     * elements that reference downloads are updated once those have finished.
+     */
+    @SuppressWarnings("try")
+    private void rewriteWebPage(Document webpage, String baseUrl, String currentPagePath) {
+        // null if the base URL has no host: assets are still downloaded, links are left as they are
+        String linkDomain = UrlCanonicalizer.getHost(canonicalizer.canonicalize(baseUrl));
+
+        List<PendingUpdate> pendingUpdates = new ArrayList<>();
+        // the time spent waiting for the downloads below is recorded as IMAGE_FETCH by the pipeline
+        try (CrawlMetrics.PhaseTimer timer = metrics.time(CrawlPhase.REWRITE, baseUrl)) {
+            NodeTraversor.traverse((node, depth) -> {
+                if (!(node instanceof Element)) {
+                    return;
+                }
 
-        // Create the images directory at the root level (or do nothing if it exists).
-        Path imagesDirectory = Paths.get(rootDirectory).resolve(IMAGES_FOLDER_NAME);
-        try {
-            Files.createDirectories(imagesDirectory);
-        } catch (IOException e) {
-            logger.log(Level.ERROR, "Failed to create images folder", e);
-            return;
+                Element element = (Element) node;
+                switch (element.normalName()) {
+                    case "img":
+                        // Images already downloaded (or being downloaded) for another page are reused.
+                        addDownload(pendingUpdates, element, "src", assetPipeline::fetchImage, currentPagePath);
+                        addSrcset(pendingUpdates, element, currentPagePath);
+                        break;
+                    case "source": // in <picture> an image, in <audio> and <video> a media file
+                        Element parent = element.parent();
+                        boolean inPicture = parent != null && parent.normalName().equals("picture");
+                        addDownload(pendingUpdates, element, "src",
+                                inPicture ? assetPipeline::fetchImage : assetPipeline::fetchAsset, currentPagePath);
+                        addSrcset(pendingUpdates, element, currentPagePath);
+                        break;
+                    case "link":
+                        Set<String> relations = new HashSet<>(
+                                List.of(element.attr("rel").toLowerCase(Locale.ROOT).split("\\s+")));
+                        if (relations.contains("stylesheet")) {
+                            addDownload(pendingUpdates, element, "href", assetPipeline::fetchStylesheet,
+                                    currentPagePath);
+                        } else if (relations.contains("icon") || relations.contains("apple-touch-icon")) {
+                            addDownload(pendingUpdates, element, "href", assetPipeline::fetchImage, currentPagePath);
+                        }
+                        break;
+                    case "script":
+                        addDownload(pendingUpdates, element, "src", assetPipeline::fetchAsset, currentPagePath);
+                        break;
+                    case "style":
+                        pendingUpdates.add(new PendingUpdate(element, null,
+                                assetPipeline.rewriteStylesheet(element.data(), baseUrl, currentPagePath)));
+                        break;
+                    case "a":
+                        if (linkDomain != null && element.hasAttr("href")) {
+                            updateInternalLink(element, linkDomain, currentPagePath);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }, webpage);
         }
 
-        // Write each image to the images directory and update its src attribute in the
-        // HTML to point to the local copy.
-        for (Element img : images) {
-            // Get absolute URL (src is relative by default).
-            // We need the absolute URL to download the image because the relative URL won't
-            // work outside the context of the webpage.
-            String imageAbsoluteUrl = img.attr("abs:src");
-            if (imageAbsoluteUrl == null || imageAbsoluteUrl.isEmpty()) {
-                continue;
-            }
-
-            // Create the image filepath for saving the image locally.
-            String imageFileName = extractImageNameFromUrl(imageAbsoluteUrl);
-            Path imageFilePath = imagesDirectory.resolve(imageFileName);
-
-            // Download the image.
+        // Point each reference in the HTML to the local copy. Assets still being retried once the
+        // wait is over (e.g. from a failing CDN) keep their original reference, so they don't hold
+        // up the worker; their downloads go on and are reused by later pages.
+        long deadlineNanos = System.nanoTime() + assetWaitNanos;
+        for (PendingUpdate update : pendingUpdates) {
+            String value;
             try {
-                // convert to URI to open network stream
-                URI imageUri = new URI(imageAbsoluteUrl);
-                // read from stream to get image data and copy to local file,
-                // replacing file if it exists
-                try (InputStream imageInputStream = imageUri.toURL().openStream()) {
-                    Files.copy(imageInputStream, imageFilePath, StandardCopyOption.REPLACE_EXISTING);
-                }
-            } catch (URISyntaxException | IOException e) {
-                logger.log(Level.ERROR, "Failed to download image: {0}", imageFileName, e);
-                continue;
+                value = update.value.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                logger.log(Level.ERROR, "Failed to download " + update.describe(), e.getCause());
+                continue; // keep the original reference
+            } catch (TimeoutException e) {
+                logger.log(Level.WARNING, "Gave up waiting for " + update.describe());
+                continue; // keep the original reference
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // crawl is being stopped, keep the remaining references
+                return;
             }
 
-            // Update the src attribute of the image in the HTML using new relative path.
-            String relativeImagePath = calculateRelativePath(currentPagePath, IMAGES_FOLDER_NAME + "/" + imageFileName);
-            img.attr("src", relativeImagePath);
+            if (update.attribute != null) {
+                update.element.attr(update.attribute, value);
+            } else {
+                update.element.empty().appendChild(new DataNode(value)); // the content of a style element
+            }
         }
     }
 
-    private void updateInternalLinks(Document webpage, String baseUrl, String currentPagePath) {
-        // Collect all links in the current page
-        Elements links = webpage.select("a[href]");
+    // Starts the download of the absolute URL in the attribute, if there is one.
+    private void addDownload(List<PendingUpdate> pendingUpdates, Element element, String attribute,
+            Function<String, CompletableFuture<String>> fetch, String currentPagePath) {
+        // Get the absolute URL, as the relative one won't work outside the context of the webpage.
+        String absoluteUrl = element.attr("abs:" + attribute);
+        if (!absoluteUrl.isEmpty()) {
+            pendingUpdates.add(new PendingUpdate(element, attribute, fetch.apply(absoluteUrl)
+                    .thenApply(storedPath -> calculateRelativePath(currentPagePath, storedPath))));
+        }
+    }
 
-        try {
-            String baseDomain = new URI(baseUrl).getHost();
+    /*
+     * Starts the downloads of every image candidate in a srcset attribute
+     * ("small.jpg 480w, large.jpg 1080w"). The attribute is rebuilt once they
+     * are done, candidates that failed keep their URL.
+     */
+    private void addSrcset(List<PendingUpdate> pendingUpdates, Element element, String currentPagePath) {
+        String srcset = element.attr("srcset");
+        if (srcset.isBlank()) {
+            return;
+        }
+        List<String[]> candidates = parseSrcset(srcset);
+        List<CompletableFuture<String>> downloads = new ArrayList<>();
+        for (String[] candidate : candidates) {
+            String absoluteUrl = resolveUrl(element.baseUri(), candidate[0]);
+            downloads.add(absoluteUrl != null
+                    ? assetPipeline.fetchImage(absoluteUrl)
+                    : CompletableFuture.completedFuture(null)); // inline data or not a URL, kept as it is
+        }
 
-            for (Element link : links) {
-                String href = link.attr("href"); // needed for skipping certain links
-                String absoluteHref = link.attr("abs:href"); // needed for domain comparison
+        CompletableFuture<String> rewritten = CompletableFuture
+                .allOf(downloads.toArray(new CompletableFuture<?>[0]))
+                .handle((ignored, failure) -> {
+                    StringBuilder value = new StringBuilder();
+                    for (int i = 0; i < candidates.size(); i++) {
+                        CompletableFuture<String> download = downloads.get(i);
+                        String storedPath = download.isCompletedExceptionally() ? null : download.join();
+                        if (value.length() > 0) {
+                            value.append(", ");
+                        }
+                        value.append(storedPath != null
+                                ? calculateRelativePath(currentPagePath, storedPath)
+                                : candidates.get(i)[0]);
+                        if (!candidates.get(i)[1].isEmpty()) {
+                            value.append(' ').append(candidates.get(i)[1]);
+                        }
+                    }
+                    return value.toString();
+                });
+        pendingUpdates.add(new PendingUpdate(element, "srcset", rewritten));
+    }
 
-                // Skip empty or null hrefs
-                if (href == null || href.isEmpty() || absoluteHref == null || absoluteHref.isEmpty()) {
-                    continue;
+    /*
+     * Splits a srcset attribute into its candidates, each a URL and a possibly
+     * empty descriptor. A URL ends at whitespace, commas at its end separate
+     * candidates, so URLs with commas inside (data: URLs) survive.
+     */
+    static List<String[]> parseSrcset(String srcset) { // package-private for tests
+        List<String[]> candidates = new ArrayList<>();
+        int position = 0;
+        int length = srcset.length();
+        while (position < length) {
+            while (position < length && (Character.isWhitespace(srcset.charAt(position))
+                    || srcset.charAt(position) == ',')) {
+                position++;
+            }
+            int urlStart = position;
+            while (position < length && !Character.isWhitespace(srcset.charAt(position))) {
+                position++;
+            }
+            String url = srcset.substring(urlStart, position);
+            String descriptor = "";
+            if (url.endsWith(",")) {
+                url = url.replaceAll(",+$", ""); // no descriptor
+            } else {
+                int descriptorStart = position;
+                while (position < length && srcset.charAt(position) != ',') {
+                    position++;
                 }
+                descriptor = srcset.substring(descriptorStart, position).trim();
+            }
+            if (!url.isEmpty()) {
+                candidates.add(new String[] { url, descriptor });
+            }
+        }
+        return candidates;
+    }
 
-                // Skip external links, anchors, javascript, mailto, etc.
-                if (href.startsWith("#") || href.startsWith("javascript:")
-                        || href.startsWith("mailto:") || href.startsWith("tel:")) {
-                    continue;
-                }
+    // Absolute http(s) URL of a reference, or null for inline data and other schemes.
+    private static String resolveUrl(String baseUrl, String reference) {
+        try {
+            URL url = new URL(new URL(baseUrl), reference);
+            String protocol = url.getProtocol();
+            return protocol.equals("http") || protocol.equals("https") ? url.toString() : null;
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
 
-                try {
-                    String linkDomain = new URI(absoluteHref).getHost();
+    private void updateInternalLink(Element link, String baseDomain, String currentPagePath) {
+        String href = link.attr("href"); // needed for skipping certain links
+        String absoluteHref = link.attr("abs:href"); // needed for domain comparison
 
-                    // Only process internal links (same domain)
-                    if (linkDomain != null && linkDomain.equals(baseDomain)) {
-                        // Convert the absolute URL to the local file path it should point to
-                        String targetLocalPath = getRelativePath(absoluteHref);
+        // Skip empty or null hrefs
+        if (href.isEmpty() || absoluteHref.isEmpty()) {
+            return;
+        }
 
-                        // Calculate relative path from current page to target page
-                        String relativeHref = calculateRelativePath(currentPagePath, targetLocalPath);
+        // Skip external links, anchors, javascript, mailto, etc.
+        if (href.startsWith("#") || href.startsWith("javascript:")
+                || href.startsWith("mailto:") || href.startsWith("tel:")) {
+            return;
+        }
 
-                        // Update the href attribute
-                        link.attr("href", relativeHref);
+        // the canonical form is the URL the crawler fetches and saves the page under
+        String canonicalHref = canonicalizer.canonicalize(absoluteHref);
+        String linkDomain = UrlCanonicalizer.getHost(canonicalHref);
 
-                        logger.log(Level.DEBUG, "Updated link: {0} -> {1}", href, relativeHref);
-                    }
-                } catch (URISyntaxException e) {
-                    logger.log(Level.DEBUG, "Skipping malformed link: {0}", href);
-                }
-            }
-        } catch (URISyntaxException e) {
-            logger.log(Level.WARNING, "Failed to parse base URL for link processing: {0}", baseUrl, e);
-        }
-    }
+        // Only process internal links (same domain)
+        if (linkDomain != null && linkDomain.equals(baseDomain)) {
+            // Convert the absolute URL to the local file path it should point to
+            String targetLocalPath = getRelativePath(canonicalHref);
 
-    private String extractImageNameFromUrl(String imageUrl) {
-        String imageFilePath;
+            // Calculate relative path from current page to target page
+            String relativeHref = calculateRelativePath(currentPagePath, targetLocalPath);
 
-        // Get the path of the image.
-        try {
-            // Convert to URL so we can automatically parse path with getPath().
-            imageFilePath = new URI(imageUrl).getPath();
+            // Update the href attribute
+            link.attr("href", relativeHref);
 
-            // Handle cases where path is null or empty.
-            if (imageFilePath == null || imageFilePath.isEmpty()) {
-                return "image.jpg";
-            }
-        } catch (URISyntaxException e) {
-            logger.log(Level.WARNING, "Failed to parse image path from URL: {0}, fallback to default filename",
-                    imageUrl);
-            return "image.jpg";
+            logger.log(Level.DEBUG, "Updated link: {0} -> {1}", href, relativeHref);
         }
-        // Extract the image's filename from the path (after the last "/").
-        String extractedImageName = imageFilePath.substring(imageFilePath.lastIndexOf('/') + 1);
-        return extractedImageName;
     }
 
     /**
@@ -277,7 +491,7 @@ public class WebPageSaver {
      * This allows the HTML to correctly reference images using relative paths
      * rather than absolute paths, making the downloaded site portable.
      */
-    private String calculateRelativePath(String sourcePath, String destinationPath) {
+    String calculateRelativePath(String sourcePath, String destinationPath) { // package-private for benchmarks
         try {
             // Get the path of the source file's parent directory.
             Path from = Paths.get(sourcePath).getParent();
@@ -299,4 +513,22 @@ public class WebPageSaver {
             return destinationPath;
         }
     }
+
+    // A reference in the page, replaced once its download is done.
+    private static class PendingUpdate {
+
+        private final Element element;
+        private final String attribute; // null for the content of a style element
+        private final CompletableFuture<String> value;
+
+        PendingUpdate(Element element, String attribute, CompletableFuture<String> value) {
+            this.element = element;
+            this.attribute = attribute;
+            this.value = value;
+        }
+
+        String describe() {
+            return attribute != null ? element.attr("abs:" + attribute) : "assets of a style element";
+        }
+    }
 }
@@ -0,0 +1,264 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import com.spyder.main.AssetPipeline;
+import com.spyder.main.CrawlConfig;
+import com.spyder.main.CrawlMetrics;
+import com.spyder.main.Crawler;
+import com.spyder.main.HttpFetcher;
+import com.spyder.main.RetryPolicy;
+import com.spyder.main.Utils;
+import com.spyder.main.WebPageSaver;
+import com.sun.net.httpserver.HttpServer;
+
+public class AssetPipelineTest {
+
+    private static HttpServer server = null;
+    private static String baseUrl = null;
+    private static File outputDirectory = null;
+    private static final AtomicInteger slowLogoRequests = new AtomicInteger();
+    private static final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private static final String ISOLATED_PREFIX = "/isolated";
+    private final List<AssetPipeline> pipelines = new ArrayList<>(); // closed after each test
+
+    // main.css and theme.css import each other and share a background image
+    private static final Map<String, String> STYLESHEETS = Map.of(
+            "/css/main.css", "@import \"theme.css\";\n"
+                    + "body { background: url(../img/bg.png) }\n"
+                    + "@font-face { src: url('../fonts/body.woff2') format(\"woff2\"); }\n"
+                    + "/* url(commented.png) */ .dot { background: url(data:image/png;base64,AAAA) }\n"
+                    + ".gone { background: url( missing.png ) }\n",
+            "/css/theme.css", "@import url(main.css);\nh1 { background: url(\"../img/bg.png\") }\n");
+
+    private static final String PAGE = "<html><head>"
+            + "<link rel=\"stylesheet\" href=\"/css/theme.css\"><link rel=\"shortcut icon\" href=\"/a/logo.png\">"
+            + "<script src=\"/js/app.js\"></script><style>p { background: url(/b/logo.png) }</style>"
+            + "</head><body><picture><source srcset=\"/a/logo.png 1x, /b/logo.png 2x\"></picture>"
+            + "<img src=\"/copy/logo.png\" srcset=\"/a/logo.png 480w, data:image/png;base64,AA 2x\">"
+            + "</body></html>";
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.computeIfAbsent(exchange.getRequestURI().getPath(), key -> new AtomicInteger())
+                    .incrementAndGet();
+            // the same files below another prefix, for tests that count their own requests
+            String path = exchange.getRequestURI().getPath().replaceFirst("^" + ISOLATED_PREFIX, "");
+            if (path.equals("/unavailable.png")) {
+                exchange.sendResponseHeaders(503, -1); // retried, and retried again
+                exchange.close();
+                return;
+            }
+            if (path.endsWith("missing.png")) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            if (path.equals("/slow/logo.png")) {
+                slowLogoRequests.incrementAndGet();
+                try {
+                    Thread.sleep(200); // keep the download in flight while other requests join it
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            // /a/logo.png and /copy/logo.png serve the same bytes, /b/logo.png different ones
+            if (path.startsWith("/page")) {
+                exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            }
+            String content = path.equals("/page") ? PAGE
+                    : path.equals("/page-with-unavailable-image") ? "<img src=\"/unavailable.png\">"
+                    : STYLESHEETS.getOrDefault(path, path.startsWith("/b/") ? "logo B" : "logo A");
+            byte[] body = content.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+
+        outputDirectory = new File("./outputAssetPipelineTest");
+        Utils.deleteDirectory(outputDirectory);
+        outputDirectory.mkdirs();
+    }
+
+    @AfterAll
+    public static void cleanUp() {
+        if (server != null) {
+            server.stop(0);
+        }
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @AfterEach
+    public void closePipelines() throws Exception {
+        for (AssetPipeline pipeline : pipelines) {
+            pipeline.close();
+        }
+    }
+
+    private AssetPipeline createPipeline() {
+        HttpFetcher httpFetcher = new HttpFetcher(new CrawlConfig().setRequestsPerSecond(0));
+        AssetPipeline pipeline = new AssetPipeline(outputDirectory.toPath(), "images", httpFetcher);
+        pipelines.add(pipeline);
+        return pipeline;
+    }
+
+    private static long countThreads(String namePrefix) {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith(namePrefix))
+                .count();
+    }
+
+    @Test
+    void testConcurrentRequestsJoinOneDownload() throws Exception {
+        AssetPipeline pipeline = createPipeline();
+        List<CompletableFuture<String>> downloads = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            downloads.add(pipeline.fetchImage(baseUrl + "/slow/logo.png"));
+        }
+
+        String storedPath = downloads.get(0).get();
+        for (CompletableFuture<String> download : downloads) {
+            assertEquals(storedPath, download.get());
+        }
+        assertEquals(1, slowLogoRequests.get(), "Image should be downloaded once");
+        assertTrue(new File(outputDirectory, storedPath).exists());
+    }
+
+    @Test
+    void testImagesAreStoredByContent() throws Exception {
+        AssetPipeline pipeline = createPipeline();
+        String logoA = pipeline.fetchImage(baseUrl + "/a/logo.png").get();
+        String logoB = pipeline.fetchImage(baseUrl + "/b/logo.png").get();
+        String copyOfLogoA = pipeline.fetchImage(baseUrl + "/copy/logo.png").get();
+
+        assertNotEquals(logoA, logoB, "Different images with the same name must not overwrite each other");
+        assertEquals(logoA, copyOfLogoA, "Identical bytes should be saved once");
+        assertTrue(logoA.startsWith("images/") && logoA.endsWith(".png"), logoA);
+    }
+
+    @Test
+    void testStylesheetReferencesAreFetchedAndRewritten() throws Exception {
+        // other tests fetch the same files, and imported stylesheets may still be loading after them
+        String root = baseUrl + ISOLATED_PREFIX;
+        AssetPipeline pipeline = createPipeline();
+        String mainPath = pipeline.fetchStylesheet(root + "/css/main.css").get();
+        String themePath = pipeline.fetchStylesheet(root + "/css/theme.css").get();
+        String imagePath = pipeline.fetchImage(root + "/img/bg.png").get();
+        String fontPath = pipeline.fetchAsset(root + "/fonts/body.woff2").get();
+
+        assertTrue(mainPath.startsWith("assets/") && mainPath.endsWith(".css"), mainPath);
+        assertTrue(fontPath.startsWith("assets/") && fontPath.endsWith(".woff2"), fontPath);
+        for (String path : List.of("/css/main.css", "/css/theme.css", "/img/bg.png", "/fonts/body.woff2")) {
+            assertEquals(1, requests.get(ISOLATED_PREFIX + path).get(), path + " should be downloaded once");
+        }
+
+        String main = Files.readString(new File(outputDirectory, mainPath).toPath());
+        String theme = Files.readString(new File(outputDirectory, themePath).toPath());
+        String themeName = themePath.substring("assets/".length());
+        assertTrue(main.startsWith("@import \"" + themeName + "\";"), main);
+        assertTrue(main.contains("url(../" + imagePath + ")"), main);
+        assertTrue(main.contains("url('" + fontPath.substring("assets/".length()) + "') format(\"woff2\")"), main);
+        assertTrue(main.contains("/* url(commented.png) */"), "comments are kept as they are");
+        assertTrue(main.contains("url(data:image/png;base64,AAAA)"), "inline data is kept as it is");
+        assertTrue(main.contains("url( missing.png )"), "failed references keep their URL");
+        assertTrue(theme.contains("@import url(" + mainPath.substring("assets/".length()) + ");"), theme);
+        assertTrue(theme.contains("url(\"../" + imagePath + "\")"), theme);
+    }
+
+    @Test
+    void testInlineStylesheetIsRewrittenRelativeToThePage() throws Exception {
+        AssetPipeline pipeline = createPipeline();
+        String css = pipeline.rewriteStylesheet("p { background: url(/a/logo.png) }", baseUrl + "/blog/post",
+                "blog/post.html").get();
+        String imagePath = pipeline.fetchImage(baseUrl + "/a/logo.png").get();
+
+        assertEquals("p { background: url(../" + imagePath + ") }", css);
+    }
+
+    @Test
+    void testPageSubresourcesPointToLocalCopies() throws Exception {
+        File saveLocation = new File(outputDirectory, "site");
+        new Crawler(baseUrl + "/page", new WebPageSaver(saveLocation.getPath())).crawl();
+
+        Document page = Jsoup.parse(new File(saveLocation, "page.html"), "UTF-8");
+        String stylesheet = page.selectFirst("link[rel=stylesheet]").attr("href");
+        assertTrue(stylesheet.startsWith("assets/") && new File(saveLocation, stylesheet).exists(), stylesheet);
+        assertTrue(page.selectFirst("link[rel~=icon]").attr("href").startsWith("images/"));
+        assertTrue(page.selectFirst("script").attr("src").startsWith("assets/"));
+        assertTrue(page.selectFirst("style").data().matches("p \\{ background: url\\(images/[\\w.]+\\) \\}"),
+                page.selectFirst("style").data());
+        assertTrue(page.selectFirst("source").attr("srcset").matches("images/[\\w.]+ 1x, images/[\\w.]+ 2x"),
+                page.selectFirst("source").attr("srcset"));
+        assertTrue(page.selectFirst("img").attr("srcset").matches("images/[\\w.]+ 480w, data:image/png;base64,AA 2x"),
+                page.selectFirst("img").attr("srcset"));
+    }
+
+    @Test
+    void testPageDoesNotWaitForAssetRetries() throws Exception {
+        File saveLocation = new File(outputDirectory, "unavailable");
+        CrawlConfig config = new CrawlConfig().setRequestsPerSecond(0).setReadTimeoutMillis(500)
+                .setRetryBaseDelayMillis(20_000);
+        long start = System.nanoTime();
+        new Crawler(baseUrl + "/page-with-unavailable-image", new WebPageSaver(saveLocation.getPath(), config),
+                config).crawl();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMillis < 10_000, "the page waited for the retries: " + elapsedMillis + " ms");
+        Document page = Jsoup.parse(new File(saveLocation, "page-with-unavailable-image.html"), "UTF-8");
+        assertEquals("/unavailable.png", page.selectFirst("img").attr("src"), "the original reference is kept");
+    }
+
+    @Test
+    void testCloseStopsTheDownloadThreadsAndAbandonsRetries() throws Exception {
+        long threadsBefore = countThreads("crawly-assets-");
+        AssetPipeline pipeline = createPipeline();
+        pipeline.setRetryPolicy(new RetryPolicy(new CrawlConfig().setRetryBaseDelayMillis(60_000)));
+        CrawlMetrics metrics = new CrawlMetrics();
+        pipeline.setMetrics(metrics);
+        CompletableFuture<String> download = pipeline.fetchImage(baseUrl + "/unavailable.png");
+        assertTrue(countThreads("crawly-assets-") > threadsBefore);
+        while (metrics.get(CrawlMetrics.Counter.RETRIES) == 0) {
+            Thread.sleep(10); // the first attempt failed, the retry waits
+        }
+
+        pipeline.close();
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> download.get(5, TimeUnit.SECONDS),
+                "the retry is abandoned, not awaited");
+        assertTrue(failure.getMessage().contains("closed"), failure.getMessage());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (countThreads("crawly-assets-") > threadsBefore && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(threadsBefore, countThreads("crawly-assets-"));
+    }
+}
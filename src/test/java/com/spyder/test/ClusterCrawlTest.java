@@ -0,0 +1,335 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.ClusterCoordinator;
+import com.spyder.main.ClusterWorker;
+import com.spyder.main.ConsistentHashRing;
+import com.spyder.main.CrawlConfig;
+import com.spyder.main.CrawlMetrics;
+import com.spyder.main.Crawly;
+import com.spyder.main.Utils;
+import com.spyder.main.WebPageSaver;
+
+public class ClusterCrawlTest {
+
+    private static final long TIMEOUT_SECONDS = 60;
+
+    private File outputDirectory = null;
+
+    @BeforeEach
+    public void setup() {
+        outputDirectory = new File("./outputClusterCrawlTest");
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @Test
+    void testRingSpreadsUrlsAndMovesOnlyTheNewMembersShare() {
+        List<String> members = new ArrayList<>(List.of("10.0.0.1:7000", "10.0.0.2:7000", "10.0.0.3:7000"));
+        ConsistentHashRing ring = new ConsistentHashRing(members);
+        members.add("10.0.0.4:7000");
+        ConsistentHashRing grownRing = new ConsistentHashRing(members);
+
+        Map<String, Integer> shares = new HashMap<>();
+        int moved = 0;
+        for (int i = 0; i < 30_000; i++) {
+            String url = "https://example.com/page/" + i;
+            shares.merge(ring.ownerOf(url), 1, Integer::sum);
+            if (!ring.ownerOf(url).equals(grownRing.ownerOf(url))) {
+                assertEquals("10.0.0.4:7000", grownRing.ownerOf(url), "URLs only move to the new member");
+                moved++;
+            }
+        }
+        for (int share : shares.values()) {
+            assertTrue(share > 7_000 && share < 13_000, "uneven share: " + shares);
+        }
+        assertTrue(moved > 5_000 && moved < 10_000, "about a quarter should move: " + moved);
+    }
+
+    @Test
+    void testWorkerProcessesSplitTheCrawl() throws Exception {
+        try (SyntheticSite site = new SyntheticSite().setPageCount(200).setFanOut(5).setImagesPerPage(0).start();
+                ClusterCoordinator coordinator = new ClusterCoordinator(0, site.getRootUrl(), 2)) {
+            coordinator.start();
+            List<Process> workers = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                workers.add(startWorkerProcess(coordinator.getPort(), shard(i)));
+            }
+
+            assertTrue(coordinator.awaitCompletion(TIMEOUT_SECONDS, TimeUnit.SECONDS), "cluster crawl timed out");
+            for (Process worker : workers) {
+                assertTrue(worker.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                assertEquals(0, worker.exitValue());
+            }
+
+            assertEquals(200, site.getPageRequests(), "every page is fetched by exactly one worker");
+            Set<String> shard0 = savedPages(shard(0));
+            Set<String> shard1 = savedPages(shard(1));
+            assertTrue(!shard0.isEmpty() && !shard1.isEmpty(), "both workers crawled");
+            assertEquals(200, shard0.size() + shard1.size());
+        }
+    }
+
+    @Test
+    void testJoiningWorkerTakesOverItsShare() throws Exception {
+        ExecutorService threads = Executors.newCachedThreadPool();
+        try (SyntheticSite site = new SyntheticSite().setPageCount(300).setFanOut(5).setImagesPerPage(0)
+                .setLatencyMillis(10).start();
+                ClusterCoordinator coordinator = new ClusterCoordinator(0, site.getRootUrl(), 1)) {
+            coordinator.start();
+            Future<CrawlMetrics> first = threads.submit(() -> newWorker(coordinator.getPort(), shard(0)).run());
+            while (site.getPageRequests() < 30) {
+                Thread.sleep(10);
+            }
+            Future<CrawlMetrics> second = threads.submit(() -> newWorker(coordinator.getPort(), shard(1)).run());
+
+            assertTrue(coordinator.awaitCompletion(TIMEOUT_SECONDS, TimeUnit.SECONDS), "cluster crawl timed out");
+            assertNotNull(first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            CrawlMetrics secondMetrics = second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertTrue(secondMetrics.get(CrawlMetrics.Counter.PAGES_SAVED) > 0, "the new worker got a share");
+
+            Set<String> allPages = savedPages(shard(0));
+            allPages.addAll(savedPages(shard(1)));
+            assertEquals(300, allPages.size(), "no page was lost while rebalancing");
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    void testLeavingWorkerHandsItsQueueOver() throws Exception {
+        ExecutorService threads = Executors.newCachedThreadPool();
+        try (SyntheticSite site = new SyntheticSite().setPageCount(300).setFanOut(5).setImagesPerPage(0)
+                .setLatencyMillis(20).start();
+                ClusterCoordinator coordinator = new ClusterCoordinator(0, site.getRootUrl(), 2)) {
+            coordinator.start();
+            Future<CrawlMetrics> staying = threads.submit(() -> newWorker(coordinator.getPort(), shard(0)).run());
+            // a single crawl thread, so at most one page is in flight when it leaves
+            CrawlConfig leavingConfig = new CrawlConfig().setRequestsPerSecond(0).setWorkerCount(1);
+            Future<CrawlMetrics> leaving = threads.submit(() -> new ClusterWorker("localhost", coordinator.getPort(),
+                    new WebPageSaver(shard(1).getPath(), leavingConfig), leavingConfig).run());
+            while (site.getPageRequests() < 60) {
+                Thread.sleep(10);
+            }
+            leaving.cancel(true);
+
+            assertTrue(coordinator.awaitCompletion(TIMEOUT_SECONDS, TimeUnit.SECONDS), "cluster crawl timed out");
+            assertNotNull(staying.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+            Set<Integer> crawled = new HashSet<>();
+            for (String page : savedPages(shard(0))) {
+                crawled.add(pageNumber(page));
+            }
+            for (String page : savedPages(shard(1))) {
+                crawled.add(pageNumber(page));
+            }
+            // only the links of the page the leaving worker was fetching may be lost, not its queue
+            int pagesWithLostLinks = 0;
+            for (int page : crawled) {
+                for (int child = page * 5 + 1; child <= page * 5 + 5 && child < 300; child++) {
+                    if (!crawled.contains(child)) {
+                        pagesWithLostLinks++;
+                        break;
+                    }
+                }
+            }
+            assertTrue(pagesWithLostLinks <= 1, pagesWithLostLinks + " pages lost their links");
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    void testForwardedUrlsOutsideTheCrawlAreIgnored() throws Exception {
+        ExecutorService threads = Executors.newCachedThreadPool();
+        try (SyntheticSite site = new SyntheticSite().setPageCount(50).setImagesPerPage(0).setLatencyMillis(20)
+                .start();
+                SyntheticSite internal = new SyntheticSite().setPageCount(1).start();
+                ClusterCoordinator coordinator = new ClusterCoordinator(0, site.getRootUrl(), 1)) {
+            coordinator.start();
+            ClusterWorker worker = newWorker(coordinator.getPort(), shard(0));
+            Future<CrawlMetrics> crawl = threads.submit(worker::run);
+
+            // anyone who can reach the peer port can send URLs, not only other workers
+            String address = worker.getAddress();
+            int separatorIndex = address.lastIndexOf(':');
+            try (Socket socket = new Socket(address.substring(0, separatorIndex),
+                    Integer.parseInt(address.substring(separatorIndex + 1)));
+                    Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+                String internalUrl = internal.getRootUrl().replace("localhost", "127.0.0.1");
+                writer.write("URL 1 " + internalUrl + "\n");
+                writer.write("URL 1 " + internalUrl.replace("http:", "file:") + "\n");
+                writer.flush();
+
+                assertTrue(coordinator.awaitCompletion(TIMEOUT_SECONDS, TimeUnit.SECONDS), "cluster crawl timed out");
+                assertNotNull(crawl.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            }
+            assertEquals(50, site.getPageRequests());
+            assertEquals(0, internal.getPageRequests(), "a URL of another host was fetched");
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    void testUrlsAreSentAgainWhenTheConnectionDropsBeforeTheAcknowledgement() throws Exception {
+        ExecutorService threads = Executors.newCachedThreadPool();
+        // the root links every page, so the forwarded URLs leave in one batch and nothing is sent after it
+        try (SyntheticSite site = new SyntheticSite().setPageCount(20).setFanOut(19).setImagesPerPage(0).start();
+                ClusterCoordinator coordinator = new ClusterCoordinator(0, site.getRootUrl(), 2)) {
+            coordinator.start();
+            ClusterWorker worker = newWorker(coordinator.getPort(), shard(0));
+            Future<CrawlMetrics> crawl = threads.submit(worker::run);
+
+            // a member that drops its first connection unanswered, and must not own the seed to get any links
+            List<ServerSocket> unusedSockets = new ArrayList<>();
+            ServerSocket peerServer = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+            while (!ownsSeed(worker.getAddress(), peerServer, site.getRootUrl())) {
+                unusedSockets.add(peerServer);
+                peerServer = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+            }
+            for (ServerSocket unusedSocket : unusedSockets) {
+                unusedSocket.close();
+            }
+            Set<String> received = ConcurrentHashMap.newKeySet();
+            try (ServerSocket server = peerServer;
+                    Socket member = new Socket("localhost", coordinator.getPort())) {
+                Writer memberWriter = new OutputStreamWriter(member.getOutputStream(), StandardCharsets.UTF_8);
+                memberWriter.write("JOIN " + peerAddress(server) + "\n");
+                memberWriter.flush();
+                threads.submit(() -> receiveAndDropFirstConnection(server, received));
+                threads.submit(() -> {
+                    BufferedReader memberReader = new BufferedReader(
+                            new InputStreamReader(member.getInputStream(), StandardCharsets.UTF_8));
+                    String line;
+                    while ((line = memberReader.readLine()) != null && !line.equals("STOP")) {
+                        // MEMBERS and START need no answer
+                    }
+                    member.close(); // leaving ends the crawl
+                    return null;
+                });
+                threads.submit(() -> {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        memberWriter.write("STATUS idle " + received.size() + "\n");
+                        memberWriter.flush();
+                        Thread.sleep(50);
+                    }
+                    return null;
+                });
+
+                assertTrue(coordinator.awaitCompletion(TIMEOUT_SECONDS, TimeUnit.SECONDS), "cluster crawl timed out");
+                assertNotNull(crawl.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            }
+
+            assertTrue(!received.isEmpty(), "no URL was forwarded");
+            Set<Integer> crawled = new HashSet<>();
+            for (String page : savedPages(shard(0))) {
+                crawled.add(pageNumber(page));
+            }
+            for (String url : received) {
+                crawled.add(pageNumber(url.substring(url.lastIndexOf('/') + 1)));
+            }
+            assertEquals(20, crawled.size(), "forwarded URLs were lost: " + received);
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    private static boolean ownsSeed(String workerAddress, ServerSocket peerServer, String seedUrl) {
+        return workerAddress.equals(new ConsistentHashRing(List.of(workerAddress, peerAddress(peerServer)))
+                .ownerOf(seedUrl));
+    }
+
+    private static String peerAddress(ServerSocket server) {
+        return server.getInetAddress().getHostAddress() + ":" + server.getLocalPort();
+    }
+
+    // Reads the first URL of the first connection and closes it, then receives and acknowledges like a worker.
+    private static Void receiveAndDropFirstConnection(ServerSocket server, Set<String> received) throws IOException {
+        try (Socket first = server.accept()) {
+            new BufferedReader(new InputStreamReader(first.getInputStream(), StandardCharsets.UTF_8)).readLine();
+        }
+        while (true) {
+            try (Socket socket = server.accept();
+                    BufferedReader reader = new BufferedReader(
+                            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    received.add(line.split(" ", 3)[2]);
+                    writer.write("ACK 1\n");
+                    writer.flush();
+                }
+            }
+        }
+    }
+
+    private static int pageNumber(String savedPage) {
+        return savedPage.equals("index.html") ? 0 : Integer.parseInt(savedPage.replaceAll("\\D", ""));
+    }
+
+    private File shard(int index) {
+        return new File(outputDirectory, "shard-" + index);
+    }
+
+    private static ClusterWorker newWorker(int coordinatorPort, File shard) throws Exception {
+        CrawlConfig config = new CrawlConfig().setRequestsPerSecond(0).setMaxConnectionsPerHost(16);
+        return new ClusterWorker("localhost", coordinatorPort, new WebPageSaver(shard.getPath(), config), config);
+    }
+
+    // A separate JVM, started like "java -jar crawly.jar --worker=localhost:port shard".
+    private static Process startWorkerProcess(int coordinatorPort, File shard) throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Crawly.class.getName(),
+                "--worker=localhost:" + coordinatorPort, "--rate=0", "--connections-per-host=16", shard.getPath())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+    }
+
+    private static Set<String> savedPages(File shard) {
+        Set<String> pages = new HashSet<>();
+        if (new File(shard, "index.html").exists()) {
+            pages.add("index.html");
+        }
+        String[] children = new File(shard, "page").list();
+        if (children != null) {
+            pages.addAll(List.of(children));
+        }
+        return pages;
+    }
+}
@@ -0,0 +1,136 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.CrawlConfig;
+import com.spyder.main.CrawlMetrics;
+import com.spyder.main.FetchResponse;
+import com.spyder.main.HttpFetcher;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class ContentEncodingTest {
+
+    private static final byte[] PAGE_CONTENT = repeat("<p>Crawly compression test</p>\n", 500);
+    private static HttpServer server = null;
+    private static String baseUrl = null;
+    private static volatile String lastAcceptEncoding = null;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0); // any free port
+        // compresses the way the client asked for
+        server.createContext("/page.html", exchange -> {
+            lastAcceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (lastAcceptEncoding != null && lastAcceptEncoding.contains("gzip")) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+                    gzip.write(PAGE_CONTENT);
+                }
+                respond(exchange, "gzip", compressed.toByteArray());
+            } else {
+                respond(exchange, null, PAGE_CONTENT);
+            }
+        });
+        server.createContext("/zlib.html", exchange -> respond(exchange, "deflate", deflate(false)));
+        server.createContext("/raw-deflate.html", exchange -> respond(exchange, "deflate", deflate(true)));
+        server.createContext("/brotli.html", exchange -> respond(exchange, "br", PAGE_CONTENT));
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @AfterAll
+    public static void cleanUp() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testGzipIsRequestedAndDecoded() throws Exception {
+        CrawlMetrics metrics = new CrawlMetrics();
+        HttpFetcher httpFetcher = new HttpFetcher(new CrawlConfig(), metrics);
+
+        FetchResponse response = httpFetcher.fetch(baseUrl + "/page.html");
+        assertEquals(CrawlConfig.DEFAULT_ACCEPT_ENCODING, lastAcceptEncoding);
+        assertArrayEquals(PAGE_CONTENT, response.getBody());
+        assertEquals(PAGE_CONTENT.length, metrics.get(CrawlMetrics.Counter.BYTES_DOWNLOADED));
+        long receivedBytes = metrics.get(CrawlMetrics.Counter.BYTES_RECEIVED);
+        assertTrue(receivedBytes > 0 && receivedBytes * 5 < PAGE_CONTENT.length, "received " + receivedBytes);
+        assertTrue(metrics.toJson().contains("\"compressionRatio\""));
+    }
+
+    @Test
+    void testDeflateWithAndWithoutZlibWrapperIsDecoded() throws Exception {
+        HttpFetcher httpFetcher = new HttpFetcher(new CrawlConfig());
+        for (String path : new String[] { "/zlib.html", "/raw-deflate.html" }) {
+            ByteArrayOutputStream downloaded = new ByteArrayOutputStream();
+            httpFetcher.download(baseUrl + path, downloaded);
+            assertArrayEquals(PAGE_CONTENT, downloaded.toByteArray(), path);
+        }
+    }
+
+    @Test
+    void testIdentityDisablesCompression() throws Exception {
+        CrawlMetrics metrics = new CrawlMetrics();
+        HttpFetcher httpFetcher = new HttpFetcher(new CrawlConfig().setAcceptEncoding("identity"), metrics);
+
+        FetchResponse response = httpFetcher.fetch(baseUrl + "/page.html");
+        assertEquals("identity", lastAcceptEncoding);
+        assertArrayEquals(PAGE_CONTENT, response.getBody());
+        assertEquals(metrics.get(CrawlMetrics.Counter.BYTES_DOWNLOADED),
+                metrics.get(CrawlMetrics.Counter.BYTES_RECEIVED));
+    }
+
+    @Test
+    void testUnsupportedEncodingsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new CrawlConfig().setAcceptEncoding("gzip, br"));
+        assertThrows(IOException.class, () -> new HttpFetcher(new CrawlConfig()).fetch(baseUrl + "/brotli.html"));
+    }
+
+    private static void respond(HttpExchange exchange, String contentEncoding, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+        if (contentEncoding != null) {
+            exchange.getResponseHeaders().set("Content-Encoding", contentEncoding);
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private static byte[] deflate(boolean raw) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        try (OutputStream deflate = new DeflaterOutputStream(compressed, deflater)) {
+            deflate.write(PAGE_CONTENT);
+        } finally {
+            deflater.end();
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] repeat(String text, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(text);
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,101 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.CrawlConfig;
+import com.spyder.main.CrawlMetrics;
+import com.spyder.main.Crawler;
+import com.spyder.main.Utils;
+import com.spyder.main.WebPageSaver;
+
+public class CrawlBudgetTest {
+
+    private File outputDirectory = null;
+
+    @BeforeEach
+    public void setup() {
+        outputDirectory = new File("./outputCrawlBudgetTest");
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @Test
+    void testPageLimitFetchesHighestScoredPagesFirst() throws Exception {
+        try (SyntheticSite site = new SyntheticSite().setPageCount(100).setFanOut(5).setImagesPerPage(0).start()) {
+            // "/page/4" also matches pages 40-49, which are too deep to come up within the limit
+            CrawlConfig config = unthrottledConfig().setWorkerCount(1).setMaxPages(3)
+                    .setUrlPatternWeights(Map.of("/page/4", 100.0));
+            Crawler crawler = new Crawler(site.getRootUrl(), new WebPageSaver(outputDirectory.getPath(), config),
+                    config);
+            crawler.crawl();
+
+            assertEquals(3, site.getPageRequests());
+            assertEquals(3, crawler.getMetrics().get(CrawlMetrics.Counter.PAGES_SAVED));
+            assertTrue(new File(outputDirectory, "page/4.html").exists(), "the weighted page comes second");
+            // the root also links to page 1 as "next page", so it has an inlink more than pages 2, 3 and 5
+            assertTrue(new File(outputDirectory, "page/1.html").exists(), "inlinks raise the score");
+        }
+    }
+
+    @Test
+    void testMaxDepth() throws Exception {
+        try (SyntheticSite site = new SyntheticSite().setPageCount(200).setFanOut(3).setImagesPerPage(0).start()) {
+            CrawlConfig config = unthrottledConfig().setMaxDepth(1);
+            new Crawler(site.getRootUrl(), new WebPageSaver(outputDirectory.getPath(), config), config).crawl();
+
+            // the root and its three children, which link to each other as "next page" but not deeper
+            assertEquals(4, site.getPageRequests());
+        }
+    }
+
+    @Test
+    void testTimeLimitDrainsAndResumeFinishes() throws Exception {
+        try (SyntheticSite site = new SyntheticSite().setPageCount(60).setFanOut(5).setImagesPerPage(0)
+                .setLatencyMillis(20).start()) {
+            CrawlConfig config = unthrottledConfig().setWorkerCount(2).setMaxDurationMillis(200);
+            Crawler crawler = new Crawler(site.getRootUrl(), new WebPageSaver(outputDirectory.getPath(), config),
+                    config);
+            crawler.crawl();
+
+            long firstRunPages = crawler.getMetrics().get(CrawlMetrics.Counter.PAGES_SAVED);
+            assertTrue(firstRunPages > 0 && firstRunPages < 60, "stopped early: " + firstRunPages);
+            assertEquals(firstRunPages, site.getPageRequests(), "every page in flight was finished and saved");
+
+            // the partial crawl is consistent: resuming fetches exactly the remaining pages
+            config.setMaxDurationMillis(0).setResume(true).setWorkerCount(8);
+            crawler = new Crawler(site.getRootUrl(), new WebPageSaver(outputDirectory.getPath(), config), config);
+            crawler.crawl();
+            assertEquals(60 - firstRunPages, crawler.getMetrics().get(CrawlMetrics.Counter.PAGES_SAVED));
+            assertEquals(60, site.getPageRequests());
+        }
+    }
+
+    @Test
+    void testFrontierSpilledToDiskCrawlsEveryPage() throws Exception {
+        try (SyntheticSite site = new SyntheticSite().setPageCount(150).setFanOut(10).setImagesPerPage(0).start()) {
+            CrawlConfig config = unthrottledConfig().setMaxQueuedInMemory(4);
+            new Crawler(site.getRootUrl(), new WebPageSaver(outputDirectory.getPath(), config), config).crawl();
+
+            assertEquals(150, site.getPageRequests());
+            assertTrue(new File(outputDirectory, "page/149.html").exists());
+            String[] segments = new File(outputDirectory, ".crawly/frontier").list();
+            assertTrue(segments == null || segments.length == 0, "the spill is deleted after the crawl");
+        }
+    }
+
+    private static CrawlConfig unthrottledConfig() {
+        return new CrawlConfig().setRequestsPerSecond(0).setMaxConnectionsPerHost(32);
+    }
+}
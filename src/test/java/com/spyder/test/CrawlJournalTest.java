@@ -0,0 +1,80 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.CrawlJournal;
+import com.spyder.main.Utils;
+
+public class CrawlJournalTest {
+
+    private File journalDirectory = null;
+
+    @BeforeEach
+    public void setup() {
+        journalDirectory = new File("./outputCrawlJournalTest");
+        Utils.deleteDirectory(journalDirectory);
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        Utils.deleteDirectory(journalDirectory);
+    }
+
+    @Test
+    void testResumeContinuesWithPendingUrls() throws Exception {
+        CrawlJournal journal = new CrawlJournal(journalDirectory.toPath());
+        journal.open(false);
+        journal.recordDiscovered("http://localhost/", 0);
+        journal.recordFetched("http://localhost/");
+        journal.recordDiscovered("http://localhost/about", 1);
+        journal.recordDiscovered("http://localhost/news", 1);
+        journal.recordSaved("http://localhost/");
+        journal.recordFetched("http://localhost/about"); // fetched, but stopped before it was saved
+        journal.close();
+
+        CrawlJournal resumedJournal = new CrawlJournal(journalDirectory.toPath());
+        resumedJournal.open(true);
+        assertEquals(Set.of("http://localhost/"), resumedJournal.getDoneUrls());
+        assertEquals(Map.of("http://localhost/about", 1, "http://localhost/news", 1),
+                resumedJournal.getPendingUrls());
+        resumedJournal.close();
+    }
+
+    @Test
+    void testSavedRecordWinsOverLateDiscoveredRecord() throws Exception {
+        // concurrent workers may journal a page as saved before its discovery is written
+        CrawlJournal journal = new CrawlJournal(journalDirectory.toPath());
+        journal.open(false);
+        journal.recordSaved("http://localhost/about");
+        journal.recordDiscovered("http://localhost/about", 1);
+        journal.close();
+
+        CrawlJournal resumedJournal = new CrawlJournal(journalDirectory.toPath());
+        resumedJournal.open(true);
+        assertTrue(resumedJournal.getPendingUrls().isEmpty());
+        resumedJournal.close();
+    }
+
+    @Test
+    void testNewCrawlDiscardsJournal() throws Exception {
+        CrawlJournal journal = new CrawlJournal(journalDirectory.toPath());
+        journal.open(false);
+        journal.recordDiscovered("http://localhost/", 0);
+        journal.close();
+
+        CrawlJournal newJournal = new CrawlJournal(journalDirectory.toPath());
+        newJournal.open(false);
+        assertEquals(Collections.emptyMap(), newJournal.getPendingUrls());
+        newJournal.close();
+    }
+}
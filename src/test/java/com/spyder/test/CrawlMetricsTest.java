@@ -0,0 +1,60 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.CrawlMetrics;
+import com.spyder.main.CrawlPhase;
+import com.spyder.main.LatencyHistogram;
+
+public class CrawlMetricsTest {
+
+    @Test
+    void testPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(micros);
+        }
+
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000, histogram.getMaxMicros());
+        assertWithin(5_000, histogram.getPercentileMicros(50), 0.25);
+        assertWithin(9_900, histogram.getPercentileMicros(99), 0.25);
+        assertEquals(10_000, histogram.getPercentileMicros(100)); // capped at the maximum
+    }
+
+    @Test
+    void testEmptyHistogram() {
+        assertEquals(0, new LatencyHistogram().getPercentileMicros(99));
+    }
+
+    @Test
+    void testPhaseTimersAndCountersEndUpInJson() throws Exception {
+        CrawlMetrics metrics = new CrawlMetrics();
+        metrics.start();
+        try (CrawlMetrics.PhaseTimer timer = metrics.time(CrawlPhase.PARSE, "http://localhost/")) {
+            timer.setBytes(1234);
+            Thread.sleep(5);
+        }
+        metrics.increment(CrawlMetrics.Counter.PAGES_SAVED);
+        metrics.add(CrawlMetrics.Counter.BYTES_DOWNLOADED, 1234);
+        metrics.finish();
+
+        assertEquals(1, metrics.getLatencies(CrawlPhase.PARSE).getCount());
+        assertTrue(metrics.getLatencies(CrawlPhase.PARSE).getMaxMicros() >= 5_000);
+        assertEquals(0, metrics.getLatencies(CrawlPhase.DISK_WRITE).getCount());
+
+        String json = metrics.toJson();
+        assertTrue(json.contains("\"PAGES_SAVED\": 1"), json);
+        assertTrue(json.contains("\"BYTES_DOWNLOADED\": 1234"), json);
+        assertTrue(json.contains("\"PARSE\": {\"count\": 1"), json);
+        assertTrue(metrics.formatSummary().startsWith("Crawled 1 pages"), metrics.formatSummary());
+    }
+
+    private static void assertWithin(long expected, long actual, double relativeError) {
+        assertTrue(Math.abs(actual - expected) <= expected * relativeError,
+                "expected about " + expected + " but was " + actual);
+    }
+}
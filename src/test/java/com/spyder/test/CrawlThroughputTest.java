@@ -0,0 +1,185 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.CrawlConfig;
+import com.spyder.main.CrawlMetrics;
+import com.spyder.main.Crawler;
+import com.spyder.main.Utils;
+import com.spyder.main.WebPageSaver;
+
+/**
+ * Performance regression suite: crawls generated sites on a local server and
+ * fails if throughput or memory use get worse than the bounds below. The
+ * bounds leave plenty of headroom for slow build machines; a regression that
+ * trips them is a big one.
+ */
+public class CrawlThroughputTest {
+
+    // Performance bounds
+    private static final double MIN_PAGES_PER_SECOND = 50;
+    private static final long MAX_RETAINED_HEAP_BYTES = 128L * 1024 * 1024;
+    private static final long HEAP_SAMPLE_INTERVAL_MILLIS = 10;
+
+    private File outputDirectory = null;
+
+    @BeforeEach
+    public void setup() {
+        outputDirectory = new File("./outputCrawlThroughputTest");
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @Test
+    void testPagesPerSecond() throws Exception {
+        try (SyntheticSite site = new SyntheticSite()
+                .setPageCount(1000)
+                .setFanOut(10)
+                .setImagesPerPage(2)
+                .setImagePoolSize(100)
+                .setPageSizeBytes(8 * 1024)
+                .setLatencyMillis(5)
+                .start()) {
+            Crawler crawler = new Crawler(site.getRootUrl(), new WebPageSaver(outputDirectory.getPath()),
+                    unthrottledConfig());
+            crawler.crawl();
+
+            CrawlMetrics metrics = crawler.getMetrics();
+            assertEquals(1000, metrics.get(CrawlMetrics.Counter.PAGES_SAVED));
+            assertEquals(1000, site.getPageRequests(), "every page is fetched exactly once");
+            assertEquals(100, site.getImageRequests(), "every image is fetched exactly once");
+
+            double pagesPerSecond = metrics.get(CrawlMetrics.Counter.PAGES_SAVED) / metrics.getElapsedSeconds();
+            assertTrue(pagesPerSecond >= MIN_PAGES_PER_SECOND,
+                    "throughput regressed: " + pagesPerSecond + " pages/s" + System.lineSeparator()
+                            + metrics.formatSummary());
+        }
+    }
+
+    @Test
+    void testRetainedHeapStaysBounded() throws Exception {
+        try (SyntheticSite site = new SyntheticSite()
+                .setPageCount(2000)
+                .setFanOut(20)
+                .setImagesPerPage(1)
+                .setImagePoolSize(50)
+                .setPageSizeBytes(32 * 1024) // ~64 MB of HTML in total
+                .start()) {
+            Crawler crawler = new Crawler(site.getRootUrl(), new WebPageSaver(outputDirectory.getPath()),
+                    unthrottledConfig());
+
+            HeapSampler sampler = new HeapSampler();
+            sampler.start();
+            try {
+                crawler.crawl();
+            } finally {
+                sampler.stop();
+            }
+
+            assertEquals(2000, crawler.getMetrics().get(CrawlMetrics.Counter.PAGES_SAVED));
+            assertTrue(sampler.getPeakRetainedBytes() <= MAX_RETAINED_HEAP_BYTES,
+                    "heap regressed: " + sampler.getPeakRetainedBytes() / (1024 * 1024)
+                            + " MB retained after GC during the crawl");
+        }
+    }
+
+    @Test
+    void testFaultsDoNotStallTheCrawl() throws Exception {
+        try (SyntheticSite site = new SyntheticSite()
+                .setPageCount(300)
+                .setFanOut(6)
+                .setImagesPerPage(1)
+                .setLatencyMillis(2)
+                .setServerErrorEvery(17)
+                .setHangEvery(29, 3_000)
+                .setSlowBodyEvery(7, 20)
+                .start()) {
+            // one retry: every retry of a hanging page holds another server thread for seconds
+            CrawlConfig config = unthrottledConfig().setReadTimeoutMillis(500).setMaxRetries(1);
+            Crawler crawler = new Crawler(site.getRootUrl(), new WebPageSaver(outputDirectory.getPath()), config);
+
+            long startNanos = System.nanoTime();
+            crawler.crawl();
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+            CrawlMetrics metrics = crawler.getMetrics();
+            int expectedPages = site.countReachableHealthyPages();
+            assertEquals(expectedPages, metrics.get(CrawlMetrics.Counter.PAGES_SAVED));
+            assertTrue(metrics.get(CrawlMetrics.Counter.PAGES_FAILED) > 0);
+            // hanging pages cost one read timeout each, on parallel workers
+            assertTrue(elapsedMillis < 20_000, "crawl stalled for " + elapsedMillis + " ms");
+        }
+    }
+
+    // Local server: no politeness limits, enough connections for every worker.
+    private static CrawlConfig unthrottledConfig() {
+        return new CrawlConfig()
+                .setWorkerCount(16)
+                .setRequestsPerSecond(0)
+                .setMaxConnectionsPerHost(32);
+    }
+
+    /*
+     * Samples the heap left over after garbage collections, i.e. what the crawl
+     * actually retains, instead of the raw heap usage that includes garbage.
+     */
+    private static class HeapSampler {
+
+        private final AtomicBoolean running = new AtomicBoolean(true);
+        private final AtomicLong peakRetainedBytes = new AtomicLong();
+        private Thread thread;
+
+        private void start() {
+            thread = new Thread(() -> {
+                while (running.get()) {
+                    sample();
+                    try {
+                        Thread.sleep(HEAP_SAMPLE_INTERVAL_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "heap-sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void stop() throws InterruptedException {
+            running.set(false);
+            thread.join();
+            sample();
+        }
+
+        private void sample() {
+            long retainedBytes = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                MemoryUsage afterLastCollection = pool.getCollectionUsage();
+                if (pool.getType() == MemoryType.HEAP && afterLastCollection != null) {
+                    retainedBytes += afterLastCollection.getUsed();
+                }
+            }
+            peakRetainedBytes.accumulateAndGet(retainedBytes, Math::max);
+        }
+
+        private long getPeakRetainedBytes() {
+            return peakRetainedBytes.get();
+        }
+    }
+}
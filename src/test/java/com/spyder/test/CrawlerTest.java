@@ -1,7 +1,12 @@
 package com.spyder.test;
 
 import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
 import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -63,6 +68,11 @@ public class CrawlerTest {
         }
 
         for (File file : files) {
+            // crawl metadata (e.g. the manifest) is not part of the offline copy
+            if (file.getName().equals(WebPageSaver.getMetadataFolderName())) {
+                continue;
+            }
+
             if (file.isDirectory()) {
                 getFilesRecursive(rootDirectory, file, collectedFiles);
             } else {
@@ -80,7 +90,14 @@ public class CrawlerTest {
                     relativePath = relativePath.replace("\\", "/");
 
                     // Normalize image folder names for comparison
-                    relativePath = relativePath.replaceAll("/(images|" + WebPageSaver.getImagesFolderName() + ")/", "/images/");
+                    relativePath = relativePath.replaceAll("(^|/)(images|" + WebPageSaver.getImagesFolderName() + ")/",
+                            "$1images/");
+
+                    // Saved images are named after their content, so compare images by content:
+                    // every distinct input image must be saved exactly once
+                    if (relativePath.startsWith("images/")) {
+                        relativePath = "images/" + hashFileContent(file);
+                    }
 
                     collectedFiles.add(relativePath);
                 }
@@ -88,6 +105,15 @@ public class CrawlerTest {
         }
     }
 
+    private static String hashFileContent(File file) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath()));
+            return new BigInteger(1, digest).toString(16);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Failed to hash " + file, e);
+        }
+    }
+
     @Test
     void testHttpServer() {
         String saveLocation = outputDirectory.getAbsolutePath();
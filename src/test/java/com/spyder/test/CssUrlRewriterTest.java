@@ -0,0 +1,47 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.CssUrlRewriter;
+
+public class CssUrlRewriterTest {
+
+    @Test
+    void testReferencesAreRewritten() {
+        String css = "@import 'a.css' screen;\n"
+                + "@import url(\"b.css\");\n"
+                + "div { background: url(  img/x.png ) no-repeat; cursor: URL(c.cur), auto }\n"
+                + "p::before { content: \"url(not-a-reference.png)\" }\n"
+                + "/* url(commented.png) */\n";
+        List<String> imports = new ArrayList<>();
+        String rewritten = CssUrlRewriter.rewrite(css, (url, imported) -> {
+            if (imported) {
+                imports.add(url);
+            }
+            return "local/" + url;
+        });
+
+        assertEquals(List.of("a.css", "b.css"), imports);
+        assertEquals("@import 'local/a.css' screen;\n"
+                + "@import url(\"local/b.css\");\n"
+                + "div { background: url(  local/img/x.png ) no-repeat; cursor: URL(local/c.cur), auto }\n"
+                + "p::before { content: \"url(not-a-reference.png)\" }\n"
+                + "/* url(commented.png) */\n", rewritten);
+    }
+
+    @Test
+    void testUnmappedAndMalformedReferencesAreKept() throws Exception {
+        String css = "a { background: url(keep.png) } b { background: url(unterminated.png";
+        StringWriter writer = new StringWriter();
+        CssUrlRewriter.rewrite(new StringReader(css), writer, (url, imported) -> null);
+
+        assertEquals(css, writer.toString());
+    }
+}
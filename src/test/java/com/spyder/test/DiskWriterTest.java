@@ -0,0 +1,103 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.DiskWriter;
+import com.spyder.main.Utils;
+
+public class DiskWriterTest {
+
+    private File outputDirectory = null;
+
+    @BeforeEach
+    public void setup() {
+        outputDirectory = new File("./outputDiskWriterTest");
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @Test
+    void testWritesAllFilesWithEveryFsyncPolicy() throws Exception {
+        for (DiskWriter.FsyncPolicy policy : DiskWriter.FsyncPolicy.values()) {
+            Path directory = outputDirectory.toPath().resolve(policy.name());
+            DiskWriter diskWriter = new DiskWriter(2, 4, policy); // small queue, so submitting has to wait
+
+            List<CompletableFuture<Void>> writes = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                String content = "page " + i + " é";
+                writes.add(diskWriter.submit(directory.resolve("nested/page" + i + ".html"),
+                        outputStream -> outputStream.write(content.getBytes(StandardCharsets.UTF_8))));
+            }
+            diskWriter.close();
+
+            for (int i = 0; i < 50; i++) {
+                assertTrue(writes.get(i).isDone(), "close() must wait for queued writes");
+                assertEquals("page " + i + " é", Files.readString(directory.resolve("nested/page" + i + ".html")));
+            }
+        }
+    }
+
+    @Test
+    void testFailedWriteCompletesExceptionally() throws Exception {
+        DiskWriter diskWriter = new DiskWriter(1, 4, DiskWriter.FsyncPolicy.BATCH);
+        CompletableFuture<Void> failedWrite = diskWriter.submit(outputDirectory.toPath().resolve("broken.html"),
+                outputStream -> {
+                    throw new IOException("serialization failed");
+                });
+        CompletableFuture<Void> write = diskWriter.submit(outputDirectory.toPath().resolve("ok.html"),
+                outputStream -> outputStream.write('x'));
+        diskWriter.flush();
+
+        ExecutionException exception = assertThrows(ExecutionException.class, failedWrite::get);
+        assertEquals("serialization failed", exception.getCause().getMessage());
+        write.get(); // later files in the same batch are still written
+        assertEquals("x", Files.readString(outputDirectory.toPath().resolve("ok.html")));
+        diskWriter.close();
+    }
+
+    @Test
+    void testFailedRewriteKeepsTheExistingFile() throws Exception {
+        for (DiskWriter.FsyncPolicy policy : DiskWriter.FsyncPolicy.values()) {
+            Path directory = outputDirectory.toPath().resolve(policy.name());
+            Path temporaryDirectory = directory.resolve(".crawly");
+            DiskWriter diskWriter = new DiskWriter(1, 4, policy, temporaryDirectory);
+            Path page = directory.resolve("page.html");
+            diskWriter.submit(page, outputStream -> outputStream.write("good copy".getBytes(StandardCharsets.UTF_8)))
+                    .get();
+
+            CompletableFuture<Void> rewrite = diskWriter.submit(page, outputStream -> {
+                outputStream.write("half of the new cop".getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+                throw new IOException("connection reset");
+            });
+            assertThrows(ExecutionException.class, rewrite::get);
+            assertEquals("good copy", Files.readString(page), policy + ": the old copy must survive");
+            assertEquals(0, temporaryDirectory.toFile().list().length, policy + ": temporary files are left");
+
+            diskWriter.submit(page, outputStream -> outputStream.write("new copy".getBytes(StandardCharsets.UTF_8)))
+                    .get();
+            assertEquals("new copy", Files.readString(page));
+            diskWriter.close();
+        }
+    }
+}
@@ -1 +1,161 @@
 package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.CrawlConfig;
+import com.spyder.main.FetchException;
+import com.spyder.main.HttpFetcher;
+import com.spyder.main.RangedDownloader;
+import com.spyder.main.Utils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class DownloaderTest {
+
+    private static final byte[] FILE_CONTENT = "Crawly download test".getBytes(StandardCharsets.UTF_8);
+    private static HttpServer server = null;
+    private static String baseUrl = null;
+    private static File outputDirectory = null;
+
+    private static final byte[] LARGE_FILE = new byte[1_000_000];
+    private static final int CHUNK_SIZE = 100_000;
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+    private static final List<String> rangeRequests = new CopyOnWriteArrayList<>();
+    private static final AtomicBoolean failNextChunk = new AtomicBoolean(); // fails the range starting at 500000
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0); // any free port
+        server.createContext("/file.txt", exchange -> {
+            exchange.sendResponseHeaders(200, FILE_CONTENT.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(FILE_CONTENT);
+            }
+        });
+        new Random(42).nextBytes(LARGE_FILE);
+        server.createContext("/large.bin", exchange -> serveLarge(exchange, true));
+        server.createContext("/no-ranges.bin", exchange -> serveLarge(exchange, false));
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+
+        outputDirectory = new File("./outputDownloaderTest");
+        Utils.deleteDirectory(outputDirectory);
+        outputDirectory.mkdirs();
+    }
+
+    // Serves LARGE_FILE, honoring single "bytes=start-end" ranges if asked to.
+    private static void serveLarge(HttpExchange exchange, boolean supportsRanges) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        Matcher matcher = range != null ? RANGE.matcher(range) : null;
+        if (!supportsRanges || matcher == null || !matcher.matches()) {
+            rangeRequests.add("whole");
+            exchange.sendResponseHeaders(200, LARGE_FILE.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(LARGE_FILE);
+            }
+            return;
+        }
+
+        int start = Integer.parseInt(matcher.group(1));
+        int end = Math.min(Integer.parseInt(matcher.group(2)), LARGE_FILE.length - 1);
+        rangeRequests.add(start + "-" + end);
+        if (start == 500_000 && failNextChunk.compareAndSet(true, false)) {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("ETag", "\"v1\"");
+        exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + LARGE_FILE.length);
+        exchange.sendResponseHeaders(206, end - start + 1);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(LARGE_FILE, start, end - start + 1);
+        }
+    }
+
+    private static RangedDownloader createDownloader() {
+        HttpFetcher httpFetcher = new HttpFetcher(new CrawlConfig().setRequestsPerSecond(0));
+        return new RangedDownloader(httpFetcher).setChunkSize(CHUNK_SIZE).setParallelism(4);
+    }
+
+    @AfterAll
+    public static void cleanUp() {
+        if (server != null) {
+            server.stop(0);
+        }
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @Test
+    void testDownloadFile() throws Exception {
+        File target = new File(outputDirectory, "file.txt");
+        Utils.downloadFile(baseUrl + "/file.txt", target.getPath());
+        assertArrayEquals(FILE_CONTENT, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    void testDownloadMissingFileFails() {
+        File target = new File(outputDirectory, "missing.txt");
+        FetchException e = assertThrows(FetchException.class,
+                () -> Utils.downloadFile(baseUrl + "/missing.txt", target.getPath()));
+        assertEquals(404, e.getStatusCode());
+    }
+
+    @Test
+    void testLargeFileIsDownloadedInRanges() throws Exception {
+        rangeRequests.clear();
+        File target = new File(outputDirectory, "large.bin");
+        createDownloader().download(baseUrl + "/large.bin", target.toPath());
+
+        assertArrayEquals(LARGE_FILE, Files.readAllBytes(target.toPath()));
+        assertEquals(LARGE_FILE.length / CHUNK_SIZE, rangeRequests.size(), rangeRequests.toString());
+        assertFalse(new File(outputDirectory, "large.bin.download").exists(), "state file is removed when done");
+    }
+
+    @Test
+    void testInterruptedDownloadResumesWithTheMissingChunks() throws Exception {
+        rangeRequests.clear();
+        File target = new File(outputDirectory, "resumed.bin");
+        failNextChunk.set(true);
+        assertThrows(FetchException.class, () -> createDownloader().download(baseUrl + "/large.bin",
+                target.toPath()));
+        assertTrue(new File(outputDirectory, "resumed.bin.download").exists(), "progress is kept");
+
+        rangeRequests.clear();
+        createDownloader().download(baseUrl + "/large.bin", target.toPath());
+        assertArrayEquals(LARGE_FILE, Files.readAllBytes(target.toPath()));
+        assertEquals(List.of("500000-599999"), rangeRequests, "only the failed chunk is fetched again");
+    }
+
+    @Test
+    void testServerWithoutRangesGetsOneStream() throws Exception {
+        rangeRequests.clear();
+        File target = new File(outputDirectory, "no-ranges.bin");
+        Files.write(target.toPath(), Arrays.copyOf(LARGE_FILE, 2 * LARGE_FILE.length)); // longer file is replaced
+        createDownloader().download(baseUrl + "/no-ranges.bin", target.toPath());
+
+        assertArrayEquals(LARGE_FILE, Files.readAllBytes(target.toPath()));
+        assertEquals(List.of("whole"), rangeRequests);
+    }
+}
@@ -0,0 +1,200 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.CrawlManifest;
+import com.spyder.main.CrawlTask;
+import com.spyder.main.DefaultUrlScorer;
+import com.spyder.main.DiskTaskQueue;
+import com.spyder.main.Frontier;
+import com.spyder.main.ManifestEntry;
+import com.spyder.main.UrlFingerprintSet;
+import com.spyder.main.UrlScorer;
+import com.spyder.main.Utils;
+
+public class FrontierTest {
+
+    @Test
+    void testUrlsAreScheduledOnce() throws InterruptedException {
+        Frontier frontier = new Frontier();
+        assertTrue(frontier.add("http://localhost/a", 0));
+        assertFalse(frontier.add("http://localhost/a", 3), "Duplicate URL should not be queued again");
+
+        CrawlTask task = frontier.take();
+        assertEquals("http://localhost/a", task.getUrl());
+        assertEquals(0, task.getDepth());
+        frontier.complete(task);
+
+        // nothing queued and nothing in flight: the crawl is over
+        assertNull(frontier.take());
+    }
+
+    @Test
+    void testIdleWorkerWaitsForInFlightTask() throws Exception {
+        Frontier frontier = new Frontier();
+        frontier.add("http://localhost/", 0);
+        CrawlTask seed = frontier.take();
+
+        // a second worker must wait while the seed page is still being processed
+        AtomicReference<CrawlTask> taken = new AtomicReference<>();
+        Thread idleWorker = new Thread(() -> {
+            try {
+                taken.set(frontier.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        idleWorker.start();
+        Thread.sleep(100);
+        assertTrue(idleWorker.isAlive(), "Worker should wait for links from the in-flight page");
+
+        frontier.add("http://localhost/about", 1);
+        frontier.complete(seed);
+        idleWorker.join(5000);
+        assertEquals("http://localhost/about", taken.get().getUrl());
+    }
+
+    @Test
+    void testCloseReleasesWorkers() throws InterruptedException {
+        Frontier frontier = new Frontier();
+        frontier.add("http://localhost/", 0);
+        frontier.add("http://localhost/about", 1);
+        frontier.close();
+
+        assertNull(frontier.take());
+        assertFalse(frontier.add("http://localhost/news", 1));
+    }
+
+    @Test
+    void testTasksAreTakenByScore() throws InterruptedException {
+        Frontier frontier = new Frontier(new UrlFingerprintSet(),
+                task -> task.getInlinkCount() - task.getDepth());
+        frontier.add("http://localhost/deep", 2);
+        frontier.add("http://localhost/a", 1);
+        frontier.add("http://localhost/b", 1);
+        frontier.add("http://localhost/deep", 1); // a second link raises its score to -1
+        frontier.add("http://localhost/deep", 1); // and a third to 0
+
+        assertEquals("http://localhost/deep", frontier.take().getUrl());
+        assertEquals("http://localhost/a", frontier.take().getUrl(), "equal scores keep their order");
+        assertEquals("http://localhost/b", frontier.take().getUrl());
+        assertEquals(0, frontier.size());
+    }
+
+    @Test
+    void testConcurrentInlinksAreAllCounted() throws InterruptedException {
+        // a score that changes with every inlink, so workers keep re-queuing the tasks
+        Frontier frontier = new Frontier(new UrlFingerprintSet(), task -> task.getInlinkCount());
+        frontier.add("http://localhost/a", 1);
+        frontier.add("http://localhost/b", 1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++) {
+            pool.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    frontier.add("http://localhost/a", 1);
+                    frontier.add(i % 2 == 0 ? "http://localhost/a" : "http://localhost/b", 1);
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+
+        CrawlTask first = frontier.take();
+        assertEquals("http://localhost/a", first.getUrl());
+        assertEquals(8 * 15_000, first.getInlinkCount());
+        CrawlTask second = frontier.take();
+        assertEquals("http://localhost/b", second.getUrl());
+        assertEquals(8 * 5_000, second.getInlinkCount());
+        assertEquals(0, frontier.size());
+    }
+
+    @Test
+    void testDefaultScorerDoesNotCheckTheDiskPerLink() throws Exception {
+        File saveLocation = Files.createTempDirectory("scorer").toFile();
+        try {
+            AtomicInteger diskChecks = new AtomicInteger();
+            CrawlManifest manifest = new CrawlManifest(saveLocation.toPath(), ".crawly", path -> {
+                diskChecks.incrementAndGet();
+                return true;
+            });
+            manifest.open();
+            manifest.put(new ManifestEntry("http://localhost/old", null, "Mon, 01 Jan 2001 00:00:00 GMT", "hash",
+                    "old.html", List.of()));
+            Frontier frontier = new Frontier(new UrlFingerprintSet(), new DefaultUrlScorer(Map.of(), manifest));
+            frontier.add("http://localhost/old", 1);
+            frontier.add("http://localhost/new", 1);
+            for (int i = 0; i < 100; i++) {
+                frontier.add("http://localhost/old", 1);
+            }
+
+            assertEquals("http://localhost/old", frontier.take().getUrl(), "6 doublings of inlinks outweigh age");
+            assertEquals("http://localhost/new", frontier.take().getUrl());
+            assertEquals(0, diskChecks.get());
+            manifest.close();
+        } finally {
+            Utils.deleteDirectory(saveLocation);
+        }
+    }
+
+    @Test
+    void testDrainStopsTakingButKeepsAdding() throws InterruptedException {
+        Frontier frontier = new Frontier();
+        frontier.add("http://localhost/", 0);
+        CrawlTask seed = frontier.take();
+        frontier.add("http://localhost/about", 1);
+
+        assertTrue(frontier.drain());
+        assertFalse(frontier.drain(), "only the first call drains");
+        assertNull(frontier.take());
+        assertTrue(frontier.add("http://localhost/news", 1), "links of in-flight pages are still queued");
+        frontier.complete(seed);
+        assertEquals(2, frontier.size());
+    }
+
+    @Test
+    void testTasksBeyondMemoryLimitSpillToDisk() throws Exception {
+        File spillDirectory = Files.createTempDirectory("frontier").toFile();
+        try {
+            Frontier frontier = new Frontier(new UrlFingerprintSet(), UrlScorer.BREADTH_FIRST,
+                    new DiskTaskQueue(spillDirectory.toPath()), 2);
+            for (int i = 0; i < 10; i++) {
+                frontier.add("http://localhost/" + i, 1);
+            }
+            assertEquals(10, frontier.size());
+            assertTrue(spillDirectory.list().length > 0, "tasks beyond the limit are on disk");
+
+            // other members took over the odd pages
+            List<CrawlTask> removed = frontier.removeQueued(url -> url.endsWith("1") || url.endsWith("3")
+                    || url.endsWith("5") || url.endsWith("7") || url.endsWith("9"));
+            assertEquals(5, removed.size());
+
+            for (int i = 0; i < 10; i += 2) {
+                CrawlTask task = frontier.take();
+                assertEquals("http://localhost/" + i, task.getUrl(), "spilled tasks keep their order");
+                assertEquals(1, task.getDepth());
+                frontier.complete(task);
+            }
+            assertNull(frontier.take());
+            frontier.close();
+            assertEquals(0, spillDirectory.list().length);
+        } finally {
+            Utils.deleteDirectory(spillDirectory);
+        }
+    }
+}
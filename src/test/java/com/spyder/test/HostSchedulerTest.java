@@ -0,0 +1,139 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.CrawlConfig;
+import com.spyder.main.HostScheduler;
+import com.spyder.main.HostUnavailableException;
+
+public class HostSchedulerTest {
+
+    @Test
+    void testRateLimitSpacesRequests() throws Exception {
+        // 20 requests/sec with a burst of 20: the next 10 requests need ~0.5s of refill
+        HostScheduler scheduler = new HostScheduler(new CrawlConfig().setRequestsPerSecond(20));
+        long start = System.nanoTime();
+        for (int i = 0; i < 30; i++) {
+            scheduler.acquire("http://localhost/page" + i).close();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis >= 400, "Requests were not rate limited: " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void testHostsHaveSeparateBuckets() throws Exception {
+        HostScheduler scheduler = new HostScheduler(new CrawlConfig().setRequestsPerSecond(1));
+        long start = System.nanoTime();
+        // one token per host: different hosts must not wait for each other
+        scheduler.acquire("http://localhost/").close();
+        scheduler.acquire("http://cdn.localhost/logo.png").close();
+        scheduler.acquire("http://images.localhost/logo.png").close();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis < 500, "Hosts should not share a bucket: " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void testConnectionCapPerHost() throws Exception {
+        HostScheduler scheduler = new HostScheduler(
+                new CrawlConfig().setRequestsPerSecond(0).setMaxConnectionsPerHost(2));
+        AtomicInteger openConnections = new AtomicInteger();
+        AtomicInteger maxOpenConnections = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(6);
+        for (int i = 0; i < 12; i++) {
+            pool.submit(() -> {
+                try (HostScheduler.Permit permit = scheduler.acquire("http://localhost/")) {
+                    maxOpenConnections.accumulateAndGet(openConnections.incrementAndGet(), Math::max);
+                    Thread.sleep(20);
+                    openConnections.decrementAndGet();
+                }
+                return null;
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(2, maxOpenConnections.get());
+    }
+
+    @Test
+    void testAdaptiveLimitGrowsAndHalvesOnPushback() throws Exception {
+        HostScheduler scheduler = new HostScheduler(new CrawlConfig().setRequestsPerSecond(0)
+                .setMaxConnectionsPerHost(8).setAdaptiveConcurrencyEnabled(true));
+        assertEquals(1, scheduler.getConcurrencyLimit("localhost"));
+
+        // one more connection per round of fast responses, up to the cap
+        for (int i = 0; i < 60; i++) {
+            try (HostScheduler.Permit permit = scheduler.acquire("http://localhost/page" + i)) {
+                permit.recordResponse(200, null);
+            }
+        }
+        assertEquals(8, scheduler.getConcurrencyLimit("localhost"));
+
+        HostScheduler.Permit first = scheduler.acquire("http://localhost/a");
+        HostScheduler.Permit second = scheduler.acquire("http://localhost/b");
+        first.recordResponse(429, null);
+        second.recordResponse(503, null); // sent before the cut, which already accounts for it
+        first.close();
+        second.close();
+        assertEquals(4, scheduler.getConcurrencyLimit("localhost"));
+
+        try (HostScheduler.Permit permit = scheduler.acquire("http://localhost/c")) {
+            permit.recordFailure(); // a timeout is pushback as well
+        }
+        assertEquals(2, scheduler.getConcurrencyLimit("LOCALHOST"));
+        assertEquals(Map.of("localhost", 2), scheduler.getConcurrencyLimits());
+    }
+
+    @Test
+    void testRetryAfterPausesHost() throws Exception {
+        HostScheduler scheduler = new HostScheduler(new CrawlConfig().setRequestsPerSecond(0));
+        try (HostScheduler.Permit permit = scheduler.acquire("http://localhost/")) {
+            permit.recordResponse(503, "1");
+        }
+        long start = System.nanoTime();
+        scheduler.acquire("http://cdn.localhost/logo.png").close();
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500, "other hosts don't wait");
+        scheduler.acquire("http://localhost/about").close();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis >= 900, "Retry-After was not honored: " + elapsedMillis + " ms");
+        assertEquals(CrawlConfig.DEFAULT_MAX_CONNECTIONS_PER_HOST, scheduler.getConcurrencyLimit("localhost"),
+                "the limit is fixed unless adaptive");
+    }
+
+    @Test
+    void testRateLimitedProbeIsRetriedAfterAnotherCooldown() throws Exception {
+        HostScheduler scheduler = new HostScheduler(new CrawlConfig().setRequestsPerSecond(0)
+                .setCircuitBreakerThreshold(2).setCircuitBreakerCooldownMillis(200));
+        for (int i = 0; i < 2; i++) {
+            try (HostScheduler.Permit permit = scheduler.acquire("http://localhost/")) {
+                permit.recordResponse(500, null);
+            }
+        }
+        Thread.sleep(250);
+        try (HostScheduler.Permit probe = scheduler.acquire("http://localhost/probe")) {
+            probe.recordResponse(429, null);
+        }
+
+        HostUnavailableException e = assertThrows(HostUnavailableException.class,
+                () -> scheduler.acquire("http://localhost/a"), "the breaker stays open for another cooldown");
+        assertTrue(e.getRetryAfterMillis() <= 200, "not doubled like a failure: " + e.getRetryAfterMillis());
+        assertFalse(scheduler.isAvailable("localhost"));
+
+        Thread.sleep(250);
+        try (HostScheduler.Permit probe = scheduler.acquire("http://localhost/b")) {
+            probe.recordResponse(200, null);
+        }
+        assertTrue(scheduler.isAvailable("localhost"), "a later probe can still close the breaker");
+    }
+}
@@ -0,0 +1,95 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.Crawler;
+import com.spyder.main.Utils;
+import com.spyder.main.WebPageSaver;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class IncrementalCrawlTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static HttpServer server = null;
+    private static String baseUrl = null;
+    private static File outputDirectory = null;
+    private static final AtomicInteger fullResponses = new AtomicInteger();
+    private static final AtomicInteger notModifiedResponses = new AtomicInteger();
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", IncrementalCrawlTest::handle);
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+
+        outputDirectory = new File("./outputIncrementalCrawlTest");
+        Utils.deleteDirectory(outputDirectory);
+        outputDirectory.mkdirs();
+    }
+
+    @AfterAll
+    public static void cleanUp() {
+        if (server != null) {
+            server.stop(0);
+        }
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    // every resource has the same ETag, so the second crawl can be answered with 304s only
+    private static void handle(HttpExchange exchange) throws java.io.IOException {
+        if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModifiedResponses.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+
+        String path = exchange.getRequestURI().getPath();
+        String body;
+        if (path.equals("/")) {
+            body = "<html><body><img src=\"/logo.png\"><a href=\"/about\">About</a></body></html>";
+        } else if (path.equals("/about")) {
+            body = "<html><body><a href=\"/\">Home</a></body></html>";
+        } else {
+            body = "not really a png";
+        }
+
+        fullResponses.incrementAndGet();
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("ETag", ETAG);
+        exchange.getResponseHeaders().set("Content-Type", path.equals("/logo.png") ? "image/png" : "text/html");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    @Test
+    void testSecondCrawlOnlyRevalidates() {
+        new Crawler(baseUrl + "/", new WebPageSaver(outputDirectory.getPath())).crawl();
+        assertEquals(3, fullResponses.get(), "First crawl should download two pages and one image");
+        assertEquals(0, notModifiedResponses.get());
+
+        // second crawl: "/about" is only reachable through the links stored for "/"
+        new Crawler(baseUrl + "/", new WebPageSaver(outputDirectory.getPath())).crawl();
+        assertEquals(3, fullResponses.get(), "Second crawl should not download anything");
+        // the stored copy of an unchanged page already points at its saved images
+        assertEquals(2, notModifiedResponses.get(), "Second crawl should only revalidate the pages");
+
+        assertTrue(new File(outputDirectory, "index.html").exists());
+        assertTrue(new File(outputDirectory, "about.html").exists());
+    }
+}
@@ -0,0 +1,148 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.CrawlConfig;
+import com.spyder.main.CrawlMetrics;
+import com.spyder.main.Crawler;
+import com.spyder.main.NearDuplicateIndex;
+import com.spyder.main.SimHash;
+import com.spyder.main.Utils;
+import com.spyder.main.WebPageSaver;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class NearDuplicateTest {
+
+    private static final String ARTICLE = "The quick brown fox jumps over the lazy dog while the farmer watches "
+            + "from the porch of the old wooden house at the edge of the valley. Later that evening the fox "
+            + "returns to the forest, where it shares the story with the owls, the badgers and the deer that "
+            + "live near the river, and they all agree that the dog was very lazy indeed.";
+    private static final String OTHER_ARTICLE = "Compilers translate source code into machine instructions in "
+            + "several passes: lexing splits characters into tokens, parsing builds a syntax tree, semantic "
+            + "analysis checks types and scopes, and the back end allocates registers and schedules "
+            + "instructions for the target processor before emitting the object file.";
+
+    private File outputDirectory = null;
+    private HttpServer server = null;
+    private String baseUrl = null;
+    private final Set<String> requestedPaths = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    public void setup() throws Exception {
+        outputDirectory = new File("./outputNearDuplicateTest");
+        Utils.deleteDirectory(outputDirectory);
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0); // any free port
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            requestedPaths.add(path);
+            switch (path) {
+                case "/":
+                    respond(exchange, "<a href=\"/article\">a</a> <a href=\"/print\">p</a>"
+                            + " <a href=\"/other\">o</a>");
+                    break;
+                case "/article":
+                    respond(exchange, "<p>" + ARTICLE + "</p>");
+                    break;
+                case "/print":
+                    // the same article with a different footer, linking to a page only it reveals
+                    respond(exchange, "<p>" + ARTICLE + " Printed copy.</p><a href=\"/from-print\">more</a>");
+                    break;
+                case "/other":
+                    respond(exchange, "<p>" + OTHER_ARTICLE + "</p>");
+                    break;
+                default:
+                    respond(exchange, "<p>leaf</p>");
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        if (server != null) {
+            server.stop(0);
+        }
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @Test
+    void testSimilarTextsHaveCloseFingerprints() {
+        long article = SimHash.fingerprint(ARTICLE).getAsLong();
+        long edited = SimHash.fingerprint(ARTICLE.replace("very lazy", "rather lazy")).getAsLong();
+        long other = SimHash.fingerprint(OTHER_ARTICLE).getAsLong();
+
+        assertEquals(article, SimHash.fingerprint(ARTICLE.toUpperCase()).getAsLong(), "case is ignored");
+        assertTrue(SimHash.distance(article, edited) <= CrawlConfig.DEFAULT_NEAR_DUPLICATE_THRESHOLD);
+        assertTrue(SimHash.distance(article, other) > 16);
+        assertEquals(OptionalLong.empty(), SimHash.fingerprint("Too short to compare"));
+    }
+
+    @Test
+    void testIndexFindsFingerprintsWithinThreshold() {
+        NearDuplicateIndex index = new NearDuplicateIndex(3);
+        long fingerprint = 0x0123456789abcdefL;
+
+        assertNull(index.findOrAdd(fingerprint, "a"));
+        // three flipped bits spread over different blocks still match, four don't
+        assertEquals("a", index.findOrAdd(fingerprint ^ (1L | 1L << 20 | 1L << 63), "b"));
+        assertNull(index.findOrAdd(fingerprint ^ (1L | 1L << 20 | 1L << 40 | 1L << 63), "c"));
+        assertEquals(2, index.size());
+        assertEquals(List.of("b"), List.copyOf(index.getDuplicates().keySet()));
+    }
+
+    @Test
+    void testDuplicatesAreNotSavedButExpanded() throws IOException {
+        CrawlConfig config = new CrawlConfig().setRequestsPerSecond(0).setWorkerCount(1)
+                .setNearDuplicateDetectionEnabled(true).setNearDuplicateThreshold(8); // short pages vary more
+        Crawler crawler = new Crawler(baseUrl + "/", new WebPageSaver(outputDirectory.getPath(), config), config);
+        crawler.crawl();
+
+        assertTrue(new File(outputDirectory, "article.html").exists());
+        assertFalse(new File(outputDirectory, "print.html").exists());
+        assertTrue(new File(outputDirectory, "other.html").exists());
+        assertTrue(requestedPaths.contains("/from-print"), "links of duplicates are followed by default");
+        assertEquals(1, crawler.getMetrics().get(CrawlMetrics.Counter.PAGES_DUPLICATE));
+
+        List<String> duplicates = Files.readAllLines(outputDirectory.toPath().resolve(".crawly/duplicates.tsv"));
+        assertEquals(List.of(baseUrl + "/print\t" + baseUrl + "/article"), duplicates);
+    }
+
+    @Test
+    void testLinksOfDuplicatesCanBeIgnored() {
+        CrawlConfig config = new CrawlConfig().setRequestsPerSecond(0).setWorkerCount(1)
+                .setNearDuplicateDetectionEnabled(true).setNearDuplicateThreshold(8).setDuplicateLinksFollowed(false);
+        new Crawler(baseUrl + "/", new WebPageSaver(outputDirectory.getPath(), config), config).crawl();
+
+        assertFalse(requestedPaths.contains("/from-print"));
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] content = ("<html><body>" + body + "</body></html>").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/html");
+        exchange.sendResponseHeaders(200, content.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(content);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.CrawlConfig;
+import com.spyder.main.Crawler;
+import com.spyder.main.PackReader;
+import com.spyder.main.PackWriter;
+import com.spyder.main.Utils;
+import com.spyder.main.WebPageSaver;
+
+public class PackStoreTest {
+
+    private File outputDirectory = null;
+
+    @BeforeEach
+    public void setup() {
+        outputDirectory = new File("./outputPackStoreTest");
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @Test
+    void testExportedPackMatchesDirectoryMirror() throws Exception {
+        Path mirrorDirectory = outputDirectory.toPath().resolve("mirror");
+        Path packDirectory = outputDirectory.toPath().resolve("pack");
+        Path exportDirectory = outputDirectory.toPath().resolve("export");
+
+        try (SyntheticSite site = new SyntheticSite().setPageCount(20).setImagesPerPage(2).setImagePoolSize(5)
+                .start()) {
+            crawl(site, mirrorDirectory, new CrawlConfig());
+            crawl(site, packDirectory, new CrawlConfig().setOutputFormat(CrawlConfig.OutputFormat.PACK));
+        }
+
+        Map<String, byte[]> mirrorFiles = readTree(mirrorDirectory);
+        assertEquals(20 + 5, mirrorFiles.size(), "every page and every distinct image");
+        try (Stream<Path> files = Files.list(packDirectory)) {
+            assertEquals(Stream.of(PackWriter.getIndexFileName(), PackWriter.getPackFileName(),
+                    WebPageSaver.getMetadataFolderName()).sorted().collect(Collectors.toList()),
+                    files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList()),
+                    "only the pack, its index and the crawl state");
+        }
+
+        try (PackReader packReader = PackReader.open(packDirectory)) {
+            assertEquals(mirrorFiles.keySet(), new TreeSet<>(packReader.getPaths()));
+            for (Map.Entry<String, byte[]> file : mirrorFiles.entrySet()) {
+                assertArrayEquals(file.getValue(), packReader.read(file.getKey()), file.getKey());
+            }
+            assertFalse(packReader.contains("missing.html"));
+
+            assertEquals(mirrorFiles.size(), packReader.exportTo(exportDirectory));
+        }
+        Map<String, byte[]> exportedFiles = readTree(exportDirectory);
+        assertEquals(mirrorFiles.keySet(), exportedFiles.keySet());
+        for (Map.Entry<String, byte[]> file : mirrorFiles.entrySet()) {
+            assertArrayEquals(file.getValue(), exportedFiles.get(file.getKey()), file.getKey());
+        }
+    }
+
+    @Test
+    void testRecoversEntriesWrittenAfterTheIndex() throws Exception {
+        Path packDirectory = outputDirectory.toPath().resolve("pack");
+        Path crashedDirectory = outputDirectory.toPath().resolve("crashed");
+        CrawlConfig config = new CrawlConfig();
+
+        PackWriter packWriter = new PackWriter(packDirectory, packDirectory, config);
+        packWriter.open();
+        packWriter.write("a.html", out -> out.write(bytes("first"))).get();
+        packWriter.close();
+
+        packWriter.open();
+        packWriter.write("b.html", out -> out.write(bytes("second"))).get();
+        packWriter.write("a.html", out -> out.write(bytes("replaced"))).get();
+        // a crash now leaves the old index and a half-written entry behind
+        Files.createDirectories(crashedDirectory);
+        Files.copy(packDirectory.resolve(PackWriter.getPackFileName()),
+                crashedDirectory.resolve(PackWriter.getPackFileName()));
+        Files.copy(packDirectory.resolve(PackWriter.getIndexFileName()),
+                crashedDirectory.resolve(PackWriter.getIndexFileName()));
+        Files.write(crashedDirectory.resolve(PackWriter.getPackFileName()), new byte[] { 0x43, 0x52, 0x57 },
+                StandardOpenOption.APPEND);
+        packWriter.close();
+
+        try (PackReader packReader = PackReader.open(crashedDirectory)) {
+            assertEquals(1, packReader.size(), "the stale index only knows the first file");
+        }
+
+        PackWriter recoveringWriter = new PackWriter(crashedDirectory, crashedDirectory, config);
+        recoveringWriter.open();
+        assertTrue(recoveringWriter.exists("b.html"));
+        recoveringWriter.close();
+
+        try (PackReader packReader = PackReader.open(crashedDirectory)) {
+            assertEquals(2, packReader.size());
+            assertEquals("replaced", new String(packReader.read("a.html"), StandardCharsets.UTF_8));
+            assertEquals("second", new String(packReader.read("b.html"), StandardCharsets.UTF_8));
+            assertEquals(Files.size(packDirectory.resolve(PackWriter.getPackFileName())),
+                    Files.size(crashedDirectory.resolve(PackWriter.getPackFileName())),
+                    "the incomplete entry is cut off");
+        }
+    }
+
+    private void crawl(SyntheticSite site, Path saveLocation, CrawlConfig config) {
+        WebPageSaver webPageSaver = new WebPageSaver(saveLocation.toString(), config);
+        new Crawler(site.getRootUrl(), webPageSaver, config).crawl();
+    }
+
+    // Relative path -> content of every file, without the crawl state.
+    private static Map<String, byte[]> readTree(Path root) throws IOException {
+        Map<String, byte[]> files = new TreeMap<>();
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path file : paths.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                String relativePath = root.relativize(file).toString().replace(File.separatorChar, '/');
+                if (!relativePath.startsWith(WebPageSaver.getMetadataFolderName() + "/")) {
+                    files.put(relativePath, Files.readAllBytes(file));
+                }
+            }
+        }
+        return files;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,156 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.CrawlConfig;
+import com.spyder.main.CrawlMetrics;
+import com.spyder.main.Crawler;
+import com.spyder.main.HttpFetcher;
+import com.spyder.main.Utils;
+import com.spyder.main.WebPageSaver;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class ResponseLimitsTest {
+
+    private static final long VIDEO_BYTES = 512L * 1024 * 1024; // far more than the test heap would tolerate
+    private static final int MAX_PAGE_BYTES = 64 * 1024;
+
+    private static HttpServer server = null;
+    private static String baseUrl = null;
+    private static final AtomicLong videoBytesSent = new AtomicLong();
+    private File outputDirectory = null;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> respond(exchange, "text/html",
+                "<html><body><a href=\"/video.mp4\">video</a> <a href=\"/huge.html\">huge</a></body></html>"));
+        server.createContext("/huge.html", exchange -> {
+            char[] text = new char[4 * MAX_PAGE_BYTES];
+            Arrays.fill(text, 'x');
+            respond(exchange, "text/html", "<html><body><p>" + new String(text) + "</p></body></html>");
+        });
+        server.createContext("/video.mp4", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "video/mp4");
+            exchange.sendResponseHeaders(200, VIDEO_BYTES);
+            byte[] block = new byte[64 * 1024];
+            try (OutputStream os = exchange.getResponseBody()) {
+                for (long sent = 0; sent < VIDEO_BYTES; sent += block.length) {
+                    os.write(block);
+                    videoBytesSent.addAndGet(block.length);
+                }
+            } catch (IOException e) {
+                // the client hung up, as it should
+            }
+        });
+        server.createContext("/stall.html", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "text/html");
+            exchange.sendResponseHeaders(200, 1000);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write("<html>".getBytes(StandardCharsets.UTF_8));
+                os.flush();
+                Thread.sleep(20_000); // headers and a few bytes, then nothing
+            } catch (IOException | InterruptedException e) {
+                // the client gave up, or the server is stopping
+            }
+        });
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @AfterAll
+    public static void cleanUp() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @BeforeEach
+    public void createOutput() {
+        outputDirectory = new File("./outputResponseLimitsTest");
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @AfterEach
+    public void deleteOutput() {
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    private static HttpFetcher createFetcher(long readTimeoutMillis) {
+        return new HttpFetcher(new CrawlConfig().setRequestsPerSecond(0).setMaxConnectionsPerHost(1)
+                .setReadTimeoutMillis(readTimeoutMillis));
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, String content) throws IOException {
+        byte[] body = content.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    @Test
+    void testLinkedBinaryIsNotReadAndLargePagesAreTruncated() {
+        CrawlConfig config = new CrawlConfig().setRequestsPerSecond(0).setMaxPageBytes(MAX_PAGE_BYTES);
+        Crawler crawler = new Crawler(baseUrl + "/", new WebPageSaver(outputDirectory.getPath(), config), config);
+        crawler.crawl();
+
+        CrawlMetrics metrics = crawler.getMetrics();
+        assertEquals(2, metrics.get(CrawlMetrics.Counter.PAGES_SAVED), "the root and the truncated huge page");
+        assertTrue(metrics.get(CrawlMetrics.Counter.BYTES_DOWNLOADED) < 2 * MAX_PAGE_BYTES,
+                "downloaded " + metrics.get(CrawlMetrics.Counter.BYTES_DOWNLOADED));
+        assertTrue(videoBytesSent.get() < VIDEO_BYTES / 8, "the video body was read: " + videoBytesSent.get());
+        assertTrue(new File(outputDirectory, "huge.html").exists());
+    }
+
+    @Test
+    void testStalledBodyTimesOutAndFreesTheConnection() {
+        HttpFetcher httpFetcher = createFetcher(300);
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertThrows(HttpTimeoutException.class, () -> httpFetcher.fetch(baseUrl + "/stall.html"));
+            // the only connection slot of the host is free again
+            assertArrayEquals("<html>".getBytes(StandardCharsets.UTF_8),
+                    Arrays.copyOf(httpFetcher.fetch(baseUrl + "/").getBody(), 6));
+        });
+    }
+
+    @Test
+    void testTimeBetweenReadsDoesNotCount() throws Exception {
+        HttpFetcher httpFetcher = createFetcher(300);
+        int[] total = new int[1];
+        httpFetcher.read(baseUrl + "/huge.html", body -> {
+            byte[] buffer = new byte[MAX_PAGE_BYTES];
+            for (int read; (read = body.read(buffer)) != -1;) {
+                total[0] += read;
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(150)); // a slow caller, over the timeout in total
+            }
+        });
+        assertTrue(total[0] > 4 * MAX_PAGE_BYTES, "read " + total[0]);
+    }
+}
@@ -0,0 +1,128 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.CrawlConfig;
+import com.spyder.main.CrawlMetrics;
+import com.spyder.main.CrawlTask;
+import com.spyder.main.Crawler;
+import com.spyder.main.FetchException;
+import com.spyder.main.Frontier;
+import com.spyder.main.HostScheduler;
+import com.spyder.main.HostUnavailableException;
+import com.spyder.main.RetryPolicy;
+import com.spyder.main.Utils;
+import com.spyder.main.WebPageSaver;
+
+public class RetryTest {
+
+    private File outputDirectory = null;
+
+    @BeforeEach
+    public void setup() {
+        outputDirectory = new File("./outputRetryTest");
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @Test
+    void testBackoffOnlyForTransientErrors() {
+        RetryPolicy policy = new RetryPolicy(new CrawlConfig().setMaxRetries(3).setRetryBaseDelayMillis(100));
+        IOException unavailable = new FetchException("http://localhost/", 503);
+
+        assertTrue(policy.shouldRetry(unavailable, 0));
+        assertTrue(policy.shouldRetry(new SocketTimeoutException("read timed out"), 2));
+        assertFalse(policy.shouldRetry(unavailable, 3), "no retries left");
+        assertFalse(policy.shouldRetry(new FetchException("http://localhost/", 404), 0));
+
+        for (int attempt = 0; attempt < 3; attempt++) {
+            long delayMillis = policy.getDelayMillis(unavailable, attempt);
+            long backoffMillis = 100L << attempt;
+            assertTrue(delayMillis >= backoffMillis / 2 && delayMillis <= backoffMillis, "jittered: " + delayMillis);
+        }
+        assertTrue(policy.getDelayMillis(new HostUnavailableException("localhost", 5_000), 0) >= 5_000,
+                "waits for the circuit breaker's probe");
+    }
+
+    @Test
+    void testRetriedTaskWaitsInFrontier() throws Exception {
+        Frontier frontier = new Frontier();
+        frontier.add("http://localhost/", 0);
+        CrawlTask failed = frontier.take();
+        frontier.retryLater(failed.nextAttempt(), 200);
+        frontier.complete(failed);
+
+        long start = System.nanoTime();
+        CrawlTask retry = frontier.take();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertEquals("http://localhost/", retry.getUrl());
+        assertEquals(1, retry.getAttempt());
+        assertTrue(elapsedMillis >= 150, "taken before it was due: " + elapsedMillis + " ms");
+        frontier.complete(retry);
+        assertNull(frontier.take());
+    }
+
+    @Test
+    void testCircuitBreakerOpensAndProbes() throws Exception {
+        HostScheduler scheduler = new HostScheduler(new CrawlConfig().setRequestsPerSecond(0)
+                .setCircuitBreakerThreshold(3).setCircuitBreakerCooldownMillis(200));
+        for (int i = 0; i < 3; i++) {
+            try (HostScheduler.Permit permit = scheduler.acquire("http://localhost/")) {
+                permit.recordResponse(500, null);
+            }
+        }
+        assertFalse(scheduler.isAvailable("localhost"));
+        assertThrows(HostUnavailableException.class, () -> scheduler.acquire("http://localhost/a"));
+        scheduler.acquire("http://cdn.localhost/logo.png").close(); // other hosts are not affected
+
+        Thread.sleep(250);
+        HostScheduler.Permit probe = scheduler.acquire("http://localhost/b");
+        assertThrows(HostUnavailableException.class, () -> scheduler.acquire("http://localhost/c"),
+                "only one probe at a time");
+        probe.recordFailure();
+        probe.close();
+
+        Thread.sleep(250);
+        assertThrows(HostUnavailableException.class, () -> scheduler.acquire("http://localhost/d"),
+                "the cooldown doubles after a failed probe");
+        Thread.sleep(250);
+        try (HostScheduler.Permit permit = scheduler.acquire("http://localhost/e")) {
+            permit.recordResponse(200, null);
+        }
+        assertTrue(scheduler.isAvailable("localhost"));
+    }
+
+    @Test
+    void testTransientErrorsAreRetried() throws Exception {
+        try (SyntheticSite site = new SyntheticSite().setPageCount(60).setFanOut(5).setImagesPerPage(0)
+                .setFlakyEvery(4).start()) {
+            CrawlConfig config = new CrawlConfig().setRequestsPerSecond(0).setMaxConnectionsPerHost(16)
+                    .setRetryBaseDelayMillis(20);
+            Crawler crawler = new Crawler(site.getRootUrl(), new WebPageSaver(outputDirectory.getPath(), config),
+                    config);
+            crawler.crawl();
+
+            CrawlMetrics metrics = crawler.getMetrics();
+            assertEquals(60, metrics.get(CrawlMetrics.Counter.PAGES_SAVED));
+            assertEquals(0, metrics.get(CrawlMetrics.Counter.PAGES_FAILED));
+            assertEquals(15, metrics.get(CrawlMetrics.Counter.RETRIES));
+            assertEquals(75, site.getPageRequests());
+        }
+    }
+}
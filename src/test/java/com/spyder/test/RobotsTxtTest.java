@@ -0,0 +1,80 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.CrawlConfig;
+import com.spyder.main.RobotsTxt;
+
+public class RobotsTxtTest {
+
+    private static final String ROBOTS_TXT = "# comment\n"
+            + "User-agent: *\n"
+            + "Disallow: /private\n"
+            + "Allow: /private/public$\n"
+            + "Disallow: /*.pdf$\n"
+            + "Disallow: /search*q=\n"
+            + "\n"
+            + "User-agent: OtherBot\n"
+            + "User-agent: crawly\n"
+            + "Disallow: /no-crawly # trailing comment\n"
+            + "\n"
+            + "user-agent: CRAWLY\n"
+            + "disallow: /also-no-crawly\n"
+            + "Sitemap: https://example.com/sitemap_index.xml\n";
+
+    @Test
+    void testWildcardGroupRules() {
+        RobotsTxt robotsTxt = RobotsTxt.parse(ROBOTS_TXT, "SomeOtherAgent/1.0");
+
+        assertTrue(robotsTxt.isAllowed("/"));
+        assertFalse(robotsTxt.isAllowed("/private"));
+        assertFalse(robotsTxt.isAllowed("/private/page"));
+        assertTrue(robotsTxt.isAllowed("/private/public"), "longer Allow wins");
+        assertFalse(robotsTxt.isAllowed("/private/public/more"), "$ anchors the Allow");
+        assertFalse(robotsTxt.isAllowed("/docs/report.pdf"));
+        assertTrue(robotsTxt.isAllowed("/docs/report.pdf?download=1"));
+        assertFalse(robotsTxt.isAllowed("/search?page=2&q=crawler"));
+        assertTrue(robotsTxt.isAllowed("/search?page=2"));
+        assertTrue(robotsTxt.isAllowed("/robots.txt"));
+        assertEquals(Arrays.asList("https://example.com/sitemap_index.xml"), robotsTxt.getSitemaps());
+    }
+
+    @Test
+    void testMostSpecificAgentGroupReplacesWildcard() {
+        RobotsTxt robotsTxt = RobotsTxt.parse(ROBOTS_TXT, CrawlConfig.DEFAULT_USER_AGENT);
+
+        assertFalse(robotsTxt.isAllowed("/no-crawly/page"));
+        assertFalse(robotsTxt.isAllowed("/also-no-crawly"), "groups for the same agent are merged");
+        assertTrue(robotsTxt.isAllowed("/private"), "the * group no longer applies");
+    }
+
+    @Test
+    void testManyWildcardsMatchInLinearTime() {
+        RobotsTxt robotsTxt = RobotsTxt.parse("User-agent: *\nDisallow: /*a*a*a*a*a*a*a*a*a*a*a*a*b\n"
+                + "Disallow: /*x*y$\n", CrawlConfig.DEFAULT_USER_AGENT);
+        String longPath = "/" + "a".repeat(10_000);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
+            assertTrue(robotsTxt.isAllowed(longPath));
+            assertFalse(robotsTxt.isAllowed(longPath + "b"));
+            assertFalse(robotsTxt.isAllowed(longPath + "bcd"), "unanchored patterns match a prefix");
+            assertFalse(robotsTxt.isAllowed("/x" + longPath + "y"));
+            assertTrue(robotsTxt.isAllowed("/x" + longPath + "yz"), "$ anchors the end");
+        });
+    }
+
+    @Test
+    void testEmptyFileAllowsEverything() {
+        RobotsTxt robotsTxt = RobotsTxt.parse("User-agent: *\nDisallow:\n", CrawlConfig.DEFAULT_USER_AGENT);
+        assertTrue(robotsTxt.isAllowed("/anything"));
+        assertTrue(robotsTxt.getSitemaps().isEmpty());
+    }
+}
@@ -0,0 +1,148 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.CrawlConfig;
+import com.spyder.main.CrawlMetrics;
+import com.spyder.main.Crawler;
+import com.spyder.main.SitemapReader;
+import com.spyder.main.Utils;
+import com.spyder.main.WebPageSaver;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class SitemapSeedingTest {
+
+    private static final int SITEMAP_PAGES = 60;
+
+    private File outputDirectory = null;
+    private HttpServer server = null;
+    private String baseUrl = null;
+    private final Set<String> requestedPaths = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    public void setup() throws Exception {
+        outputDirectory = new File("./outputSitemapSeedingTest");
+        Utils.deleteDirectory(outputDirectory);
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0); // any free port
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            requestedPaths.add(path);
+            if (path.equals("/robots.txt")) {
+                respond(exchange, "text/plain", ("User-agent: *\nDisallow: /private\n"
+                        + "Sitemap: " + baseUrl + "/sitemap_index.xml\n").getBytes(StandardCharsets.UTF_8));
+            } else if (path.equals("/sitemap_index.xml")) {
+                respond(exchange, "application/xml", xml("<sitemapindex>"
+                        + "<sitemap><loc>" + baseUrl + "/sitemap-1.xml</loc></sitemap>"
+                        + "<sitemap><loc>" + baseUrl + "/sitemap-2.xml.gz</loc></sitemap>"
+                        + "</sitemapindex>"));
+            } else if (path.equals("/sitemap-1.xml")) {
+                respond(exchange, "application/xml", xml(urlSet(0, SITEMAP_PAGES / 2)));
+            } else if (path.equals("/sitemap-2.xml.gz")) {
+                respond(exchange, "application/gzip", gzip(xml(urlSet(SITEMAP_PAGES / 2, SITEMAP_PAGES))));
+            } else {
+                // pages link nowhere, so only the sitemaps can reveal them
+                respond(exchange, "text/html", "<html><body>page</body></html>".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        if (server != null) {
+            server.stop(0);
+        }
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @Test
+    void testSeedsFromSitemapsAndRespectsRobotsTxt() {
+        CrawlConfig config = new CrawlConfig().setRequestsPerSecond(0).setSitemapSeedingEnabled(true)
+                .setRobotsTxtRespected(true);
+        Crawler crawler = new Crawler(baseUrl + "/", new WebPageSaver(outputDirectory.getPath(), config), config);
+        crawler.crawl();
+
+        for (int i = 0; i < SITEMAP_PAGES; i++) {
+            String path = (i % 10 == 0 ? "/private/page-" : "/page-") + i;
+            assertEquals(i % 10 != 0, requestedPaths.contains(path), path);
+        }
+        assertEquals(SITEMAP_PAGES / 10, crawler.getMetrics().get(CrawlMetrics.Counter.URLS_DISALLOWED));
+        assertTrue(new File(outputDirectory, "page-1.html").exists());
+    }
+
+    @Test
+    void testWithoutSeedingOnlyLinkedPagesAreCrawled() {
+        CrawlConfig config = new CrawlConfig().setRequestsPerSecond(0);
+        new Crawler(baseUrl + "/", new WebPageSaver(outputDirectory.getPath(), config), config).crawl();
+
+        assertEquals(Set.of("/"), requestedPaths);
+    }
+
+    @Test
+    void testReaderSkipsNestedLocElementsAndReadsTextSitemaps() throws IOException {
+        List<String> pageUrls = new ArrayList<>();
+        List<String> sitemapUrls = new ArrayList<>();
+        SitemapReader.read(new ByteArrayInputStream(xml(
+                "<urlset xmlns:image=\"http://www.google.com/schemas/sitemap-image/1.1\">"
+                + "<url><loc> http://example.com/a </loc><image:image><image:loc>http://example.com/a.png</image:loc>"
+                + "</image:image></url><url><loc>http://example.com/b</loc></url></urlset>")),
+                pageUrls::add, sitemapUrls::add);
+        assertEquals(List.of("http://example.com/a", "http://example.com/b"), pageUrls);
+        assertTrue(sitemapUrls.isEmpty());
+
+        pageUrls.clear();
+        SitemapReader.read(new ByteArrayInputStream(gzip("http://example.com/c\n\nhttp://example.com/d\n"
+                .getBytes(StandardCharsets.UTF_8))), pageUrls::add, sitemapUrls::add);
+        assertEquals(List.of("http://example.com/c", "http://example.com/d"), pageUrls);
+    }
+
+    private String urlSet(int from, int to) {
+        StringBuilder urlSet = new StringBuilder("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">");
+        for (int i = from; i < to; i++) {
+            urlSet.append("<url><loc>").append(baseUrl).append(i % 10 == 0 ? "/private/page-" : "/page-").append(i)
+                    .append("</loc><lastmod>2024-01-01</lastmod></url>");
+        }
+        return urlSet.append("</urlset>").toString();
+    }
+
+    private static byte[] xml(String body) {
+        return ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + body).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(content);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+}
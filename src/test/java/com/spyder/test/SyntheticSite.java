@@ -0,0 +1,307 @@
+package com.spyder.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Generated website on a local {@link HttpServer}, for load and regression
+ * tests without network access.
+ *
+ * Page 0 ("/") is the root; page i links to its children i * fanOut + 1 ...
+ * i * fanOut + fanOut (a tree, cut off at the page count and maximum depth)
+ * and to page i + 1, so most pages are reachable in more than one way. Pages
+ * are padded to the configured size and reference images from a shared pool,
+ * so the same image appears on many pages. Latency, server errors, hanging
+ * responses and slowly trickling bodies can be injected for every n-th page.
+ * Settings return the site to allow chaining, and must be made before
+ * {@link #start()}.
+ */
+public class SyntheticSite implements AutoCloseable {
+
+    // Static constants
+    private static final int SERVER_THREADS = 32;
+    private static final int IMAGE_SIZE_BYTES = 2048;
+    private static final int SLOW_BODY_CHUNKS = 5;
+    private static final String FILLER = "<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do "
+            + "eiusmod tempor incididunt ut labore et dolore magna aliqua.</p>";
+
+    // Instance fields
+    private int pageCount = 100;
+    private int fanOut = 5;
+    private int maxDepth = Integer.MAX_VALUE;
+    private int imagesPerPage = 2;
+    private int imagePoolSize = 20;
+    private int pageSizeBytes = 4096;
+    private long latencyMillis;
+    private int serverErrorEvery; // 0: never
+    private int flakyEvery;
+    private int hangEvery;
+    private long hangMillis = 5_000;
+    private int slowBodyEvery;
+    private long slowBodyChunkDelayMillis = 20;
+
+    private final AtomicInteger pageRequests = new AtomicInteger();
+    private final Set<Integer> flakyPagesFailed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger imageRequests = new AtomicInteger();
+    private int[] pageDepths; // -1 for pages beyond the maximum depth
+    private HttpServer server;
+    private ExecutorService serverThreads;
+
+    public SyntheticSite setPageCount(int pageCount) {
+        this.pageCount = pageCount;
+        return this;
+    }
+
+    public SyntheticSite setFanOut(int fanOut) {
+        this.fanOut = fanOut;
+        return this;
+    }
+
+    // levels of the page tree below the root
+    public SyntheticSite setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    public SyntheticSite setImagesPerPage(int imagesPerPage) {
+        this.imagesPerPage = imagesPerPage;
+        return this;
+    }
+
+    // distinct images shared by all pages
+    public SyntheticSite setImagePoolSize(int imagePoolSize) {
+        this.imagePoolSize = imagePoolSize;
+        return this;
+    }
+
+    // approximate size of every page's HTML
+    public SyntheticSite setPageSizeBytes(int pageSizeBytes) {
+        this.pageSizeBytes = pageSizeBytes;
+        return this;
+    }
+
+    // added to every response before the headers are sent
+    public SyntheticSite setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    // every n-th page answers "503 Service Unavailable"
+    public SyntheticSite setServerErrorEvery(int serverErrorEvery) {
+        this.serverErrorEvery = serverErrorEvery;
+        return this;
+    }
+
+    // every n-th page answers "503 Service Unavailable" to its first request only
+    public SyntheticSite setFlakyEvery(int flakyEvery) {
+        this.flakyEvery = flakyEvery;
+        return this;
+    }
+
+    // every n-th page waits before responding, to run into the crawler's read timeout
+    public SyntheticSite setHangEvery(int hangEvery, long hangMillis) {
+        this.hangEvery = hangEvery;
+        this.hangMillis = hangMillis;
+        return this;
+    }
+
+    // every n-th page sends its body in chunks with pauses in between
+    public SyntheticSite setSlowBodyEvery(int slowBodyEvery, long chunkDelayMillis) {
+        this.slowBodyEvery = slowBodyEvery;
+        this.slowBodyChunkDelayMillis = chunkDelayMillis;
+        return this;
+    }
+
+    public SyntheticSite start() throws IOException {
+        pageDepths = computeDepths();
+        serverThreads = Executors.newFixedThreadPool(SERVER_THREADS);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(serverThreads); // the default executor handles one request at a time
+        server.start();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            serverThreads.shutdownNow();
+        }
+    }
+
+    // Seed URL of the crawl.
+    public String getRootUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    public int getPageRequests() {
+        return pageRequests.get();
+    }
+
+    public int getImageRequests() {
+        return imageRequests.get();
+    }
+
+    // Pages a crawler can save: reachable from the root without passing through a failing page.
+    public int countReachableHealthyPages() {
+        boolean[] visited = new boolean[pageCount];
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+        visited[0] = true;
+        int count = 0;
+        while (!queue.isEmpty()) {
+            int page = queue.poll();
+            if (isFailing(page)) {
+                continue;
+            }
+            count++;
+            for (int link : linksOf(page)) {
+                if (!visited[link]) {
+                    visited[link] = true;
+                    queue.add(link);
+                }
+            }
+        }
+        return count;
+    }
+
+    // Pages that answer with an error or not in time, if they are reached.
+    public boolean isFailing(int page) {
+        return isEvery(page, serverErrorEvery) || isEvery(page, hangEvery);
+    }
+
+    public List<Integer> linksOf(int page) {
+        List<Integer> links = new ArrayList<>(fanOut + 1);
+        for (int child = page * fanOut + 1; child <= page * fanOut + fanOut; child++) {
+            if (exists(child)) {
+                links.add(child);
+            }
+        }
+        if (exists(page + 1)) {
+            links.add(page + 1);
+        }
+        return links;
+    }
+
+    private boolean exists(int page) {
+        return page < pageCount && pageDepths[page] >= 0;
+    }
+
+    private static boolean isEvery(int page, int every) {
+        return every > 0 && page % every == every - 1;
+    }
+
+    private int[] computeDepths() {
+        int[] depths = new int[pageCount];
+        Arrays.fill(depths, -1);
+        depths[0] = 0;
+        for (int page = 1; page < pageCount; page++) {
+            int parentDepth = depths[(page - 1) / fanOut];
+            if (parentDepth >= 0 && parentDepth < maxDepth) {
+                depths[page] = parentDepth + 1;
+            }
+        }
+        return depths;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            sleep(latencyMillis);
+            if (path.startsWith("/img/")) {
+                imageRequests.incrementAndGet();
+                sendImage(exchange, Integer.parseInt(path.substring("/img/".length(), path.indexOf('.'))));
+                return;
+            }
+
+            int page = path.equals("/") ? 0 : Integer.parseInt(path.substring("/page/".length()));
+            pageRequests.incrementAndGet();
+            if (!exists(page)) {
+                send(exchange, 404, "text/plain", new byte[0], false);
+            } else if (isEvery(page, serverErrorEvery) || (isEvery(page, flakyEvery) && flakyPagesFailed.add(page))) {
+                send(exchange, 503, "text/plain", "try again later".getBytes(StandardCharsets.UTF_8), false);
+            } else {
+                if (isEvery(page, hangEvery)) {
+                    sleep(hangMillis);
+                }
+                send(exchange, 200, "text/html; charset=UTF-8", renderPage(page), isEvery(page, slowBodyEvery));
+            }
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            exchange.sendResponseHeaders(404, -1); // not a generated URL
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // server is stopping
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private byte[] renderPage(int page) {
+        StringBuilder html = new StringBuilder(pageSizeBytes + 512);
+        html.append("<!DOCTYPE html><html><head><meta charset=\"UTF-8\"><title>Page ").append(page)
+                .append("</title></head><body><h1>Page ").append(page).append("</h1><ul>");
+        for (int link : linksOf(page)) {
+            html.append("<li><a href=\"/page/").append(link).append("\">Page ").append(link).append("</a></li>");
+        }
+        html.append("</ul>");
+        for (int i = 0; i < imagesPerPage; i++) {
+            int image = (page * imagesPerPage + i) % imagePoolSize;
+            html.append("<img src=\"/img/").append(image).append(".png\" alt=\"Image ").append(image).append("\">");
+        }
+        while (html.length() < pageSizeBytes) {
+            html.append(FILLER);
+        }
+        html.append("</body></html>");
+        return html.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void sendImage(HttpExchange exchange, int image) throws IOException, InterruptedException {
+        byte[] bytes = new byte[IMAGE_SIZE_BYTES];
+        new Random(image).nextBytes(bytes); // distinct content per image
+        send(exchange, 200, "image/png", bytes, false);
+    }
+
+    private void send(HttpExchange exchange, int status, String contentType, byte[] body, boolean slowly)
+            throws IOException, InterruptedException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length == 0) {
+            return;
+        }
+        try (OutputStream os = exchange.getResponseBody()) {
+            if (!slowly) {
+                os.write(body);
+                return;
+            }
+            int chunkSize = (body.length + SLOW_BODY_CHUNKS - 1) / SLOW_BODY_CHUNKS;
+            for (int offset = 0; offset < body.length; offset += chunkSize) {
+                os.write(body, offset, Math.min(chunkSize, body.length - offset));
+                os.flush();
+                sleep(slowBodyChunkDelayMillis);
+            }
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedException {
+        if (millis > 0) {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        }
+    }
+}
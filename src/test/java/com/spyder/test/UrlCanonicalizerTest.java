@@ -0,0 +1,126 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.CrawlConfig;
+import com.spyder.main.Crawler;
+import com.spyder.main.UrlCanonicalizer;
+import com.spyder.main.Utils;
+import com.spyder.main.WebPageSaver;
+import com.sun.net.httpserver.HttpServer;
+
+public class UrlCanonicalizerTest {
+
+    private File outputDirectory = null;
+
+    @BeforeEach
+    public void setup() {
+        outputDirectory = new File("./outputUrlCanonicalizerTest");
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @Test
+    void testNormalizesUrlVariants() {
+        UrlCanonicalizer canonicalizer = new UrlCanonicalizer();
+
+        assertEquals("http://example.com/a", canonicalizer.canonicalize("HTTP://Example.COM:80/a"));
+        assertEquals("https://example.com/", canonicalizer.canonicalize("https://example.com:443"));
+        assertEquals("http://example.com:8080/", canonicalizer.canonicalize("http://example.com:08080/"));
+        assertEquals("http://example.com/a/c", canonicalizer.canonicalize("http://example.com/a/./b/../c#top"));
+        assertEquals("http://example.com/", canonicalizer.canonicalize("http://example.com/a/../.."));
+        assertEquals("http://example.com/a/", canonicalizer.canonicalize("http://example.com/a/b/%2e%2E"));
+        assertEquals("http://example.com/~user/%C3%A9t%C3%A9%20a%2Fb",
+                canonicalizer.canonicalize("http://example.com/%7euser/été a%2fb"));
+        assertEquals("http://example.com/100%25", canonicalizer.canonicalize("http://example.com/100%"));
+        assertEquals("http://user:pw@example.com/", canonicalizer.canonicalize(" http://user:pw@Example.com "));
+        assertEquals("http://[::1]:8080/", canonicalizer.canonicalize("http://[::1]:8080"));
+        assertEquals("mailto:Someone@Example.com", canonicalizer.canonicalize("mailto:Someone@Example.com"));
+        assertEquals("http://example.com/a/", canonicalizer.canonicalize("http://example.com/a/"),
+                "trailing slashes are kept by default");
+    }
+
+    @Test
+    void testStripsTrackingParametersAndOptionallySortsQuery() {
+        UrlCanonicalizer canonicalizer = new UrlCanonicalizer();
+        assertEquals("http://example.com/a",
+                canonicalizer.canonicalize("http://example.com/a?utm_source=x&UTM_Medium=y"));
+        assertEquals("http://example.com/a?b=2&a=1",
+                canonicalizer.canonicalize("http://example.com/a?b=2&&gclid=abc&a=1"));
+        assertEquals("http://example.com/a?q=~+x%26y", canonicalizer.canonicalize("http://example.com/a?q=%7e+x%26y"));
+
+        UrlCanonicalizer sortingCanonicalizer = new UrlCanonicalizer(new CrawlConfig()
+                .setQueryParameterSortingEnabled(true)
+                .setTrailingSlashIgnored(true)
+                .setTrackingParameters(Arrays.asList("session*")));
+        assertEquals("http://example.com/a?a=1&b=2&utm_source=x",
+                sortingCanonicalizer.canonicalize("http://example.com/a/?b=2&utm_source=x&sessionid=7&a=1"));
+        assertEquals("http://example.com/", sortingCanonicalizer.canonicalize("http://example.com/"));
+        // the order of repeated names can matter to the server
+        assertEquals("http://example.com/a?a=2&a=1&ab=0&b",
+                sortingCanonicalizer.canonicalize("http://example.com/a?b&a=2&ab=0&a=1"));
+    }
+
+    @Test
+    void testGetHost() {
+        assertEquals("example.com", UrlCanonicalizer.getHost("http://example.com/a:b"));
+        assertEquals("example.com", UrlCanonicalizer.getHost("http://user:pw@example.com:8080?x"));
+        assertEquals("[::1]", UrlCanonicalizer.getHost("http://[::1]/"));
+        assertNull(UrlCanonicalizer.getHost("mailto:someone@example.com"));
+    }
+
+    @Test
+    void testVariantsOfAPageAreFetchedOnce() throws Exception {
+        Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        int port = server.getAddress().getPort();
+        try {
+            String links = "<a href='/a'>a</a><a href='/a?utm_source=mail'>a</a><a href='/./a#section'>a</a>"
+                    + "<a href='HTTP://LOCALHOST:" + port + "/a'>a</a><a href='/b/../a?fbclid=1'>a</a>"
+                    + "<a href='/b'>b</a>";
+            server.createContext("/", exchange -> {
+                requests.computeIfAbsent(exchange.getRequestURI().toString(), key -> new AtomicInteger())
+                        .incrementAndGet();
+                byte[] body = ("<html><body>" + links + "</body></html>").getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                } catch (IOException e) {
+                    // client went away
+                }
+            });
+            server.start();
+
+            CrawlConfig config = new CrawlConfig().setRequestsPerSecond(0);
+            new Crawler("http://localhost:" + port + "/", new WebPageSaver(outputDirectory.getPath(), config), config)
+                    .crawl();
+        } finally {
+            server.stop(0);
+        }
+
+        assertEquals(3, requests.size(), "requested: " + requests.keySet());
+        for (String path : new String[] { "/", "/a", "/b" }) {
+            assertEquals(1, requests.get(path).get(), path);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.UrlFingerprintSet;
+
+public class UrlFingerprintSetTest {
+
+    @Test
+    void testAddAndContains() {
+        UrlFingerprintSet seenUrls = new UrlFingerprintSet();
+        assertTrue(seenUrls.add("http://localhost/a"));
+        assertFalse(seenUrls.add("http://localhost/a"));
+        assertTrue(seenUrls.contains("http://localhost/a"));
+        assertFalse(seenUrls.contains("http://localhost/b"));
+        assertEquals(1, seenUrls.size());
+    }
+
+    @Test
+    void testGrowsBeyondInitialCapacity() {
+        for (boolean withBloomFilter : new boolean[] { false, true }) {
+            UrlFingerprintSet seenUrls = new UrlFingerprintSet(0, withBloomFilter);
+            for (int i = 0; i < 200_000; i++) {
+                assertTrue(seenUrls.add("http://localhost/page/" + i));
+            }
+            for (int i = 0; i < 200_000; i++) {
+                assertTrue(seenUrls.contains("http://localhost/page/" + i));
+                assertFalse(seenUrls.add("http://localhost/page/" + i));
+            }
+            assertFalse(seenUrls.contains("http://localhost/page/200000"));
+            assertEquals(200_000, seenUrls.size());
+        }
+    }
+
+    @Test
+    void testConcurrentAddsAreCountedOnce() throws InterruptedException {
+        for (boolean withBloomFilter : new boolean[] { false, true }) {
+            // starts small, so lookups also race with the tables being resized
+            assertConcurrentAddsAreCountedOnce(new UrlFingerprintSet(0, withBloomFilter));
+        }
+    }
+
+    private static void assertConcurrentAddsAreCountedOnce(UrlFingerprintSet seenUrls) throws InterruptedException {
+        AtomicInteger newUrls = new AtomicInteger();
+
+        // 8 threads add the same 50,000 URLs: each URL must be reported as new exactly once
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++) {
+            pool.submit(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    if (seenUrls.add("http://localhost/" + i)) {
+                        newUrls.incrementAndGet();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(50_000, newUrls.get());
+        assertEquals(50_000, seenUrls.size());
+    }
+}
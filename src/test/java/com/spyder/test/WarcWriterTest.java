@@ -0,0 +1,132 @@
+package com.spyder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.spyder.main.CrawlConfig;
+import com.spyder.main.Crawler;
+import com.spyder.main.Utils;
+import com.spyder.main.WarcWriter;
+
+public class WarcWriterTest {
+
+    private File outputDirectory = null;
+
+    @BeforeEach
+    public void setup() {
+        outputDirectory = new File("./outputWarcWriterTest");
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        Utils.deleteDirectory(outputDirectory);
+    }
+
+    @Test
+    void testIndexPointsToEveryArchivedResponse() throws Exception {
+        try (SyntheticSite site = new SyntheticSite().setPageCount(10).setImagesPerPage(1).setImagePoolSize(3)
+                .start()) {
+            crawl(site, new CrawlConfig());
+
+            List<Path> archives = listArchives();
+            assertEquals(1, archives.size());
+            List<String> records = readRecordHeaders(archives.get(0));
+            assertTrue(records.get(0).contains("WARC-Type: warcinfo"), records.get(0));
+            assertEquals(1 + 13 * 2, records.size(), "warcinfo plus request and response per page and image");
+
+            List<String> indexLines = Files.readAllLines(outputDirectory.toPath().resolve(WarcWriter.getIndexFileName()));
+            assertEquals(" CDX N b a m s k r M S V g", indexLines.get(0));
+            List<String> entries = indexLines.subList(1, indexLines.size());
+            assertEquals(13, entries.size());
+            assertEquals(entries.stream().sorted().collect(Collectors.toList()), entries);
+
+            // every entry's offset is the start of a gzip member holding that URL's response
+            for (String entry : entries) {
+                String[] fields = entry.split(" ");
+                String record = readRecordAt(outputDirectory.toPath().resolve(fields[10]), Long.parseLong(fields[9]),
+                        Integer.parseInt(fields[8]));
+                assertTrue(record.startsWith("WARC/1.1\r\nWARC-Type: response\r\n"), record);
+                assertTrue(record.contains("WARC-Target-URI: " + fields[2] + "\r\n"), record);
+                assertTrue(record.contains("\r\n\r\nHTTP/1.1 200 OK\r\n"), record);
+                assertTrue(record.contains("WARC-Payload-Digest: sha1:" + fields[5]), record);
+            }
+        }
+    }
+
+    @Test
+    void testRotatesFilesAtConfiguredSize() throws Exception {
+        try (SyntheticSite site = new SyntheticSite().setPageCount(30).setImagesPerPage(0).setPageSizeBytes(8192)
+                .start()) {
+            crawl(site, new CrawlConfig().setWarcMaxFileBytes(4096));
+
+            List<Path> archives = listArchives();
+            assertTrue(archives.size() > 1, "expected rotation, got " + archives);
+            int responses = 0;
+            for (Path archive : archives) {
+                List<String> records = readRecordHeaders(archive);
+                assertTrue(records.get(0).contains("WARC-Type: warcinfo"));
+                responses += records.stream().filter(record -> record.contains("WARC-Type: response")).count();
+            }
+            assertEquals(30, responses);
+        }
+    }
+
+    @Test
+    void testUrlKey() {
+        assertEquals("com,example)/news?id=1", WarcWriter.toUrlKey("https://www.Example.com/News?id=1"));
+        assertEquals("localhost:8080)/", WarcWriter.toUrlKey("http://localhost:8080"));
+    }
+
+    private void crawl(SyntheticSite site, CrawlConfig config) {
+        config.setRequestsPerSecond(0).setOutputFormat(CrawlConfig.OutputFormat.WARC);
+        new Crawler(site.getRootUrl(), new WarcWriter(outputDirectory.getPath(), config), config).crawl();
+    }
+
+    private List<Path> listArchives() throws IOException {
+        try (Stream<Path> files = Files.list(outputDirectory.toPath())) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".warc.gz")).sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    // Decompresses the whole file (all gzip members) and splits it into records.
+    private static List<String> readRecordHeaders(Path archive) throws IOException {
+        String content;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(archive))) {
+            content = new String(in.readAllBytes(), StandardCharsets.ISO_8859_1);
+        }
+        return new ArrayList<>(List.of(content.split("\r\n\r\n(?=WARC/1\\.1\r\n)")));
+    }
+
+    private static String readRecordAt(Path archive, long offset, int length) throws IOException {
+        ByteBuffer compressed = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(archive)) {
+            while (compressed.hasRemaining() && channel.read(compressed, offset + compressed.position()) > 0) {
+                // read until the whole record is in the buffer
+            }
+        }
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.array()))) {
+            return new String(in.readAllBytes(), StandardCharsets.ISO_8859_1);
+        }
+    }
+}